@@ -543,6 +543,30 @@ public class Simpsons {
               ]
             }
             """;
+
+        public static final String FAMILY_NAMES_SORTED_BY_GIVEN_NAME_NORMALIZED = """
+            {
+              "https://core.kg.ebrains.eu/vocab/query/meta": {
+                "https://core.kg.ebrains.eu/vocab/query/alias": "simpsonsFamilyMembers",
+                "https://core.kg.ebrains.eu/vocab/query/name": "Simpson Family Members",
+                "https://core.kg.ebrains.eu/vocab/query/type": "https://thesimpsons.com/FamilyMember"
+              },
+              "https://core.kg.ebrains.eu/vocab/query/structure": [
+                {
+                  "https://core.kg.ebrains.eu/vocab/query/path": {
+                    "@id": "http://schema.org/familyName"
+                  },
+                  "https://core.kg.ebrains.eu/vocab/query/singleValue": "FIRST"
+                },
+                {
+                  "https://core.kg.ebrains.eu/vocab/query/path": {
+                    "@id": "http://schema.org/givenName"
+                  },
+                  "https://core.kg.ebrains.eu/vocab/query/sort": true
+                }
+              ]
+            }
+            """;
     }
 
 }
@@ -31,12 +31,15 @@ import eu.ebrains.kg.arango.commons.model.AQLQuery;
 import eu.ebrains.kg.commons.exception.InvalidRequestException;
 import eu.ebrains.kg.commons.exception.LimitExceededException;
 import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.model.ContinuationToken;
 import eu.ebrains.kg.commons.model.Paginated;
 import eu.ebrains.kg.commons.model.PaginatedStream;
+import eu.ebrains.kg.commons.model.PaginationParam;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Function;
 import java.util.stream.Stream;
@@ -72,6 +75,9 @@ public class ArangoQueries {
                 totalCount = count;
             }
             logger.debug("Start parsing the results after {}ms", new Date().getTime() - launch);
+            if (aql.getPaginationParam() != null && aql.getPaginationParam().isContinuationMode()) {
+                return continuePage(result, mapper, aql.getPaginationParam());
+            }
             final Stream<NormalizedJsonLd> stream = StreamSupport.stream(result.spliterator(), false);
             Stream<T> resultStream = stream.map(Objects.requireNonNullElseGet(mapper, () -> s -> (T) s));
             logger.debug("Done processing the Arango result - received {} results in {}ms total", count, new Date().getTime() - launch);
@@ -91,6 +97,27 @@ public class ArangoQueries {
         }
     }
 
+    /**
+     * Reads the page of a keyset pagination: the results carry their sort key which is removed from the document and
+     * - for the last result of a full page - transformed into the continuation token of the next page.
+     */
+    private static <T> PaginatedStream<T> continuePage(ArangoCursor<NormalizedJsonLd> result, Function<NormalizedJsonLd, T> mapper, PaginationParam paginationParam) {
+        final ContinuationToken token = ContinuationToken.decode(paginationParam.getContinuationToken());
+        final long offset = token != null ? token.getOffset() : 0;
+        final List<NormalizedJsonLd> page = result.asListRemaining();
+        List<Object> lastSortKey = null;
+        for (NormalizedJsonLd document : page) {
+            final Object sortKey = document.remove(AQL.CONTINUATION_KEY_FIELD);
+            lastSortKey = sortKey instanceof List ? (List<Object>) sortKey : null;
+        }
+        String nextToken = null;
+        if (lastSortKey != null && paginationParam.getSize() != null && page.size() == paginationParam.getSize()) {
+            nextToken = new ContinuationToken(lastSortKey, offset + page.size()).encode();
+        }
+        final Stream<T> resultStream = page.stream().map(Objects.requireNonNullElseGet(mapper, () -> s -> (T) s));
+        return new PaginatedStream<>(resultStream, null, page.size(), offset).setNextContinuationToken(nextToken);
+    }
+
     public static Paginated<NormalizedJsonLd> queryDocuments(ArangoDatabase db, AQLQuery aqlQuery, Double maxMemoryForQuery) {
         return new Paginated<>(queryDocuments(db, aqlQuery, null, maxMemoryForQuery));
     }
@@ -25,10 +25,13 @@ package eu.ebrains.kg.arango.commons.aqlbuilder;
 
 import com.arangodb.model.AqlQueryOptions;
 import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.commons.model.ContinuationToken;
 import eu.ebrains.kg.commons.model.PaginationParam;
 import org.apache.commons.text.StringSubstitutor;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.TreeMap;
@@ -42,6 +45,9 @@ public class AQL {
 
     public static final String READ_ACCESS_BY_SPACE = "readAccessBySpace";
     public static final String READ_ACCESS_BY_INVITATION = "readAccessByInvitation";
+    public static final String CONTINUATION_KEY = "continuationKey";
+    public static final String CONTINUATION_SIZE = "continuationSize";
+    public static final String CONTINUATION_KEY_FIELD = "_continuationKey";
 
     private final static ArangoKey WHITELIST_ALIAS = new ArangoKey("whitelist");
     private final static ArangoKey INVITATION_ALIAS = new ArangoKey("invitation");
@@ -149,10 +155,57 @@ public class AQL {
 
 
     public void addPagination(PaginationParam paginationParam) {
-        this.paginationParam = paginationParam;
+        specifyPagination(paginationParam);
         if (paginationParam != null && paginationParam.getSize() != null ) {
-            queryOptions.fullCount(paginationParam.isReturnTotalResults());
             addLine(AQL.trust(String.format("LIMIT %d, %d", paginationParam.getFrom(), paginationParam.getSize())));
+        }
+    }
+
+    /**
+     * Adds a keyset pagination: Instead of skipping the results of the previous pages, the results are sorted by the
+     * given expressions and only the ones which follow the sort key of the continuation token are returned. The sort
+     * expressions have to be unique in combination (e.g. by ending with the document key) and the query is expected to
+     * return the sort key of every result in the field {@link #CONTINUATION_KEY_FIELD} (see {@link #continuationKey(List)}).
+     */
+    public void addContinuationPagination(List<TrustedAqlValue> sortExpressions, PaginationParam paginationParam) {
+        specifyPagination(paginationParam);
+        //The first filter is redundant but allows Arango to make use of an index on the first sort expression
+        addLine(trust(String.format("FILTER @%s == null OR %s >= @%s[0]", CONTINUATION_KEY, sortExpressions.get(0).getValue(), CONTINUATION_KEY)));
+        addLine(trust(String.format("FILTER @%s == null OR %s > @%s", CONTINUATION_KEY, continuationKey(sortExpressions).getValue(), CONTINUATION_KEY)));
+        addLine(trust(String.format("SORT %s", sortExpressions.stream().map(e -> e.getValue() + " ASC").collect(Collectors.joining(", ")))));
+        if (paginationParam != null && paginationParam.getSize() != null) {
+            addLine(trust(String.format("LIMIT @%s", CONTINUATION_SIZE)));
+        }
+    }
+
+    public static TrustedAqlValue continuationKey(List<TrustedAqlValue> sortExpressions) {
+        return trust(String.format("[%s]", sortExpressions.stream().map(TrustedAqlValue::getValue).collect(Collectors.joining(", "))));
+    }
+
+    /**
+     * @return the bind variables required by {@link #addContinuationPagination(List, PaginationParam)}
+     */
+    public static Map<String, Object> getContinuationBindVars(PaginationParam paginationParam) {
+        Map<String, Object> bindVars = new HashMap<>();
+        final ContinuationToken token = ContinuationToken.decode(paginationParam.getContinuationToken());
+        bindVars.put(CONTINUATION_KEY, token != null ? token.getSortKey() : null);
+        if (paginationParam.getSize() != null) {
+            bindVars.put(CONTINUATION_SIZE, paginationParam.getSize());
+        }
+        return bindVars;
+    }
+
+    /**
+     * Registers the pagination (and the according query options) without adding a LIMIT statement - this is useful if
+     * the query defines the limits by bind variables.
+     */
+    public void specifyPagination(PaginationParam paginationParam) {
+        this.paginationParam = paginationParam;
+        if (paginationParam != null && paginationParam.isContinuationMode()) {
+            //The total is not calculated in continuation mode - this would require to evaluate all results again
+            queryOptions.fullCount(false);
+        } else if (paginationParam != null && paginationParam.getSize() != null ) {
+            queryOptions.fullCount(paginationParam.isReturnTotalResults());
         } else {
             queryOptions.count(true);
         }
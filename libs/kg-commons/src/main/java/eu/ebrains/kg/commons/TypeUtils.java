@@ -23,8 +23,11 @@
 
 package eu.ebrains.kg.commons;
 
-import java.util.ArrayList;
-import java.util.List;
+import eu.ebrains.kg.commons.jsonld.DynamicJson;
+
+import java.lang.reflect.InvocationTargetException;
+import java.math.BigInteger;
+import java.util.*;
 
 public class TypeUtils {
 
@@ -34,10 +37,84 @@ public class TypeUtils {
         this.jsonAdapter = jsonAdapter;
     }
 
+    /**
+     * Translates the given object into the requested type. Maps are copied structurally into {@link DynamicJson}s
+     * without going through a JSON string - the result is the same as the one of a serialization / deserialization
+     * roundtrip (including the normalization of numbers). Everything else falls back to this roundtrip.
+     */
     public <T> T translate(Object o, Class<T> clazz){
+        if (o instanceof Map<?, ?> map && DynamicJson.class.isAssignableFrom(clazz)) {
+            final Map<String, Object> copy = copyMap(map);
+            if (copy != null) {
+                final T result = instantiate(clazz);
+                if (result != null) {
+                    ((DynamicJson) result).putAll(copy);
+                    return result;
+                }
+            }
+        }
+        return translateByJson(o, clazz);
+    }
+
+    private <T> T translateByJson(Object o, Class<T> clazz){
         return jsonAdapter.fromJson(jsonAdapter.toJson(o), clazz);
     }
 
+    private static <T> T instantiate(Class<T> clazz) {
+        try {
+            return clazz.getDeclaredConstructor().newInstance();
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | InvocationTargetException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the structural copy of the map or null if it has keys which are not strings
+     */
+    private Map<String, Object> copyMap(Map<?, ?> map) {
+        Map<String, Object> copy = new LinkedHashMap<>(Math.max((int) (map.size() / .75f) + 1, 16));
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (!(entry.getKey() instanceof String key)) {
+                return null;
+            }
+            copy.put(key, copyValue(entry.getValue()));
+        }
+        return copy;
+    }
+
+    private Object copyValue(Object value) {
+        if (value == null || value instanceof String || value instanceof Boolean) {
+            return value;
+        } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).intValue();
+        } else if (value instanceof Long l) {
+            return l >= Integer.MIN_VALUE && l <= Integer.MAX_VALUE ? (Object) l.intValue() : l;
+        } else if (value instanceof BigInteger bigInteger) {
+            if (bigInteger.bitLength() < Integer.SIZE) {
+                return bigInteger.intValue();
+            }
+            return bigInteger.bitLength() < Long.SIZE ? (Object) bigInteger.longValue() : bigInteger;
+        } else if (value instanceof Double d && Double.isFinite(d)) {
+            return d;
+        } else if (value instanceof Float f && Float.isFinite(f)) {
+            //Floats are serialized with their own (shorter) representation which is then parsed as a double.
+            return Double.parseDouble(Float.toString(f));
+        } else if (value instanceof Map<?, ?> map) {
+            final Map<String, Object> copy = copyMap(map);
+            if (copy != null) {
+                return copy;
+            }
+        } else if (value instanceof Collection<?> collection) {
+            List<Object> copy = new ArrayList<>(collection.size());
+            for (Object element : collection) {
+                copy.add(copyValue(element));
+            }
+            return copy;
+        }
+        //Anything else (e.g. POJOs, enums, big decimals, non-finite numbers) is translated the way it would be serialized.
+        return translateByJson(value, Object.class);
+    }
+
     public static <T> List<List<T>> splitList(List<T> list, int chunkSize) {
         int numberOfChunks = (list.size() / chunkSize) + 1;
         List<List<T>> result = new ArrayList<>(numberOfChunks);
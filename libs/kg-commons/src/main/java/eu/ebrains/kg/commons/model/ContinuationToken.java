@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.ebrains.kg.commons.exception.InvalidRequestException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The (opaque) continuation token of a keyset pagination. It encodes the sort key of the last result of a page and the
+ * number of results which have been delivered so far.
+ */
+public class ContinuationToken {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+    private static final String KEY = "k";
+    private static final String OFFSET = "o";
+
+    private final List<Object> sortKey;
+    private final long offset;
+
+    public ContinuationToken(List<Object> sortKey, long offset) {
+        this.sortKey = sortKey;
+        this.offset = offset;
+    }
+
+    public List<Object> getSortKey() {
+        return sortKey;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public String encode() {
+        Map<String, Object> token = new LinkedHashMap<>();
+        token.put(KEY, sortKey);
+        token.put(OFFSET, offset);
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(OBJECT_MAPPER.writeValueAsBytes(token));
+        } catch (IOException e) {
+            throw new IllegalStateException("Was not able to create continuation token", e);
+        }
+    }
+
+    /**
+     * @return the decoded token or null if the token is empty (which means that the first page is requested).
+     */
+    @SuppressWarnings("unchecked")
+    public static ContinuationToken decode(String token) {
+        if (token == null || token.isBlank()) {
+            return null;
+        }
+        try {
+            final Map<String, Object> decoded = OBJECT_MAPPER.readValue(Base64.getUrlDecoder().decode(token.trim()), Map.class);
+            if (decoded.get(KEY) instanceof List && decoded.get(OFFSET) instanceof Number) {
+                return new ContinuationToken((List<Object>) decoded.get(KEY), ((Number) decoded.get(OFFSET)).longValue());
+            }
+        } catch (IllegalArgumentException | IOException e) {
+            //We handle it below
+        }
+        throw new InvalidRequestException(String.format("Invalid continuation token: %s", token));
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.model;
+
+/**
+ * The distance between the head of the event log of a stage and the position up to which its events have been indexed.
+ */
+public class IndexingLag {
+
+    private DataStage stage;
+    private String headEventId;
+    private String lastIndexedEventId;
+    private long pendingEvents;
+    private long lagInMs;
+
+    public IndexingLag() {
+    }
+
+    public IndexingLag(DataStage stage, String headEventId, String lastIndexedEventId, long pendingEvents, long lagInMs) {
+        this.stage = stage;
+        this.headEventId = headEventId;
+        this.lastIndexedEventId = lastIndexedEventId;
+        this.pendingEvents = pendingEvents;
+        this.lagInMs = lagInMs;
+    }
+
+    public DataStage getStage() {
+        return stage;
+    }
+
+    public String getHeadEventId() {
+        return headEventId;
+    }
+
+    public String getLastIndexedEventId() {
+        return lastIndexedEventId;
+    }
+
+    public long getPendingEvents() {
+        return pendingEvents;
+    }
+
+    /**
+     * @return the time between the persistence of the head of the event log and the persistence of the last indexed event
+     */
+    public long getLagInMs() {
+        return lagInMs;
+    }
+}
@@ -32,6 +32,7 @@ public class Paginated<T> {
     private Long totalResults;
     private long size;
     private long from;
+    private String nextContinuationToken;
 
 
     public Paginated() {
@@ -40,6 +41,7 @@ public class Paginated<T> {
 
     public Paginated(PaginatedStream<T> stream) {
         this(stream.getStream().toList(), stream.getTotalResults(), stream.getSize(), stream.getFrom());
+        this.nextContinuationToken = stream.getNextContinuationToken();
     }
 
     public Paginated(List<T> data, Long totalResults, long size, long from) {
@@ -65,5 +67,14 @@ public class Paginated<T> {
         return from;
     }
 
+    public String getNextContinuationToken() {
+        return nextContinuationToken;
+    }
+
+    public Paginated<T> setNextContinuationToken(String nextContinuationToken) {
+        this.nextContinuationToken = nextContinuationToken;
+        return this;
+    }
+
 }
 
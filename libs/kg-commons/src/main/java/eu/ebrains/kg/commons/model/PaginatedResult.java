@@ -23,12 +23,15 @@
 
 package eu.ebrains.kg.commons.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.List;
 
 public class PaginatedResult<T> extends Result<List<T>> {
     private Long total;
     private long size;
     private long from;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextContinuationToken;
 
     public static <T> PaginatedResult<T> ok(Paginated<T> data) {
         PaginatedResult<T> result = new PaginatedResult<>();
@@ -39,6 +42,7 @@ public class PaginatedResult<T> extends Result<List<T>> {
         result.total = data.getTotalResults();
         result.from = data.getFrom();
         result.size = data.getSize();
+        result.nextContinuationToken = data.getNextContinuationToken();
         return result;
     }
 
@@ -63,4 +67,8 @@ public class PaginatedResult<T> extends Result<List<T>> {
     public long getFrom() {
         return from;
     }
+
+    public String getNextContinuationToken() {
+        return nextContinuationToken;
+    }
 }
@@ -31,6 +31,7 @@ public class PaginatedStream<T> {
     private Long totalResults;
     private long size;
     private long from;
+    private String nextContinuationToken;
 
 
     public PaginatedStream() {
@@ -59,5 +60,14 @@ public class PaginatedStream<T> {
         return from;
     }
 
+    public String getNextContinuationToken() {
+        return nextContinuationToken;
+    }
+
+    public PaginatedStream<T> setNextContinuationToken(String nextContinuationToken) {
+        this.nextContinuationToken = nextContinuationToken;
+        return this;
+    }
+
 }
 
@@ -23,12 +23,15 @@
 
 package eu.ebrains.kg.commons.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.stream.Stream;
 
 public class PaginatedStreamResult<T> extends Result<Stream<T>> {
     private Long total;
     private long size;
     private long from;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextContinuationToken;
 
     public static <T> PaginatedStreamResult<T> ok(PaginatedStream<T> data) {
         PaginatedStreamResult<T> result = new PaginatedStreamResult<>();
@@ -42,6 +45,7 @@ public class PaginatedStreamResult<T> extends Result<Stream<T>> {
         result.total = data.getTotalResults();
         result.from = data.getFrom();
         result.size = data.getSize();
+        result.nextContinuationToken = data.getNextContinuationToken();
         return result;
     }
 
@@ -56,4 +60,8 @@ public class PaginatedStreamResult<T> extends Result<Stream<T>> {
     public long getFrom() {
         return from;
     }
+
+    public String getNextContinuationToken() {
+        return nextContinuationToken;
+    }
 }
@@ -32,6 +32,8 @@ public class PaginationParam {
 
     private boolean returnTotalResults;
 
+    private String continuationToken;
+
     public long getFrom() {
         return from;
     }
@@ -59,6 +61,23 @@ public class PaginationParam {
         return this;
     }
 
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+
+    /**
+     * Switches to the continuation mode: Instead of skipping the first "from" results, the next page is looked up by
+     * the sort key encoded in the token. An empty token requests the first page.
+     */
+    public PaginationParam setContinuationToken(String continuationToken) {
+        this.continuationToken = continuationToken;
+        return this;
+    }
+
+    public boolean isContinuationMode() {
+        return continuationToken != null;
+    }
+
     public static <T> Paginated<T> paginate(List<T> source, PaginationParam paginationParam){
         if(paginationParam!=null) {
             if(paginationParam.getFrom()>source.size()-1){
@@ -37,6 +37,7 @@ public class PersistedEvent extends Event implements EventId {
     private DataStage dataStage;
     private boolean suggestion;
     private Space space;
+    private boolean asyncIndexing;
 
     @JsonProperty("_key")
     private String key;
@@ -90,4 +91,15 @@ public class PersistedEvent extends Event implements EventId {
     public void setSpace(Space space) {
         this.space = space;
     }
+
+    /**
+     * @return true if the event is indexed by the event log consumer of the primary store instead of synchronously
+     */
+    public boolean isAsyncIndexing() {
+        return asyncIndexing;
+    }
+
+    public void setAsyncIndexing(boolean asyncIndexing) {
+        this.asyncIndexing = asyncIndexing;
+    }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.ebrains.kg.commons.jsonld.DynamicJson;
+import eu.ebrains.kg.commons.jsonld.JsonLdId;
+import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.model.DataStage;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypeUtilsTest {
+
+    // Same configuration as in eu.ebrains.kg.commons.config.JsonConfig
+    private final JsonAdapter jsonAdapter = new JsonAdapter(new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE).setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY));
+
+    private final TypeUtils typeUtils = new TypeUtils(jsonAdapter);
+
+    private Map<String, Object> createPayload() {
+        DynamicJson embedded = new DynamicJson();
+        embedded.put("https://schema.hbp.eu/embeddedKey", "embeddedValue");
+        embedded.put("https://schema.hbp.eu/float", 0.1f);
+        embedded.put("https://schema.hbp.eu/link", new JsonLdId("https://kg.ebrains.eu/api/instances/related"));
+        Map<Object, Object> nonStringKeys = new HashMap<>();
+        nonStringKeys.put(1, "one");
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("@id", "https://kg.ebrains.eu/api/instances/helloWorld");
+        payload.put("@type", Arrays.asList("https://schema.hbp.eu/Foo", "https://schema.hbp.eu/Bar"));
+        payload.put("https://schema.hbp.eu/null", null);
+        payload.put("https://schema.hbp.eu/boolean", true);
+        payload.put("https://schema.hbp.eu/smallLong", 42L);
+        payload.put("https://schema.hbp.eu/long", Long.MAX_VALUE);
+        payload.put("https://schema.hbp.eu/smallBigInteger", BigInteger.TEN);
+        payload.put("https://schema.hbp.eu/bigInteger", BigInteger.valueOf(Long.MAX_VALUE).multiply(BigInteger.TEN));
+        payload.put("https://schema.hbp.eu/short", (short) 3);
+        payload.put("https://schema.hbp.eu/double", 1.0);
+        payload.put("https://schema.hbp.eu/nan", Double.NaN);
+        payload.put("https://schema.hbp.eu/bigDecimal", new BigDecimal("100"));
+        payload.put("https://schema.hbp.eu/enum", DataStage.IN_PROGRESS);
+        payload.put("https://schema.hbp.eu/uuid", UUID.randomUUID());
+        payload.put("https://schema.hbp.eu/set", new TreeSet<>(Arrays.asList("b", "a")));
+        payload.put("https://schema.hbp.eu/embedded", embedded);
+        payload.put("https://schema.hbp.eu/embeddedList", Arrays.asList(embedded, Collections.singletonList(embedded)));
+        payload.put("https://schema.hbp.eu/nonStringKeys", nonStringKeys);
+        return payload;
+    }
+
+    @Test
+    void translateMapIsEqualToJsonRoundtrip() {
+        //Given
+        Map<String, Object> payload = createPayload();
+
+        //When
+        NormalizedJsonLd translated = typeUtils.translate(payload, NormalizedJsonLd.class);
+
+        //Then
+        NormalizedJsonLd roundtrip = jsonAdapter.fromJson(jsonAdapter.toJson(payload), NormalizedJsonLd.class);
+        assertEquals(roundtrip, translated);
+        assertEquals(jsonAdapter.toJson(roundtrip), jsonAdapter.toJson(translated));
+    }
+
+    @Test
+    void translateDoesNotShareStructure() {
+        //Given
+        Map<String, Object> payload = createPayload();
+
+        //When
+        NormalizedJsonLd translated = typeUtils.translate(payload, NormalizedJsonLd.class);
+
+        //Then
+        assertNotSame(payload.get("https://schema.hbp.eu/embedded"), translated.get("https://schema.hbp.eu/embedded"));
+        assertNotSame(payload.get("@type"), translated.get("@type"));
+    }
+
+    @Test
+    void translateMapWithNonStringKeys() {
+        //Given
+        Map<Object, Object> payload = new HashMap<>();
+        payload.put(1, "one");
+
+        //When
+        NormalizedJsonLd translated = typeUtils.translate(payload, NormalizedJsonLd.class);
+
+        //Then
+        assertEquals("one", translated.get("1"));
+    }
+
+}
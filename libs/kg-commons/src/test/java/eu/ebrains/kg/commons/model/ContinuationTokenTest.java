@@ -0,0 +1,60 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.model;
+
+import eu.ebrains.kg.commons.exception.InvalidRequestException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContinuationTokenTest {
+
+    @Test
+    void roundtrip() {
+        //Given
+        ContinuationToken token = new ContinuationToken(Arrays.asList("Homer", null, 12, "4f5c0d23-3d1b-4b6f-a6b1-1b3a3cbd1b64"), 40);
+
+        //When
+        ContinuationToken decoded = ContinuationToken.decode(token.encode());
+
+        //Then
+        assertEquals(token.getSortKey(), decoded.getSortKey());
+        assertEquals(40, decoded.getOffset());
+    }
+
+    @Test
+    void emptyTokenRequestsFirstPage() {
+        assertNull(ContinuationToken.decode(""));
+        assertNull(ContinuationToken.decode(null));
+    }
+
+    @Test
+    void invalidToken() {
+        assertThrows(InvalidRequestException.class, () -> ContinuationToken.decode("foo"));
+        assertThrows(InvalidRequestException.class, () -> ContinuationToken.decode("!!!"));
+    }
+
+}
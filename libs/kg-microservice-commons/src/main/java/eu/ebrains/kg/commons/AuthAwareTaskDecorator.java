@@ -42,9 +42,11 @@ public class AuthAwareTaskDecorator implements TaskDecorator {
             headers = RequestHeadersHolder.get();
         }
         final Map<String, String> resolvedHeaders = headers;
+        //The task shares the user with roles with the request it has been started from
+        final RequestScopedUserWithRoles userWithRoles = resolvedHeaders != null ? RequestScopedUserWithRoles.current() : null;
         return () -> {
             try {
-                RequestHeadersHolder.setAuthTokens(resolvedHeaders);
+                RequestHeadersHolder.setAuthTokens(resolvedHeaders, userWithRoles);
                 runnable.run();
             } finally {
                 RequestHeadersHolder.reset();
@@ -43,11 +43,19 @@ public class AuthContext {
     }
 
     public UserWithRoles getUserWithRoles() {
-        return authentication.getRoles(true);
+        return getRoles(true);
     }
 
     public UserWithRoles getUserWithRolesWithoutTermsCheck() {
-        return authentication.getRoles(false);
+        return getRoles(false);
+    }
+
+    private UserWithRoles getRoles(boolean checkForTermsOfUse) {
+        final RequestScopedUserWithRoles requestScoped = RequestScopedUserWithRoles.current();
+        if (requestScoped != null) {
+            return requestScoped.get(checkForTermsOfUse, () -> authentication.getRoles(checkForTermsOfUse));
+        }
+        return authentication.getRoles(checkForTermsOfUse);
     }
 
     public Space getClientSpace(){
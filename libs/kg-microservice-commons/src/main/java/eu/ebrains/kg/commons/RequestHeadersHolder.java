@@ -29,6 +29,7 @@ import org.springframework.lang.Nullable;
 import javax.servlet.http.HttpServletRequest;
 import java.util.Collections;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class RequestHeadersHolder {
@@ -36,9 +37,11 @@ public class RequestHeadersHolder {
     }
 
     private static final ThreadLocal<Map<String, String>> inheritableAuthTokensHolder = new NamedInheritableThreadLocal<>("Request headers");
+    private static final ThreadLocal<RequestScopedUserWithRoles> inheritableUserWithRolesHolder = new NamedInheritableThreadLocal<>("Request user with roles");
 
     public static void reset() {
         inheritableAuthTokensHolder.remove();
+        inheritableUserWithRolesHolder.remove();
     }
 
     public static Map<String, String> createHeadersMap(HttpServletRequest request){
@@ -52,7 +55,19 @@ public class RequestHeadersHolder {
     }
 
     public static void setAuthTokens(@Nullable Map<String, String> headers) {
+        setAuthTokens(headers, null);
+    }
+
+    /**
+     * Registers the headers together with the (already memoized) user with roles of the request they originate from.
+     */
+    public static void setAuthTokens(@Nullable Map<String, String> headers, @Nullable RequestScopedUserWithRoles userWithRoles) {
         inheritableAuthTokensHolder.set(headers);
+        inheritableUserWithRolesHolder.set(headers != null ? Objects.requireNonNullElseGet(userWithRoles, RequestScopedUserWithRoles::new) : null);
+    }
+
+    static RequestScopedUserWithRoles getUserWithRoles() {
+        return inheritableUserWithRolesHolder.get();
     }
 
 
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons;
+
+import eu.ebrains.kg.commons.models.UserWithRoles;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.function.Supplier;
+
+/**
+ * Keeps the {@link UserWithRoles} of the current request (or of the asynchronous tasks started by it) so they are only
+ * resolved once - they are not going to change within the same request anyhow.
+ */
+public class RequestScopedUserWithRoles {
+
+    private static final String REQUEST_ATTRIBUTE = RequestScopedUserWithRoles.class.getName();
+
+    private UserWithRoles withTermsCheck;
+    private UserWithRoles withoutTermsCheck;
+
+    /**
+     * @return the instance for the current request or null if there is no request context (in this case, we don't
+     * memoize anything).
+     */
+    public static RequestScopedUserWithRoles current() {
+        if (RequestHeadersHolder.get() != null) {
+            return RequestHeadersHolder.getUserWithRoles();
+        }
+        final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            synchronized (requestAttributes) {
+                RequestScopedUserWithRoles userWithRoles = (RequestScopedUserWithRoles) requestAttributes.getAttribute(REQUEST_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+                if (userWithRoles == null) {
+                    userWithRoles = new RequestScopedUserWithRoles();
+                    requestAttributes.setAttribute(REQUEST_ATTRIBUTE, userWithRoles, RequestAttributes.SCOPE_REQUEST);
+                }
+                return userWithRoles;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return an instance which provides the given user with roles - for tasks acting on behalf of a user without any
+     * request (and therefore without any credentials) of this user.
+     */
+    public static RequestScopedUserWithRoles of(UserWithRoles userWithRoles) {
+        RequestScopedUserWithRoles requestScoped = new RequestScopedUserWithRoles();
+        requestScoped.withTermsCheck = userWithRoles;
+        requestScoped.withoutTermsCheck = userWithRoles;
+        return requestScoped;
+    }
+
+    /**
+     * Returns the memoized user with roles or resolves them with the given supplier. Exceptions (e.g. because the
+     * terms of use are not accepted) are not memoized but thrown again on the next call.
+     */
+    public synchronized UserWithRoles get(boolean checkForTermsOfUse, Supplier<UserWithRoles> supplier) {
+        if (checkForTermsOfUse) {
+            if (withTermsCheck == null) {
+                withTermsCheck = supplier.get();
+            }
+            return withTermsCheck;
+        } else {
+            if (withoutTermsCheck == null) {
+                withoutTermsCheck = supplier.get();
+            }
+            return withoutTermsCheck;
+        }
+    }
+}
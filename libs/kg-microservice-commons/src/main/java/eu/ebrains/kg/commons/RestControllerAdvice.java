@@ -53,11 +53,12 @@ public class RestControllerAdvice {
      * Defines the model attribute of the pagination parameters used in several queries.
      */
     @ModelAttribute
-    public PaginationParam paginationParam(@RequestParam(value = "from", required = false, defaultValue = "0") long from, @RequestParam(value = "size", required = false) Long size, @RequestParam(value = "returnTotalResults", required = false, defaultValue = "true") boolean returnTotalResults) {
+    public PaginationParam paginationParam(@RequestParam(value = "from", required = false, defaultValue = "0") long from, @RequestParam(value = "size", required = false) Long size, @RequestParam(value = "returnTotalResults", required = false, defaultValue = "true") boolean returnTotalResults, @RequestParam(value = "continuationToken", required = false) String continuationToken) {
         PaginationParam paginationParam = new PaginationParam();
         paginationParam.setFrom(from);
         paginationParam.setSize(size);
         paginationParam.setReturnTotalResults(returnTotalResults);
+        paginationParam.setContinuationToken(continuationToken);
         return paginationParam;
     }
 
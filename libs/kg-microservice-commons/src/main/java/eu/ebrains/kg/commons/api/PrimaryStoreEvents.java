@@ -24,7 +24,9 @@
 package eu.ebrains.kg.commons.api;
 
 import eu.ebrains.kg.commons.jsonld.InstanceId;
+import eu.ebrains.kg.commons.model.DataStage;
 import eu.ebrains.kg.commons.model.Event;
+import eu.ebrains.kg.commons.model.IndexingLag;
 
 import java.util.Set;
 import java.util.UUID;
@@ -35,7 +37,12 @@ public interface PrimaryStoreEvents {
 
     void rerunEvents(String space);
 
-    Set<InstanceId> postEvent(Event event);
+    /**
+     * @param waitUntilIndexed if the primary store indexes asynchronously, this defines if the call shall block until the event is indexed (read-your-writes). In synchronous mode, the event is always indexed before the call returns.
+     */
+    Set<InstanceId> postEvent(Event event, boolean waitUntilIndexed);
 
     void infer(String space, UUID id);
+
+    IndexingLag getIndexingLag(DataStage stage);
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.cache;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache holding at most the configured number of entries (the least recently used ones are evicted first) and -
+ * optionally - expiring them after a time to live. Concurrent loads of the same key (see {@link #get(Object, Callable)})
+ * are collapsed to a single invocation of the value loader. A load overlapping with an eviction of its key doesn't
+ * populate the cache since it could have read the state from before the change.
+ */
+public class BoundedCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final int maxSize;
+    private final long timeToLiveInMs;
+    private final LongSupplier clock;
+    private final Map<Object, CacheEntry> entries;
+    private final Map<Object, FutureTask<Object>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong puts = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param timeToLiveInMs the time to live of an entry - entries never expire if the value is not positive.
+     */
+    public BoundedCache(String name, int maxSize, long timeToLiveInMs) {
+        this(name, maxSize, timeToLiveInMs, System::currentTimeMillis);
+    }
+
+    BoundedCache(String name, int maxSize, long timeToLiveInMs, LongSupplier clock) {
+        super(true);
+        this.name = name;
+        this.maxSize = maxSize;
+        this.timeToLiveInMs = timeToLiveInMs;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, CacheEntry> eldest) {
+                if (size() > BoundedCache.this.maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static class CacheEntry {
+        private final Object value;
+        private final long expiresAt;
+
+        private CacheEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return entries;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getTimeToLiveInMs() {
+        return timeToLiveInMs;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        final Object value = doLookup(key);
+        (value != null ? hits : misses).incrementAndGet();
+        return value;
+    }
+
+    private synchronized Object doLookup(Object key) {
+        final CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (clock.getAsLong() >= entry.expiresAt) {
+            entries.remove(key);
+            expirations.incrementAndGet();
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        final Object cached = lookup(key);
+        if (cached != null) {
+            return (T) fromStoreValue(cached);
+        }
+        final FutureTask<Object> task = new FutureTask<>(() -> toStoreValue(valueLoader.call()));
+        final FutureTask<Object> existing = loading.putIfAbsent(key, task);
+        if (existing != null) {
+            return (T) fromStoreValue(await(key, existing, valueLoader));
+        }
+        try {
+            final Object loadedInTheMeantime = doLookup(key);
+            if (loadedInTheMeantime != null) {
+                return (T) fromStoreValue(loadedInTheMeantime);
+            }
+            task.run();
+            final Object value = await(key, task, valueLoader);
+            synchronized (this) {
+                if (loading.get(key) == task) {
+                    store(key, value);
+                }
+            }
+            return (T) fromStoreValue(value);
+        } finally {
+            loading.remove(key, task);
+        }
+    }
+
+    private Object await(Object key, FutureTask<Object> task, Callable<?> valueLoader) {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+    }
+
+    @Override
+    public synchronized void put(Object key, Object value) {
+        //A running load must not overwrite the explicitly put value
+        loading.remove(key);
+        store(key, toStoreValue(value));
+    }
+
+    private void store(Object key, Object storeValue) {
+        final long expiresAt = timeToLiveInMs > 0 ? clock.getAsLong() + timeToLiveInMs : Long.MAX_VALUE;
+        entries.put(key, new CacheEntry(storeValue, expiresAt));
+        puts.incrementAndGet();
+    }
+
+    @Override
+    public synchronized ValueWrapper putIfAbsent(Object key, Object value) {
+        final Object existing = doLookup(key);
+        if (existing != null) {
+            return toValueWrapper(existing);
+        }
+        put(key, value);
+        return null;
+    }
+
+    @Override
+    public synchronized void evict(Object key) {
+        loading.remove(key);
+        entries.remove(key);
+    }
+
+    @Override
+    public synchronized boolean evictIfPresent(Object key) {
+        loading.remove(key);
+        return entries.remove(key) != null;
+    }
+
+    @Override
+    public synchronized void clear() {
+        loading.clear();
+        entries.clear();
+    }
+
+    /**
+     * Removes the expired entries - they would be dropped on the next access anyhow but we don't want them to occupy
+     * memory until then.
+     */
+    public synchronized void removeExpired() {
+        final long now = clock.getAsLong();
+        final int sizeBefore = entries.size();
+        entries.values().removeIf(e -> now >= e.expiresAt);
+        expirations.addAndGet((long) sizeBefore - entries.size());
+    }
+
+    public CacheStatistics getStatistics() {
+        return new CacheStatistics(size(), maxSize, timeToLiveInMs > 0 ? timeToLiveInMs : null, hits.get(), misses.get(), puts.get(), evictions.get(), expirations.get());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.env.PropertyResolver;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Creates a {@link BoundedCache} for every requested cache name. The limits are configured by the properties
+ * "eu.ebrains.kg.cache.maxSize" and "eu.ebrains.kg.cache.timeToLiveInMs" and can be overridden per cache by
+ * "eu.ebrains.kg.cache.&lt;cacheName&gt;.maxSize" and "eu.ebrains.kg.cache.&lt;cacheName&gt;.timeToLiveInMs".
+ */
+public class BoundedCacheManager implements CacheManager {
+
+    public static final String PROPERTY_PREFIX = "eu.ebrains.kg.cache";
+    private static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final PropertyResolver properties;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, BoundedCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param meterRegistry the registry the cache metrics are published to - can be null.
+     */
+    public BoundedCacheManager(PropertyResolver properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public BoundedCache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableSet(caches.keySet());
+    }
+
+    private BoundedCache createCache(String name) {
+        final int defaultMaxSize = properties.getProperty(PROPERTY_PREFIX + ".maxSize", Integer.class, DEFAULT_MAX_SIZE);
+        final long defaultTimeToLive = properties.getProperty(PROPERTY_PREFIX + ".timeToLiveInMs", Long.class, 0L);
+        final BoundedCache cache = new BoundedCache(name,
+                properties.getProperty(String.format("%s.%s.maxSize", PROPERTY_PREFIX, name), Integer.class, defaultMaxSize),
+                properties.getProperty(String.format("%s.%s.timeToLiveInMs", PROPERTY_PREFIX, name), Long.class, defaultTimeToLive));
+        if (meterRegistry != null) {
+            registerMetrics(cache);
+        }
+        return cache;
+    }
+
+    private void registerMetrics(BoundedCache cache) {
+        Gauge.builder("cache.size", cache, BoundedCache::size).tag("cache", cache.getName()).register(meterRegistry);
+        registerCounter(cache, "cache.gets", c -> c.getStatistics().getHits(), "result", "hit");
+        registerCounter(cache, "cache.gets", c -> c.getStatistics().getMisses(), "result", "miss");
+        registerCounter(cache, "cache.puts", c -> c.getStatistics().getPuts());
+        registerCounter(cache, "cache.evictions", c -> c.getStatistics().getEvictions());
+        registerCounter(cache, "cache.expirations", c -> c.getStatistics().getExpirations());
+    }
+
+    private void registerCounter(BoundedCache cache, String name, ToDoubleFunction<BoundedCache> value, String... tags) {
+        FunctionCounter.builder(name, cache, value).tag("cache", cache.getName()).tags(tags).register(meterRegistry);
+    }
+
+    /**
+     * @return the statistics of all caches, sorted by the cache name.
+     */
+    public Map<String, CacheStatistics> getStatistics() {
+        final Map<String, CacheStatistics> statistics = new TreeMap<>();
+        caches.forEach((name, cache) -> statistics.put(name, cache.getStatistics()));
+        return statistics;
+    }
+
+    @Scheduled(fixedRate = 1000 * 60)
+    public void removeExpiredEntries() {
+        caches.values().forEach(BoundedCache::removeExpired);
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.cache;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+
+import java.util.Map;
+
+/**
+ * Exposes the statistics of the caches at /actuator/cachestatistics (the "caches" id is already taken by Spring's
+ * endpoint for the cache management).
+ */
+@Endpoint(id = "cachestatistics")
+public class CacheStatisticsEndpoint {
+
+    private final BoundedCacheManager cacheManager;
+
+    public CacheStatisticsEndpoint(BoundedCacheManager cacheManager) {
+        this.cacheManager = cacheManager;
+    }
+
+    @ReadOperation
+    public Map<String, CacheStatistics> statistics() {
+        return cacheManager.getStatistics();
+    }
+
+    @ReadOperation
+    public CacheStatistics statistics(@Selector String cacheName) {
+        return cacheManager.getCacheNames().contains(cacheName) ? cacheManager.getCache(cacheName).getStatistics() : null;
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.config;
+
+import eu.ebrains.kg.commons.cache.BoundedCacheManager;
+import eu.ebrains.kg.commons.cache.CacheStatisticsEndpoint;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Backs the Spring caches by size-bounded caches which record their statistics. The backend can be replaced by
+ * disabling it ("eu.ebrains.kg.cache.bounded=false") - Spring Boot's cache auto-configuration (see "spring.cache.type")
+ * applies then.
+ */
+@ConditionalOnProperty(value = BoundedCacheManager.PROPERTY_PREFIX + ".bounded", havingValue = "true", matchIfMissing = true)
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public BoundedCacheManager cacheManager(Environment environment, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new BoundedCacheManager(environment, meterRegistry.getIfAvailable());
+    }
+
+    @Bean
+    public CacheStatisticsEndpoint cacheStatisticsEndpoint(BoundedCacheManager cacheManager) {
+        return new CacheStatisticsEndpoint(cacheManager);
+    }
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.models;
+
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.commons.permission.Functionality;
+import eu.ebrains.kg.commons.permission.FunctionalityInstance;
+import eu.ebrains.kg.commons.permission.Permission;
+
+import java.util.*;
+
+/**
+ * An immutable index of the permissions of a user which allows to evaluate permission checks without scanning the
+ * full list of {@link FunctionalityInstance}s: global, space and instance permissions are looked up by hash and
+ * wildcard spaces (e.g. "foo*") are compiled into a prefix tree so they can be resolved in the length of the space name.
+ */
+public class PermissionIndex {
+
+    private final Set<Functionality> functionalities = EnumSet.noneOf(Functionality.class);
+    private final Set<Functionality> globalFunctionalities = EnumSet.noneOf(Functionality.class);
+    private final Map<SpaceName, Set<Functionality>> spaceFunctionalities = new HashMap<>();
+    private final WildcardNode wildcards = new WildcardNode();
+    private final Map<UUID, Set<Functionality>> instanceFunctionalities = new HashMap<>();
+    private final Map<UUID, Set<Functionality>> spacelessInstanceFunctionalities = new HashMap<>();
+    private final Map<Functionality, Set<UUID>> instancesByFunctionality = new EnumMap<>(Functionality.class);
+
+    private static class WildcardNode {
+        private final Map<Character, WildcardNode> children = new HashMap<>();
+        private final Set<Functionality> functionalities = EnumSet.noneOf(Functionality.class);
+
+        private void add(String prefix, Functionality functionality) {
+            WildcardNode node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.children.computeIfAbsent(prefix.charAt(i), c -> new WildcardNode());
+            }
+            node.functionalities.add(functionality);
+        }
+
+        /**
+         * Collects the functionalities of all wildcards whose prefix is a prefix of the given name
+         */
+        private void collect(String name, Set<Functionality> result) {
+            WildcardNode node = this;
+            result.addAll(node.functionalities);
+            for (int i = 0; i < name.length() && node != null; i++) {
+                node = node.children.get(name.charAt(i));
+                if (node != null) {
+                    result.addAll(node.functionalities);
+                }
+            }
+        }
+
+        private boolean matches(String name, Functionality functionality) {
+            WildcardNode node = this;
+            for (int i = 0; node != null; i++) {
+                if (node.functionalities.contains(functionality)) {
+                    return true;
+                }
+                node = i < name.length() ? node.children.get(name.charAt(i)) : null;
+            }
+            return false;
+        }
+    }
+
+    public PermissionIndex(Collection<FunctionalityInstance> permissions) {
+        if (permissions != null) {
+            for (FunctionalityInstance permission : permissions) {
+                final Functionality functionality = permission.getFunctionality();
+                final SpaceName space = permission.getSpace();
+                final UUID id = permission.getId();
+                functionalities.add(functionality);
+                if (id != null) {
+                    instanceFunctionalities.computeIfAbsent(id, k -> EnumSet.noneOf(Functionality.class)).add(functionality);
+                    instancesByFunctionality.computeIfAbsent(functionality, k -> new HashSet<>()).add(id);
+                    if (space == null) {
+                        spacelessInstanceFunctionalities.computeIfAbsent(id, k -> EnumSet.noneOf(Functionality.class)).add(functionality);
+                    }
+                } else if (space == null) {
+                    globalFunctionalities.add(functionality);
+                } else {
+                    spaceFunctionalities.computeIfAbsent(space, k -> EnumSet.noneOf(Functionality.class)).add(functionality);
+                    if (space.isWildcard()) {
+                        wildcards.add(space.getName().substring(0, space.getName().length() - 1), functionality);
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean contains(Map<?, Set<Functionality>> index, Object key, Functionality functionality) {
+        final Set<Functionality> f = index.get(key);
+        return f != null && f.contains(functionality);
+    }
+
+    /**
+     * @return true if the functionality is granted globally, for the given space (either explicitly or by a wildcard)
+     * or for the given instance - on the permission levels which are allowed for the functionality.
+     */
+    public boolean hasPermission(Functionality functionality, SpaceName space, UUID id) {
+        final List<Permission.Level> levels = functionality.getAllowedPermissionLevels();
+        if (levels.contains(Permission.Level.GLOBAL) && globalFunctionalities.contains(functionality)) {
+            return true;
+        }
+        if (space != null && levels.contains(Permission.Level.SPACE) && hasSpacePermission(functionality, space)) {
+            return true;
+        }
+        return id != null && levels.contains(Permission.Level.INSTANCE) && contains(spacelessInstanceFunctionalities, id, functionality);
+    }
+
+    /**
+     * @return true if the functionality is granted for the given space - either explicitly or by a wildcard
+     */
+    public boolean hasSpacePermission(Functionality functionality, SpaceName space) {
+        return space != null && (contains(spaceFunctionalities, space, functionality) || (space.getName() != null && wildcards.matches(space.getName(), functionality)));
+    }
+
+    public Set<UUID> getInstancesWithExplicitPermission(Functionality functionality) {
+        return Collections.unmodifiableSet(instancesByFunctionality.getOrDefault(functionality, Collections.emptySet()));
+    }
+
+    /**
+     * @return the functionalities applying to the given space / instance (see {@link FunctionalityInstance#appliesTo(SpaceName, UUID)})
+     */
+    public Set<Functionality> getFunctionalitiesApplyingTo(SpaceName space, UUID id) {
+        if (space != null && SpaceName.REVIEW_SPACE.equals(space.getName())) {
+            //The review space is special -> we only grant read access
+            return functionalities.contains(Functionality.READ) ? EnumSet.of(Functionality.READ) : EnumSet.noneOf(Functionality.class);
+        }
+        final Set<Functionality> result = EnumSet.copyOf(globalFunctionalities);
+        if (space != null) {
+            result.addAll(spaceFunctionalities.getOrDefault(space, Collections.emptySet()));
+            if (space.getName() != null) {
+                wildcards.collect(space.getName(), result);
+            }
+        }
+        if (id != null) {
+            result.addAll(instanceFunctionalities.getOrDefault(id, Collections.emptySet()));
+        }
+        return result;
+    }
+
+}
@@ -46,6 +46,7 @@ public class UserWithRoles {
     private List<UUID> invitations;
     private String clientId;
     private List<FunctionalityInstance> permissions;
+    private transient volatile PermissionIndex permissionIndex;
     private transient final Logger logger = LoggerFactory.getLogger(getClass());
 
     // For serialization
@@ -87,6 +88,18 @@ public class UserWithRoles {
         return permissions;
     }
 
+    /**
+     * @return the index of the permissions for efficient permission checks - it is built on first access.
+     */
+    public PermissionIndex getPermissionIndex() {
+        PermissionIndex index = permissionIndex;
+        if (index == null) {
+            index = new PermissionIndex(permissions);
+            permissionIndex = index;
+        }
+        return index;
+    }
+
     private List<FunctionalityInstance> calculatePermissions(){
         //Invitation permissions are added after permission evaluation (of global and space)
         final List<FunctionalityInstance> functionalityInstances = evaluatePermissions(userRoles, clientRoles);
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons;
+
+import eu.ebrains.kg.commons.api.Authentication;
+import eu.ebrains.kg.commons.model.User;
+import eu.ebrains.kg.commons.models.UserWithRoles;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class AuthContextTest {
+
+    private final Authentication.Client authentication = mock(Authentication.Client.class);
+    private final AuthContext authContext = new AuthContext(mock(AuthTokenContext.class), authentication);
+    private final UserWithRoles userWithRoles = new UserWithRoles(new User("testUser", "Test", "test@test.xy", "Test", "User", null), Collections.emptyList(), Collections.emptyList(), "testClient");
+
+    @BeforeEach
+    void setup() {
+        when(authentication.getRoles(anyBoolean())).thenReturn(userWithRoles);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+        RequestHeadersHolder.reset();
+    }
+
+    private void startRequest() {
+        Map<String, Object> attributes = new HashMap<>();
+        HttpServletRequest request = mock(HttpServletRequest.class);
+        when(request.getAttribute(anyString())).thenAnswer(a -> attributes.get(a.getArgument(0, String.class)));
+        doAnswer(a -> attributes.put(a.getArgument(0), a.getArgument(1))).when(request).setAttribute(anyString(), any());
+        when(request.getHeaderNames()).thenReturn(Collections.emptyEnumeration());
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @Test
+    void getUserWithRolesIsResolvedOncePerRequest() {
+        //Given
+        startRequest();
+
+        //When
+        authContext.getUserWithRoles();
+        authContext.getUserId();
+        authContext.getClientSpace();
+        authContext.getUserWithRolesWithoutTermsCheck();
+        authContext.getUserWithRolesWithoutTermsCheck();
+
+        //Then
+        verify(authentication, times(1)).getRoles(true);
+        verify(authentication, times(1)).getRoles(false);
+    }
+
+    @Test
+    void getUserWithRolesIsResolvedAgainForNextRequest() {
+        //Given
+        startRequest();
+        authContext.getUserWithRoles();
+
+        //When
+        startRequest();
+        authContext.getUserWithRoles();
+
+        //Then
+        verify(authentication, times(2)).getRoles(true);
+    }
+
+    @Test
+    void decoratedTaskSharesUserWithRolesOfRequest() throws InterruptedException {
+        //Given
+        startRequest();
+        authContext.getUserWithRoles();
+        Runnable task = new AuthAwareTaskDecorator().decorate(() -> assertSame(userWithRoles, authContext.getUserWithRoles()));
+
+        //When
+        Thread thread = new Thread(task);
+        thread.start();
+        thread.join();
+
+        //Then
+        verify(authentication, times(1)).getRoles(true);
+    }
+
+    @Test
+    void getUserWithRolesIsResolvedOncePerHeaders() {
+        //Given
+        RequestHeadersHolder.setAuthTokens(Map.of("authorization", "Bearer foo"));
+        authContext.getUserWithRoles();
+        authContext.getUserWithRoles();
+
+        //When
+        RequestHeadersHolder.setAuthTokens(Map.of("authorization", "Bearer bar"));
+        authContext.getUserWithRoles();
+
+        //Then
+        verify(authentication, times(2)).getRoles(true);
+    }
+
+    @Test
+    void failuresAreNotMemoized() {
+        //Given
+        startRequest();
+        when(authentication.getRoles(true)).thenThrow(new IllegalStateException()).thenReturn(userWithRoles);
+
+        //When
+        assertThrows(IllegalStateException.class, authContext::getUserWithRoles);
+        UserWithRoles result = authContext.getUserWithRoles();
+
+        //Then
+        assertSame(userWithRoles, result);
+        verify(authentication, times(2)).getRoles(true);
+    }
+
+}
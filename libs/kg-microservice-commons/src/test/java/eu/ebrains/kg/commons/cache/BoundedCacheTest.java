@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+
+    @Test
+    void leastRecentlyUsedEntryIsEvicted() {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 2, 0, now::get);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+
+        //When
+        cache.put("c", 3);
+
+        //Then
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getStatistics().getEvictions());
+    }
+
+    @Test
+    void entriesExpire() {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 10, 100, now::get);
+        cache.put("a", 1);
+        now.addAndGet(99);
+        assertNotNull(cache.get("a"));
+
+        //When
+        now.addAndGet(1);
+
+        //Then
+        assertNull(cache.get("a"));
+        assertEquals(1, cache.getStatistics().getExpirations());
+    }
+
+    @Test
+    void removeExpired() {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 10, 100, now::get);
+        cache.put("a", 1);
+        now.addAndGet(50);
+        cache.put("b", 2);
+        now.addAndGet(50);
+
+        //When
+        cache.removeExpired();
+
+        //Then
+        assertEquals(1, cache.size());
+        assertNotNull(cache.get("b"));
+    }
+
+    @Test
+    void statistics() {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 10, 0, now::get);
+
+        //When
+        cache.get("a", () -> 1);
+        cache.get("a", () -> 2);
+        cache.get("b");
+
+        //Then
+        CacheStatistics statistics = cache.getStatistics();
+        assertEquals(1, statistics.getHits());
+        assertEquals(2, statistics.getMisses());
+        assertEquals(1, statistics.getPuts());
+        assertEquals(1, statistics.getSize());
+        assertNull(statistics.getTimeToLiveInMs());
+    }
+
+    @Test
+    void nullValuesAreCached() {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 10, 0, now::get);
+        AtomicInteger loads = new AtomicInteger();
+
+        //When
+        cache.get("a", () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+        Object value = cache.get("a", () -> {
+            loads.incrementAndGet();
+            return null;
+        });
+
+        //Then
+        assertNull(value);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void failedLoadsAreNotCached() {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 10, 0, now::get);
+
+        //When
+        assertThrows(Cache.ValueRetrievalException.class, () -> cache.get("a", () -> {
+            throw new IllegalStateException("Failed");
+        }));
+
+        //Then
+        assertEquals(1, cache.get("a", () -> 1));
+    }
+
+    @Test
+    void concurrentLoadsAreCollapsed() throws Exception {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 10, 0, now::get);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<Integer> loader = () -> {
+                loads.incrementAndGet();
+                loaderStarted.countDown();
+                releaseLoader.await();
+                return 42;
+            };
+            Future<Integer> first = executor.submit(() -> cache.get("a", loader));
+            loaderStarted.await();
+            Future<Integer> second = executor.submit(() -> cache.get("a", loader));
+
+            //When
+            Thread.sleep(50);
+            releaseLoader.countDown();
+
+            //Then
+            assertEquals(42, first.get(5, TimeUnit.SECONDS));
+            assertEquals(42, second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void loadOverlappingWithEvictionIsNotCached() {
+        //Given
+        BoundedCache cache = new BoundedCache("test", 10, 0, now::get);
+
+        //When
+        Integer loaded = cache.get("a", () -> {
+            //The underlying data changes while we're loading
+            cache.evict("a");
+            return 1;
+        });
+
+        //Then
+        assertEquals(1, loaded);
+        assertEquals(2, cache.get("a", () -> 2));
+    }
+
+    @Test
+    void cacheManagerAppliesConfiguration() {
+        //Given
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new MapPropertySource("test", Map.of(
+                "eu.ebrains.kg.cache.maxSize", "5",
+                "eu.ebrains.kg.cache.typesInSpace.maxSize", "100",
+                "eu.ebrains.kg.cache.typesInSpace.timeToLiveInMs", "60000")));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        BoundedCacheManager cacheManager = new BoundedCacheManager(environment, meterRegistry);
+
+        //When
+        BoundedCache typesInSpace = cacheManager.getCache("typesInSpace");
+        BoundedCache reflectedSpaces = cacheManager.getCache("reflectedSpaces");
+        typesInSpace.get("a", () -> 1);
+        typesInSpace.get("a", () -> 1);
+
+        //Then
+        assertSame(typesInSpace, cacheManager.getCache("typesInSpace"));
+        assertEquals(100, typesInSpace.getMaxSize());
+        assertEquals(60000, typesInSpace.getTimeToLiveInMs());
+        assertEquals(5, reflectedSpaces.getMaxSize());
+        assertEquals(0, reflectedSpaces.getTimeToLiveInMs());
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "typesInSpace").tag("result", "hit").functionCounter().count());
+        assertEquals(1, cacheManager.getStatistics().get("typesInSpace").getHits());
+    }
+
+}
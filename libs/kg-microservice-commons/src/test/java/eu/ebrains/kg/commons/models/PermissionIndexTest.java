@@ -0,0 +1,127 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.commons.models;
+
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.commons.permission.Functionality;
+import eu.ebrains.kg.commons.permission.FunctionalityInstance;
+import eu.ebrains.kg.commons.permission.Permission;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Verifies that the {@link PermissionIndex} evaluates the same results as the linear evaluation of the permission list
+ * on a randomly generated corpus of permissions.
+ */
+class PermissionIndexTest {
+
+    private static final List<SpaceName> SPACES = Arrays.asList(new SpaceName("a"), new SpaceName("ab"), new SpaceName("abc"), new SpaceName("b"), new SpaceName("a*"), new SpaceName("ab*"), new SpaceName("*"), new SpaceName("b*"), new SpaceName(SpaceName.REVIEW_SPACE), null);
+    private static final List<UUID> IDS = Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), null);
+    private static final Functionality[] FUNCTIONALITIES = Functionality.values();
+
+    private static <T> T pick(Random random, List<T> values) {
+        return values.get(random.nextInt(values.size()));
+    }
+
+    private static List<FunctionalityInstance> randomPermissions(Random random) {
+        final int numberOfPermissions = random.nextInt(15);
+        List<FunctionalityInstance> permissions = new ArrayList<>();
+        for (int i = 0; i < numberOfPermissions; i++) {
+            permissions.add(new FunctionalityInstance(FUNCTIONALITIES[random.nextInt(FUNCTIONALITIES.length)], pick(random, SPACES), pick(random, IDS)));
+        }
+        return permissions;
+    }
+
+    /**
+     * The reference implementation - the linear evaluation of the permission list
+     */
+    private static boolean hasPermissionByScan(List<FunctionalityInstance> permissions, Functionality functionality, SpaceName space, UUID id) {
+        Set<FunctionalityInstance> expectedRoles = new HashSet<>();
+        if (functionality.getAllowedPermissionLevels().contains(Permission.Level.GLOBAL)) {
+            expectedRoles.add(new FunctionalityInstance(functionality, null, null));
+        }
+        if (space != null && functionality.getAllowedPermissionLevels().contains(Permission.Level.SPACE)) {
+            expectedRoles.add(new FunctionalityInstance(functionality, space, null));
+        }
+        if (id != null && functionality.getAllowedPermissionLevels().contains(Permission.Level.INSTANCE)) {
+            expectedRoles.add(new FunctionalityInstance(functionality, null, id));
+        }
+        if (expectedRoles.stream().anyMatch(permissions::contains)) {
+            return true;
+        }
+        final Set<FunctionalityInstance> applicableWildcardRoles = permissions.stream().filter(i -> i.getId() == null && i.getSpace() != null && i.getSpace().isWildcard() && i.getFunctionality() == functionality).collect(Collectors.toSet());
+        return applicableWildcardRoles.stream().anyMatch(wildcardRole -> expectedRoles.stream().anyMatch(wildcardRole::matchesWildcard));
+    }
+
+    private static boolean hasSpacePermissionByScan(List<FunctionalityInstance> permissions, Functionality functionality, SpaceName space) {
+        return permissions.stream().anyMatch(p -> p.getId() == null && p.getFunctionality() == functionality && p.getSpace() != null && (p.getSpace().equals(space) || p.getSpace().matchesWildcard(space)));
+    }
+
+    @Test
+    void equivalentToLinearEvaluation() {
+        for (long seed = 0; seed < 300; seed++) {
+            //Given
+            final Random random = new Random(seed);
+            final List<FunctionalityInstance> permissions = randomPermissions(random);
+
+            //When
+            final PermissionIndex index = new PermissionIndex(permissions);
+
+            //Then
+            for (Functionality functionality : FUNCTIONALITIES) {
+                final Set<UUID> explicitInstances = permissions.stream().filter(f -> f.getFunctionality() == functionality).map(FunctionalityInstance::getId).filter(Objects::nonNull).collect(Collectors.toSet());
+                assertEquals(explicitInstances, index.getInstancesWithExplicitPermission(functionality), String.format("Seed %d", seed));
+                for (SpaceName space : SPACES) {
+                    assertEquals(space != null && hasSpacePermissionByScan(permissions, functionality, space), index.hasSpacePermission(functionality, space), String.format("Seed %d: %s in %s", seed, functionality, space));
+                    for (UUID id : IDS) {
+                        assertEquals(hasPermissionByScan(permissions, functionality, space, id), index.hasPermission(functionality, space, id), String.format("Seed %d: %s in %s for %s", seed, functionality, space, id));
+                    }
+                }
+            }
+            for (SpaceName space : SPACES) {
+                for (UUID id : IDS) {
+                    final Set<Functionality> applying = permissions.stream().filter(p -> p.appliesTo(space, id)).map(FunctionalityInstance::getFunctionality).collect(Collectors.toSet());
+                    assertEquals(applying, index.getFunctionalitiesApplyingTo(space, id), String.format("Seed %d: %s for %s", seed, space, id));
+                }
+            }
+        }
+    }
+
+    @Test
+    void wildcardMatchesByPrefix() {
+        //Given
+        final PermissionIndex index = new PermissionIndex(Collections.singletonList(new FunctionalityInstance(Functionality.READ, new SpaceName("collab-*"), null)));
+
+        //Then
+        assertTrue(index.hasSpacePermission(Functionality.READ, new SpaceName("collab-foo")));
+        assertTrue(index.hasSpacePermission(Functionality.READ, new SpaceName("collab-")));
+        assertFalse(index.hasSpacePermission(Functionality.READ, new SpaceName("collab")));
+        assertFalse(index.hasSpacePermission(Functionality.WRITE, new SpaceName("collab-foo")));
+    }
+
+}
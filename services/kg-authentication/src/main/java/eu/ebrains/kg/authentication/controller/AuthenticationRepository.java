@@ -39,14 +39,13 @@ import eu.ebrains.kg.commons.jsonld.JsonLdDoc;
 import eu.ebrains.kg.commons.model.TermsOfUse;
 import eu.ebrains.kg.commons.permission.roles.Role;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
-import javax.validation.constraints.NotNull;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @Component
 public class AuthenticationRepository implements SetupLogic {
@@ -54,6 +53,10 @@ public class AuthenticationRepository implements SetupLogic {
     private final ArangoDatabaseProxy arangoDatabase;
     private final TermsOfUseRepository termsOfUseRepository;
     private final JsonAdapter jsonAdapter;
+    private volatile RoleDefinitionMatcher roleDefinitionMatcher;
+    private volatile long roleDefinitionMatcherExpiresAt;
+    private final long roleDefinitionsTimeToLiveInMs;
+    private final InvitationRolesCache invitationRolesCache;
 
     @PostConstruct
     public void setup() {
@@ -64,10 +67,12 @@ public class AuthenticationRepository implements SetupLogic {
         arangoDatabase.createCollectionIfItDoesntExist("instanceScopes");
     }
 
-    public AuthenticationRepository(@Qualifier("termsOfUseDB") ArangoDatabaseProxy arangoDatabase, JsonAdapter jsonAdapter, TermsOfUseRepository termsOfUseRepository) {
+    public AuthenticationRepository(@Qualifier("termsOfUseDB") ArangoDatabaseProxy arangoDatabase, JsonAdapter jsonAdapter, TermsOfUseRepository termsOfUseRepository, @Value("${eu.ebrains.kg.authentication.invitationCache.maxSize:10000}") int invitationCacheMaxSize, @Value("${eu.ebrains.kg.authentication.invitationCache.timeToLiveInMs:60000}") long invitationCacheTimeToLiveInMs, @Value("${eu.ebrains.kg.authentication.roleDefinitions.timeToLiveInMs:60000}") long roleDefinitionsTimeToLiveInMs) {
         this.arangoDatabase = arangoDatabase;
         this.termsOfUseRepository = termsOfUseRepository;
         this.jsonAdapter = jsonAdapter;
+        this.invitationRolesCache = new InvitationRolesCache(invitationCacheMaxSize, invitationCacheTimeToLiveInMs);
+        this.roleDefinitionsTimeToLiveInMs = roleDefinitionsTimeToLiveInMs;
     }
 
     private ArangoCollection getPermissionsCollection() {
@@ -89,40 +94,6 @@ public class AuthenticationRepository implements SetupLogic {
         return database.collection("instanceScopes");
     }
 
-    private Collection<?> ensureCollection(Object o){
-        if(o == null){
-            return Collections.emptySet();
-        }
-        else if(o instanceof Collection){
-            return (Collection<?>) o;
-        }
-        else {
-            return Collections.singleton(o);
-        }
-    }
-
-    @NotNull
-    private Set<String> translateUserInfoToRole(String roleLabel, String key, Map<?,?> role, Map<?,?> userInfo) {
-        if (!userInfo.containsKey(key)) {
-            return Collections.emptySet();
-        }
-        Object r = role.get(key);
-        Object u = userInfo.get(key);
-        if (r instanceof Map && u instanceof Map) {
-            return ((Map<?, ?>) r).keySet().stream()
-                    .map(k -> translateUserInfoToRole(roleLabel, (String) k, (Map) r, (Map) u)).
-                    flatMap(Collection::stream).collect(Collectors.toSet());
-        }
-        if(r!=null && u!=null){
-            return ensureCollection(u).stream().filter(userClaim -> userClaim instanceof String).map(userClaim ->
-                    ensureCollection(r).stream()
-                            .filter(roleClaim -> ((String) userClaim).matches((String) roleClaim))
-                            .map(roleClaim -> ((String)userClaim).replaceAll((String) roleClaim, roleLabel))
-                            .collect(Collectors.toSet())).flatMap(Collection::stream).collect(Collectors.toSet());
-        }
-        return Collections.emptySet();
-    }
-
     public List<Invitation> getAllInvitationsByInstanceId(String instanceId){
         AQL aql = new AQL();
         Map<String, Object> bindVars = new HashMap<>();
@@ -161,15 +132,28 @@ public class AuthenticationRepository implements SetupLogic {
     }
 
     public void createInvitation(Invitation invitation){
-        getInvitationsCollection().insertDocument(jsonAdapter.toJson(invitation), new DocumentCreateOptions().overwrite(true).silent(true));
+        try {
+            getInvitationsCollection().insertDocument(jsonAdapter.toJson(invitation), new DocumentCreateOptions().overwrite(true).silent(true));
+        } finally {
+            invitationRolesCache.invalidate(Collections.singleton(invitation.getUserId()));
+        }
     }
 
     public void createOrUpdateInstanceScope(InstanceScope instanceScope){
-        getInstanceScopesCollection().insertDocument(jsonAdapter.toJson(instanceScope), new DocumentCreateOptions().overwrite(true).silent(true));
+        try {
+            getInstanceScopesCollection().insertDocument(jsonAdapter.toJson(instanceScope), new DocumentCreateOptions().overwrite(true).silent(true));
+        } finally {
+            //The scope is part of the invitation roles of all users invited for this instance
+            invitationRolesCache.invalidate(getAllInvitationsByInstanceId(instanceScope.getKey()).stream().map(Invitation::getUserId).toList());
+        }
     }
 
     public void deleteInvitation(Invitation invitation){
-        getInvitationsCollection().deleteDocument(invitation.getKey());
+        try {
+            getInvitationsCollection().deleteDocument(invitation.getKey());
+        } finally {
+            invitationRolesCache.invalidate(Collections.singleton(invitation.getUserId()));
+        }
     }
 
 
@@ -180,26 +164,38 @@ public class AuthenticationRepository implements SetupLogic {
     }
 
 
+    /**
+     * Resolves the roles for the given user info. The role definitions are kept in memory (precompiled) and are only
+     * reloaded after they have been changed.
+     */
     public List<String> getRolesFromUserInfo(Map<String, Object> userInfo) {
         if (userInfo == null || userInfo.isEmpty()) {
             return Collections.emptyList();
         }
-        Object user = userInfo.get("sub");
-        final List<JsonLdDoc> results = getAllRoleDefinitions();
-        return results.stream().map(r -> {
-            String role = r.get(ArangoVocabulary.KEY) != null ? (String) r.get(ArangoVocabulary.KEY) : null;
-            if (role != null) {
-                if (r.containsKey("authenticated") && (boolean) r.get("authenticated") && user != null) {
-                    //If the role is specified to be applied whenever somebody is authenticated, we can just return it.
-                    //Please note, that it is not possible to apply regex pattern for these kind of assignments.
-                    return Collections.singletonList(role);
+        return getRoleDefinitionMatcher().getRoles(userInfo);
+    }
+
+    /**
+     * The role definitions are invalidated immediately by changes on this instance. Changes applied through another
+     * instance are only picked up after the time to live has passed.
+     */
+    private RoleDefinitionMatcher getRoleDefinitionMatcher() {
+        RoleDefinitionMatcher matcher = roleDefinitionMatcher;
+        if (matcher == null || System.currentTimeMillis() >= roleDefinitionMatcherExpiresAt) {
+            synchronized (this) {
+                matcher = roleDefinitionMatcher;
+                if (matcher == null || System.currentTimeMillis() >= roleDefinitionMatcherExpiresAt) {
+                    matcher = new RoleDefinitionMatcher(getAllRoleDefinitions());
+                    roleDefinitionMatcherExpiresAt = System.currentTimeMillis() + roleDefinitionsTimeToLiveInMs;
+                    roleDefinitionMatcher = matcher;
                 }
-                return r.keySet().stream().filter(k -> !k.startsWith("_"))
-                        .map(k -> translateUserInfoToRole(role, k, r, userInfo))
-                        .flatMap(Collection::stream).collect(Collectors.toSet());
             }
-            return null;
-        }).filter(Objects::nonNull).flatMap(Collection::stream).distinct().toList();
+        }
+        return matcher;
+    }
+
+    private synchronized void invalidateRoleDefinitions() {
+        roleDefinitionMatcher = null;
     }
 
 
@@ -209,18 +205,23 @@ public class AuthenticationRepository implements SetupLogic {
 
     @SuppressWarnings("java:S1168") // Although we might be able to return an empty JsonLdDoc, we think it's more readable to return null
     public JsonLdDoc addClaimToRole(Role role, Map<String, Object> claimPattern) {
+        RoleDefinitionMatcher.validate(claimPattern);
         JsonLdDoc document = getPermissionsCollection().getDocument(role.getName(), JsonLdDoc.class);
         if (document == null) {
             document = new JsonLdDoc();
             document.put(ArangoVocabulary.KEY, role.getName());
         }
         boolean empty = synchronizeMaps(role.getName(), claimPattern, document, false);
-        if (empty) {
-            getPermissionsCollection().deleteDocument(role.getName());
-            return null;
-        } else {
-            getPermissionsCollection().insertDocument(document, new DocumentCreateOptions().overwrite(true));
-            return document;
+        try {
+            if (empty) {
+                getPermissionsCollection().deleteDocument(role.getName());
+                return null;
+            } else {
+                getPermissionsCollection().insertDocument(document, new DocumentCreateOptions().overwrite(true));
+                return document;
+            }
+        } finally {
+            invalidateRoleDefinitions();
         }
     }
 
@@ -232,12 +233,16 @@ public class AuthenticationRepository implements SetupLogic {
             return null;
         }
         boolean empty = synchronizeMaps(role.getName(), claimPattern, document, true);
-        if (empty) {
-            getPermissionsCollection().deleteDocument(role.getName());
-            return null;
-        } else {
-            getPermissionsCollection().insertDocument(document, new DocumentCreateOptions().overwrite(true));
-            return document;
+        try {
+            if (empty) {
+                getPermissionsCollection().deleteDocument(role.getName());
+                return null;
+            } else {
+                getPermissionsCollection().insertDocument(document, new DocumentCreateOptions().overwrite(true));
+                return document;
+            }
+        } finally {
+            invalidateRoleDefinitions();
         }
     }
 
@@ -290,8 +295,10 @@ public class AuthenticationRepository implements SetupLogic {
     }
 
     public List<UUID> getInvitationRoles(String userId){
-        List<String> ids = this.getAllInvitationsForUserId(userId);
-        return ids.stream().distinct().map(UUID::fromString).toList();
+        return invitationRolesCache.get(userId, u -> {
+            List<String> ids = this.getAllInvitationsForUserId(u);
+            return ids.stream().distinct().map(UUID::fromString).toList();
+        });
     }
 
     @Cacheable("termsOfUseByUser")
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.authentication.controller;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * A bounded cache of the instance ids a user has access to by invitation. The entries are invalidated on every change
+ * of the invitations (or the scope of an invited instance) which is applied through this service. Since the database
+ * is shared with the other replicas, the entries additionally expire after a (short) time to live.
+ */
+class InvitationRolesCache {
+
+    private final long timeToLiveInMs;
+
+    private final Map<String, CachedInvitationRoles> cache;
+
+    /**
+     * Is incremented by every invalidation - a load which overlaps with an invalidation must not populate the cache
+     * since it could have read the state from before the change.
+     */
+    private long generation;
+
+    InvitationRolesCache(int maxSize, long timeToLiveInMs) {
+        this.timeToLiveInMs = timeToLiveInMs;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedInvitationRoles> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    private static class CachedInvitationRoles {
+        private final List<UUID> invitationRoles;
+        private final long expiresAt;
+
+        private CachedInvitationRoles(List<UUID> invitationRoles, long expiresAt) {
+            this.invitationRoles = invitationRoles;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    List<UUID> get(String userId, Function<String, List<UUID>> loader) {
+        final long loadedGeneration;
+        synchronized (this) {
+            final CachedInvitationRoles cached = cache.get(userId);
+            if (cached != null && System.currentTimeMillis() < cached.expiresAt) {
+                return cached.invitationRoles;
+            }
+            loadedGeneration = generation;
+        }
+        final List<UUID> invitationRoles = loader.apply(userId);
+        synchronized (this) {
+            if (loadedGeneration == generation) {
+                cache.put(userId, new CachedInvitationRoles(invitationRoles, System.currentTimeMillis() + timeToLiveInMs));
+            }
+        }
+        return invitationRoles;
+    }
+
+    synchronized void invalidate(Collection<String> userIds) {
+        generation++;
+        userIds.forEach(cache::remove);
+    }
+
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.authentication.controller;
+
+import eu.ebrains.kg.arango.commons.aqlbuilder.ArangoVocabulary;
+import eu.ebrains.kg.commons.exception.InvalidRequestException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The role definitions (the mappings of user info claims to roles) in a precompiled form: the claim patterns are
+ * compiled once, so resolving the roles of a user info is a pure in-memory evaluation. Invalid patterns are skipped (and
+ * logged) so they don't prevent the resolution of the other roles.
+ */
+public class RoleDefinitionMatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(RoleDefinitionMatcher.class);
+
+    private final List<RoleDefinition> roleDefinitions;
+
+    public RoleDefinitionMatcher(List<? extends Map<String, Object>> definitions) {
+        this.roleDefinitions = definitions.stream().map(RoleDefinition::compile).filter(Objects::nonNull).toList();
+    }
+
+    /**
+     * Ensures that all patterns of the given claim definition are valid regular expressions
+     *
+     * @throws InvalidRequestException if one of the patterns can't be compiled
+     */
+    public static void validate(Map<String, Object> claimPattern) {
+        claimPattern.forEach((k, v) -> {
+            if (!k.startsWith("_")) {
+                validatePatterns(v);
+            }
+        });
+    }
+
+    private static void validatePatterns(Object value) {
+        if (value instanceof Map<?, ?> map) {
+            map.values().forEach(RoleDefinitionMatcher::validatePatterns);
+        } else {
+            for (Object pattern : ClaimMatcher.toCollection(value)) {
+                if (pattern instanceof String p) {
+                    try {
+                        Pattern.compile(p);
+                    } catch (PatternSyntaxException e) {
+                        throw new InvalidRequestException(String.format("The claim pattern \"%s\" is not a valid regular expression: %s", p, e.getDescription()));
+                    }
+                }
+            }
+        }
+    }
+
+    private static class RoleDefinition {
+        private final String role;
+        private final boolean authenticated;
+        private final Map<String, ClaimMatcher> claims;
+
+        private RoleDefinition(String role, boolean authenticated, Map<String, ClaimMatcher> claims) {
+            this.role = role;
+            this.authenticated = authenticated;
+            this.claims = claims;
+        }
+
+        private static RoleDefinition compile(Map<String, Object> definition) {
+            final Object role = definition.get(ArangoVocabulary.KEY);
+            if (role instanceof String roleLabel) {
+                Map<String, ClaimMatcher> claims = new LinkedHashMap<>();
+                definition.forEach((k, v) -> {
+                    if (!k.startsWith("_")) {
+                        claims.put(k, ClaimMatcher.compile(roleLabel, v));
+                    }
+                });
+                return new RoleDefinition(roleLabel, Boolean.TRUE.equals(definition.get("authenticated")), claims);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * A claim is either matched by a nested structure of claims or by a list of regular expressions
+     */
+    private static class ClaimMatcher {
+        private final Map<String, ClaimMatcher> nested;
+        private final List<Pattern> patterns;
+
+        private ClaimMatcher(Map<String, ClaimMatcher> nested, List<Pattern> patterns) {
+            this.nested = nested;
+            this.patterns = patterns;
+        }
+
+        private static ClaimMatcher compile(String roleLabel, Object value) {
+            if (value instanceof Map<?, ?> map) {
+                Map<String, ClaimMatcher> nested = new LinkedHashMap<>();
+                map.forEach((k, v) -> nested.put((String) k, compile(roleLabel, v)));
+                return new ClaimMatcher(nested, null);
+            }
+            List<Pattern> patterns = new ArrayList<>();
+            for (Object pattern : toCollection(value)) {
+                if (pattern instanceof String p) {
+                    try {
+                        patterns.add(Pattern.compile(p));
+                    } catch (PatternSyntaxException e) {
+                        logger.error(String.format("Skipping the invalid claim pattern \"%s\" of role %s: %s", p, roleLabel, e.getDescription()));
+                    }
+                }
+            }
+            return new ClaimMatcher(null, patterns);
+        }
+
+        private static Collection<?> toCollection(Object value) {
+            return value instanceof Collection<?> c ? c : value != null ? Collections.singleton(value) : Collections.emptySet();
+        }
+
+        private void translate(String roleLabel, Object userValue, Set<String> result) {
+            if (userValue == null) {
+                return;
+            }
+            if (nested != null) {
+                if (userValue instanceof Map<?, ?> userMap) {
+                    nested.forEach((k, matcher) -> {
+                        if (userMap.containsKey(k)) {
+                            matcher.translate(roleLabel, userMap.get(k), result);
+                        }
+                    });
+                }
+                return;
+            }
+            final Collection<?> userClaims = userValue instanceof Collection<?> c ? c : Collections.singleton(userValue);
+            for (Object userClaim : userClaims) {
+                if (userClaim instanceof String claim) {
+                    for (Pattern pattern : patterns) {
+                        final Matcher matcher = pattern.matcher(claim);
+                        if (matcher.matches()) {
+                            result.add(matcher.replaceAll(roleLabel));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public List<String> getRoles(Map<String, Object> userInfo) {
+        if (userInfo == null || userInfo.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final boolean authenticatedUser = userInfo.get("sub") != null;
+        Set<String> roles = new LinkedHashSet<>();
+        for (RoleDefinition roleDefinition : roleDefinitions) {
+            if (roleDefinition.authenticated && authenticatedUser) {
+                //If the role is specified to be applied whenever somebody is authenticated, we can just return it.
+                //Please note, that it is not possible to apply regex pattern for these kind of assignments.
+                roles.add(roleDefinition.role);
+            } else {
+                roleDefinition.claims.forEach((k, matcher) -> {
+                    if (userInfo.containsKey(k)) {
+                        matcher.translate(roleDefinition.role, userInfo.get(k), roles);
+                    }
+                });
+            }
+        }
+        return new ArrayList<>(roles);
+    }
+}
@@ -45,6 +45,9 @@ import java.security.spec.InvalidKeySpecException;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Base64;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 
 @Component
@@ -62,6 +65,8 @@ public class KeycloakClient {
 
     private IssuerInfo issuerInfo;
 
+    private final Map<String, CompletableFuture<Map<String, Object>>> userInfoLookups = new ConcurrentHashMap<>();
+
     public KeycloakClient(JsonAdapter jsonAdapter, KeycloakConfig config, WebClient.Builder internalWebClient) {
         this.config = config;
         this.webclient = internalWebClient;
@@ -142,7 +147,41 @@ public class KeycloakClient {
         }
     }
 
+    /**
+     * Fetches the user info for the given token. Concurrent lookups for the same token (e.g. because a client fires
+     * several requests in parallel right after the login) are collapsed into a single call to keycloak - the result
+     * (or the failure) is shared with all waiting callers.
+     */
     public Map<String, Object> getUserInfo(String token){
+        final CompletableFuture<Map<String, Object>> lookup = new CompletableFuture<>();
+        final CompletableFuture<Map<String, Object>> inFlight = userInfoLookups.putIfAbsent(token, lookup);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw e;
+            }
+        }
+        try {
+            final Map<String, Object> userInfo = fetchUserInfo(token);
+            lookup.complete(userInfo);
+            return userInfo;
+        } catch (RuntimeException | Error e) {
+            //Whatever happens, the waiting callers need to be released - they are blocked without a timeout
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            userInfoLookups.remove(token, lookup);
+        }
+    }
+
+    private Map<String, Object> fetchUserInfo(String token){
         try {
             return this.webclient.build().get().uri(this.openIdConfig.getUserInfoEndpoint()).accept(MediaType.APPLICATION_JSON).header("Authorization", token).retrieve().bodyToMono(Map.class).block();
         }
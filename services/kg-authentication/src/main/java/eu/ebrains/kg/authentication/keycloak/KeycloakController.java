@@ -26,6 +26,7 @@ package eu.ebrains.kg.authentication.keycloak;
 import com.auth0.jwt.JWTVerifier;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
 import eu.ebrains.kg.authentication.model.UserOrClientProfile;
 import eu.ebrains.kg.commons.AuthTokenContext;
 import eu.ebrains.kg.commons.AuthTokens;
@@ -90,9 +91,10 @@ public class KeycloakController {
     UserOrClientProfile getInfo(String token, boolean fetchRoles) {
         String bareToken = token.substring("Bearer ".length());
         try {
-            Map<String, Claim> claims = jwtVerifier.verify(bareToken).getClaims();
+            final DecodedJWT jwt = jwtVerifier.verify(bareToken);
+            Map<String, Claim> claims = jwt.getClaims();
             if (fetchRoles) {
-                return new UserOrClientProfile(claims, userInfoMapping.getUserOrClientProfile(token));
+                return new UserOrClientProfile(claims, userInfoMapping.getUserOrClientProfile(token, jwt.getExpiresAt()));
             }
             return new UserOrClientProfile(claims, null);
         } catch (JWTVerificationException ex) {
@@ -24,19 +24,32 @@
 package eu.ebrains.kg.authentication.keycloak;
 
 import eu.ebrains.kg.authentication.controller.AuthenticationRepository;
+import eu.ebrains.kg.commons.exception.UnauthorizedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-import java.util.Map;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Maps the tokens to the roles of the according user / client. The mappings are cached for at most the lifetime of
+ * the token (or the configured maximal time to live, if it is shorter). Entries which are still in use shortly before
+ * they reach the maximal time to live are refreshed in the background, so active users don't run into a cold cache.
+ */
 @Component
 public class UserInfoMapping {
 
+    private static final String METRICS_PREFIX = "kg.authentication.roleCache";
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -44,21 +57,123 @@ public class UserInfoMapping {
 
     private final AuthenticationRepository authenticationRepository;
 
-    public UserInfoMapping(KeycloakClient keycloakClient, AuthenticationRepository authenticationRepository) {
+    private final long maxTimeToLiveInMs;
+
+    private final long refreshAheadInMs;
+
+    private final Map<String, CachedRoles> cache;
+
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "role-cache-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public UserInfoMapping(KeycloakClient keycloakClient, AuthenticationRepository authenticationRepository, MeterRegistry meterRegistry, @Value("${eu.ebrains.kg.authentication.roleCache.maxSize:10000}") int maxSize, @Value("${eu.ebrains.kg.authentication.roleCache.maxTimeToLiveInMs:3600000}") long maxTimeToLiveInMs, @Value("${eu.ebrains.kg.authentication.roleCache.refreshAheadInMs:300000}") long refreshAheadInMs) {
         this.keycloakClient = keycloakClient;
         this.authenticationRepository = authenticationRepository;
+        this.maxTimeToLiveInMs = maxTimeToLiveInMs;
+        this.refreshAheadInMs = refreshAheadInMs;
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedRoles> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        });
+        Gauge.builder(METRICS_PREFIX + ".size", cache, Map::size).register(meterRegistry);
+        FunctionCounter.builder(METRICS_PREFIX + ".requests", hits, AtomicLong::get).tag("result", "hit").register(meterRegistry);
+        FunctionCounter.builder(METRICS_PREFIX + ".requests", misses, AtomicLong::get).tag("result", "miss").register(meterRegistry);
+        FunctionCounter.builder(METRICS_PREFIX + ".refreshes", refreshes, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder(METRICS_PREFIX + ".evictions", evictions, AtomicLong::get).register(meterRegistry);
     }
 
-    @Cacheable("userRoleMappings")
-    public List<String> getUserOrClientProfile(String token){
+    private static class CachedRoles {
+        private final List<String> roles;
+        private final long tokenExpiresAt;
+        private final long expiresAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private CachedRoles(List<String> roles, long tokenExpiresAt, long expiresAt) {
+            this.roles = roles;
+            this.tokenExpiresAt = tokenExpiresAt;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        /**
+         * A refresh only makes sense if the token outlives the cache entry - otherwise, the client has to come with a
+         * new token anyhow.
+         */
+        private boolean isDueForRefresh(long now, long refreshAheadInMs) {
+            return tokenExpiresAt > expiresAt && expiresAt - now <= refreshAheadInMs;
+        }
+    }
+
+    /**
+     * @param expiresAt the expiry date of the token (as stated by its "exp" claim) - null if it doesn't expire.
+     */
+    public List<String> getUserOrClientProfile(String token, Date expiresAt) {
+        final long now = System.currentTimeMillis();
+        final CachedRoles cached = cache.get(token);
+        if (cached != null && !cached.isExpired(now)) {
+            hits.incrementAndGet();
+            if (cached.isDueForRefresh(now, refreshAheadInMs) && cached.refreshing.compareAndSet(false, true)) {
+                refresher.execute(() -> refresh(token, cached));
+            }
+            return cached.roles;
+        }
+        misses.incrementAndGet();
+        final CachedRoles loaded = load(token, expiresAt != null ? expiresAt.getTime() : Long.MAX_VALUE, now);
+        cache.put(token, loaded);
+        return loaded.roles;
+    }
+
+    private CachedRoles load(String token, long tokenExpiresAt, long now) {
         Map<String, Object> userInfo = keycloakClient.getUserInfo(token);
-        return authenticationRepository.getRolesFromUserInfo(userInfo);
+        final List<String> roles = authenticationRepository.getRolesFromUserInfo(userInfo);
+        return new CachedRoles(roles, tokenExpiresAt, Math.min(tokenExpiresAt, now + maxTimeToLiveInMs));
+    }
+
+    private void refresh(String token, CachedRoles cached) {
+        try {
+            cache.replace(token, cached, load(token, cached.tokenExpiresAt, System.currentTimeMillis()));
+            refreshes.incrementAndGet();
+        } catch (UnauthorizedException e) {
+            //The token is not valid anymore (e.g. because the session has been terminated)
+            cache.remove(token, cached);
+        } catch (Exception e) {
+            //We keep the current entry - the next request after its expiry will try again.
+            logger.warn("Was not able to refresh the cached user role mapping", e);
+        }
+    }
+
+    /**
+     * Removes the expired entries - they would be replaced on the next access anyhow but we don't want them to occupy
+     * memory until then.
+     */
+    @Scheduled(fixedRate = 1000 * 60)
+    public void evictExpiredUserOrClientProfiles() {
+        final long now = System.currentTimeMillis();
+        synchronized (cache) {
+            cache.values().removeIf(c -> c.isExpired(now));
+        }
     }
 
-    @Scheduled(fixedRate = 1000*60*60) //TODO this is a quickfix to make sure the cache is cleared regularly. Please replace with a proper cache implementation supporting a TTL on a per-entry level
-    @CacheEvict(value = "userRoleMappings", allEntries = true)
-    public void evictUserOrClientProfiles() {
-        logger.info("Wiping cached user role mappings");
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
     }
 
 }
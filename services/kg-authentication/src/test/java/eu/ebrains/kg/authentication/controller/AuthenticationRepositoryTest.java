@@ -0,0 +1,255 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.authentication.controller;
+
+import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoCursor;
+import com.arangodb.ArangoDatabase;
+import eu.ebrains.kg.arango.commons.model.ArangoDatabaseProxy;
+import eu.ebrains.kg.authentication.model.InstanceScope;
+import eu.ebrains.kg.authentication.model.Invitation;
+import eu.ebrains.kg.commons.exception.InvalidRequestException;
+import eu.ebrains.kg.commons.jsonld.JsonLdDoc;
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.commons.permission.roles.RoleMapping;
+import eu.ebrains.kg.test.JsonAdapter4Test;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AuthenticationRepositoryTest {
+
+    private final ArangoDatabaseProxy arangoDatabaseProxy = mock(ArangoDatabaseProxy.class);
+    private final ArangoDatabase database = mock(ArangoDatabase.class);
+    @SuppressWarnings("unchecked")
+    private final ArangoCursor<JsonLdDoc> cursor = mock(ArangoCursor.class);
+    @SuppressWarnings("unchecked")
+    private final ArangoCursor<String> invitationCursor = mock(ArangoCursor.class);
+    private final AuthenticationRepository repository = new AuthenticationRepository(arangoDatabaseProxy, new JsonAdapter4Test(), null, 100, 60000, 60000);
+
+    private static final String USER_ID = "f1c1b1e6-0a6c-4d4f-9d47-3f2b1c7e5a11";
+    private static final UUID INSTANCE_A = UUID.fromString("0b4fa1d5-1a2c-4c2e-8f0f-7c1f1e3a2b01");
+    private static final UUID INSTANCE_B = UUID.fromString("0b4fa1d5-1a2c-4c2e-8f0f-7c1f1e3a2b02");
+
+    private static JsonLdDoc roleDefinition(String role, Map<String, Object> claims) {
+        JsonLdDoc doc = new JsonLdDoc();
+        doc.put("_key", role);
+        doc.put("_id", "permissions/" + role);
+        doc.putAll(claims);
+        return doc;
+    }
+
+    @BeforeEach
+    void setup() {
+        when(arangoDatabaseProxy.get()).thenReturn(database);
+        when(database.query(anyString(), eq(JsonLdDoc.class))).thenReturn(cursor);
+        when(database.collection("permissions")).thenReturn(mock(ArangoCollection.class));
+        when(database.collection("invitations")).thenReturn(mock(ArangoCollection.class));
+        when(database.collection("instanceScopes")).thenReturn(mock(ArangoCollection.class));
+        when(database.query(anyString(), anyMap(), eq(String.class))).thenReturn(invitationCursor);
+        when(invitationCursor.asListRemaining()).thenReturn(List.of(INSTANCE_A.toString(), INSTANCE_A.toString()));
+        when(cursor.asListRemaining()).thenReturn(Arrays.asList(
+                roleDefinition(":admin", Map.of("roles", Map.of("group", List.of("kg-admin")))),
+                roleDefinition("$1:reviewer", Map.of("roles", Map.of("group", List.of("^collab-(.*)-reviewer$")))),
+                roleDefinition(":consumer", Map.of("authenticated", true)),
+                roleDefinition("special:owner", Map.of("email", "homer@springfield\\.com"))
+        ));
+    }
+
+    @Test
+    void getRolesFromUserInfo() {
+        //Given
+        Map<String, Object> userInfo = Map.of("sub", "homer", "email", "homer@springfield.com", "roles", Map.of("group", List.of("collab-foo-reviewer", "collab-bar-reviewer", "collab-bar-editor")));
+
+        //When
+        List<String> roles = repository.getRolesFromUserInfo(userInfo);
+
+        //Then
+        assertEquals(Set.of("foo:reviewer", "bar:reviewer", ":consumer", "special:owner"), new HashSet<>(roles));
+        assertEquals(roles.size(), new HashSet<>(roles).size());
+    }
+
+    @Test
+    void authenticatedRoleRequiresSubject() {
+        //When
+        List<String> roles = repository.getRolesFromUserInfo(Map.of("roles", Map.of("group", "kg-admin")));
+
+        //Then
+        assertEquals(List.of(":admin"), roles);
+    }
+
+    @Test
+    void invalidClaimPatternIsSkipped() {
+        //Given
+        when(cursor.asListRemaining()).thenReturn(Arrays.asList(
+                roleDefinition(":admin", Map.of("roles", Map.of("group", List.of("kg-admin", "kg-(admin")))),
+                roleDefinition("$1:reviewer", Map.of("roles", Map.of("group", List.of("^collab-(.*)-reviewer$")))),
+                roleDefinition("special:owner", Map.of("email", "homer@springfield\\.com["))
+        ));
+        Map<String, Object> userInfo = Map.of("sub", "homer", "email", "homer@springfield.com", "roles", Map.of("group", List.of("kg-admin", "collab-foo-reviewer")));
+
+        //When
+        List<String> roles = repository.getRolesFromUserInfo(userInfo);
+
+        //Then
+        assertEquals(Set.of(":admin", "foo:reviewer"), new HashSet<>(roles));
+    }
+
+    @Test
+    void addClaimToRoleRejectsInvalidPattern() {
+        //Given
+        Map<String, Object> claimPattern = Map.of("roles", Map.of("group", List.of("kg-admin", "kg-(admin")));
+
+        //When
+        assertThrows(InvalidRequestException.class, () -> repository.addClaimToRole(RoleMapping.ADMIN.toRole(SpaceName.fromString("foo")), claimPattern));
+
+        //Then
+        verify(database, never()).collection("permissions");
+    }
+
+    @Test
+    void roleDefinitionsAreLoadedOnceUntilChanged() {
+        //Given
+        Map<String, Object> userInfo = Map.of("sub", "homer");
+        repository.getRolesFromUserInfo(userInfo);
+        repository.getRolesFromUserInfo(userInfo);
+        verify(database, times(1)).query(anyString(), eq(JsonLdDoc.class));
+
+        //When
+        repository.addClaimToRole(RoleMapping.ADMIN.toRole(SpaceName.fromString("foo")), Map.of("email", List.of("marge@springfield\\.com")));
+        repository.getRolesFromUserInfo(userInfo);
+
+        //Then
+        verify(database, times(2)).query(anyString(), eq(JsonLdDoc.class));
+    }
+
+    @Test
+    void roleDefinitionsAreReloadedAfterTimeToLive() throws InterruptedException {
+        //Given
+        AuthenticationRepository shortLivedRepository = new AuthenticationRepository(arangoDatabaseProxy, new JsonAdapter4Test(), null, 100, 60000, 10);
+        Map<String, Object> userInfo = Map.of("sub", "homer");
+        shortLivedRepository.getRolesFromUserInfo(userInfo);
+
+        //When
+        Thread.sleep(20);
+        shortLivedRepository.getRolesFromUserInfo(userInfo);
+
+        //Then
+        verify(database, times(2)).query(anyString(), eq(JsonLdDoc.class));
+    }
+
+    @Test
+    void invitationRolesAreCached() {
+        //When
+        List<UUID> first = repository.getInvitationRoles(USER_ID);
+        List<UUID> second = repository.getInvitationRoles(USER_ID);
+
+        //Then
+        assertEquals(List.of(INSTANCE_A), first);
+        assertEquals(first, second);
+        verify(database, times(1)).query(anyString(), anyMap(), eq(String.class));
+    }
+
+    @Test
+    void invitationRolesAfterCreateInvitation() {
+        //Given
+        repository.getInvitationRoles(USER_ID);
+        when(invitationCursor.asListRemaining()).thenReturn(List.of(INSTANCE_A.toString(), INSTANCE_B.toString()));
+
+        //When
+        repository.createInvitation(new Invitation(INSTANCE_B.toString(), USER_ID));
+        List<UUID> invitationRoles = repository.getInvitationRoles(USER_ID);
+
+        //Then
+        assertEquals(List.of(INSTANCE_A, INSTANCE_B), invitationRoles);
+    }
+
+    @Test
+    void invitationRolesAfterDeleteInvitation() {
+        //Given
+        repository.getInvitationRoles(USER_ID);
+        when(invitationCursor.asListRemaining()).thenReturn(Collections.emptyList());
+
+        //When
+        repository.deleteInvitation(new Invitation(INSTANCE_A.toString(), USER_ID));
+        List<UUID> invitationRoles = repository.getInvitationRoles(USER_ID);
+
+        //Then
+        assertTrue(invitationRoles.isEmpty());
+    }
+
+    @Test
+    void invitationRolesOfOtherUsersAreKeptOnInvitationChanges() {
+        //Given
+        repository.getInvitationRoles(USER_ID);
+
+        //When
+        repository.deleteInvitation(new Invitation(INSTANCE_A.toString(), UUID.randomUUID().toString()));
+        repository.getInvitationRoles(USER_ID);
+
+        //Then
+        verify(database, times(1)).query(anyString(), anyMap(), eq(String.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void invitationRolesAfterInstanceScopeUpdate() {
+        //Given
+        ArangoCursor<Invitation> invitedUsers = mock(ArangoCursor.class);
+        when(database.query(anyString(), anyMap(), eq(Invitation.class))).thenReturn(invitedUsers);
+        when(invitedUsers.asListRemaining()).thenReturn(List.of(new Invitation(INSTANCE_A.toString(), USER_ID)));
+        repository.getInvitationRoles(USER_ID);
+        when(invitationCursor.asListRemaining()).thenReturn(List.of(INSTANCE_A.toString(), INSTANCE_B.toString()));
+
+        //When
+        repository.createOrUpdateInstanceScope(new InstanceScope(INSTANCE_A.toString(), List.of(INSTANCE_B)));
+        List<UUID> invitationRoles = repository.getInvitationRoles(USER_ID);
+
+        //Then
+        assertEquals(List.of(INSTANCE_A, INSTANCE_B), invitationRoles);
+    }
+
+    @Test
+    void invitationRolesLoadedDuringInvalidationAreNotCached() {
+        //Given
+        InvitationRolesCache cache = new InvitationRolesCache(100, 60000);
+
+        //When
+        cache.get(USER_ID, u -> {
+            //An invitation is created while we're loading
+            cache.invalidate(Collections.singleton(u));
+            return List.of(INSTANCE_A);
+        });
+        List<UUID> invitationRoles = cache.get(USER_ID, u -> List.of(INSTANCE_A, INSTANCE_B));
+
+        //Then
+        assertEquals(List.of(INSTANCE_A, INSTANCE_B), invitationRoles);
+    }
+
+}
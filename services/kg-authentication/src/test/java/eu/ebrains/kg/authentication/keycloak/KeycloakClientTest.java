@@ -0,0 +1,181 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.authentication.keycloak;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import eu.ebrains.kg.commons.exception.UnauthorizedException;
+import eu.ebrains.kg.test.JsonAdapter4Test;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the {@link KeycloakClient} against a local stub of the identity provider.
+ */
+class KeycloakClientTest {
+
+    private static final int PARALLEL_REQUESTS = 10;
+
+    private HttpServer identityProvider;
+    private final AtomicInteger userInfoCalls = new AtomicInteger();
+    private volatile int userInfoStatus = 200;
+    private KeycloakClient keycloakClient;
+    private ExecutorService executorService;
+    private ExecutorService identityProviderExecutor;
+    private volatile boolean failWithError;
+
+    @BeforeEach
+    void setup() throws IOException {
+        identityProvider = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        final String baseUrl = String.format("http://localhost:%d", identityProvider.getAddress().getPort());
+        identityProvider.createContext("/realms/kg/.well-known/openid-configuration", e -> respond(e, 200, String.format("{\"issuer\": \"%s/realms/kg\", \"token_endpoint\": \"%s/realms/kg/token\", \"userinfo_endpoint\": \"%s/realms/kg/userinfo\"}", baseUrl, baseUrl, baseUrl)));
+        identityProvider.createContext("/realms/kg/userinfo", e -> {
+            userInfoCalls.incrementAndGet();
+            try {
+                //We simulate a slow identity provider so the parallel requests are overlapping
+                Thread.sleep(500);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            respond(e, userInfoStatus, userInfoStatus == 200 ? "{\"sub\": \"homer\"}" : "");
+        });
+        identityProvider.createContext("/realms/kg", e -> respond(e, 200, "{\"realm\": \"kg\", \"public_key\": \"foo\"}"));
+        identityProviderExecutor = Executors.newCachedThreadPool();
+        identityProvider.setExecutor(identityProviderExecutor);
+        identityProvider.start();
+        KeycloakConfig config = new KeycloakConfig();
+        config.configUrl = baseUrl + "/realms/kg/.well-known/openid-configuration";
+        keycloakClient = new KeycloakClient(new JsonAdapter4Test(), config, WebClient.builder().filter((request, next) -> {
+            if (failWithError && request.url().getPath().endsWith("/userinfo")) {
+                userInfoCalls.incrementAndGet();
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new NoClassDefFoundError("foo");
+            }
+            return next.exchange(request);
+        }));
+        keycloakClient.initialize();
+        executorService = Executors.newFixedThreadPool(PARALLEL_REQUESTS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executorService.shutdownNow();
+        identityProvider.stop(0);
+        identityProviderExecutor.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length > 0 ? bytes.length : -1);
+        if (bytes.length > 0) {
+            exchange.getResponseBody().write(bytes);
+        }
+        exchange.close();
+    }
+
+    private List<Future<Map<String, Object>>> getUserInfoInParallel(String token) {
+        final CyclicBarrier barrier = new CyclicBarrier(PARALLEL_REQUESTS);
+        List<Future<Map<String, Object>>> results = new ArrayList<>();
+        for (int i = 0; i < PARALLEL_REQUESTS; i++) {
+            results.add(executorService.submit(() -> {
+                barrier.await();
+                return keycloakClient.getUserInfo(token);
+            }));
+        }
+        return results;
+    }
+
+    @Test
+    void concurrentLookupsAreCollapsed() throws Exception {
+        //When
+        final List<Future<Map<String, Object>>> results = getUserInfoInParallel("Bearer foo");
+
+        //Then
+        for (Future<Map<String, Object>> result : results) {
+            assertEquals("homer", result.get(10, TimeUnit.SECONDS).get("sub"));
+        }
+        assertEquals(1, userInfoCalls.get());
+    }
+
+    @Test
+    void failuresArePropagatedToAllWaiters() throws Exception {
+        //Given
+        userInfoStatus = 401;
+
+        //When
+        final List<Future<Map<String, Object>>> results = getUserInfoInParallel("Bearer foo");
+
+        //Then
+        for (Future<Map<String, Object>> result : results) {
+            final ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(UnauthorizedException.class, exception.getCause());
+        }
+        assertEquals(1, userInfoCalls.get());
+    }
+
+    @Test
+    void subsequentLookupsAreNotShared() {
+        //When
+        keycloakClient.getUserInfo("Bearer foo");
+        keycloakClient.getUserInfo("Bearer foo");
+
+        //Then
+        assertEquals(2, userInfoCalls.get());
+    }
+
+    @Test
+    void errorsArePropagatedToAllWaiters() {
+        //Given
+        failWithError = true;
+
+        //When
+        final List<Future<Map<String, Object>>> results = getUserInfoInParallel("Bearer foo");
+
+        //Then
+        for (Future<Map<String, Object>> result : results) {
+            final ExecutionException exception = assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(NoClassDefFoundError.class, exception.getCause());
+        }
+        assertEquals(1, userInfoCalls.get());
+    }
+
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.authentication.keycloak;
+
+import eu.ebrains.kg.authentication.controller.AuthenticationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class UserInfoMappingTest {
+
+    private final KeycloakClient keycloakClient = mock(KeycloakClient.class);
+    private final AuthenticationRepository authenticationRepository = mock(AuthenticationRepository.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<String> roles = Collections.singletonList("foo:admin");
+    private final Date inOneHour = new Date(System.currentTimeMillis() + 1000 * 60 * 60);
+    private UserInfoMapping userInfoMapping;
+
+    @BeforeEach
+    void setup() {
+        when(keycloakClient.getUserInfo(anyString())).thenReturn(Map.of("sub", "foo"));
+        when(authenticationRepository.getRolesFromUserInfo(any())).thenReturn(roles);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userInfoMapping.shutdown();
+    }
+
+    private double getCount(String name, String result) {
+        return result != null ? meterRegistry.get(name).tag("result", result).functionCounter().count() : meterRegistry.get(name).functionCounter().count();
+    }
+
+    @Test
+    void cachedUntilTokenExpiry() {
+        //Given
+        userInfoMapping = new UserInfoMapping(keycloakClient, authenticationRepository, meterRegistry, 10, 1000 * 60 * 60, 0);
+
+        //When
+        userInfoMapping.getUserOrClientProfile("Bearer valid", inOneHour);
+        List<String> result = userInfoMapping.getUserOrClientProfile("Bearer valid", inOneHour);
+        userInfoMapping.getUserOrClientProfile("Bearer expired", new Date(System.currentTimeMillis() - 1));
+        userInfoMapping.getUserOrClientProfile("Bearer expired", new Date(System.currentTimeMillis() - 1));
+
+        //Then
+        assertEquals(roles, result);
+        verify(keycloakClient, times(1)).getUserInfo("Bearer valid");
+        verify(keycloakClient, times(2)).getUserInfo("Bearer expired");
+        assertEquals(1, getCount("kg.authentication.roleCache.requests", "hit"));
+        assertEquals(3, getCount("kg.authentication.roleCache.requests", "miss"));
+    }
+
+    @Test
+    void boundedSize() {
+        //Given
+        userInfoMapping = new UserInfoMapping(keycloakClient, authenticationRepository, meterRegistry, 2, 1000 * 60 * 60, 0);
+
+        //When
+        userInfoMapping.getUserOrClientProfile("Bearer a", inOneHour);
+        userInfoMapping.getUserOrClientProfile("Bearer b", inOneHour);
+        userInfoMapping.getUserOrClientProfile("Bearer a", inOneHour);
+        userInfoMapping.getUserOrClientProfile("Bearer c", inOneHour);
+        userInfoMapping.getUserOrClientProfile("Bearer a", inOneHour);
+        userInfoMapping.getUserOrClientProfile("Bearer b", inOneHour);
+
+        //Then
+        verify(keycloakClient, times(1)).getUserInfo("Bearer a");
+        verify(keycloakClient, times(2)).getUserInfo("Bearer b");
+        assertEquals(2, getCount("kg.authentication.roleCache.evictions", null));
+        assertEquals(2, meterRegistry.get("kg.authentication.roleCache.size").gauge().value());
+    }
+
+    @Test
+    void refreshAheadOfExpiry() {
+        //Given
+        userInfoMapping = new UserInfoMapping(keycloakClient, authenticationRepository, meterRegistry, 10, 1000 * 60, 1000 * 60);
+        userInfoMapping.getUserOrClientProfile("Bearer valid", inOneHour);
+
+        //When
+        List<String> result = userInfoMapping.getUserOrClientProfile("Bearer valid", inOneHour);
+
+        //Then
+        assertEquals(roles, result);
+        verify(keycloakClient, timeout(5000).times(2)).getUserInfo("Bearer valid");
+    }
+
+    @Test
+    void noRefreshIfTokenExpiresFirst() {
+        //Given
+        userInfoMapping = new UserInfoMapping(keycloakClient, authenticationRepository, meterRegistry, 10, 1000 * 60 * 60, 1000 * 60 * 60);
+        final Date inOneMinute = new Date(System.currentTimeMillis() + 1000 * 60);
+        userInfoMapping.getUserOrClientProfile("Bearer valid", inOneMinute);
+
+        //When
+        userInfoMapping.getUserOrClientProfile("Bearer valid", inOneMinute);
+        userInfoMapping.shutdown();
+
+        //Then
+        verify(keycloakClient, times(1)).getUserInfo("Bearer valid");
+    }
+
+}
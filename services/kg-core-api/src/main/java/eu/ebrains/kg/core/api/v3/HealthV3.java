@@ -25,9 +25,11 @@ package eu.ebrains.kg.core.api.v3;
 
 import eu.ebrains.kg.commons.Version;
 import eu.ebrains.kg.commons.api.GraphDBHealth;
+import eu.ebrains.kg.commons.api.PrimaryStoreEvents;
 import eu.ebrains.kg.commons.config.openApiGroups.Admin;
 import eu.ebrains.kg.commons.jsonld.DynamicJson;
 import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.IndexingLag;
 import eu.ebrains.kg.core.model.ExposedStage;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
@@ -43,8 +45,11 @@ public class HealthV3{
 
     private final GraphDBHealth.Client graphDBHealth;
 
-    public HealthV3(GraphDBHealth.Client graphDBHealth) {
+    private final PrimaryStoreEvents.Client primaryStoreEvents;
+
+    public HealthV3(GraphDBHealth.Client graphDBHealth, PrimaryStoreEvents.Client primaryStoreEvents) {
         this.graphDBHealth = graphDBHealth;
+        this.primaryStoreEvents = primaryStoreEvents;
     }
 
 
@@ -61,6 +66,12 @@ public class HealthV3{
         return graphDBHealth.getReport(stage.getStage(), name);
     }
 
+    @Admin
+    @GetMapping("indexingLag")
+    public IndexingLag getIndexingLag(@RequestParam("stage") ExposedStage stage){
+        return primaryStoreEvents.getIndexingLag(stage.getStage());
+    }
+
     @Admin
     @GetMapping
     public List<String> getAvailableChecks(){
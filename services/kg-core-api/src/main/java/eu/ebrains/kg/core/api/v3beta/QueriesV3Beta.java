@@ -103,6 +103,7 @@ public class QueriesV3Beta {
         allRequestParams.remove("instanceId");
         allRequestParams.remove("from");
         allRequestParams.remove("size");
+        allRequestParams.remove("continuationToken");
         NormalizedJsonLd normalizedJsonLd = jsonLd.normalize(query, true);
         KgQuery q = new KgQuery(normalizedJsonLd, stage.getStage());
         q.setIdRestriction(ids.resolveId(stage.getStage(), instanceId));
@@ -196,6 +197,7 @@ public class QueriesV3Beta {
         allRequestParams.remove("instanceId");
         allRequestParams.remove("from");
         allRequestParams.remove("size");
+        allRequestParams.remove("continuationToken");
         InstanceId queryInstance = ids.resolveId(DataStage.IN_PROGRESS, queryId);
         final NormalizedJsonLd queryPayload = queryController.fetchQueryById(queryInstance);
         if(queryPayload==null){
@@ -226,7 +226,7 @@ public class UsersV3Beta {
         UUID uuid = createUserPictureId(userId);
         doc.setId(idUtils.buildAbsoluteUrl(uuid));
         doc.addTypes(EBRAINSVocabulary.META_USER_PICTURE_TYPE);
-        primaryStoreEvents.postEvent(Event.createUpsertEvent(targetSpace, uuid, Event.Type.INSERT, doc));
+        primaryStoreEvents.postEvent(Event.createUpsertEvent(targetSpace, uuid, Event.Type.INSERT, doc), true);
         return ResponseEntity.ok(Result.ok());
     }
 
@@ -37,9 +37,9 @@ import eu.ebrains.kg.commons.jsonld.JsonLdConsts;
 import eu.ebrains.kg.commons.jsonld.JsonLdId;
 import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
 import eu.ebrains.kg.commons.model.*;
+import eu.ebrains.kg.commons.models.PermissionIndex;
 import eu.ebrains.kg.commons.models.UserWithRoles;
 import eu.ebrains.kg.commons.permission.Functionality;
-import eu.ebrains.kg.commons.permission.FunctionalityInstance;
 import eu.ebrains.kg.commons.permissions.controller.Permissions;
 import eu.ebrains.kg.commons.semantics.vocabularies.EBRAINSVocabulary;
 import eu.ebrains.kg.commons.semantics.vocabularies.SchemaOrgVocabulary;
@@ -136,7 +136,8 @@ public class CoreInstanceController {
         ids.checkIdForExistence(id, normalizedJsonLd.allIdentifiersIncludingId());
         normalizedJsonLd.defineFieldUpdateTimes(normalizedJsonLd.keySet().stream().collect(Collectors.toMap(k -> k, k -> ZonedDateTime.now())));
         Event upsertEvent = createUpsertEvent(id, normalizedJsonLd, s);
-        Set<InstanceId> ids = primaryStoreEvents.postEvent(upsertEvent);
+        //We only need to wait for the indexing if we're going to return the payload
+        Set<InstanceId> ids = primaryStoreEvents.postEvent(upsertEvent, responseConfiguration.isReturnPayload());
         return handleIngestionResponse(responseConfiguration, ids);
     }
 
@@ -144,14 +145,15 @@ public class CoreInstanceController {
     public ResponseEntity<Result<NormalizedJsonLd>> contributeToInstance(NormalizedJsonLd normalizedJsonLd, InstanceId instanceId, boolean removeNonDeclaredProperties, ResponseConfiguration responseConfiguration) {
         normalizedJsonLd = patchInstance(instanceId, normalizedJsonLd, removeNonDeclaredProperties);
         Event upsertEvent = createUpsertEvent(instanceId.getUuid(), normalizedJsonLd, instanceId.getSpace());
-        Set<InstanceId> ids = primaryStoreEvents.postEvent(upsertEvent);
+        //We only need to wait for the indexing if we're going to return the payload
+        Set<InstanceId> ids = primaryStoreEvents.postEvent(upsertEvent, responseConfiguration.isReturnPayload());
         return handleIngestionResponse(responseConfiguration, ids);
     }
 
 
     public Set<InstanceId> deleteInstance(InstanceId instanceId) {
         Event deleteEvent = Event.createDeleteEvent(instanceId.getSpace(), instanceId.getUuid(), idUtils.buildAbsoluteUrl(instanceId.getUuid()));
-        return primaryStoreEvents.postEvent(deleteEvent);
+        return primaryStoreEvents.postEvent(deleteEvent, true);
     }
 
     public ResponseEntity<Result<NormalizedJsonLd>> moveInstance(InstanceId instanceId, SpaceName targetSpace, ExtendedResponseConfiguration responseConfiguration) {
@@ -281,7 +283,7 @@ public class CoreInstanceController {
                     return null;
                 }
             }).filter(Objects::nonNull).toList();
-            result = new Paginated<>(collectedResult, instancesByType.getTotalResults(), instancesByType.getSize(), instancesByType.getFrom());
+            result = new Paginated<>(collectedResult, instancesByType.getTotalResults(), instancesByType.getSize(), instancesByType.getFrom()).setNextContinuationToken(instancesByType.getNextContinuationToken());
         }
 
         if (responseConfiguration.isReturnPermissions()) {
@@ -428,22 +430,22 @@ public class CoreInstanceController {
 
     private void enrichWithPermissionInformation(DataStage stage, Collection<Result<NormalizedJsonLd>> documents) {
         UserWithRoles userWithRoles = authContext.getUserWithRoles();
-        List<FunctionalityInstance> permissions = userWithRoles.getPermissions();
+        PermissionIndex permissions = userWithRoles.getPermissionIndex();
         documents.forEach(result -> {
                     NormalizedJsonLd doc = result.getData();
                     if (doc != null) {
                         String space = doc.getAs(EBRAINSVocabulary.META_SPACE, String.class);
                         SpaceName sp = space != null ? new SpaceName(space) : null;
-                        Set<Functionality> functionalities = permissions.stream().filter(p -> Functionality.FunctionalityGroup.INSTANCE == p.getFunctionality().getFunctionalityGroup() && stage != null && stage == p.getFunctionality().getStage()).filter(p -> p.appliesTo(sp, idUtils.getUUID(doc.id()))).map(FunctionalityInstance::getFunctionality).collect(Collectors.toSet());
+                        Set<Functionality> functionalities = permissions.getFunctionalitiesApplyingTo(sp, idUtils.getUUID(doc.id())).stream().filter(f -> Functionality.FunctionalityGroup.INSTANCE == f.getFunctionalityGroup() && stage != null && stage == f.getStage()).collect(Collectors.toSet());
                         doc.put(EBRAINSVocabulary.META_PERMISSIONS, functionalities);
                     }
                 }
         );
     }
 
-    private void enrichWithPermissionInformation(DataStage stage, ScopeElement scopeElement, List<FunctionalityInstance> permissions) {
+    private void enrichWithPermissionInformation(DataStage stage, ScopeElement scopeElement, PermissionIndex permissions) {
         SpaceName sp = scopeElement.getSpace() != null ? new SpaceName(scopeElement.getSpace()) : null;
-        scopeElement.setPermissions(permissions.stream().filter(p -> Functionality.FunctionalityGroup.INSTANCE == p.getFunctionality().getFunctionalityGroup() && stage != null && stage == p.getFunctionality().getStage()).filter(p -> p.appliesTo(sp, scopeElement.getId())).map(FunctionalityInstance::getFunctionality).collect(Collectors.toSet()));
+        scopeElement.setPermissions(permissions.getFunctionalitiesApplyingTo(sp, scopeElement.getId()).stream().filter(f -> Functionality.FunctionalityGroup.INSTANCE == f.getFunctionalityGroup() && stage != null && stage == f.getStage()).collect(Collectors.toSet()));
         if (scopeElement.getChildren() != null) {
             scopeElement.getChildren().forEach(c -> enrichWithPermissionInformation(stage, c, permissions));
         }
@@ -454,7 +456,7 @@ public class CoreInstanceController {
         if (instanceId != null) {
             ScopeElement scope = graphDBScopes.getScopeForInstance(instanceId.getSpace().getName(), instanceId.getUuid(), stage, applyRestrictions);
             if (returnPermissions) {
-                enrichWithPermissionInformation(stage, scope, authContext.getUserWithRoles().getPermissions());
+                enrichWithPermissionInformation(stage, scope, authContext.getUserWithRoles().getPermissionIndex());
             }
             return scope;
         }
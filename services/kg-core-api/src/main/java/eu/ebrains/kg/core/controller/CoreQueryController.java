@@ -83,7 +83,7 @@ public class CoreQueryController {
             if (paginatedQueryResult.getResponseVocab() != null) {
                 final String responseVocab = paginatedQueryResult.getResponseVocab();
                 final Stream<NormalizedJsonLd> stream = paginatedQueryResult.getStream().getStream().peek(s -> s.applyVocab(responseVocab));
-                return new PaginatedStream<>(stream, paginatedQueryResult.getStream().getTotalResults(), paginatedQueryResult.getStream().getSize(), paginatedQueryResult.getStream().getFrom());
+                return new PaginatedStream<>(stream, paginatedQueryResult.getStream().getTotalResults(), paginatedQueryResult.getStream().getSize(), paginatedQueryResult.getStream().getFrom()).setNextContinuationToken(paginatedQueryResult.getStream().getNextContinuationToken());
             }
             return paginatedQueryResult.getStream();
         }
@@ -34,7 +34,6 @@ import eu.ebrains.kg.commons.model.external.spaces.SpaceSpecification;
 import eu.ebrains.kg.commons.model.internal.spaces.Space;
 import eu.ebrains.kg.commons.models.UserWithRoles;
 import eu.ebrains.kg.commons.permission.Functionality;
-import eu.ebrains.kg.commons.permission.FunctionalityInstance;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
@@ -60,10 +59,10 @@ public class CoreSpaceController {
             String spaceIdentifier = spaceInformation.getIdentifier();
             if (spaceIdentifier != null) {
                 final SpaceName internalSpaceName = SpaceName.getInternalSpaceName(spaceIdentifier, userWithRoles.getPrivateSpace());
-                List<Functionality> applyingFunctionalities = userWithRoles.getPermissions().stream().
-                        filter(f -> (f.getFunctionality().getFunctionalityGroup() == Functionality.FunctionalityGroup.INSTANCE
-                                || f.getFunctionality().getFunctionalityGroup() == Functionality.FunctionalityGroup.TYPES) && f.appliesTo(internalSpaceName, null)
-                        ).map(FunctionalityInstance::getFunctionality).distinct().collect(Collectors.toList());
+                List<Functionality> applyingFunctionalities = userWithRoles.getPermissionIndex().getFunctionalitiesApplyingTo(internalSpaceName, null).stream().
+                        filter(f -> f.getFunctionalityGroup() == Functionality.FunctionalityGroup.INSTANCE
+                                || f.getFunctionalityGroup() == Functionality.FunctionalityGroup.TYPES
+                        ).collect(Collectors.toList());
                 spaceInformation.setPermissions(applyingFunctionalities);
             }
         }
@@ -23,6 +23,7 @@
 
 package eu.ebrains.kg.graphdb.commons.controller;
 
+import com.arangodb.ArangoDBException;
 import com.arangodb.ArangoDatabase;
 import com.arangodb.entity.CollectionEntity;
 import com.arangodb.entity.CollectionType;
@@ -45,6 +46,7 @@ import eu.ebrains.kg.graphdb.commons.model.ArangoEdge;
 import eu.ebrains.kg.graphdb.ingestion.controller.DataController;
 import eu.ebrains.kg.graphdb.ingestion.model.*;
 import eu.ebrains.kg.graphdb.structure.controller.CacheController;
+import eu.ebrains.kg.graphdb.structure.controller.TypeStatisticsRepository;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -67,15 +69,22 @@ public class ArangoRepositoryCommons {
 
     private final CacheController cacheController;
 
+    private final TypeStatisticsRepository typeStatisticsRepository;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    private static final int WRITE_CONFLICT = 1200;
+
+    private static final int MAX_TRANSACTION_ATTEMPTS = 3;
+
 
-    public ArangoRepositoryCommons(ArangoDatabases databases, JsonAdapter jsonAdapter, GraphDBArangoUtils utils, EntryHookDocuments entryHookDocuments, CacheController cacheController) {
+    public ArangoRepositoryCommons(ArangoDatabases databases, JsonAdapter jsonAdapter, GraphDBArangoUtils utils, EntryHookDocuments entryHookDocuments, CacheController cacheController, TypeStatisticsRepository typeStatisticsRepository) {
         this.databases = databases;
         this.jsonAdapter = jsonAdapter;
         this.utils = utils;
         this.entryHookDocuments = entryHookDocuments;
         this.cacheController = cacheController;
+        this.typeStatisticsRepository = typeStatisticsRepository;
     }
 
     private List<ArangoCollectionReference> getAllEdgeCollections(ArangoDatabase db) {
@@ -83,6 +92,28 @@ public class ArangoRepositoryCommons {
         return collections.stream().filter(c -> c.getType() == CollectionType.EDGES).map(c -> new ArangoCollectionReference(c.getName(), true)).collect(Collectors.toList());
     }
 
+    /**
+     * @param originsAndTargets pairs of origin and target documents
+     * @return the edges between any of the pairs of origin and target documents - resolved with a single query.
+     */
+    List<ArangoDocumentReference> findEdgesBetweenDocuments(ArangoDatabase db, List<ArangoDocumentReference[]> originsAndTargets, ArangoCollectionReference collectionReference) {
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR pair IN @pairs"));
+        aql.addLine(AQL.trust("FOR doc IN @@collection"));
+        aql.addLine(AQL.trust("FILTER doc._from == pair[0] AND doc._to == pair[1]"));
+        aql.addLine(AQL.trust("RETURN doc._id"));
+        Map<String, Object> bindVars = new HashMap<>();
+        bindVars.put("@collection", collectionReference.getCollectionName());
+        bindVars.put("pairs", originsAndTargets.stream().map(p -> Arrays.asList(p[0].getId(), p[1].getId())).collect(Collectors.toList()));
+        if (logger.isTraceEnabled()) {
+            logger.trace(aql.buildSimpleDebugQuery(bindVars));
+        }
+        long start = new Date().getTime();
+        List<ArangoDocumentReference> result = query(db, aql.build().getValue(), bindVars, new AqlQueryOptions(), String.class).stream().map(s -> ArangoDocumentReference.fromArangoId(s, true)).collect(Collectors.toList());
+        logger.debug(String.format("Resolved %d edges between %d pairs of documents in %dms", result.size(), originsAndTargets.size(), new Date().getTime() - start));
+        return result;
+    }
+
     public List<ArangoDocumentReference> findEdgeBetweenDocuments(ArangoDatabase db, ArangoDocumentReference origin, ArangoDocumentReference target, ArangoCollectionReference collectionReference) {
         AQL aql = new AQL();
         aql.addLine(AQL.trust("FOR doc IN @@collection"));
@@ -169,31 +200,105 @@ public class ArangoRepositoryCommons {
     }
 
 
-    private Set<ArangoDocumentReference> findArangoReferencesForDocumentId(ArangoDatabase db, UUID documentId) {
+    /**
+     * @return the references of all documents (and their linking edges) attached to the given document ids - resolved with a single query.
+     * If a map for the cache eviction plans is provided, it is populated with the plans of the attached documents in the same roundtrip.
+     */
+    Set<ArangoDocumentReference> findArangoReferencesForDocumentIds(ArangoDatabase db, Set<UUID> documentIds, Map<String, CacheEvictionPlan> cacheEvictionPlans) {
         ArangoCollectionReference documentIdSpace = ArangoCollectionReference.fromSpace(InternalSpace.DOCUMENT_ID_SPACE);
-        if (db.collection(documentIdSpace.getCollectionName()).exists() && db.collection(InternalSpace.DOCUMENT_ID_EDGE_COLLECTION.getCollectionName()).exists()) {
+        if (!documentIds.isEmpty() && db.collection(documentIdSpace.getCollectionName()).exists() && db.collection(InternalSpace.DOCUMENT_ID_EDGE_COLLECTION.getCollectionName()).exists()) {
             AQL aql = new AQL();
-            aql.addLine(AQL.trust("LET doc = DOCUMENT(@@collection, @documentId)"));
+            aql.addLine(AQL.trust("FOR documentId IN @documentIds"));
+            aql.addLine(AQL.trust("LET doc = DOCUMENT(@@collection, documentId)"));
             aql.addLine(AQL.trust("LET docs = (FOR v,e IN 1..1 OUTBOUND doc @@relation"));
-            aql.indent().addLine(AQL.trust("RETURN [v._id, e._id])")).outdent();
-            aql.addLine(AQL.trust("LET flattened = FLATTEN(docs)"));
-            aql.addLine(AQL.trust("FOR d IN flattened"));
+            aql.indent().addLine(AQL.trust("LET structure = @withStructure && v != NULL && v.`" + JsonLdConsts.TYPE + "` != NULL"));
+            aql.addLine(AQL.trust("RETURN { \"id\": v._id, \"edge\": e._id, \"type\": structure ? v.`" + JsonLdConsts.TYPE + "` : NULL, \"space\": structure ? v.`" + EBRAINSVocabulary.META_SPACE + "` : NULL, \"attributes\": structure ? ATTRIBUTES(v, true) : [] })")).outdent();
+            aql.addLine(AQL.trust("FOR d IN docs"));
             aql.addLine(AQL.trust("RETURN d"));
             Map<String, Object> bindVars = new HashMap<>();
             bindVars.put("@collection", documentIdSpace.getCollectionName());
-            bindVars.put("documentId", documentId.toString());
+            bindVars.put("documentIds", documentIds.stream().map(UUID::toString).collect(Collectors.toList()));
             bindVars.put("@relation", InternalSpace.DOCUMENT_ID_EDGE_COLLECTION.getCollectionName());
+            bindVars.put("withStructure", cacheEvictionPlans != null);
             if (logger.isTraceEnabled()) {
                 logger.trace(aql.buildSimpleDebugQuery(bindVars));
             }
             long start = new Date().getTime();
-            List<String> ids = db.query(aql.build().getValue(), bindVars, new AqlQueryOptions(), String.class).asListRemaining();
-            logger.debug(String.format("Resolved %d references for document id %s in %dms", ids.size(), documentId, new Date().getTime() - start));
-            return ids.stream().filter(Objects::nonNull).map(id -> ArangoDocumentReference.fromArangoId(id, null)).collect(Collectors.toSet());
+            List<DynamicJson> attachedDocuments = query(db, aql.build().getValue(), bindVars, new AqlQueryOptions(), DynamicJson.class);
+            Set<ArangoDocumentReference> references = new HashSet<>();
+            for (DynamicJson attachedDocument : attachedDocuments) {
+                final String id = attachedDocument.getAs("id", String.class);
+                final String edge = attachedDocument.getAs("edge", String.class);
+                Stream.of(id, edge).filter(Objects::nonNull).forEach(i -> references.add(ArangoDocumentReference.fromArangoId(i, null)));
+                if (cacheEvictionPlans != null && id != null) {
+                    final CacheEvictionPlan plan = CacheEvictionPlan.of(id, attachedDocument.get("type"), attachedDocument.get("space"), attachedDocument.getAsListOf("attributes", String.class));
+                    if (plan != null) {
+                        cacheEvictionPlans.put(plan.getId(), plan);
+                    }
+                }
+            }
+            logger.debug(String.format("Resolved %d references for %d document ids in %dms", references.size(), documentIds.size(), new Date().getTime() - start));
+            return references;
         }
         return Collections.emptySet();
     }
 
+    /**
+     * @param existingCollections the names of the collections which exist in the database (see {@link #getExistingCollections(ArangoDatabase)})
+     * @return the subset of the given references for which a document exists - resolved with a single query.
+     */
+    Set<ArangoDocumentReference> findExistingDocuments(ArangoDatabase db, Set<ArangoDocumentReference> references, Set<String> existingCollections) {
+        final Map<String, ArangoDocumentReference> referencesById = getReferencesInExistingCollections(references, existingCollections);
+        if (referencesById.isEmpty()) {
+            return Collections.emptySet();
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR id IN @ids"));
+        aql.addLine(AQL.trust("FILTER DOCUMENT(id) != NULL"));
+        aql.addLine(AQL.trust("RETURN id"));
+        Map<String, Object> bindVars = new HashMap<>();
+        bindVars.put("ids", referencesById.keySet());
+        long start = new Date().getTime();
+        final Set<ArangoDocumentReference> result = db.query(aql.build().getValue(), bindVars, new AqlQueryOptions(), String.class).asListRemaining().stream().map(referencesById::get).collect(Collectors.toSet());
+        logger.debug(String.format("Found %d existing documents out of %d in %dms", result.size(), references.size(), new Date().getTime() - start));
+        return result;
+    }
+
+    /**
+     * @param existingCollections the names of the collections which exist in the database (see {@link #getExistingCollections(ArangoDatabase)})
+     * @return the documents for the given references (if they exist) - resolved with a single query.
+     */
+    Map<ArangoDocumentReference, ArangoDocument> getDocuments(ArangoDatabase db, Set<ArangoDocumentReference> references, Set<String> existingCollections) {
+        final Map<String, ArangoDocumentReference> referencesById = getReferencesInExistingCollections(references, existingCollections);
+        if (referencesById.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR id IN @ids"));
+        aql.addLine(AQL.trust("LET doc = DOCUMENT(id)"));
+        aql.addLine(AQL.trust("FILTER doc != NULL"));
+        aql.addLine(AQL.trust("RETURN doc"));
+        Map<String, Object> bindVars = new HashMap<>();
+        bindVars.put("ids", referencesById.keySet());
+        Map<ArangoDocumentReference, ArangoDocument> result = new HashMap<>();
+        for (NormalizedJsonLd doc : query(db, aql.build().getValue(), bindVars, new AqlQueryOptions(), NormalizedJsonLd.class)) {
+            result.put(referencesById.get(doc.getAs(ArangoVocabulary.ID, String.class)), ArangoDocument.from(doc));
+        }
+        return result;
+    }
+
+    /**
+     * Documents in non-existing collections can't exist - we therefore only keep those references which can be looked up.
+     */
+    private static Map<String, ArangoDocumentReference> getReferencesInExistingCollections(Set<ArangoDocumentReference> references, Set<String> existingCollections) {
+        return references.stream().filter(r -> existingCollections.contains(r.getArangoCollectionReference().getCollectionName())).collect(Collectors.toMap(ArangoDocumentReference::getId, r -> r, (a, b) -> a));
+    }
+
+
+    Set<String> getExistingCollections(ArangoDatabase db) {
+        return db.getCollections(new CollectionsReadOptions().excludeSystem(true)).stream().map(CollectionEntity::getName).collect(Collectors.toSet());
+    }
+
 
     public void executeTransactional(DataStage stage, List<? extends DBOperation> operations) {
         UUID transactionId = UUID.randomUUID();
@@ -203,20 +308,6 @@ public class ArangoRepositoryCommons {
     }
 
 
-    private List<CacheEvictionPlan> fetchCacheEvictionPlans(DataStage stage, List<String> ids) {
-        AQL aql = new AQL();
-        Map<String, Object> bindVars = new HashMap<>();
-        aql.addLine(AQL.trust("FOR id IN @ids"));
-        bindVars.put("ids", ids);
-        aql.addLine(AQL.trust("LET doc = DOCUMENT(id)"));
-        aql.addLine(AQL.trust(String.format("FILTER doc != NULL && doc.`%s` != NULL && doc.`%s` != NULL && doc.`%s` != []", JsonLdConsts.TYPE, EBRAINSVocabulary.META_SPACE, EBRAINSVocabulary.META_SPACE)));
-        aql.addLine(AQL.trust(String.format("RETURN { \"id\": id, \"type\": doc.`%s`,", JsonLdConsts.TYPE)));
-        aql.addLine(AQL.trust(String.format("    \"space\": doc.`%s`,", EBRAINSVocabulary.META_SPACE)));
-        aql.addLine(AQL.trust(String.format("    \"properties\": (FOR a IN ATTRIBUTES(doc, true) FILTER a NOT LIKE \"%s%%\" AND a NOT LIKE \"@%%\" RETURN a)}", EBRAINSVocabulary.META)));
-        return databases.getByStage(stage).query(aql.build().getValue(), bindVars, CacheEvictionPlan.class).asListRemaining();
-    }
-
-
     public void executeTransactional(DataStage stage, ArangoDatabase db, List<? extends DBOperation> operations) {
         if (operations.isEmpty()) {
             logger.debug("No operations to be executed - we therefore do not do anything");
@@ -233,18 +324,25 @@ public class ArangoRepositoryCommons {
         List<DBOperation> distinctOperations = operations.stream().distinct().collect(Collectors.toList());
         Set<ArangoDocumentReference> deleteIds = distinctOperations.stream().filter(o -> o instanceof DeleteOperation).map(o -> ((DeleteOperation) o).getLifecycleDocumentRef()).collect(Collectors.toSet());
         Set<RemoveReleaseStateOperation> removeReleaseStateOperations = distinctOperations.stream().filter(o -> o instanceof RemoveReleaseStateOperation).map(o -> (RemoveReleaseStateOperation) o).collect(Collectors.toSet());
-        List<UpsertOperation> upserts = distinctOperations.stream().filter(o -> o instanceof UpsertOperation).map(o -> (UpsertOperation) o).filter(u -> u.getDocumentReference() != null).filter(u -> u.isOverrideIfExists() || !doesDocumentExist(stage, u.getDocumentReference())).collect(Collectors.toList());
+        List<UpsertOperation> upsertCandidates = distinctOperations.stream().filter(o -> o instanceof UpsertOperation).map(o -> (UpsertOperation) o).filter(u -> u.getDocumentReference() != null).collect(Collectors.toList());
         List<EdgeResolutionOperation> edgeResolutionOperations = distinctOperations.stream().filter(o -> o instanceof EdgeResolutionOperation).map(o -> (EdgeResolutionOperation) o).collect(Collectors.toList());
+        Set<ArangoDocumentReference> upsertsToCheck = upsertCandidates.stream().filter(u -> !u.isOverrideIfExists()).map(UpsertOperation::getDocumentReference).collect(Collectors.toSet());
+        Set<ArangoDocumentReference> edgeResolutionDocuments = edgeResolutionOperations.stream().map(e -> e.getUpdatedEdge().getOriginalDocument()).collect(Collectors.toSet());
+        //The existing collections are only resolved once per transaction (and only if there is anything to look up)
+        final Set<String> existingCollections = upsertsToCheck.isEmpty() && edgeResolutionDocuments.isEmpty() ? Collections.emptySet() : getExistingCollections(db);
+        Set<ArangoDocumentReference> existingDocuments = findExistingDocuments(db, upsertsToCheck, existingCollections);
+        List<UpsertOperation> upserts = upsertCandidates.stream().filter(u -> u.isOverrideIfExists() || !existingDocuments.contains(u.getDocumentReference())).collect(Collectors.toList());
 
         //An UPSERT is implemented as a DELETE & INSERT - we therefore need to remove all dependent resources (there can be many) for the original document ID
         Set<ArangoDocumentReference> upsertIdsForDelete = upserts.stream().filter(UpsertOperation::isAttachToOriginalDocument).map(UpsertOperation::getLifecycleDocumentId).filter(u -> !deleteIds.contains(u)).collect(Collectors.toSet());
         Set<ArangoDocumentReference> removedDocuments = new HashSet<>();
         Map<ArangoCollectionReference, List<String>> insertedDocuments = new HashMap<>();
-        upsertIdsForDelete.forEach(upsertForDelete -> {
-            removedDocuments.addAll(findRemovalOfAllDependenciesForDocumentId(db, upsertForDelete, removedDocuments));
-        });
+        //The structure of the documents is tracked in memory - this way, the cache eviction doesn't need any additional lookups
+        final boolean evictCache = stage == DataStage.IN_PROGRESS || stage == DataStage.RELEASED;
+        Map<String, CacheEvictionPlan> cacheEvictionPlansBeforeTransaction = evictCache ? new HashMap<>() : null;
+        //The dependencies of all upserted and deleted documents are resolved at once
+        removedDocuments.addAll(findArangoReferencesForDocumentIds(db, Stream.concat(upsertIdsForDelete.stream(), deleteIds.stream()).map(ArangoDocumentReference::getDocumentId).collect(Collectors.toSet()), cacheEvictionPlansBeforeTransaction));
         deleteIds.forEach(delete -> {
-            removedDocuments.addAll(findRemovalOfAllDependenciesForDocumentId(db, delete, removedDocuments));
             //When actually deleting something, we also get rid of the document-id hook-document.
             ArangoDocumentReference documentReference = documentIdSpaceRef.doc(delete.getDocumentId());
             if (stage != DataStage.NATIVE) {
@@ -265,13 +363,17 @@ public class ArangoRepositoryCommons {
             }
         });
         Map<ArangoDocumentReference, ArangoDocument> edgeResolutionDependencies = new HashMap<>();
+        if (!edgeResolutionOperations.isEmpty()) {
+            //Remove documentId links to unresolved (for all edge resolutions at once)...
+            removedDocuments.addAll(findEdgesBetweenDocuments(db, edgeResolutionOperations.stream().map(e -> new ArangoDocumentReference[]{e.getUpdatedEdge().getId(), e.getUnresolvedEdgeRef()}).collect(Collectors.toList()), InternalSpace.DOCUMENT_ID_EDGE_COLLECTION));
+            //... and load the documents which need to be updated
+            edgeResolutionDependencies.putAll(getDocuments(db, edgeResolutionDocuments, existingCollections));
+            if (evictCache) {
+                edgeResolutionDependencies.forEach((reference, document) -> addCacheEvictionPlan(cacheEvictionPlansBeforeTransaction, reference.getId(), document.getDoc()));
+            }
+        }
         edgeResolutionOperations.forEach(edgeResolution -> {
-            //Remove documentId link...
             ArangoDocumentReference edgeReference = edgeResolution.getUpdatedEdge().getId();
-            List<ArangoDocumentReference> documentIdLinksToUnresolved = findEdgeBetweenDocuments(db, edgeReference, edgeResolution.getUnresolvedEdgeRef(), InternalSpace.DOCUMENT_ID_EDGE_COLLECTION);
-
-            // remove the links to unresolved
-            documentIdLinksToUnresolved.stream().distinct().filter(ref -> !removedDocuments.contains(ref)).forEach(removedDocuments::add);
 
             //... remove the edge document ...
             removedDocuments.add(edgeResolution.getUnresolvedEdgeRef());
@@ -285,10 +387,6 @@ public class ArangoRepositoryCommons {
 
             //... finally, update the payload of the related document to the resolved id
             ArangoDocument originalDocument = edgeResolutionDependencies.get(edgeResolution.getUpdatedEdge().getOriginalDocument());
-            if (originalDocument == null) {
-                originalDocument = getDocument(stage, edgeResolution.getUpdatedEdge().getOriginalDocument());
-                edgeResolutionDependencies.put(edgeResolution.getUpdatedEdge().getOriginalDocument(), originalDocument);
-            }
             if (originalDocument != null) {
                 originalDocument.applyResolvedEdges(Collections.singleton(edgeResolution.getUpdatedEdge()));
             }
@@ -320,41 +418,105 @@ public class ArangoRepositoryCommons {
         collections.addAll(edgeResolutionDependencies.values().stream().map(d -> d.getOriginalDocument().getArangoCollectionReference()).collect(Collectors.toSet()));
         collections.addAll(insertedDocuments.keySet());
 
+        //The structure after the transaction is derived from the operations - this way, the type statistics can be updated within the transaction
+        final List<CacheEvictionPlan> plansBeforeTransaction = evictCache ? new ArrayList<>(cacheEvictionPlansBeforeTransaction.values()) : null;
+        final List<CacheEvictionPlan> plansAfterTransaction = evictCache ? getCacheEvictionPlansAfterTransaction(cacheEvictionPlansBeforeTransaction, removedDocuments, edgeResolutionDependencies, upserts) : null;
+        TypeStatisticsRepository.Update typeStatisticsUpdate = null;
+        if (evictCache && TypeStatisticsRepository.isMaintained(stage)) {
+            //Every removed and inserted document could be an edge contributing to the target types - except for the typed documents (which are never edges)
+            final Set<String> affectedEdges = removedDocuments.stream().map(ArangoDocumentReference::getId).collect(Collectors.toSet());
+            upserts.forEach(upsert -> affectedEdges.add(upsert.getDocumentReference().getId()));
+            edgeResolutionOperations.forEach(edgeResolution -> affectedEdges.add(edgeResolution.getUpdatedEdge().getId().getId()));
+            affectedEdges.removeAll(cacheEvictionPlansBeforeTransaction.keySet());
+            plansAfterTransaction.forEach(p -> affectedEdges.remove(p.getId()));
+            typeStatisticsUpdate = typeStatisticsRepository.prepareUpdate(plansBeforeTransaction, plansAfterTransaction, affectedEdges);
+            collections.add(TypeStatisticsRepository.TYPE_STATISTICS);
+            typeStatisticsRepository.getOrCreateCollection(db);
+        }
+
         //Create missing collections...
         collections.forEach(c -> {
             utils.getOrCreateArangoCollection(db, c);
         });
 
-        long startTransactionDate = new Date().getTime();
-
-        StreamTransactionEntity tx = db.beginStreamTransaction(new StreamTransactionOptions().writeCollections(collections.stream().map(ArangoCollectionReference::getCollectionName).toArray(String[]::new)));
-        logger.debug(String.format("Starting transaction %s", tx.getId()));
-        DocumentDeleteOptions deleteOptions = new DocumentDeleteOptions().streamTransactionId(tx.getId());
-        DocumentCreateOptions insertOptions = new DocumentCreateOptions().streamTransactionId(tx.getId());
-        DocumentUpdateOptions updateOptions = new DocumentUpdateOptions().streamTransactionId(tx.getId());
-        List<String> allIds = null;
-        List<CacheEvictionPlan> cacheEvictionPlansBeforeTransaction = null;
-        if (stage == DataStage.IN_PROGRESS || stage == DataStage.RELEASED) {
-            allIds = Stream.concat(Stream.concat(removedDocuments.stream().map(ArangoDocumentReference::getId), edgeResolutionDependencies.keySet().stream().map(ArangoDocumentReference::getId)), insertedDocuments.values().stream().flatMap(Collection::stream).map(i -> jsonAdapter.fromJson(i, DynamicJson.class).getAs(ArangoVocabulary.ID, String.class))).distinct().collect(Collectors.toList());
-            cacheEvictionPlansBeforeTransaction = fetchCacheEvictionPlans(stage, allIds);
+        StreamTransactionOptions transactionOptions = new StreamTransactionOptions().writeCollections(collections.stream().map(ArangoCollectionReference::getCollectionName).toArray(String[]::new));
+        boolean committed = false;
+        boolean typeStatisticsSkipped = false;
+        for (int attempt = 1; attempt <= MAX_TRANSACTION_ATTEMPTS && !committed; attempt++) {
+            //The last attempt leaves out the type statistics - a failure of the counter maintenance must not prevent the documents from being written
+            final TypeStatisticsRepository.Update typeStatisticsUpdateOfAttempt = attempt < MAX_TRANSACTION_ATTEMPTS ? typeStatisticsUpdate : null;
+            long startTransactionDate = new Date().getTime();
+            StreamTransactionEntity tx = db.beginStreamTransaction(transactionOptions);
+            logger.debug(String.format("Starting transaction %s", tx.getId()));
+            DocumentDeleteOptions deleteOptions = new DocumentDeleteOptions().streamTransactionId(tx.getId());
+            DocumentCreateOptions insertOptions = new DocumentCreateOptions().streamTransactionId(tx.getId());
+            DocumentUpdateOptions updateOptions = new DocumentUpdateOptions().streamTransactionId(tx.getId());
+            try {
+                if (typeStatisticsUpdateOfAttempt != null) {
+                    typeStatisticsUpdateOfAttempt.beforeModification(db, tx.getId());
+                }
+                removedDocuments.stream().collect(Collectors.groupingBy(ArangoDocumentReference::getArangoCollectionReference)).forEach((c, v) -> db.collection(c.getCollectionName()).deleteDocuments(v.stream().map(r -> r.getDocumentId().toString()).collect(Collectors.toSet()), String.class, deleteOptions));
+                edgeResolutionDependencies.values().stream().collect(Collectors.groupingBy(i -> i.getId().getArangoCollectionReference())).forEach((c, v) -> db.collection(c.getCollectionName()).updateDocuments(v.stream().map(doc -> jsonAdapter.toJson(doc.getDoc())).collect(Collectors.toList()), updateOptions));
+                insertedDocuments.forEach((c, v) -> db.collection(c.getCollectionName()).insertDocuments(v, insertOptions.overwrite(true)));
+                if (typeStatisticsUpdateOfAttempt != null) {
+                    typeStatisticsUpdateOfAttempt.afterModification(db, tx.getId());
+                }
+                db.commitStreamTransaction(tx.getId());
+                committed = true;
+                typeStatisticsSkipped = typeStatisticsUpdate != null && typeStatisticsUpdateOfAttempt == null;
+                logger.debug(String.format("Committing transaction %s after %dms", tx.getId(), new Date().getTime() - startTransactionDate));
+            } catch (Exception e) {
+                logger.debug(String.format("Execution of transaction has failed after %dms. \n\n TRANSACTION: %s\n\n", new Date().getTime() - startTransactionDate, tx.getId()));
+                db.abortStreamTransaction(tx.getId());
+                if (typeStatisticsUpdateOfAttempt == null && !isWriteConflict(e)) {
+                    break;
+                }
+                logger.debug(String.format("Retrying transaction (attempt %d failed: %s)", attempt, e.getMessage()));
+            }
         }
-        try {
-            removedDocuments.stream().collect(Collectors.groupingBy(ArangoDocumentReference::getArangoCollectionReference)).forEach((c, v) -> db.collection(c.getCollectionName()).deleteDocuments(v.stream().map(r -> r.getDocumentId().toString()).collect(Collectors.toSet()), String.class, deleteOptions));
-            edgeResolutionDependencies.values().stream().collect(Collectors.groupingBy(i -> i.getId().getArangoCollectionReference())).forEach((c, v) -> db.collection(c.getCollectionName()).updateDocuments(v.stream().map(doc -> jsonAdapter.toJson(doc.getDoc())).collect(Collectors.toList()), updateOptions));
-            insertedDocuments.forEach((c, v) -> db.collection(c.getCollectionName()).insertDocuments(v, insertOptions.overwrite(true)));
-            db.commitStreamTransaction(tx.getId());
-            logger.debug(String.format("Committing transaction %s after %dms", tx.getId(), new Date().getTime() - startTransactionDate));
-        } catch (Exception e) {
-            logger.debug(String.format("Execution of transaction has failed after %dms. \n\n TRANSACTION: %s\n\n", new Date().getTime() - startTransactionDate, tx.getId()));
-            db.abortStreamTransaction(tx.getId());
+        if (typeStatisticsSkipped) {
+            //The counters can only be affected in the spaces the transaction has written to (edges are written together with their source documents)
+            final Set<String> affectedSpaces = collections.stream().map(ArangoCollectionReference::getCollectionName).filter(c -> !c.equals(TypeStatisticsRepository.TYPE_STATISTICS.getCollectionName())).collect(Collectors.toSet());
+            logger.warn(String.format("The type statistics of %s (stage %s) couldn't be updated together with the documents - they are invalidated and will be rebuilt on their next read", String.join(", ", affectedSpaces), stage.name()));
+            try {
+                typeStatisticsRepository.invalidate(stage, affectedSpaces);
+            } catch (RuntimeException e) {
+                logger.error(String.format("Was not able to invalidate the type statistics of %s (stage %s) - please run the type statistics health check", String.join(", ", affectedSpaces), stage.name()), e);
+            }
         }
-        if (stage == DataStage.IN_PROGRESS || stage == DataStage.RELEASED) {
-            cacheController.evictCacheByPlan(stage, cacheEvictionPlansBeforeTransaction, fetchCacheEvictionPlans(stage, allIds));
+        if (evictCache) {
+            //If the transaction has been aborted, the structure remains the same
+            cacheController.evictCacheByPlan(stage, plansBeforeTransaction, committed ? plansAfterTransaction : plansBeforeTransaction);
         }
     }
 
-    private Set<ArangoDocumentReference> findRemovalOfAllDependenciesForDocumentId(ArangoDatabase db, ArangoDocumentReference delete, Set<ArangoDocumentReference> skipList) {
-        return findArangoReferencesForDocumentId(db, delete.getDocumentId()).stream().filter(Objects::nonNull).filter(ref -> !skipList.contains(ref)).collect(Collectors.toSet());
+    public static boolean isWriteConflict(Exception e) {
+        return e instanceof ArangoDBException && Integer.valueOf(WRITE_CONFLICT).equals(((ArangoDBException) e).getErrorNum());
     }
 
+    /**
+     * Derives the structure after the transaction from the one before and the executed operations: Removed documents
+     * disappear, updated and inserted ones contribute with their new payload. Edges and hook documents are not typed
+     * and therefore don't contribute to the structure.
+     */
+    static List<CacheEvictionPlan> getCacheEvictionPlansAfterTransaction(Map<String, CacheEvictionPlan> plansBeforeTransaction, Set<ArangoDocumentReference> removedDocuments, Map<ArangoDocumentReference, ArangoDocument> updatedDocuments, List<UpsertOperation> upserts) {
+        Map<String, CacheEvictionPlan> plans = new HashMap<>(plansBeforeTransaction);
+        removedDocuments.forEach(r -> plans.remove(r.getId()));
+        updatedDocuments.forEach((reference, document) -> addCacheEvictionPlan(plans, reference.getId(), document.getDoc()));
+        upserts.forEach(upsert -> {
+            final String id = upsert.getPayload().getAs(ArangoVocabulary.ID, String.class, upsert.getDocumentReference().getId());
+            plans.remove(id);
+            addCacheEvictionPlan(plans, id, upsert.getPayload());
+        });
+        return new ArrayList<>(plans.values());
+    }
+
+    private static void addCacheEvictionPlan(Map<String, CacheEvictionPlan> plans, String id, Map<String, ?> document) {
+        final CacheEvictionPlan plan = CacheEvictionPlan.fromDocument(id, document);
+        if (plan != null) {
+            plans.put(id, plan);
+        }
+    }
+
+
 }
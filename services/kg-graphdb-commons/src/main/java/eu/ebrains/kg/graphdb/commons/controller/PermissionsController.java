@@ -79,7 +79,7 @@ public class PermissionsController {
 
     public Set<UUID> getInstancesWithExplicitPermission(UserWithRoles userWithRoles, DataStage stage){
         Functionality readFunctionality = getReadFunctionality(stage);
-        return permissions.getInstancesWithExplicitPermission(userWithRoles.getPermissions(), readFunctionality);
+        return permissions.getInstancesWithExplicitPermission(userWithRoles, readFunctionality);
     }
 
 
@@ -29,6 +29,8 @@ import eu.ebrains.kg.arango.commons.model.ArangoDocumentReference;
 import eu.ebrains.kg.commons.jsonld.IndexedJsonLdDoc;
 import eu.ebrains.kg.commons.jsonld.JsonLdId;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 public class ArangoEdge implements ArangoInstance {
@@ -144,9 +146,22 @@ public class ArangoEdge implements ArangoInstance {
         return ArangoDocumentReference.fromArangoId(id, true);
     }
 
+    /**
+     * @return the edge as a map - structured the same way as its serialized form, so it can be translated without a JSON roundtrip.
+     */
     @Override
     public Object getPayload() {
-        return this;
+        Map<String, Object> payload = new LinkedHashMap<>();
+        payload.put("_orderNumber", orderNumber);
+        payload.put(IndexedJsonLdDoc.ORIGINAL_TO, originalTo);
+        payload.put(IndexedJsonLdDoc.ORIGINAL_DOCUMENT, originalDocument);
+        payload.put("_originalLabel", originalLabel);
+        payload.put(ArangoVocabulary.TO, to);
+        payload.put(ArangoVocabulary.FROM, from);
+        payload.put(ArangoVocabulary.KEY, key);
+        payload.put(ArangoVocabulary.ID, id);
+        payload.put(ArangoVocabulary.COLLECTION, collection);
+        return payload;
     }
 
     public String getCollection() {
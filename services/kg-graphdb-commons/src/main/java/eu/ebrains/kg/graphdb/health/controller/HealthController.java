@@ -34,12 +34,15 @@ import com.arangodb.model.OverwriteMode;
 import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
 import eu.ebrains.kg.arango.commons.aqlbuilder.ArangoVocabulary;
 import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.arango.commons.model.InternalSpace;
 import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.Tuple;
 import eu.ebrains.kg.commons.jsonld.DynamicJson;
 import eu.ebrains.kg.commons.model.DataStage;
 import eu.ebrains.kg.commons.model.SpaceName;
 import eu.ebrains.kg.graphdb.commons.controller.ArangoDatabases;
 import eu.ebrains.kg.graphdb.commons.controller.GraphDBArangoUtils;
+import eu.ebrains.kg.graphdb.structure.controller.TypeStatisticsRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Async;
@@ -56,11 +59,13 @@ public class HealthController {
     private final RelationConsistency relationConsistency;
     private final ArangoDatabases arangoDatabases;
     private final GraphDBArangoUtils utils;
+    private final TypeStatisticsRepository typeStatisticsRepository;
 
-    public HealthController(RelationConsistency relationConsistency, ArangoDatabases arangoDatabases, GraphDBArangoUtils utils) {
+    public HealthController(RelationConsistency relationConsistency, ArangoDatabases arangoDatabases, GraphDBArangoUtils utils, TypeStatisticsRepository typeStatisticsRepository) {
         this.relationConsistency = relationConsistency;
         this.arangoDatabases = arangoDatabases;
         this.utils = utils;
+        this.typeStatisticsRepository = typeStatisticsRepository;
     }
 
     public enum Progress {
@@ -74,12 +79,13 @@ public class HealthController {
             final Collection<CollectionEntity> collections = database.getCollections(new CollectionsReadOptions().excludeSystem(true));
             collections.forEach(collectionEntity -> {
                 checkRelationConsistency(database, collectionEntity, stage);
+                checkTypeStatistics(collectionEntity, stage);
             });
         }
     }
 
     private enum ConsistencyChecks{
-        RELATION_CONSISTENCY("relationConsistency");
+        RELATION_CONSISTENCY("relationConsistency"), TYPE_STATISTICS("typeStatistics");
 
         private final String identifier;
 
@@ -115,6 +121,34 @@ public class HealthController {
 
 
 
+    /**
+     * Rebuilds the type statistics of the collection from a scan and reports the counters which have deviated from
+     * the scanned values.
+     */
+    private void checkTypeStatistics(CollectionEntity collectionEntity, DataStage stage){
+        if(collectionEntity.getType() == CollectionType.DOCUMENT && !InternalSpace.INTERNAL_SPACENAMES.contains(collectionEntity.getName()) && !utils.isInternalCollection(new ArangoCollectionReference(collectionEntity.getName(), false))) {
+            final String started = DateTimeFormatter.ISO_INSTANT.format(Instant.now());
+            final Tuple<Map<String, Long>, Map<String, Long>> rebuild = typeStatisticsRepository.rebuild(stage, new SpaceName(collectionEntity.getName()));
+            Map<String, Map<String, Long>> deviations = new TreeMap<>();
+            if (rebuild.getA() != null) {
+                final Set<String> types = new HashSet<>(rebuild.getA().keySet());
+                types.addAll(rebuild.getB().keySet());
+                for (String type : types) {
+                    final long counted = rebuild.getA().getOrDefault(type, 0L);
+                    final long scanned = rebuild.getB().getOrDefault(type, 0L);
+                    if (counted != scanned) {
+                        deviations.put(type, Map.of("counted", counted, "scanned", scanned));
+                    }
+                }
+            }
+            if (!deviations.isEmpty()) {
+                logger.warn(String.format("The type statistics of %s (stage %s) have deviated for %d types - they have been rebuilt", collectionEntity.getName(), stage.name(), deviations.size()));
+            }
+            final ArangoCollectionReference collection = ArangoCollectionReference.fromSpace(new SpaceName(String.format("%s_%s", ConsistencyChecks.TYPE_STATISTICS.identifier, stage.name())));
+            utils.getOrCreateArangoCollection(arangoDatabases.getConsistencyChecksDB(), collection).insertDocument(createConsistencyResult(started, collectionEntity.getName(), deviations), new DocumentCreateOptions().overwriteMode(OverwriteMode.replace));
+        }
+    }
+
     private Map<String, Object> createConsistencyResult(String started, String name, Map<String, ?> data){
         Map<String, Object> result = new HashMap<>();
         result.put(ArangoVocabulary.KEY, name);
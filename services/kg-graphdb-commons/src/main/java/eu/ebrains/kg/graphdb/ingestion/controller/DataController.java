@@ -103,18 +103,22 @@ public class DataController {
         List<EdgeResolutionOperation> result = new ArrayList<>();
         List<ArangoEdge> unresolvedEdgesForIds = repository.findUnresolvedEdgesForIds(stage, allIdentifiers);
         for (ArangoEdge arangoEdge : unresolvedEdgesForIds) {
-            ArangoDocumentReference oldEdgeRef = arangoEdge.getId();
-            //Direct the found edges to the new document
-            arangoEdge.setTo(rootDocumentRef);
-            //Relocate the edge to the correct edge collection (according to the property label)
-            ArangoCollectionReference propertyEdgeCollection = ArangoCollectionReference.fromSpace(new SpaceName(arangoEdge.getOriginalLabel()), true);
-            arangoEdge.redefineId(propertyEdgeCollection.doc(arangoEdge.getKey()));
-            arangoEdge.setResolvedTargetId(idUtils.buildAbsoluteUrl(rootDocumentRef.getDocumentId()));
-            result.add(new EdgeResolutionOperation(oldEdgeRef, arangoEdge));
+            result.add(createResolutionForPreviouslyUnresolved(rootDocumentRef, arangoEdge));
         }
         return result;
     }
 
+    public EdgeResolutionOperation createResolutionForPreviouslyUnresolved(ArangoDocumentReference rootDocumentRef, ArangoEdge arangoEdge) {
+        ArangoDocumentReference oldEdgeRef = arangoEdge.getId();
+        //Direct the found edges to the new document
+        arangoEdge.setTo(rootDocumentRef);
+        //Relocate the edge to the correct edge collection (according to the property label)
+        ArangoCollectionReference propertyEdgeCollection = ArangoCollectionReference.fromSpace(new SpaceName(arangoEdge.getOriginalLabel()), true);
+        arangoEdge.redefineId(propertyEdgeCollection.doc(arangoEdge.getKey()));
+        arangoEdge.setResolvedTargetId(idUtils.buildAbsoluteUrl(rootDocumentRef.getDocumentId()));
+        return new EdgeResolutionOperation(oldEdgeRef, arangoEdge);
+    }
+
 
     private List<DBOperation> createTypeOperations(ArangoDocumentReference rootDocumentRef, DataStage stage, List<ArangoInstance> arangoInstances) {
         logger.trace("Handle types");
@@ -30,22 +30,24 @@ import eu.ebrains.kg.commons.jsonld.InferredJsonLdDoc;
 import eu.ebrains.kg.commons.jsonld.JsonLdId;
 import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
 import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.Event;
 import eu.ebrains.kg.commons.model.SpaceName;
 import eu.ebrains.kg.commons.model.TodoItem;
 import eu.ebrains.kg.commons.semantics.vocabularies.EBRAINSVocabulary;
 import eu.ebrains.kg.graphdb.commons.controller.ArangoRepositoryCommons;
 import eu.ebrains.kg.graphdb.commons.model.ArangoDocument;
+import eu.ebrains.kg.graphdb.commons.model.ArangoEdge;
 import eu.ebrains.kg.graphdb.commons.model.ArangoInstance;
 import eu.ebrains.kg.graphdb.ingestion.model.DBOperation;
 import eu.ebrains.kg.graphdb.ingestion.model.EdgeResolutionOperation;
 import eu.ebrains.kg.graphdb.ingestion.model.RemoveReleaseStateOperation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
-import java.util.Collections;
-import java.util.List;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Component
@@ -55,8 +57,6 @@ public class TodoListProcessor {
 
     private final StructureSplitter splitter;
 
-    private final MainEventTracker eventTracker;
-
     private final DataController dataController;
 
     private final IdUtils idUtils;
@@ -65,25 +65,38 @@ public class TodoListProcessor {
 
     private final ReleasingController releasingController;
 
+    private final int windowSize;
+
 
-    public TodoListProcessor(ArangoRepositoryCommons repository, StructureSplitter splitter, MainEventTracker eventTracker, IdUtils idUtils, DataController dataController, ReleasingController releasingController) {
+    public TodoListProcessor(ArangoRepositoryCommons repository, StructureSplitter splitter, IdUtils idUtils, DataController dataController, ReleasingController releasingController, @Value("${eu.ebrains.kg.graphdb.todoList.windowSize:100}") int windowSize) {
         this.repository = repository;
         this.splitter = splitter;
-        this.eventTracker = eventTracker;
         this.idUtils = idUtils;
         this.dataController = dataController;
         this.releasingController = releasingController;
+        this.windowSize = Math.max(1, windowSize);
     }
 
+    /**
+     * Processes the todo list in windows: Consecutive upserts and releases are combined into as few transactions as possible
+     * as long as they don't touch the same document (to keep the per-document order). Deletions and unreleases are destructive
+     * for incoming relations and are therefore processed one by one - they close the current window.
+     */
     public void doProcessTodoList(List<TodoItem> todoList, DataStage stage) {
+        TodoListWindow window = new TodoListWindow();
         for (TodoItem todoItem : todoList) {
             ArangoDocumentReference rootDocumentReference = ArangoCollectionReference.fromSpace(todoItem.getSpace()).doc(todoItem.getDocumentId());
             switch (todoItem.getType()) {
-                case UPDATE, INSERT -> {
-                    logger.info("Upserting a document");
-                    upsertDocument(rootDocumentReference, todoItem.getPayload(), stage, todoItem.getSpace());
+                case UPDATE, INSERT, RELEASE -> {
+                    if (window.size() >= windowSize || window.containsDocument(rootDocumentReference)) {
+                        processWindow(window);
+                        window = new TodoListWindow();
+                    }
+                    addToWindow(window, rootDocumentReference, todoItem, stage);
                 }
                 case DELETE -> {
+                    processWindow(window);
+                    window = new TodoListWindow();
                     logger.info("Removing an instance");
                     //Since we're going to do a "hard" delete, we also have to remove all instances that have been contributing to it.
                     final List<ArangoDocumentReference> nativeDocumentsByInferredInstance = getNativeDocumentsByInferredInstance(rootDocumentReference);
@@ -91,17 +104,58 @@ public class TodoListProcessor {
                     deleteDocument(DataStage.IN_PROGRESS, rootDocumentReference);
                 }
                 case UNRELEASE -> {
+                    processWindow(window);
+                    window = new TodoListWindow();
                     logger.info("Unreleasing a document");
                     unreleaseDocument(rootDocumentReference);
                 }
-                case RELEASE -> {
-                    logger.info("Releasing a document");
-                    releaseDocument(rootDocumentReference, todoItem.getPayload(), todoItem.getSpace());
+            }
+        }
+        processWindow(window);
+    }
+
+    private void addToWindow(TodoListWindow window, ArangoDocumentReference rootDocumentReference, TodoItem todoItem, DataStage stage) {
+        if (todoItem.getType() == Event.Type.RELEASE) {
+            logger.info("Releasing a document");
+            // Releasing a specific revision
+            window.addUpsert(DataStage.RELEASED, rootDocumentReference, createUpsertOperations(rootDocumentReference, todoItem.getPayload(), DataStage.RELEASED, todoItem.getSpace(), window), todoItem.getPayload());
+            window.addOperation(DataStage.IN_PROGRESS, releasingController.getReleaseStatusUpdateOperation(rootDocumentReference, true));
+        } else {
+            logger.info("Upserting a document");
+            window.addUpsert(stage, rootDocumentReference, createUpsertOperations(rootDocumentReference, todoItem.getPayload(), stage, todoItem.getSpace(), window), todoItem.getPayload());
+        }
+        window.registerDocument(rootDocumentReference);
+    }
+
+    private void processWindow(TodoListWindow window) {
+        if (window.size() == 0) {
+            return;
+        }
+        logger.debug(String.format("Processing a window of %d todo items", window.size()));
+        window.operationsByStage.forEach(repository::executeTransactional);
+        window.resolutionCandidatesByStage.forEach((s, candidates) -> repository.executeTransactional(s, createResolutionsForPreviouslyUnresolved(s, candidates, window.unresolvedEdgeOrigins)));
+    }
+
+    /**
+     * Resolves the previously unresolved edges for all documents of a window with a single lookup. To stay in line with
+     * the sequential processing, an edge is only resolved by a document which comes at or after the document which has
+     * created the unresolved edge within the same window. If several documents qualify, the first one wins.
+     */
+    private List<EdgeResolutionOperation> createResolutionsForPreviouslyUnresolved(DataStage stage, LinkedHashMap<ArangoDocumentReference, Set<String>> candidates, Map<ArangoDocumentReference, ArangoDocumentReference> unresolvedEdgeOrigins) {
+        List<ArangoDocumentReference> rootDocuments = new ArrayList<>(candidates.keySet());
+        Set<String> allIdentifiers = candidates.values().stream().flatMap(Collection::stream).collect(Collectors.toSet());
+        List<EdgeResolutionOperation> result = new ArrayList<>();
+        for (ArangoEdge unresolvedEdge : repository.findUnresolvedEdgesForIds(stage, allIdentifiers)) {
+            String originalTo = unresolvedEdge.getOriginalTo() != null ? unresolvedEdge.getOriginalTo().getId() : null;
+            int firstCandidate = Math.max(0, rootDocuments.indexOf(unresolvedEdgeOrigins.get(unresolvedEdge.getId())));
+            for (int i = firstCandidate; i < rootDocuments.size(); i++) {
+                if (candidates.get(rootDocuments.get(i)).contains(originalTo)) {
+                    result.add(dataController.createResolutionForPreviouslyUnresolved(rootDocuments.get(i), unresolvedEdge));
+                    break;
                 }
             }
-            logger.debug("Updating last seen event id");
-            eventTracker.updateLastSeenEventId(stage, todoItem.getEventId());
         }
+        return result;
     }
 
     private List<ArangoDocumentReference> getNativeDocumentsByInferredInstance(ArangoDocumentReference rootDocumentReference) {
@@ -120,12 +174,6 @@ public class TodoListProcessor {
         repository.executeTransactional(DataStage.IN_PROGRESS, Collections.singletonList(new RemoveReleaseStateOperation(releasingController.getReleaseStatusEdgeId(rootDocumentReference))));
     }
 
-    private void releaseDocument(ArangoDocumentReference rootDocumentReference, @NotNull NormalizedJsonLd payload, SpaceName spaceName) {
-        // Releasing a specific revision
-        upsertDocument(rootDocumentReference, payload, DataStage.RELEASED, spaceName);
-        repository.executeTransactional(DataStage.IN_PROGRESS, Collections.singletonList(releasingController.getReleaseStatusUpdateOperation(rootDocumentReference, true)));
-    }
-
 
     private boolean hasChangedReleaseStatus(DataStage stage, ArangoDocumentReference documentReference) {
         //TODO analyze payload for change by comparison with current instance - ignore alternatives
@@ -133,11 +181,7 @@ public class TodoListProcessor {
     }
 
     public ArangoDocumentReference upsertDocument(ArangoDocumentReference rootDocumentRef, @NotNull NormalizedJsonLd payload, DataStage stage, SpaceName spaceName) {
-        if(spaceName!=null){
-            payload.put(EBRAINSVocabulary.META_SPACE, spaceName);
-        }
-        List<ArangoInstance> arangoInstances = splitter.extractRelations(rootDocumentRef, payload);
-        List<DBOperation> upsertOperationsForDocument = dataController.createUpsertOperations(rootDocumentRef, stage, arangoInstances, hasChangedReleaseStatus(stage, rootDocumentRef));
+        List<DBOperation> upsertOperationsForDocument = createUpsertOperations(rootDocumentRef, payload, stage, spaceName, null);
         repository.executeTransactional(stage, upsertOperationsForDocument);
         List<EdgeResolutionOperation> lazyIdResolutionOperations;
         if (stage != DataStage.NATIVE) {
@@ -148,6 +192,19 @@ public class TodoListProcessor {
         return rootDocumentRef;
     }
 
+    private List<DBOperation> createUpsertOperations(ArangoDocumentReference rootDocumentRef, @NotNull NormalizedJsonLd payload, DataStage stage, SpaceName spaceName, TodoListWindow window) {
+        if(spaceName!=null){
+            payload.put(EBRAINSVocabulary.META_SPACE, spaceName);
+        }
+        List<ArangoInstance> arangoInstances = splitter.extractRelations(rootDocumentRef, payload);
+        List<DBOperation> operations = dataController.createUpsertOperations(rootDocumentRef, stage, arangoInstances, hasChangedReleaseStatus(stage, rootDocumentRef));
+        if (window != null) {
+            //We keep track of where the edges come from - this is relevant for those which could not be resolved and have therefore been moved to the unresolved space
+            arangoInstances.stream().filter(i -> i instanceof ArangoEdge).map(ArangoInstance::getId).filter(Objects::nonNull).forEach(edgeId -> window.unresolvedEdgeOrigins.put(edgeId, rootDocumentRef));
+        }
+        return operations;
+    }
+
 
     public void deleteDocument(DataStage stage, ArangoDocumentReference documentReference) {
         if (repository.doesDocumentExist(stage, documentReference)) {
@@ -157,4 +214,35 @@ public class TodoListProcessor {
             logger.warn(String.format("Tried to remove non-existent document with id %s in stage %s", documentReference.getId(), stage.name()));
         }
     }
+
+    private static class TodoListWindow {
+        private final Map<DataStage, List<DBOperation>> operationsByStage = new LinkedHashMap<>();
+        private final Map<DataStage, LinkedHashMap<ArangoDocumentReference, Set<String>>> resolutionCandidatesByStage = new LinkedHashMap<>();
+        private final Map<ArangoDocumentReference, ArangoDocumentReference> unresolvedEdgeOrigins = new HashMap<>();
+        private final Set<ArangoDocumentReference> documents = new HashSet<>();
+
+        private int size() {
+            return documents.size();
+        }
+
+        private boolean containsDocument(ArangoDocumentReference rootDocumentReference) {
+            return documents.contains(rootDocumentReference);
+        }
+
+        private void registerDocument(ArangoDocumentReference rootDocumentReference) {
+            documents.add(rootDocumentReference);
+        }
+
+        private void addOperation(DataStage stage, DBOperation operation) {
+            operationsByStage.computeIfAbsent(stage, s -> new ArrayList<>()).add(operation);
+        }
+
+        private void addUpsert(DataStage stage, ArangoDocumentReference rootDocumentReference, List<DBOperation> operations, NormalizedJsonLd payload) {
+            operationsByStage.computeIfAbsent(stage, s -> new ArrayList<>()).addAll(operations);
+            if (stage != DataStage.NATIVE) {
+                //We don't need to resolve links in NATIVE and neither do META structures... it is sufficient if we do this in IN_PROGRESS and RELEASED
+                resolutionCandidatesByStage.computeIfAbsent(stage, s -> new LinkedHashMap<>()).put(rootDocumentReference, payload.allIdentifiersIncludingId());
+            }
+        }
+    }
 }
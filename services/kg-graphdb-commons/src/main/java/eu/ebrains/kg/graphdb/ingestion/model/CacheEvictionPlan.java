@@ -23,8 +23,11 @@
 
 package eu.ebrains.kg.graphdb.ingestion.model;
 
-import java.util.List;
-import java.util.Objects;
+import eu.ebrains.kg.commons.jsonld.JsonLdConsts;
+import eu.ebrains.kg.commons.semantics.vocabularies.EBRAINSVocabulary;
+
+import java.util.*;
+import java.util.stream.Collectors;
 
 public class CacheEvictionPlan {
 
@@ -32,6 +35,36 @@ public class CacheEvictionPlan {
     private List<String> type;
     private String space;
     private List<String> properties;
+    private List<String> attributes;
+
+    /**
+     * Builds the plan of a document from its type, space and attribute names - the same way as if it was read from
+     * the database. Internal attributes, meta properties and JSON-LD keywords are not considered to be properties.
+     *
+     * @return the plan or null if the document is not relevant for the structure (because it is not typed or doesn't belong to a space)
+     */
+    public static CacheEvictionPlan of(String id, Object type, Object space, Collection<String> attributes) {
+        if (type == null || !(space instanceof String)) {
+            return null;
+        }
+        CacheEvictionPlan plan = new CacheEvictionPlan();
+        plan.setId(id);
+        if (type instanceof Collection) {
+            plan.setType(((Collection<?>) type).stream().filter(Objects::nonNull).map(Object::toString).collect(Collectors.toList()));
+        } else {
+            plan.setType(Collections.singletonList(type.toString()));
+        }
+        plan.setSpace((String) space);
+        //The properties are sorted to make plans comparable independently of the order of the attributes in the document
+        plan.setProperties(attributes.stream().filter(a -> !a.startsWith("_") && !a.startsWith(EBRAINSVocabulary.META) && !a.startsWith("@")).sorted().collect(Collectors.toList()));
+        //The attributes are all non-internal attribute names - the same as ATTRIBUTES(doc, true) returns them
+        plan.setAttributes(attributes.stream().filter(a -> !a.startsWith("_")).sorted().collect(Collectors.toList()));
+        return plan;
+    }
+
+    public static CacheEvictionPlan fromDocument(String id, Map<String, ?> document) {
+        return of(id, document.get(JsonLdConsts.TYPE), document.get(EBRAINSVocabulary.META_SPACE), document.keySet());
+    }
 
     public String getId() {
         return id;
@@ -65,6 +98,18 @@ public class CacheEvictionPlan {
         this.properties = properties;
     }
 
+    /**
+     * @return all non-internal attribute names of the document (including JSON-LD keywords and meta properties). They
+     * are not relevant for the cache eviction and are therefore not considered for equality.
+     */
+    public List<String> getAttributes() {
+        return attributes;
+    }
+
+    public void setAttributes(List<String> attributes) {
+        this.attributes = attributes;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
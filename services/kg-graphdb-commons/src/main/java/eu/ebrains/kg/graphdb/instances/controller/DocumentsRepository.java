@@ -28,6 +28,7 @@ import com.arangodb.model.AqlQueryOptions;
 import eu.ebrains.kg.arango.commons.ArangoQueries;
 import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
 import eu.ebrains.kg.arango.commons.aqlbuilder.ArangoVocabulary;
+import eu.ebrains.kg.arango.commons.aqlbuilder.TrustedAqlValue;
 import eu.ebrains.kg.arango.commons.model.*;
 import eu.ebrains.kg.commons.*;
 import eu.ebrains.kg.commons.api.Ids;
@@ -53,6 +54,8 @@ import java.util.stream.Collectors;
 @Component
 public class DocumentsRepository extends  AbstractRepository{
 
+    private static final List<TrustedAqlValue> CONTINUATION_SORT = List.of(AQL.trust("v." + IndexedJsonLdDoc.LABEL), AQL.trust("v." + ArangoVocabulary.KEY));
+
     private final ArangoDatabases databases;
     private final AuthContext authContext;
     private final PermissionsController permissionsController;
@@ -166,14 +169,23 @@ public class DocumentsRepository extends  AbstractRepository{
                 switch (mode) {
                     case SIMPLE, DYNAMIC -> {
                         addSearchFilter(bindVars, aql, search, searchableProperties != null && !searchableProperties.isEmpty());
-                        if (paginationParam.getSize() != null) {
-                            //We only sort if there is pagination involved.
-                            aql.addLine(AQL.trust(String.format("SORT v.%s, v.%s ASC", IndexedJsonLdDoc.LABEL, ArangoVocabulary.KEY)));
+                        if (paginationParam.isContinuationMode()) {
+                            aql.addContinuationPagination(CONTINUATION_SORT, paginationParam);
+                            bindVars.putAll(AQL.getContinuationBindVars(paginationParam));
+                        } else {
+                            if (paginationParam.getSize() != null) {
+                                //We only sort if there is pagination involved.
+                                aql.addLine(AQL.trust(String.format("SORT v.%s, v.%s ASC", IndexedJsonLdDoc.LABEL, ArangoVocabulary.KEY)));
+                            }
+                            aql.addPagination(paginationParam);
                         }
-                        aql.addPagination(paginationParam);
                     }
                 }
-                aql.addLine(AQL.trust("RETURN v"));
+                if (paginationParam.isContinuationMode() && mode != DocumentsByTypeMode.BY_ID) {
+                    aql.addLine(AQL.trust(String.format("RETURN MERGE(v, {\"%s\": %s})", AQL.CONTINUATION_KEY_FIELD, AQL.continuationKey(CONTINUATION_SORT).getValue())));
+                } else {
+                    aql.addLine(AQL.trust("RETURN v"));
+                }
                 Paginated<NormalizedJsonLd> normalizedJsonLdPaginated = ArangoQueries.queryDocuments(database, new AQLQuery(aql, bindVars), null);
                 embeddedAndAlternatives.handleAlternativesAndEmbedded(normalizedJsonLdPaginated.getData(), stage, alternatives, embedded);
                 exposeRevision(normalizedJsonLdPaginated.getData());
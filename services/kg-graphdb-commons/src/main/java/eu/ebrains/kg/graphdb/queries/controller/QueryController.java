@@ -25,7 +25,6 @@ package eu.ebrains.kg.graphdb.queries.controller;
 
 import com.arangodb.ArangoDBException;
 import com.arangodb.ArangoDatabase;
-import com.arangodb.entity.CollectionType;
 import eu.ebrains.kg.arango.commons.ArangoQueries;
 import eu.ebrains.kg.arango.commons.model.AQLQuery;
 import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
@@ -40,9 +39,7 @@ import eu.ebrains.kg.commons.query.KgQuery;
 import eu.ebrains.kg.graphdb.commons.controller.ArangoDatabases;
 import eu.ebrains.kg.graphdb.commons.controller.GraphDBArangoUtils;
 import eu.ebrains.kg.graphdb.commons.controller.PermissionsController;
-import eu.ebrains.kg.graphdb.queries.model.spec.Specification;
-import eu.ebrains.kg.graphdb.queries.utils.DataQueryBuilder;
-import eu.ebrains.kg.graphdb.queries.utils.SpecificationToScopeQueryAdapter;
+import eu.ebrains.kg.graphdb.queries.model.CompiledQuery;
 import eu.ebrains.kg.graphdb.structure.controller.MetaDataController;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,7 +55,9 @@ public class QueryController {
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    private final SpecificationInterpreter specificationInterpreter;
+    private static final int COLLECTION_NOT_FOUND = 1203;
+
+    private final QueryPlanCache queryPlanCache;
 
     private final PermissionsController permissionsController;
 
@@ -70,8 +69,8 @@ public class QueryController {
 
     private final Double maxMemoryForQuery;
 
-    public QueryController(SpecificationInterpreter specificationInterpreter, ArangoDatabases arangoDatabases, PermissionsController permissionsController, GraphDBArangoUtils graphDBArangoUtils, @Value("${eu.ebrains.kg.arango.maxMemory:#{null}}") Double maxMemoryForQuery, MetaDataController metaDataController) {
-        this.specificationInterpreter = specificationInterpreter;
+    public QueryController(QueryPlanCache queryPlanCache, ArangoDatabases arangoDatabases, PermissionsController permissionsController, GraphDBArangoUtils graphDBArangoUtils, @Value("${eu.ebrains.kg.arango.maxMemory:#{null}}") Double maxMemoryForQuery, MetaDataController metaDataController) {
+        this.queryPlanCache = queryPlanCache;
         this.arangoDatabases = arangoDatabases;
         this.graphDBArangoUtils = graphDBArangoUtils;
         this.permissionsController = permissionsController;
@@ -82,11 +81,12 @@ public class QueryController {
 
     public QueryResult query(UserWithRoles userWithRoles, KgQuery query, PaginationParam paginationParam, Map<String, String> filterValues, boolean scopeMode) {
         ArangoDatabase database = arangoDatabases.getByStage(query.getStage());
-        final Tuple<AQLQuery, Specification> q = query(database, userWithRoles, query, paginationParam, filterValues, scopeMode);
+        final Tuple<AQLQuery, CompiledQuery> q = query(database, userWithRoles, query, paginationParam, filterValues, scopeMode);
         try {
             return new QueryResult(ArangoQueries.queryDocuments(database, q.getA(), maxMemoryForQuery), q.getB().getResponseVocab());
         } catch (ArangoDBException ex) {
             logger.error(String.format("Was not able to execute query: %s", q.getA()));
+            evictOnMissingCollection(ex, query, paginationParam, scopeMode);
             // Test if the exception error num is for "Query use more memory than allowed"
             if (ex.getErrorNum()!=null && ex.getErrorNum() == 32) {
                 throw new LimitExceededException(String.format("%s - Bandwidth Limit Exceeded - %s", HttpStatus.BANDWIDTH_LIMIT_EXCEEDED.value(), ex.getErrorNum()));
@@ -98,21 +98,29 @@ public class QueryController {
 
     public StreamedQueryResult queryToStream(UserWithRoles userWithRoles, KgQuery query, PaginationParam paginationParam, Map<String, String> filterValues, boolean scopeMode) {
         ArangoDatabase database = arangoDatabases.getByStage(query.getStage());
-        final Tuple<AQLQuery, Specification> q = query(database, userWithRoles, query, paginationParam, filterValues, scopeMode);
+        final Tuple<AQLQuery, CompiledQuery> q = query(database, userWithRoles, query, paginationParam, filterValues, scopeMode);
         try {
             return new StreamedQueryResult(ArangoQueries.queryDocumentsAsStream(database, q.getA(), maxMemoryForQuery), q.getB().getResponseVocab());
         } catch (ArangoDBException ex) {
             logger.error(String.format("Was not able to execute query: %s", q.getA()));
+            evictOnMissingCollection(ex, query, paginationParam, scopeMode);
             throw ex;
         }
     }
 
 
-    private Tuple<AQLQuery, Specification> query(ArangoDatabase database, UserWithRoles userWithRoles, KgQuery query, PaginationParam paginationParam, Map<String, String> filterValues, boolean scopeMode) {
-        Specification specification = specificationInterpreter.readSpecification(query.getPayload());
+    /**
+     * The compiled query relies on the collections which existed at compilation time - if one of them has been removed, we need to recompile.
+     */
+    private void evictOnMissingCollection(ArangoDBException ex, KgQuery query, PaginationParam paginationParam, boolean scopeMode) {
+        if (ex.getErrorNum() != null && ex.getErrorNum() == COLLECTION_NOT_FOUND) {
+            queryPlanCache.evict(query, scopeMode, query.getRestrictToSpaces() != null, paginationParam);
+        }
+    }
+
+    private Tuple<AQLQuery, CompiledQuery> query(ArangoDatabase database, UserWithRoles userWithRoles, KgQuery query, PaginationParam paginationParam, Map<String, String> filterValues, boolean scopeMode) {
         Map<String, Object> whitelistFilter;
         if(scopeMode){
-            specification = new SpecificationToScopeQueryAdapter(specification).translate();
             // In scope mode, we don't apply the whitelist filter since we're only exposing ids and it is important
             // that we have the full scope of an instance
             whitelistFilter = null;
@@ -123,8 +131,10 @@ public class QueryController {
         graphDBArangoUtils.getOrCreateArangoCollection(database, ArangoCollectionReference.fromSpace(InternalSpace.TYPE_SPACE));
         graphDBArangoUtils.getOrCreateArangoCollection(database, InternalSpace.TYPE_EDGE_COLLECTION);
         final List<String> spaceRestrictions = query.getRestrictToSpaces() == null ? null : query.getRestrictToSpaces().stream().filter(Objects::nonNull).map(ArangoCollectionReference::fromSpace).map(ArangoCollectionReference::getCollectionName).collect(Collectors.toList());
-        AQLQuery aql = new DataQueryBuilder(specification, paginationParam, whitelistFilter, spaceRestrictions, query.getIdRestriction(), filterValues, database.getCollections().stream().map(c -> new ArangoCollectionReference(c.getName(), c.getType() == CollectionType.EDGES)).collect(Collectors.toList())).build();
-        return new Tuple<>(aql, specification);
+        //Only the structure of the request is relevant for the compiled query - the values are bound afterwards
+        final CompiledQuery compiledQuery = queryPlanCache.getCompiledQuery(database, query, scopeMode, whitelistFilter != null, spaceRestrictions != null, paginationParam, filterValues);
+        final AQLQuery aql = compiledQuery.bind(paginationParam, whitelistFilter, spaceRestrictions, query.getIdRestriction(), filterValues);
+        return new Tuple<>(aql, compiledQuery);
     }
 
 
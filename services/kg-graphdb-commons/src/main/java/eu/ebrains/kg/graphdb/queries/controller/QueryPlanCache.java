@@ -0,0 +1,157 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.queries.controller;
+
+import com.arangodb.ArangoDatabase;
+import com.arangodb.entity.CollectionType;
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.PaginationParam;
+import eu.ebrains.kg.commons.query.KgQuery;
+import eu.ebrains.kg.graphdb.queries.model.CompiledQuery;
+import eu.ebrains.kg.graphdb.queries.model.spec.Specification;
+import eu.ebrains.kg.graphdb.queries.utils.DataQueryBuilder;
+import eu.ebrains.kg.graphdb.queries.utils.SpecificationToScopeQueryAdapter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * A bounded (least recently used) cache of compiled queries. Plans are keyed by the content of the specification, the
+ * stage and the structure of the request - the values (pagination, whitelists, restrictions and filter values) are
+ * bound at execution time.
+ */
+@Component
+public class QueryPlanCache {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final SpecificationInterpreter specificationInterpreter;
+
+    private final JsonAdapter jsonAdapter;
+
+    private final Map<PlanKey, List<CompiledQuery>> plans;
+
+    public QueryPlanCache(SpecificationInterpreter specificationInterpreter, JsonAdapter jsonAdapter, @Value("${eu.ebrains.kg.graphdb.queries.planCacheSize:500}") int maxSize) {
+        this.specificationInterpreter = specificationInterpreter;
+        this.jsonAdapter = jsonAdapter;
+        this.plans = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanKey, List<CompiledQuery>> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    private static class PlanKey {
+        private final String specification;
+        private final DataStage stage;
+        private final boolean scopeMode;
+        private final boolean whitelist;
+        private final boolean spaceRestriction;
+        private final boolean idRestriction;
+        private final boolean limited;
+        private final boolean continuation;
+
+        private PlanKey(String specification, DataStage stage, boolean scopeMode, boolean whitelist, boolean spaceRestriction, boolean idRestriction, boolean limited, boolean continuation) {
+            this.specification = specification;
+            this.stage = stage;
+            this.scopeMode = scopeMode;
+            this.whitelist = whitelist;
+            this.spaceRestriction = spaceRestriction;
+            this.idRestriction = idRestriction;
+            this.limited = limited;
+            this.continuation = continuation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            PlanKey planKey = (PlanKey) o;
+            return scopeMode == planKey.scopeMode && whitelist == planKey.whitelist && spaceRestriction == planKey.spaceRestriction && idRestriction == planKey.idRestriction && limited == planKey.limited && continuation == planKey.continuation && Objects.equals(specification, planKey.specification) && stage == planKey.stage;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(specification, stage, scopeMode, whitelist, spaceRestriction, idRestriction, limited, continuation);
+        }
+    }
+
+    private PlanKey getKey(KgQuery query, boolean scopeMode, boolean whitelist, boolean spaceRestriction, PaginationParam paginationParam) {
+        return new PlanKey(jsonAdapter.toJson(query.getPayload()), query.getStage(), scopeMode, whitelist, spaceRestriction, query.getIdRestriction() != null, CompiledQuery.isLimited(paginationParam, query.getIdRestriction()), CompiledQuery.isContinuation(paginationParam, query.getIdRestriction()));
+    }
+
+    /**
+     * @return the compiled query for the given request - either from the cache or freshly compiled.
+     */
+    public CompiledQuery getCompiledQuery(ArangoDatabase database, KgQuery query, boolean scopeMode, boolean whitelist, boolean spaceRestriction, PaginationParam paginationParam, Map<String, String> filterValues) {
+        final PlanKey key = getKey(query, scopeMode, whitelist, spaceRestriction, paginationParam);
+        final List<CompiledQuery> variants = plans.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>());
+        final Optional<CompiledQuery> cached = variants.stream().filter(c -> c.isApplicableFor(filterValues)).findFirst();
+        List<ArangoCollectionReference> existingCollections = null;
+        if (cached.isPresent()) {
+            if (cached.get().getMissingCollections().isEmpty()) {
+                return cached.get();
+            }
+            //The traversals of the query point to collections which didn't exist on compilation - we need to check if they have been created in the meantime.
+            existingCollections = getExistingCollections(database);
+            if (cached.get().getMissingCollections().stream().noneMatch(existingCollections::contains)) {
+                return cached.get();
+            }
+            variants.remove(cached.get());
+        }
+        logger.debug(String.format("Compiling query for stage %s", query.getStage().name()));
+        Specification specification = specificationInterpreter.readSpecification(query.getPayload());
+        if (scopeMode) {
+            specification = new SpecificationToScopeQueryAdapter(specification).translate();
+        }
+        final CompiledQuery compiledQuery = new DataQueryBuilder(specification, paginationParam, whitelist ? Collections.emptyMap() : null, spaceRestriction ? Collections.emptyList() : null, query.getIdRestriction(), filterValues, existingCollections != null ? existingCollections : getExistingCollections(database)).compile();
+        variants.add(compiledQuery);
+        return compiledQuery;
+    }
+
+    /**
+     * Removes the compiled query for the given request - e.g. because a collection it relies on doesn't exist anymore.
+     */
+    public void evict(KgQuery query, boolean scopeMode, boolean spaceRestriction, PaginationParam paginationParam) {
+        plans.remove(getKey(query, scopeMode, true, spaceRestriction, paginationParam));
+        plans.remove(getKey(query, scopeMode, false, spaceRestriction, paginationParam));
+    }
+
+    public void clear() {
+        plans.clear();
+    }
+
+    private List<ArangoCollectionReference> getExistingCollections(ArangoDatabase database) {
+        return database.getCollections().stream().map(c -> new ArangoCollectionReference(c.getName(), c.getType() == CollectionType.EDGES)).collect(Collectors.toList());
+    }
+
+}
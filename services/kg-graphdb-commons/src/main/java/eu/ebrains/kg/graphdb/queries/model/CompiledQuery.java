@@ -0,0 +1,205 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.queries.model;
+
+import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
+import eu.ebrains.kg.arango.commons.model.AQLQuery;
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.commons.jsonld.InstanceId;
+import eu.ebrains.kg.commons.model.PaginationParam;
+import org.apache.commons.lang3.StringUtils;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * The compiled plan of a query specification: the AQL text and the bind variables which are independent of the
+ * execution. Request specific values (pagination, whitelists, restrictions and filter values) are only bound when
+ * the query is executed, so a compiled query can be reused as long as the structure of the request stays the same.
+ */
+public class CompiledQuery {
+
+    public static final String PAGINATION_FROM = "paginationFrom";
+    public static final String PAGINATION_SIZE = "paginationSize";
+    public static final String SPACE_RESTRICTION = "spaceRestriction";
+    public static final String ROOT_COLLECTION = "@rootCollection";
+    public static final String ROOT_ID = "rootId";
+
+    public enum ParameterState {
+        ABSENT, BLANK, PRESENT
+    }
+
+    public static class FilterBinding {
+        private final String key;
+        private final String fallbackValue;
+        private final boolean prefixWildcard;
+        private final boolean postfixWildcard;
+
+        public FilterBinding(String key, String fallbackValue, boolean prefixWildcard, boolean postfixWildcard) {
+            this.key = key;
+            this.fallbackValue = fallbackValue;
+            this.prefixWildcard = prefixWildcard;
+            this.postfixWildcard = postfixWildcard;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return the value to be bound for the given filter values or null if the filter doesn't apply.
+         */
+        public String resolve(Map<String, String> filterValues) {
+            String value = null;
+            if (filterValues.containsKey(key)) {
+                Object fromMap = filterValues.get(key);
+                value = fromMap != null ? URLDecoder.decode(fromMap.toString(), StandardCharsets.UTF_8) : null;
+            }
+            if (value == null) {
+                value = fallbackValue;
+            }
+            if (StringUtils.isNotBlank(value)) {
+                if (prefixWildcard && !value.startsWith("%")) {
+                    value = "%" + value;
+                }
+                if (postfixWildcard && !value.endsWith("%")) {
+                    value = value + "%";
+                }
+                return value;
+            }
+            return null;
+        }
+    }
+
+    private final String aql;
+    private final String responseVocab;
+    private final Map<String, Object> bindVarTemplate;
+    private final List<FilterBinding> filterBindings;
+    private final Map<String, ParameterState> parameterStates;
+    private final Set<ArangoCollectionReference> missingCollections;
+    private final boolean limited;
+    private final boolean continuation;
+
+    public CompiledQuery(String aql, String responseVocab, Map<String, Object> bindVarTemplate, List<FilterBinding> filterBindings, Map<String, ParameterState> parameterStates, Set<ArangoCollectionReference> missingCollections, boolean limited, boolean continuation) {
+        this.aql = aql;
+        this.responseVocab = responseVocab;
+        this.bindVarTemplate = Collections.unmodifiableMap(new HashMap<>(bindVarTemplate));
+        this.filterBindings = Collections.unmodifiableList(new ArrayList<>(filterBindings));
+        this.parameterStates = Collections.unmodifiableMap(new HashMap<>(parameterStates));
+        this.missingCollections = Collections.unmodifiableSet(new HashSet<>(missingCollections));
+        this.limited = limited;
+        this.continuation = continuation;
+    }
+
+    public static ParameterState getParameterState(Map<String, String> filterValues, String key) {
+        final String value = filterValues.get(key);
+        if (value == null) {
+            return ParameterState.ABSENT;
+        }
+        return StringUtils.isNotBlank(URLDecoder.decode(value, StandardCharsets.UTF_8)) ? ParameterState.PRESENT : ParameterState.BLANK;
+    }
+
+    /**
+     * If the query is restricted to a single instance, we might not need the size nor the total results
+     */
+    public static PaginationParam getEffectivePagination(PaginationParam pagination, InstanceId idRestriction) {
+        if (pagination != null && idRestriction != null) {
+            if (pagination.getSize() == null || pagination.getSize() > 0) {
+                pagination.setSize(null);
+                pagination.setReturnTotalResults(false);
+            }
+            pagination.setContinuationToken(null);
+        }
+        return pagination;
+    }
+
+    public static boolean isLimited(PaginationParam pagination, InstanceId idRestriction) {
+        final PaginationParam effectivePagination = getEffectivePagination(pagination, idRestriction);
+        return effectivePagination != null && effectivePagination.getSize() != null;
+    }
+
+    public static boolean isContinuation(PaginationParam pagination, InstanceId idRestriction) {
+        final PaginationParam effectivePagination = getEffectivePagination(pagination, idRestriction);
+        return effectivePagination != null && effectivePagination.isContinuationMode();
+    }
+
+    /**
+     * The structure of the query depends on the filter parameters which have been provided - the compiled query
+     * therefore can only be reused if they are in the same state.
+     */
+    public boolean isApplicableFor(Map<String, String> filterValues) {
+        final Map<String, String> values = filterValues == null ? Collections.emptyMap() : filterValues;
+        return parameterStates.entrySet().stream().allMatch(e -> getParameterState(values, e.getKey()) == e.getValue());
+    }
+
+    public AQLQuery bind(PaginationParam pagination, Map<String, Object> whitelistFilter, List<String> spaceRestriction, InstanceId idRestriction, Map<String, String> filterValues) {
+        Map<String, Object> bindVars = new HashMap<>(bindVarTemplate);
+        if (whitelistFilter != null) {
+            bindVars.putAll(whitelistFilter);
+        }
+        if (spaceRestriction != null) {
+            bindVars.put(SPACE_RESTRICTION, spaceRestriction);
+        }
+        if (idRestriction != null) {
+            bindVars.put(ROOT_COLLECTION, ArangoCollectionReference.fromSpace(idRestriction.getSpace()).getCollectionName());
+            bindVars.put(ROOT_ID, idRestriction.getUuid().toString());
+        }
+        final Map<String, String> values = filterValues == null ? Collections.emptyMap() : filterValues;
+        for (FilterBinding filterBinding : filterBindings) {
+            bindVars.putIfAbsent(filterBinding.getKey(), filterBinding.resolve(values));
+        }
+        AQL query = new AQL();
+        query.add(AQL.trust(aql));
+        final PaginationParam effectivePagination = getEffectivePagination(pagination, idRestriction);
+        query.specifyPagination(effectivePagination);
+        if (continuation) {
+            bindVars.putAll(AQL.getContinuationBindVars(effectivePagination));
+        } else if (limited) {
+            bindVars.put(PAGINATION_FROM, effectivePagination.getFrom());
+            bindVars.put(PAGINATION_SIZE, effectivePagination.getSize());
+        }
+        return new AQLQuery(query, bindVars);
+    }
+
+    public String getAql() {
+        return aql;
+    }
+
+    public String getResponseVocab() {
+        return responseVocab;
+    }
+
+    public Set<ArangoCollectionReference> getMissingCollections() {
+        return missingCollections;
+    }
+
+    public boolean isLimited() {
+        return limited;
+    }
+
+    public boolean isContinuation() {
+        return continuation;
+    }
+}
@@ -30,15 +30,13 @@ import eu.ebrains.kg.arango.commons.model.InternalSpace;
 import eu.ebrains.kg.commons.jsonld.InstanceId;
 import eu.ebrains.kg.commons.model.PaginationParam;
 import eu.ebrains.kg.commons.model.Type;
+import eu.ebrains.kg.graphdb.queries.model.CompiledQuery;
 import eu.ebrains.kg.graphdb.queries.model.fieldFilter.Op;
 import eu.ebrains.kg.graphdb.queries.model.fieldFilter.PropertyFilter;
 import eu.ebrains.kg.graphdb.queries.model.spec.SpecProperty;
 import eu.ebrains.kg.graphdb.queries.model.spec.SpecTraverse;
 import eu.ebrains.kg.graphdb.queries.model.spec.Specification;
-import org.apache.commons.lang3.StringUtils;
 
-import java.net.URLDecoder;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -51,6 +49,9 @@ public class DataQueryBuilder {
     private final AQL q;
     private final Map<String, String> filterValues;
     private final Map<String, Object> bindVars = new HashMap<>();
+    private final List<CompiledQuery.FilterBinding> filterBindings = new ArrayList<>();
+    private final Map<String, CompiledQuery.ParameterState> parameterStates = new HashMap<>();
+    private final Set<ArangoCollectionReference> missingCollections = new HashSet<>();
 
     private final List<ArangoCollectionReference> existingCollections;
     private final Map<String, Object> whiteListFilter;
@@ -67,16 +68,20 @@ public class DataQueryBuilder {
     }
 
     public AQLQuery build() {
+        return compile().bind(pagination, whiteListFilter, spaceRestriction, idRestriction, filterValues);
+    }
+
+    /**
+     * Compiles the specification to a query which only depends on the structure of the request (e.g. if there is a
+     * whitelist or a pagination) but not on its actual values - they are bound by {@link CompiledQuery#bind}.
+     */
+    public CompiledQuery compile() {
         //Define the global parameters
         ArangoAlias rootAlias = new ArangoAlias("root");
 
         //Setup the root instance
         defineRootInstance();
 
-        if(spaceRestriction!=null){
-            bindVars.put("spaceRestriction", spaceRestriction);
-        }
-
         addDocumentFilterWithWhitelistFilter(q, rootAlias.getArangoDocName(), whiteListFilter, spaceRestriction);
 
         //Define the complex fields (the ones with traversals)
@@ -85,23 +90,26 @@ public class DataQueryBuilder {
         //Define filters
         q.add(new FilterBuilder(rootAlias, specification.getDocumentFilter(), specification.getProperties()).getFilter());
 
-        //Define sorting
-        q.addLine(new SortBuilder(rootAlias, specification.getProperties()).getSort());
-
-        //Pagination
-        if(pagination != null && idRestriction != null){
-            //If the query is id restricted we might not need the size nor the total results
-            if(pagination.getSize()==null || pagination.getSize() > 0) {
-                pagination.setSize(null);
-                pagination.setReturnTotalResults(false);
+        //Define sorting and pagination
+        final boolean limited = CompiledQuery.isLimited(pagination, idRestriction);
+        final boolean continuation = CompiledQuery.isContinuation(pagination, idRestriction);
+        final SortBuilder sortBuilder = new SortBuilder(rootAlias, specification.getProperties());
+        final ReturnBuilder returnBuilder = new ReturnBuilder(rootAlias, null, specification.getProperties());
+        if (continuation) {
+            final List<TrustedAqlValue> continuationSort = sortBuilder.getContinuationSort();
+            q.addContinuationPagination(continuationSort, pagination);
+            returnBuilder.setContinuationKey(continuationKey(continuationSort));
+        } else {
+            q.addLine(sortBuilder.getSort());
+            if (limited) {
+                q.addLine(trust(String.format("LIMIT @%s, @%s", CompiledQuery.PAGINATION_FROM, CompiledQuery.PAGINATION_SIZE)));
             }
         }
-        q.addPagination(pagination);
 
         //Define return value
-        q.add(new ReturnBuilder(rootAlias, null, specification.getProperties()).getReturnStructure());
+        q.add(returnBuilder.getReturnStructure());
 
-        return new AQLQuery(q, bindVars);
+        return new CompiledQuery(q.build().getValue(), specification.getResponseVocab(), bindVars, filterBindings, parameterStates, missingCollections, limited, continuation);
     }
 
     public DataQueryBuilder(Specification specification, PaginationParam pagination, Map<String, Object> whitelistFilter, List<String> spaceRestriction, InstanceId idRestriction, Map<String, String> filterValues, List<ArangoCollectionReference> existingCollections) {
@@ -118,12 +126,9 @@ public class DataQueryBuilder {
     public void defineRootInstance() {
         if (whiteListFilter != null) {
             this.q.specifyWhitelist();
-            this.bindVars.putAll(whiteListFilter);
         }
         if(idRestriction != null) {
-            this.q.addLine(trust("LET root_doc = DOCUMENT(@@rootCollection, @rootId)"));
-            this.bindVars.put("@rootCollection", ArangoCollectionReference.fromSpace(idRestriction.getSpace()).getCollectionName());
-            this.bindVars.put("rootId",idRestriction.getUuid().toString());
+            this.q.addLine(trust(String.format("LET root_doc = DOCUMENT(@%s, @%s)", CompiledQuery.ROOT_COLLECTION, CompiledQuery.ROOT_ID)));
         }
         else {
             this.q.addLine(trust("FOR root_doc IN 1..1 OUTBOUND DOCUMENT(@@typeCollection, @typeId) @@typeRelation"));
@@ -153,7 +158,7 @@ public class DataQueryBuilder {
             aql.addDocumentFilterWithWhitelistFilter(documentAlias);
         }
         if(spaceRestriction!=null) {
-            aql.addLine(trust("FILTER " + documentAlias.getValue() + "." + ArangoVocabulary.COLLECTION + " IN @spaceRestriction"));
+            aql.addLine(trust("FILTER " + documentAlias.getValue() + "." + ArangoVocabulary.COLLECTION + " IN @" + CompiledQuery.SPACE_RESTRICTION));
         }
     }
 
@@ -233,7 +238,12 @@ public class DataQueryBuilder {
         }
 
         boolean traverseExists(SpecTraverse traverse) {
-            return existingCollections.contains(fromSpecTraversal(traverse));
+            final ArangoCollectionReference collection = fromSpecTraversal(traverse);
+            if (existingCollections.contains(collection)) {
+                return true;
+            }
+            missingCollections.add(collection);
+            return false;
         }
 
 
@@ -401,6 +411,7 @@ public class DataQueryBuilder {
         private final List<SpecProperty> properties;
         private final ArangoAlias parentAlias;
         private final SpecProperty parentProperty;
+        private TrustedAqlValue continuationKey;
 
         public ReturnBuilder(ArangoAlias parentAlias, SpecProperty parentProperty, List<SpecProperty> properties) {
             this.properties = properties;
@@ -408,6 +419,13 @@ public class DataQueryBuilder {
             this.parentProperty = parentProperty;
         }
 
+        /**
+         * Adds the sort key of the keyset pagination to the returned structure
+         */
+        void setContinuationKey(TrustedAqlValue continuationKey) {
+            this.continuationKey = continuationKey;
+        }
+
         TrustedAqlValue getReturnStructure() {
             AQL aql = new AQL();
 
@@ -447,11 +465,14 @@ public class DataQueryBuilder {
                     fieldResult.add(new TrustedAqlValue("\"${fieldName}\": ${fieldRepresentation}"));
                     fieldResult.setParameter("fieldName", field.propertyName);
                     fieldResult.setTrustedParameter("fieldRepresentation", getRepresentationOfField(parentAlias, field));
-                    if (field != properties.get(properties.size() - 1)) {
+                    if (field != properties.get(properties.size() - 1) || continuationKey != null) {
                         fieldResult.addComma();
                     }
                     aql.addLine(fieldResult.build());
                 }
+                if (continuationKey != null) {
+                    aql.addLine(trust(String.format("\"%s\": %s", CONTINUATION_KEY_FIELD, continuationKey.getValue())));
+                }
                 aql.outdent();
                 aql.addLine(trust("}"));
             }
@@ -497,6 +518,19 @@ public class DataQueryBuilder {
             return null;
         }
 
+        /**
+         * @return the sort expressions of the keyset pagination - the sort fields with the key of the document as
+         * tie-breaker (so the combination is unique)
+         */
+        List<TrustedAqlValue> getContinuationSort() {
+            List<TrustedAqlValue> sort = new ArrayList<>();
+            for (SpecProperty sortField : fieldsWithSort()) {
+                sort.add(getRepresentationOfField(parentAlias, sortField));
+            }
+            sort.add(trust(parentAlias.getArangoDocName().getValue() + "." + ArangoVocabulary.KEY));
+            return sort;
+        }
+
 
     }
 
@@ -573,29 +607,18 @@ public class DataQueryBuilder {
 
 
         private TrustedAqlValue createAqlForFilter(PropertyFilter fieldFilter, boolean prefixWildcard, boolean postfixWildcard) {
-            String value = null;
             String key;
             if (fieldFilter.getParameter() != null) {
                 key = fieldFilter.getParameter().getName();
             } else {
-                key = "staticFilter" + DataQueryBuilder.this.bindVars.size();
+                key = "staticFilter" + (DataQueryBuilder.this.bindVars.size() + DataQueryBuilder.this.filterBindings.size());
             }
-            if (DataQueryBuilder.this.filterValues.containsKey(key)) {
-                Object fromMap = DataQueryBuilder.this.filterValues.get(key);
-                value = fromMap != null ? URLDecoder.decode(fromMap.toString(), StandardCharsets.UTF_8) : null;
-            }
-            if (value == null && fieldFilter.getValue() != null) {
-                value = fieldFilter.getValue().getValue();
-            }
-            if (StringUtils.isNotBlank(value) && key != null) {
-                if (prefixWildcard && !value.startsWith("%")) {
-                    value = "%" + value;
-                }
-                if (postfixWildcard && !value.endsWith("%")) {
-                    value = value + "%";
-                }
-                if(!DataQueryBuilder.this.bindVars.containsKey(key)) {
-                    DataQueryBuilder.this.bindVars.put(key, value);
+            //The value is bound later on - but whether the filter applies or not depends on the state of the parameter
+            CompiledQuery.FilterBinding filterBinding = new CompiledQuery.FilterBinding(key, fieldFilter.getValue() != null ? fieldFilter.getValue().getValue() : null, prefixWildcard, postfixWildcard);
+            DataQueryBuilder.this.parameterStates.put(key, CompiledQuery.getParameterState(DataQueryBuilder.this.filterValues, key));
+            if (filterBinding.resolve(DataQueryBuilder.this.filterValues) != null) {
+                if (DataQueryBuilder.this.filterBindings.stream().noneMatch(b -> b.getKey().equals(key))) {
+                    DataQueryBuilder.this.filterBindings.add(filterBinding);
                 }
                 AQL aql = new AQL();
                 if (fieldFilter.getOp().isInstanceFilter()) {
@@ -35,13 +35,10 @@ import eu.ebrains.kg.graphdb.ingestion.model.CacheEvictionPlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.lang.NonNull;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import javax.annotation.PostConstruct;
-import java.time.Duration;
-import java.time.LocalDateTime;
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -52,6 +49,7 @@ public class CacheController {
     private final StructureRepository structureRepository;
     private final MetaDataController metaDataController;
     private final AuthContext authContext;
+    private final StructureCacheRefresher structureCacheRefresher;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -61,10 +59,11 @@ public class CacheController {
     }
 
 
-    public CacheController(StructureRepository structureRepository, MetaDataController metaDataController, AuthContext authContext) {
+    public CacheController(StructureRepository structureRepository, MetaDataController metaDataController, AuthContext authContext, StructureCacheRefresher structureCacheRefresher) {
         this.structureRepository = structureRepository;
         this.metaDataController = metaDataController;
         this.authContext = authContext;
+        this.structureCacheRefresher = structureCacheRefresher;
     }
 
     private Set<String> getDeleteIds(Map<String, CacheEvictionPlan> plansBeforeTransaction, Map<String, CacheEvictionPlan> plansAfterTransaction) {
@@ -198,11 +197,6 @@ public class CacheController {
         return createIds.stream().map(c -> plansAfterTransaction.get(c).getSpace()).filter(c -> !InternalSpace.INTERNAL_SPACENAMES.contains(c)).anyMatch(c -> !existingSpaces.contains(c));
     }
 
-    private final Map<Tuple<SpaceName, DataStage>, LocalDateTime> deferredSpaceTypesForCacheEviction = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Tuple<Tuple<SpaceName, String>, DataStage>, LocalDateTime> deferredSpaceTypesForPropertyEviction = Collections.synchronizedMap(new HashMap<>());
-    private final Map<Tuple<Triple<SpaceName, String, String>, DataStage>, LocalDateTime> deferredSpaceTypePropertiesForTargetTypeEviction = Collections.synchronizedMap(new HashMap<>());
-
-
     public void evictCacheByPlan(DataStage stage, List<CacheEvictionPlan> plansBeforeTransaction, List<CacheEvictionPlan> plansAfterTransaction) {
         final Map<String, CacheEvictionPlan> beforeTransactionById = plansBeforeTransaction.stream().collect(Collectors.toMap(CacheEvictionPlan::getId, v -> v));
         final Map<String, CacheEvictionPlan> afterTransactionById = plansAfterTransaction.stream().collect(Collectors.toMap(CacheEvictionPlan::getId, v -> v));
@@ -213,51 +207,22 @@ public class CacheController {
         final Set<String> updateIds = getUpdateIds(beforeTransactionById, afterTransactionById);
         final List<Space> allSpaces = this.metaDataController.getSpaces(stage, authContext.getUserWithRoles());
 
-
+        //The outdated entries keep serving their previous value until they are refreshed in the background
         final Set<SpaceName> spaceTypesForCacheEviction = findSpacesForCacheEviction(beforeTransactionById, afterTransactionById, createIds, deleteIds, updateIds);
         final boolean forceReflectSpaces = hasCreatedOrRemovedSpaces(allSpaces, beforeTransactionById, afterTransactionById, createIds, deleteIds) || allSpaces.stream().anyMatch(s -> !s.isExistsInDB() && spaceTypesForCacheEviction.contains(s.getName()));
         if (forceReflectSpaces) {
-            structureRepository.evictReflectedSpacesCache(stage);
+            structureCacheRefresher.scheduleRefresh(Arrays.asList("reflectedSpaces", stage), false, () -> structureRepository.refreshReflectedSpacesCache(stage), () -> structureRepository.evictReflectedSpacesCache(stage));
         }
 
+        //The refresh of the spaces with a deferred cache is delayed so a bulk of changes only causes a single refresh
         final Set<SpaceName> deferredCacheEvictionSpaces = allSpaces.stream().filter(Space::isDeferCache).map(Space::getName).collect(Collectors.toSet());
-        //Evict all of those which are not deferred
-        spaceTypesForCacheEviction.stream().filter(s -> !deferredCacheEvictionSpaces.contains(s)).forEach(s -> structureRepository.evictTypesInSpaceCache(stage, s));
-        spaceTypesForCacheEviction.stream().filter(deferredCacheEvictionSpaces::contains).forEach(s -> deferredSpaceTypesForCacheEviction.put(new Tuple<>(s, stage), LocalDateTime.now()));
-
+        spaceTypesForCacheEviction.forEach(s -> structureCacheRefresher.scheduleRefresh(Arrays.asList("typesInSpace", stage, s), deferredCacheEvictionSpaces.contains(s), () -> structureRepository.refreshTypesInSpaceCache(stage, s), () -> structureRepository.evictTypesInSpaceCache(stage, s)));
 
         final Set<Tuple<SpaceName, String>> spaceTypesForPropertyEviction = findSpaceTypesForPropertyEviction(beforeTransactionById, afterTransactionById, createIds, deleteIds, updateIds);
-        spaceTypesForPropertyEviction.stream().filter(t -> !deferredCacheEvictionSpaces.contains(t.getA())).forEach(t -> structureRepository.evictPropertiesOfTypeInSpaceCache(stage, t.getA(), t.getB()));
-        spaceTypesForPropertyEviction.stream().filter(t -> deferredCacheEvictionSpaces.contains(t.getA())).forEach(t -> deferredSpaceTypesForPropertyEviction.put(new Tuple<>(t, stage), LocalDateTime.now()));
+        spaceTypesForPropertyEviction.forEach(t -> structureCacheRefresher.scheduleRefresh(Arrays.asList("propertiesOfTypeInSpace", stage, t.getA(), t.getB()), deferredCacheEvictionSpaces.contains(t.getA()), () -> structureRepository.refreshPropertiesOfTypeInSpaceCache(stage, t.getA(), t.getB()), () -> structureRepository.evictPropertiesOfTypeInSpaceCache(stage, t.getA(), t.getB())));
 
         final List<String> allRelevantEdges = structureRepository.getAllRelevantEdges(stage);
         final Set<Triple<SpaceName, String, String>> spaceTypePropertiesForTargetTypeEviction = findSpaceTypePropertiesForTargetTypeEviction(beforeTransactionById, afterTransactionById, createIds, deleteIds, updateIds, allRelevantEdges);
-        spaceTypePropertiesForTargetTypeEviction.stream().filter(p -> !deferredCacheEvictionSpaces.contains(p.getA())).forEach(p -> structureRepository.evictTargetTypesCache(stage, p.getA(), p.getB(), p.getC()));
-        spaceTypePropertiesForTargetTypeEviction.stream().filter(p -> deferredCacheEvictionSpaces.contains(p.getA())).forEach(p -> deferredSpaceTypePropertiesForTargetTypeEviction.put(new Tuple<>(p, stage), LocalDateTime.now()));
-    }
-
-    private static final int DEFER_CACHE_EVICTION_DELAY_IN_S = 30;
-    private static final int DEFER_CACHE_EVICTION_MAX_MAP_ENTRIES = 1000;
-
-    @Scheduled(fixedRate = 30000)
-    public synchronized void checkDeferredCacheEviction() {
-            logger.info("Checking for deferred cache eviction...");
-            final Set<Tuple<SpaceName, DataStage>> handledSpaceTypes = deferredSpaceTypesForCacheEviction.keySet().stream().filter(k ->
-                    deferredSpaceTypesForCacheEviction.size() > DEFER_CACHE_EVICTION_MAX_MAP_ENTRIES ||
-                            Duration.between(deferredSpaceTypesForCacheEviction.get(k), LocalDateTime.now()).toSeconds()
-                                    > DEFER_CACHE_EVICTION_DELAY_IN_S).peek(k -> structureRepository.refreshTypesInSpaceCache(k.getB(), k.getA())).collect(Collectors.toSet());
-            handledSpaceTypes.forEach(deferredSpaceTypesForCacheEviction::remove);
-
-            final Set<Tuple<Tuple<SpaceName, String>, DataStage>> handledSpaceTypesForProperty = deferredSpaceTypesForPropertyEviction.keySet().stream().filter(k ->
-                            deferredSpaceTypesForPropertyEviction.size() > DEFER_CACHE_EVICTION_MAX_MAP_ENTRIES ||
-                                    Duration.between(deferredSpaceTypesForPropertyEviction.get(k), LocalDateTime.now()).toSeconds() > DEFER_CACHE_EVICTION_DELAY_IN_S).
-                    peek(k -> structureRepository.refreshPropertiesOfTypeInSpaceCache(k.getB(), k.getA().getA(), k.getA().getB())).collect(Collectors.toSet());
-            handledSpaceTypesForProperty.forEach(deferredSpaceTypesForPropertyEviction::remove);
-
-            final Set<Tuple<Triple<SpaceName, String, String>, DataStage>> handledSpaceTypePropertiesForTargetType = deferredSpaceTypePropertiesForTargetTypeEviction.keySet().stream().filter(k ->
-                            deferredSpaceTypePropertiesForTargetTypeEviction.size() > DEFER_CACHE_EVICTION_MAX_MAP_ENTRIES ||
-                                    Duration.between(deferredSpaceTypePropertiesForTargetTypeEviction.get(k), LocalDateTime.now()).toSeconds() > DEFER_CACHE_EVICTION_DELAY_IN_S).
-                    peek(k -> structureRepository.refreshTargetTypesCache(k.getB(), k.getA().getA(), k.getA().getB(), k.getA().getC())).collect(Collectors.toSet());
-            handledSpaceTypePropertiesForTargetType.forEach(deferredSpaceTypePropertiesForTargetTypeEviction::remove);
+        spaceTypePropertiesForTargetTypeEviction.forEach(p -> structureCacheRefresher.scheduleRefresh(Arrays.asList("targetTypes", stage, p.getA(), p.getB(), p.getC()), deferredCacheEvictionSpaces.contains(p.getA()), () -> structureRepository.refreshTargetTypesCache(stage, p.getA(), p.getB(), p.getC()), () -> structureRepository.evictTargetTypesCache(stage, p.getA(), p.getB(), p.getC())));
     }
 }
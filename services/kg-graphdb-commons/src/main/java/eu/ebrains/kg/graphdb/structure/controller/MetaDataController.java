@@ -55,17 +55,23 @@ public class MetaDataController {
 
     private final StructureRepository structureRepository;
     private final PermissionsController permissionsController;
+    private final StructureCacheSnapshots structureCacheSnapshots;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public MetaDataController(StructureRepository structureRepository, PermissionsController permissionsController) {
+    public MetaDataController(StructureRepository structureRepository, PermissionsController permissionsController, StructureCacheSnapshots structureCacheSnapshots) {
         this.structureRepository = structureRepository;
         this.permissionsController = permissionsController;
+        this.structureCacheSnapshots = structureCacheSnapshots;
     }
 
     @Async
     public void initializeCache() {
         logger.info("Initial cache population");
+        //The reflection caches are restored from their snapshots or reflected in parallel...
+        structureCacheSnapshots.warmUp(DataStage.IN_PROGRESS);
+        structureCacheSnapshots.warmUp(DataStage.RELEASED);
+        //... the remaining (specification) caches are populated by reading the whole structure
         readMetaDataStructure(DataStage.IN_PROGRESS, null, null, true, true, UserWithRoles.INTERNAL_ADMIN, null, null, null);
         readMetaDataStructure(DataStage.RELEASED, null, null, true, true, UserWithRoles.INTERNAL_ADMIN, null, null, null);
 
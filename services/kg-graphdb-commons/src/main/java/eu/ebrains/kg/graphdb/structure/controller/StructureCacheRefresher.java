@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Refreshes outdated structure cache entries in the background (stale-while-revalidate): Instead of evicting an entry
+ * (which would make the next request pay for the reflection), the entry keeps serving its previous value until a single
+ * background task has recomputed it. Multiple changes of the same entry are coalesced into a single refresh.
+ * <p>
+ * If an entry can't be refreshed within the maximal staleness (e.g. because the refresh queue is congested or the
+ * refresh fails), it is evicted - the next request then reflects it synchronously as before.
+ */
+@Component
+public class StructureCacheRefresher {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final long maxStalenessInMs;
+
+    private final long deferredRefreshDelayInMs;
+
+    private final int maxPendingRefreshes;
+
+    private final LongSupplier clock;
+
+    private final Map<List<Object>, PendingRefresh> pendingRefreshes = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean refreshTriggered = new AtomicBoolean();
+
+    private ScheduledExecutorService refresher;
+
+    public StructureCacheRefresher(@Value("${eu.ebrains.kg.graphdb.structureCache.maxStalenessInMs:60000}") long maxStalenessInMs, @Value("${eu.ebrains.kg.graphdb.structureCache.deferredRefreshDelayInMs:30000}") long deferredRefreshDelayInMs, @Value("${eu.ebrains.kg.graphdb.structureCache.maxPendingRefreshes:1000}") int maxPendingRefreshes) {
+        this(maxStalenessInMs, deferredRefreshDelayInMs, maxPendingRefreshes, System::currentTimeMillis);
+    }
+
+    StructureCacheRefresher(long maxStalenessInMs, long deferredRefreshDelayInMs, int maxPendingRefreshes, LongSupplier clock) {
+        this.maxStalenessInMs = maxStalenessInMs;
+        this.deferredRefreshDelayInMs = deferredRefreshDelayInMs;
+        this.maxPendingRefreshes = maxPendingRefreshes;
+        this.clock = clock;
+    }
+
+    private static class PendingRefresh {
+        private final Runnable refresh;
+        private final Runnable eviction;
+        private final long staleSince;
+        private final long notBefore;
+
+        private PendingRefresh(Runnable refresh, Runnable eviction, long staleSince, long notBefore) {
+            this.refresh = refresh;
+            this.eviction = eviction;
+            this.staleSince = staleSince;
+            this.notBefore = notBefore;
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "structure-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //The periodic run picks up the deferred refreshes - the others are triggered immediately
+        refresher.scheduleWithFixedDelay(this::refreshDueEntries, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Marks a cache entry as outdated and schedules its refresh.
+     *
+     * @param key      the identifier of the cache entry (the name of the cache and the arguments of the reflection)
+     * @param deferred if true, the refresh is delayed (so a bulk of changes only causes a single refresh)
+     * @param refresh  recomputes the entry and puts it into the cache
+     * @param eviction evicts the entry from the cache (in case it can't be refreshed in time)
+     */
+    public void scheduleRefresh(List<Object> key, boolean deferred, Runnable refresh, Runnable eviction) {
+        final long now = clock.getAsLong();
+        evictOverdueEntries(now);
+        if (pendingRefreshes.size() >= maxPendingRefreshes && !pendingRefreshes.containsKey(key)) {
+            //There are too many changes to keep up with - we fall back to the eviction
+            eviction.run();
+            return;
+        }
+        //If there is already a pending refresh for the entry, it will cover this change too.
+        pendingRefreshes.putIfAbsent(key, new PendingRefresh(refresh, eviction, now, deferred ? now + deferredRefreshDelayInMs : now));
+        if (!deferred && refresher != null && refreshTriggered.compareAndSet(false, true)) {
+            refresher.execute(() -> {
+                refreshTriggered.set(false);
+                refreshDueEntries();
+            });
+        }
+    }
+
+    /**
+     * Refreshes all entries which are due. An entry is removed from the pending refreshes before it is recomputed - a
+     * change happening during the refresh therefore schedules another one.
+     */
+    void refreshDueEntries() {
+        final long now = clock.getAsLong();
+        evictOverdueEntries(now);
+        pendingRefreshes.forEach((key, pendingRefresh) -> {
+            if (pendingRefresh.notBefore <= now && pendingRefreshes.remove(key, pendingRefresh)) {
+                try {
+                    pendingRefresh.refresh.run();
+                } catch (Exception e) {
+                    logger.warn(String.format("Was not able to refresh the structure cache entry %s - evicting it instead", key), e);
+                    pendingRefresh.eviction.run();
+                }
+            }
+        });
+    }
+
+    private void evictOverdueEntries(long now) {
+        pendingRefreshes.forEach((key, pendingRefresh) -> {
+            if (now - pendingRefresh.staleSince > maxStalenessInMs && pendingRefreshes.remove(key, pendingRefresh)) {
+                logger.debug(String.format("The structure cache entry %s has been stale for too long - evicting it", key));
+                pendingRefresh.eviction.run();
+            }
+        });
+    }
+
+    int getNumberOfPendingRefreshes() {
+        return pendingRefreshes.size();
+    }
+
+}
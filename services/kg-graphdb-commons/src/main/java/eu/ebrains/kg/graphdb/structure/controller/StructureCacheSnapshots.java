@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.controller;
+
+import com.arangodb.ArangoDatabase;
+import com.arangodb.entity.CollectionEntity;
+import com.arangodb.entity.StreamTransactionEntity;
+import com.arangodb.model.AqlQueryOptions;
+import com.arangodb.model.CollectionsReadOptions;
+import com.arangodb.model.DocumentCreateOptions;
+import com.arangodb.model.StreamTransactionOptions;
+import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
+import eu.ebrains.kg.arango.commons.aqlbuilder.ArangoVocabulary;
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.arango.commons.model.InternalSpace;
+import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.graphdb.commons.controller.ArangoDatabases;
+import eu.ebrains.kg.graphdb.commons.controller.GraphDBArangoUtils;
+import eu.ebrains.kg.graphdb.structure.model.PropertyOfTypeInSpaceReflection;
+import eu.ebrains.kg.graphdb.structure.model.SpaceStructureSnapshot;
+import eu.ebrains.kg.graphdb.structure.model.TargetTypeReflection;
+import eu.ebrains.kg.graphdb.structure.model.TypeWithInstanceCountReflection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.interceptor.SimpleKeyGenerator;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+/**
+ * Persists the reflected structure (the content of the reflection caches) of a stage so it can be restored at startup
+ * instead of being reflected from scratch. A snapshot is only restored if the revisions of the collections of the stage
+ * are still the same as when it has been taken - they change atomically with every committed write, so any change of
+ * the data since (even if not tracked anymore due to an unclean shutdown) invalidates the snapshot. Otherwise, the
+ * structure is reflected again (in parallel per space).
+ */
+@Component
+public class StructureCacheSnapshots {
+
+    private static final ArangoCollectionReference SNAPSHOTS = ArangoCollectionReference.fromSpace(InternalSpace.STRUCTURE_CACHE_SNAPSHOT_SPACE);
+    private static final String CHECKPOINT_KEY = "checkpoint";
+    /**
+     * The collections which are written without any change of the data (the snapshots themselves and the statistics
+     * which are built on read) don't count for the validity of a snapshot.
+     */
+    private static final Set<String> IGNORED_COLLECTIONS = Set.of(SNAPSHOTS.getCollectionName(), TypeStatisticsRepository.TYPE_STATISTICS.getCollectionName());
+
+    private final ArangoDatabases arangoDatabases;
+    private final GraphDBArangoUtils graphDBArangoUtils;
+    private final StructureRepository structureRepository;
+    private final StructureCacheRefresher structureCacheRefresher;
+    private final CacheManager cacheManager;
+    private final JsonAdapter jsonAdapter;
+    private final int warmUpParallelism;
+    private final Set<DataStage> warmedUpStages = ConcurrentHashMap.newKeySet();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public StructureCacheSnapshots(ArangoDatabases arangoDatabases, GraphDBArangoUtils graphDBArangoUtils, StructureRepository structureRepository, StructureCacheRefresher structureCacheRefresher, CacheManager cacheManager, JsonAdapter jsonAdapter, @Value("${eu.ebrains.kg.graphdb.structureCache.warmUpParallelism:4}") int warmUpParallelism) {
+        this.arangoDatabases = arangoDatabases;
+        this.graphDBArangoUtils = graphDBArangoUtils;
+        this.structureRepository = structureRepository;
+        this.structureCacheRefresher = structureCacheRefresher;
+        this.cacheManager = cacheManager;
+        this.jsonAdapter = jsonAdapter;
+        this.warmUpParallelism = warmUpParallelism;
+    }
+
+    /**
+     * Populates the reflection caches of the given stage - either from a valid snapshot or by reflecting the spaces in
+     * parallel (which is then persisted as the new snapshot).
+     */
+    public void warmUp(DataStage stage) {
+        final long start = System.currentTimeMillis();
+        warmedUpStages.add(stage);
+        if (restore(stage)) {
+            logger.info(String.format("Restored the structure cache of stage %s from its snapshot in %d ms", stage.name(), System.currentTimeMillis() - start));
+            return;
+        }
+        final Map<String, String> revisions = getRevisions(arangoDatabases.getByStage(stage));
+        reflectInParallel(stage);
+        logger.info(String.format("Reflected the structure of stage %s in %d ms", stage.name(), System.currentTimeMillis() - start));
+        save(stage, revisions);
+    }
+
+    /**
+     * Persists the current state of the caches on shutdown so the next startup can restore it. Only the stages which
+     * have been warmed up are considered - otherwise, the caches could contain entries which are older than the
+     * revisions of the collections.
+     */
+    @PreDestroy
+    public void saveOnShutdown() {
+        for (DataStage stage : warmedUpStages) {
+            try {
+                save(stage, getRevisions(arangoDatabases.getByStage(stage)));
+            } catch (Exception e) {
+                logger.warn(String.format("Was not able to persist the structure cache snapshot of stage %s", stage.name()), e);
+            }
+        }
+    }
+
+    private void reflectInParallel(DataStage stage) {
+        final List<SpaceName> spaces = structureRepository.reflectSpaces(stage);
+        final List<String> allRelevantEdges = structureRepository.getAllRelevantEdges(stage);
+        final ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, warmUpParallelism));
+        try {
+            final List<Future<SpaceStructureSnapshot>> futures = spaces.stream().map(space -> executorService.submit(() -> reflectSpace(stage, space, allRelevantEdges))).collect(Collectors.toList());
+            for (Future<SpaceStructureSnapshot> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    //The missing entries are reflected on their first access
+                    logger.warn(String.format("Was not able to reflect a space of stage %s", stage.name()), e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the structure of the space - read through the reflection caches (and therefore populating them)
+     */
+    private SpaceStructureSnapshot reflectSpace(DataStage stage, SpaceName space, List<String> allRelevantEdges) {
+        SpaceStructureSnapshot snapshot = new SpaceStructureSnapshot();
+        snapshot.setSpace(space);
+        snapshot.setTypes(structureRepository.reflectTypesInSpace(stage, space));
+        snapshot.setProperties(new HashMap<>());
+        snapshot.setTargetTypes(new HashMap<>());
+        for (TypeWithInstanceCountReflection type : snapshot.getTypes()) {
+            final List<PropertyOfTypeInSpaceReflection> properties = structureRepository.reflectPropertiesOfTypeInSpace(stage, space, type.getName());
+            snapshot.getProperties().put(type.getName(), properties);
+            for (PropertyOfTypeInSpaceReflection property : properties) {
+                if (allRelevantEdges.contains(new ArangoCollectionReference(property.getName(), true).getCollectionName())) {
+                    snapshot.getTargetTypes().computeIfAbsent(type.getName(), t -> new HashMap<>()).put(property.getName(), structureRepository.reflectTargetTypes(stage, space, type.getName(), property.getName()));
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Persists the structure of the stage if it reflects the given revisions of its collections: There must not be any
+     * pending refreshes of the caches and no data must have been written in the meantime.
+     */
+    void save(DataStage stage, Map<String, String> revisions) {
+        if (structureCacheRefresher.getNumberOfPendingRefreshes() > 0) {
+            logger.debug(String.format("Skipping the structure cache snapshot of stage %s since there are pending refreshes", stage.name()));
+            return;
+        }
+        final List<SpaceName> spaces = structureRepository.reflectSpaces(stage);
+        final List<String> allRelevantEdges = structureRepository.getAllRelevantEdges(stage);
+        final List<SpaceStructureSnapshot> snapshots = spaces.stream().map(s -> reflectSpace(stage, s, allRelevantEdges)).collect(Collectors.toList());
+        final ArangoDatabase db = arangoDatabases.getByStage(stage);
+        if (!revisions.equals(getRevisions(db))) {
+            logger.debug(String.format("Skipping the structure cache snapshot of stage %s since data has been written in the meantime", stage.name()));
+            return;
+        }
+        graphDBArangoUtils.getOrCreateArangoCollection(db, SNAPSHOTS);
+        final StreamTransactionEntity tx = db.beginStreamTransaction(new StreamTransactionOptions().exclusiveCollections(SNAPSHOTS.getCollectionName()));
+        try {
+            AQL aql = new AQL();
+            aql.addLine(AQL.trust("FOR d IN @@collection"));
+            aql.addLine(AQL.trust("REMOVE d IN @@collection"));
+            db.query(aql.build().getValue(), Map.of("@collection", SNAPSHOTS.getCollectionName()), new AqlQueryOptions().streamTransactionId(tx.getId()), Void.class);
+            if (!snapshots.isEmpty()) {
+                db.collection(SNAPSHOTS.getCollectionName()).insertDocuments(snapshots.stream().map(jsonAdapter::toJson).collect(Collectors.toList()), new DocumentCreateOptions().silent(true).streamTransactionId(tx.getId()));
+            }
+            Map<String, Object> header = new HashMap<>();
+            header.put(ArangoVocabulary.KEY, CHECKPOINT_KEY);
+            header.put("revisions", revisions);
+            header.put("spaces", spaces.stream().map(SpaceName::getName).collect(Collectors.toList()));
+            db.collection(SNAPSHOTS.getCollectionName()).insertDocument(header, new DocumentCreateOptions().silent(true).streamTransactionId(tx.getId()));
+            db.commitStreamTransaction(tx.getId());
+            logger.info(String.format("Persisted the structure cache snapshot of stage %s with %d spaces", stage.name(), snapshots.size()));
+        } catch (RuntimeException e) {
+            db.abortStreamTransaction(tx.getId());
+            throw e;
+        }
+    }
+
+    /**
+     * Populates the reflection caches from the snapshot if it is still valid.
+     *
+     * @return true if the snapshot has been restored
+     */
+    boolean restore(DataStage stage) {
+        final ArangoDatabase db = arangoDatabases.getByStage(stage);
+        if (!db.collection(SNAPSHOTS.getCollectionName()).exists()) {
+            return false;
+        }
+        final Map<?, ?> header = db.collection(SNAPSHOTS.getCollectionName()).getDocument(CHECKPOINT_KEY, Map.class);
+        if (header == null) {
+            return false;
+        }
+        if (!getRevisions(db).equals(header.get("revisions"))) {
+            logger.info(String.format("The structure cache snapshot of stage %s is outdated", stage.name()));
+            return false;
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR d IN @@collection"));
+        aql.addLine(AQL.trust("FILTER d._key != @checkpoint"));
+        aql.addLine(AQL.trust("RETURN UNSET(d, \"_key\", \"_id\", \"_rev\")"));
+        final List<SpaceStructureSnapshot> snapshots = db.query(aql.build().getValue(), Map.of("@collection", SNAPSHOTS.getCollectionName(), "checkpoint", CHECKPOINT_KEY), String.class).asListRemaining().stream().map(s -> jsonAdapter.fromJson(s, SpaceStructureSnapshot.class)).collect(Collectors.toList());
+        final List<SpaceName> spaces = ((List<?>) header.get("spaces")).stream().map(s -> SpaceName.fromString((String) s)).collect(Collectors.toList());
+        putIfAbsent("reflectedSpaces", Collections.unmodifiableList(spaces), stage);
+        for (SpaceStructureSnapshot snapshot : snapshots) {
+            putIfAbsent("typesInSpace", Collections.unmodifiableList(snapshot.getTypes()), stage, snapshot.getSpace());
+            snapshot.getProperties().forEach((type, properties) -> putIfAbsent("propertiesOfTypeInSpace", Collections.unmodifiableList(properties), stage, snapshot.getSpace(), type));
+            snapshot.getTargetTypes().forEach((type, targetTypesByProperty) -> targetTypesByProperty.forEach((property, targetTypes) -> putIfAbsent("targetTypes", Collections.unmodifiableList(targetTypes), stage, snapshot.getSpace(), type, property)));
+        }
+        return true;
+    }
+
+    /**
+     * Puts the value with the same key as the one of the according cacheable method of the {@link StructureRepository}
+     */
+    private void putIfAbsent(String cacheName, List<?> value, Object... arguments) {
+        final Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.putIfAbsent(SimpleKeyGenerator.generateKey(arguments), value);
+        }
+    }
+
+    /**
+     * @return the current revisions of all (non-system) collections of the given database
+     */
+    private static Map<String, String> getRevisions(ArangoDatabase db) {
+        return db.getCollections(new CollectionsReadOptions().excludeSystem(true)).stream().map(CollectionEntity::getName).filter(c -> !IGNORED_COLLECTIONS.contains(c)).collect(Collectors.toMap(c -> c, c -> db.collection(c).getRevision().getRevision()));
+    }
+
+}
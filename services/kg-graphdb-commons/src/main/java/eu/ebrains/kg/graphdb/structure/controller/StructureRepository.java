@@ -70,12 +70,14 @@ public class StructureRepository {
     private final ArangoDatabases arangoDatabases;
     private final JsonAdapter jsonAdapter;
     private final GraphDBArangoUtils graphDBArangoUtils;
+    private final TypeStatisticsRepository typeStatisticsRepository;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public StructureRepository(ArangoDatabases arangoDatabases, JsonAdapter jsonAdapter, GraphDBArangoUtils graphDBArangoUtils) {
+    public StructureRepository(ArangoDatabases arangoDatabases, JsonAdapter jsonAdapter, GraphDBArangoUtils graphDBArangoUtils, TypeStatisticsRepository typeStatisticsRepository) {
         this.arangoDatabases = arangoDatabases;
         this.jsonAdapter = jsonAdapter;
         this.graphDBArangoUtils = graphDBArangoUtils;
+        this.typeStatisticsRepository = typeStatisticsRepository;
     }
 
     private final static ArangoCollectionReference SPACES = new ArangoCollectionReference("spaces", false);
@@ -271,6 +273,9 @@ public class StructureRepository {
     }
 
     private List<TypeWithInstanceCountReflection> doReflectTypesInSpace(DataStage stage, SpaceName name){
+        if(TypeStatisticsRepository.isMaintained(stage)){
+            return Collections.unmodifiableList(typeStatisticsRepository.getTypesInSpace(stage, name));
+        }
         AQL aql = new AQL();
         Map<String, Object> bindVars = new HashMap<>();
         aql.addLine(AQL.trust("LET typeGroups=(FOR i in @@collection"));
@@ -404,6 +409,9 @@ public class StructureRepository {
     }
 
     private List<PropertyOfTypeInSpaceReflection> doReflectPropertiesOfTypeInSpace(DataStage stage, SpaceName spaceName, String type){
+        if (TypeStatisticsRepository.isMaintained(stage)) {
+            return Collections.unmodifiableList(typeStatisticsRepository.getPropertiesOfTypeInSpace(stage, spaceName, type));
+        }
         AQL aql = new AQL();
         Map<String, Object> bindVars = new HashMap<>();
         aql.addLine(AQL.trust("LET attGroups = (FOR d IN @@collection"));
@@ -438,6 +446,9 @@ public class StructureRepository {
 
     private List<TargetTypeReflection> doReflectTargetTypes(DataStage stage, SpaceName spaceName, String type, String property){
         final ArangoCollectionReference edgeCollection = new ArangoCollectionReference(property, true);
+        if (TypeStatisticsRepository.isMaintained(stage) && TypeStatisticsRepository.isCounted(edgeCollection.getCollectionName())) {
+            return Collections.unmodifiableList(typeStatisticsRepository.getTargetTypes(stage, spaceName, type, property));
+        }
         //It's a property which actually does have target types
         AQL aql = new AQL();
         Map<String, Object> bindVars = new HashMap<>();
@@ -467,7 +478,7 @@ public class StructureRepository {
         return Collections.unmodifiableList(arangoDatabases.getByStage(stage).query(aql.build().getValue(), bindVars, TargetTypeReflection.class).asListRemaining());
     }
 
-    private final List<String> EDGE_BLACKLIST = Arrays.asList(
+    static final List<String> EDGE_BLACKLIST = Arrays.asList(
             new ArangoCollectionReference(EBRAINSVocabulary.META_ALTERNATIVE, true).getCollectionName(),
             new ArangoCollectionReference(EBRAINSVocabulary.META_USER, true).getCollectionName(),
             InternalSpace.DOCUMENT_ID_EDGE_COLLECTION.getCollectionName(),
@@ -0,0 +1,682 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.controller;
+
+import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoDatabase;
+import com.arangodb.entity.CollectionEntity;
+import com.arangodb.entity.CollectionType;
+import com.arangodb.entity.StreamTransactionEntity;
+import com.arangodb.model.AqlQueryOptions;
+import com.arangodb.model.CollectionsReadOptions;
+import com.arangodb.model.DocumentCreateOptions;
+import com.arangodb.model.PersistentIndexOptions;
+import com.arangodb.model.StreamTransactionOptions;
+import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
+import eu.ebrains.kg.arango.commons.aqlbuilder.ArangoVocabulary;
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.arango.commons.model.InternalSpace;
+import eu.ebrains.kg.commons.Tuple;
+import eu.ebrains.kg.commons.jsonld.JsonLdConsts;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.commons.semantics.vocabularies.EBRAINSVocabulary;
+import eu.ebrains.kg.graphdb.commons.controller.ArangoDatabases;
+import eu.ebrains.kg.graphdb.commons.controller.ArangoRepositoryCommons;
+import eu.ebrains.kg.graphdb.commons.controller.GraphDBArangoUtils;
+import eu.ebrains.kg.graphdb.ingestion.model.CacheEvictionPlan;
+import eu.ebrains.kg.graphdb.structure.model.PropertyOfTypeInSpaceReflection;
+import eu.ebrains.kg.graphdb.structure.model.TargetTypeReflection;
+import eu.ebrains.kg.graphdb.structure.model.TypeWithInstanceCountReflection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the structure of the spaces as counters so it can be reflected in time proportional to the size of the schema
+ * instead of the size of the data:
+ * <ul>
+ *     <li>the number of instances per type (one document per space collection - it also marks the space as built)</li>
+ *     <li>the number of occurrences per property (one document per space and type)</li>
+ *     <li>the number of linked instances per target type (one document per space, type, property and target space)</li>
+ * </ul>
+ * The counters are updated within the transactions which change the documents (see {@link Update}) and are reconciled
+ * with a scan of the collection when they are requested for the first time, after they have been invalidated or when
+ * they are rebuilt by the consistency check (see {@link #rebuild(DataStage, SpaceName)}). A marker document per space
+ * states whether its counters are reconciled. To keep concurrent transactions from running into write-write conflicts
+ * on the same counters, every counter is spread over {@link #SHARDS} documents: A transaction applies its deltas to a
+ * randomly chosen shard and the reads sum up all of them.
+ */
+@Component
+public class TypeStatisticsRepository {
+
+    public static final ArangoCollectionReference TYPE_STATISTICS = ArangoCollectionReference.fromSpace(InternalSpace.TYPE_STATISTICS_SPACE);
+    private static final String TYPES = "types";
+    private static final String PROPERTIES = "properties";
+    private static final String TARGET_TYPES = "targetTypes";
+    private static final String COUNTS = "counts";
+    private static final String MARKER = "marker";
+    private static final String BUILT = "built";
+    static final int SHARDS = 16;
+    private static final int MAX_REBUILD_ATTEMPTS = 3;
+
+    private final ArangoDatabases arangoDatabases;
+    private final GraphDBArangoUtils graphDBArangoUtils;
+    private final Set<String> indexedDatabases = ConcurrentHashMap.newKeySet();
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public TypeStatisticsRepository(ArangoDatabases arangoDatabases, GraphDBArangoUtils graphDBArangoUtils) {
+        this.arangoDatabases = arangoDatabases;
+        this.graphDBArangoUtils = graphDBArangoUtils;
+    }
+
+    /**
+     * @return true if the type statistics are maintained for the given stage (these are the stages which are reflected).
+     */
+    public static boolean isMaintained(DataStage stage) {
+        return stage == DataStage.IN_PROGRESS || stage == DataStage.RELEASED;
+    }
+
+    /**
+     * @return true if the target types of the given edge collection are counted (the internal edges are not reflected).
+     */
+    public static boolean isCounted(String edgeCollection) {
+        return !StructureRepository.EDGE_BLACKLIST.contains(edgeCollection);
+    }
+
+    /**
+     * Identifies a document holding counters: The counters of the types of a space, of the properties of a type in a
+     * space or of the target types of a property of a type in a space (linking to a specific target space).
+     */
+    public static final class Counter {
+        private final String kind;
+        private final String space;
+        private final String type;
+        private final String property;
+        private final String targetSpace;
+
+        private Counter(String kind, String space, String type, String property, String targetSpace) {
+            this.kind = kind;
+            this.space = space;
+            this.type = type;
+            this.property = property;
+            this.targetSpace = targetSpace;
+        }
+
+        public static Counter types(String space) {
+            return new Counter(TYPES, space, null, null, null);
+        }
+
+        public static Counter properties(String space, String type) {
+            return new Counter(PROPERTIES, space, type, null, null);
+        }
+
+        public static Counter targetTypes(String space, String type, String property, String targetSpace) {
+            return new Counter(TARGET_TYPES, space, type, property, targetSpace);
+        }
+
+        /**
+         * @return the key of the first shard of the counter - the one of the type counters is the name of the space
+         * collection.
+         */
+        String getKey() {
+            if (TYPES.equals(kind)) {
+                return space;
+            }
+            return UUID.nameUUIDFromBytes(String.join("|", kind, space, type, String.valueOf(property), String.valueOf(targetSpace)).getBytes(StandardCharsets.UTF_8)).toString();
+        }
+
+        /**
+         * @return the key of the given shard of the counter (":" can't be part of a collection name - the keys can
+         * therefore not collide with the ones of the type counters of other spaces).
+         */
+        String getKey(int shard) {
+            return shard == 0 ? getKey() : String.format("%s:%d", getKey(), shard);
+        }
+
+        List<String> getKeysOfAllShards() {
+            List<String> keys = new ArrayList<>(SHARDS);
+            for (int shard = 0; shard < SHARDS; shard++) {
+                keys.add(getKey(shard));
+            }
+            return keys;
+        }
+
+        Map<String, Object> toDocument(Map<String, Long> counts) {
+            return toDocument(counts, 0);
+        }
+
+        Map<String, Object> toDocument(Map<String, Long> counts, int shard) {
+            Map<String, Object> document = new HashMap<>();
+            document.put(ArangoVocabulary.KEY, getKey(shard));
+            document.put("kind", kind);
+            document.put("space", space);
+            document.put("type", type);
+            document.put("property", property);
+            document.put("targetSpace", targetSpace);
+            document.put(COUNTS, counts);
+            return document;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Counter counter = (Counter) o;
+            return kind.equals(counter.kind) && space.equals(counter.space) && Objects.equals(type, counter.type) && Objects.equals(property, counter.property) && Objects.equals(targetSpace, counter.targetSpace);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(kind, space, type, property, targetSpace);
+        }
+
+        @Override
+        public String toString() {
+            return String.join("|", kind, space, String.valueOf(type), String.valueOf(property), String.valueOf(targetSpace));
+        }
+    }
+
+    /**
+     * Calculates the changes of the type and property counters caused by a transaction from the structure of the
+     * affected documents before and after the transaction.
+     *
+     * @return the deltas of the counters. Unchanged counters are not contained.
+     */
+    public static Map<Counter, Map<String, Long>> getDeltas(Collection<CacheEvictionPlan> plansBeforeTransaction, Collection<CacheEvictionPlan> plansAfterTransaction) {
+        Map<Counter, Map<String, Long>> deltas = new HashMap<>();
+        plansBeforeTransaction.forEach(p -> addToDeltas(deltas, p, -1));
+        plansAfterTransaction.forEach(p -> addToDeltas(deltas, p, 1));
+        return withoutZeros(deltas);
+    }
+
+    private static void addToDeltas(Map<Counter, Map<String, Long>> deltas, CacheEvictionPlan plan, long delta) {
+        if (plan.getType() != null && plan.getId() != null && plan.getId().contains("/")) {
+            //The counters are kept per collection (which is what is scanned by the reflection)
+            final String collection = plan.getId().substring(0, plan.getId().indexOf('/'));
+            //A type is counted once per instance - no matter how often it is declared
+            new HashSet<>(plan.getType()).forEach(t -> {
+                deltas.computeIfAbsent(Counter.types(collection), c -> new HashMap<>()).merge(t, delta, Long::sum);
+                if (plan.getAttributes() != null) {
+                    plan.getAttributes().forEach(a -> deltas.computeIfAbsent(Counter.properties(collection, t), c -> new HashMap<>()).merge(a, delta, Long::sum));
+                }
+            });
+        }
+    }
+
+    private static Map<Counter, Map<String, Long>> withoutZeros(Map<Counter, Map<String, Long>> deltas) {
+        deltas.values().forEach(d -> d.values().removeIf(v -> v == 0));
+        deltas.values().removeIf(Map::isEmpty);
+        return deltas;
+    }
+
+    /**
+     * @return the ids of the documents whose types differ before and after the transaction although they exist on
+     * both sides. Their (untouched) edges need to be recounted since they contribute to the target types with the
+     * types of the document.
+     */
+    public static Set<String> getRetypedDocuments(Collection<CacheEvictionPlan> plansBeforeTransaction, Collection<CacheEvictionPlan> plansAfterTransaction) {
+        final Map<String, Set<String>> typesBefore = plansBeforeTransaction.stream().filter(p -> p.getId() != null && p.getType() != null).collect(Collectors.toMap(CacheEvictionPlan::getId, p -> new HashSet<>(p.getType()), (a, b) -> a));
+        return plansAfterTransaction.stream().filter(p -> p.getId() != null && p.getType() != null && typesBefore.containsKey(p.getId()) && !typesBefore.get(p.getId()).equals(new HashSet<>(p.getType()))).map(CacheEvictionPlan::getId).collect(Collectors.toSet());
+    }
+
+    /**
+     * Prepares the update of the counters for a transaction.
+     *
+     * @param affectedEdges the ids of the documents which are removed or inserted by the transaction - the ones which
+     *                      are edges contribute to the target types.
+     */
+    public Update prepareUpdate(Collection<CacheEvictionPlan> plansBeforeTransaction, Collection<CacheEvictionPlan> plansAfterTransaction, Collection<String> affectedEdges) {
+        return new Update(getDeltas(plansBeforeTransaction, plansAfterTransaction), getRetypedDocuments(plansBeforeTransaction, plansAfterTransaction), affectedEdges);
+    }
+
+    /**
+     * The update of the counters as part of a stream transaction: The contributions of the affected edges to the
+     * target types are counted before ({@link #beforeModification(ArangoDatabase, String)}) and after
+     * ({@link #afterModification(ArangoDatabase, String)}) the modifications of the transaction - the difference is
+     * applied together with the deltas of the types and properties. An update can be part of several attempts of the
+     * same transaction - every attempt starts from scratch with {@link #beforeModification(ArangoDatabase, String)}.
+     */
+    public final class Update {
+        private final Map<Counter, Map<String, Long>> deltas;
+        private final Set<String> retypedDocuments;
+        private final Set<String> affectedEdges;
+        private Set<String> edgesOfAttempt;
+        private Map<Counter, Map<String, Long>> targetTypeDeltasOfAttempt;
+
+        private Update(Map<Counter, Map<String, Long>> deltas, Set<String> retypedDocuments, Collection<String> affectedEdges) {
+            this.deltas = deltas;
+            this.retypedDocuments = retypedDocuments;
+            this.affectedEdges = affectedEdges.stream().filter(id -> id.contains("/") && isCounted(id.substring(0, id.indexOf('/')))).collect(Collectors.toSet());
+        }
+
+        public void beforeModification(ArangoDatabase db, String streamTransactionId) {
+            edgesOfAttempt = new HashSet<>(affectedEdges);
+            edgesOfAttempt.addAll(findEdgesOfDocuments(db, streamTransactionId, retypedDocuments));
+            targetTypeDeltasOfAttempt = new HashMap<>();
+            addTargetTypeCounts(db, streamTransactionId, -1);
+        }
+
+        public void afterModification(ArangoDatabase db, String streamTransactionId) {
+            addTargetTypeCounts(db, streamTransactionId, 1);
+            final Map<Counter, Map<String, Long>> allDeltas = new HashMap<>();
+            deltas.forEach((counter, counts) -> allDeltas.put(counter, new HashMap<>(counts)));
+            targetTypeDeltasOfAttempt.forEach((counter, counts) -> counts.forEach((targetType, count) -> allDeltas.computeIfAbsent(counter, c -> new HashMap<>()).merge(targetType, count, Long::sum)));
+            applyDeltas(db, streamTransactionId, withoutZeros(allDeltas));
+        }
+
+        private void addTargetTypeCounts(ArangoDatabase db, String streamTransactionId, long factor) {
+            countTargetTypesOfEdges(db, streamTransactionId, edgesOfAttempt).forEach((counter, counts) -> counts.forEach((targetType, count) -> targetTypeDeltasOfAttempt.computeIfAbsent(counter, c -> new HashMap<>()).merge(targetType, factor * count, Long::sum)));
+        }
+    }
+
+    private Set<String> findEdgesOfDocuments(ArangoDatabase db, String streamTransactionId, Set<String> documentIds) {
+        if (documentIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final List<String> edgeCollections = getCountedEdgeCollections(db);
+        if (edgeCollections.isEmpty()) {
+            return Collections.emptySet();
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR id IN @ids"));
+        aql.addLine(AQL.trust("FOR v, e IN 1..1 ANY id " + edgeCollections.stream().map(c -> String.format("`%s`", c)).collect(Collectors.joining(", "))));
+        aql.addLine(AQL.trust("RETURN DISTINCT e._id"));
+        return new HashSet<>(db.query(aql.build().getValue(), Map.of("ids", documentIds), new AqlQueryOptions().streamTransactionId(streamTransactionId), String.class).asListRemaining());
+    }
+
+    private List<String> getCountedEdgeCollections(ArangoDatabase db) {
+        final Collection<CollectionEntity> collections = db.getCollections(new CollectionsReadOptions().excludeSystem(true));
+        return collections.stream().filter(c -> c.getType() == CollectionType.EDGES).map(CollectionEntity::getName).filter(TypeStatisticsRepository::isCounted).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the target type counters the given edges contribute to (in the state visible to the transaction).
+     */
+    private Map<Counter, Map<String, Long>> countTargetTypesOfEdges(ArangoDatabase db, String streamTransactionId, Set<String> edgeIds) {
+        if (edgeIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR id IN @ids"));
+        aql.addLine(AQL.trust("LET e = DOCUMENT(id)"));
+        aql.addLine(AQL.trust("FILTER e != NULL AND e._from != NULL AND e._to != NULL"));
+        aql.addLine(AQL.trust("LET source = DOCUMENT(e._from)"));
+        aql.addLine(AQL.trust(String.format("FILTER source != NULL AND source.`%s` != NULL", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust("LET target = DOCUMENT(e._to)"));
+        aql.addLine(AQL.trust(String.format("FILTER target != NULL AND target.`%s` != NULL", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust(String.format("FOR sourceType IN UNIQUE(TO_ARRAY(source.`%s`))", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust(String.format("FOR targetType IN TO_ARRAY(target.`%s`)", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust(String.format("COLLECT space = PARSE_IDENTIFIER(source).collection, type = sourceType, property = PARSE_IDENTIFIER(e).collection, targetSpace = target.`%s`, t = targetType WITH COUNT INTO length", EBRAINSVocabulary.META_SPACE)));
+        aql.addLine(AQL.trust("RETURN { \"space\": space, \"type\": type, \"property\": property, \"targetSpace\": targetSpace, \"name\": t, \"occurrences\": length }"));
+        return toTargetTypeCounters(db.query(aql.build().getValue(), Map.of("ids", edgeIds), new AqlQueryOptions().streamTransactionId(streamTransactionId), Map.class).asListRemaining(), null);
+    }
+
+    private static Map<Counter, Map<String, Long>> toTargetTypeCounters(List<Map> results, String space) {
+        Map<Counter, Map<String, Long>> counters = new HashMap<>();
+        for (Map<?, ?> result : results) {
+            final Counter counter = Counter.targetTypes(space != null ? space : (String) result.get("space"), (String) result.get("type"), (String) result.get("property"), result.get("targetSpace") instanceof String s ? s : null);
+            counters.computeIfAbsent(counter, c -> new HashMap<>()).merge((String) result.get("name"), ((Number) result.get("occurrences")).longValue(), Long::sum);
+        }
+        return counters;
+    }
+
+    /**
+     * Applies the given deltas to a randomly chosen shard as part of the given stream transaction. The counters of
+     * spaces which haven't been reconciled yet are updated as well - this way, the reconciliation only needs to correct
+     * the state it has scanned.
+     */
+    private void applyDeltas(ArangoDatabase db, String streamTransactionId, Map<Counter, Map<String, Long>> deltas) {
+        if (deltas.isEmpty()) {
+            return;
+        }
+        final int shard = ThreadLocalRandom.current().nextInt(SHARDS);
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR d IN @deltas"));
+        aql.addLine(AQL.trust("LET names = ATTRIBUTES(d.counts)"));
+        aql.addLine(AQL.trust("UPSERT { _key: d._key }"));
+        aql.addLine(AQL.trust("INSERT d"));
+        aql.addLine(AQL.trust("UPDATE { counts: MERGE(OLD.counts, ZIP(names, (FOR n IN names RETURN (OLD.counts[n] || 0) + d.counts[n]))) }"));
+        aql.addLine(AQL.trust("IN @@collection"));
+        Map<String, Object> bindVars = new HashMap<>();
+        bindVars.put("@collection", TYPE_STATISTICS.getCollectionName());
+        bindVars.put("deltas", deltas.entrySet().stream().map(e -> e.getKey().toDocument(e.getValue(), shard)).collect(Collectors.toList()));
+        db.query(aql.build().getValue(), bindVars, new AqlQueryOptions().streamTransactionId(streamTransactionId), Void.class);
+    }
+
+    /**
+     * Ensures the counter collection exists - together with the index the counters are looked up by (once per
+     * database, since the collection could have been created without it).
+     */
+    public ArangoCollection getOrCreateCollection(ArangoDatabase db) {
+        final ArangoCollection collection = graphDBArangoUtils.getOrCreateArangoCollection(db, TYPE_STATISTICS);
+        if (indexedDatabases.add(db.name())) {
+            collection.ensurePersistentIndex(Arrays.asList("space", "kind", "type", "property"), new PersistentIndexOptions());
+        }
+        return collection;
+    }
+
+    /**
+     * @return the types (with the number of their instances) in the given space - based on the counters which are
+     * built from a scan if they don't exist yet.
+     */
+    public List<TypeWithInstanceCountReflection> getTypesInSpace(DataStage stage, SpaceName spaceName) {
+        final String collection = ArangoCollectionReference.fromSpace(spaceName).getCollectionName();
+        return getCounts(stage, spaceName, Counter.types(collection)).entrySet().stream().map(e -> {
+            TypeWithInstanceCountReflection type = new TypeWithInstanceCountReflection();
+            type.setName(e.getKey());
+            type.setOccurrences(e.getValue().intValue());
+            return type;
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the properties (with the number of their occurrences) of the given type in the given space - based on
+     * the counters which are built from a scan if they don't exist yet.
+     */
+    public List<PropertyOfTypeInSpaceReflection> getPropertiesOfTypeInSpace(DataStage stage, SpaceName spaceName, String type) {
+        final String collection = ArangoCollectionReference.fromSpace(spaceName).getCollectionName();
+        return getCounts(stage, spaceName, Counter.properties(collection, type)).entrySet().stream().map(e -> {
+            PropertyOfTypeInSpaceReflection property = new PropertyOfTypeInSpaceReflection();
+            property.setName(e.getKey());
+            property.setOccurrences(e.getValue().intValue());
+            return property;
+        }).collect(Collectors.toList());
+    }
+
+    /**
+     * @return the target types (with the number of linked instances) of the given property of the given type in the
+     * given space - based on the counters which are built from a scan if they don't exist yet.
+     */
+    public List<TargetTypeReflection> getTargetTypes(DataStage stage, SpaceName spaceName, String type, String property) {
+        final ArangoDatabase db = getBuiltDatabase(stage, spaceName);
+        if (db == null) {
+            return Collections.emptyList();
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR d IN @@collection"));
+        aql.addLine(AQL.trust("FILTER d.space == @space AND d.kind == @kind AND d.type == @type AND d.property == @property"));
+        aql.addLine(AQL.trust("FOR name IN ATTRIBUTES(d.counts)"));
+        aql.addLine(AQL.trust("COLLECT targetSpace = d.targetSpace, n = name AGGREGATE occurrences = SUM(d.counts[name])"));
+        aql.addLine(AQL.trust("FILTER occurrences > 0"));
+        aql.addLine(AQL.trust("RETURN { \"name\": n, \"space\": targetSpace, \"occurrences\": occurrences }"));
+        Map<String, Object> bindVars = new HashMap<>();
+        bindVars.put("@collection", TYPE_STATISTICS.getCollectionName());
+        bindVars.put("kind", TARGET_TYPES);
+        bindVars.put("space", ArangoCollectionReference.fromSpace(spaceName).getCollectionName());
+        bindVars.put("type", type);
+        bindVars.put("property", new ArangoCollectionReference(property, true).getCollectionName());
+        return db.query(aql.build().getValue(), bindVars, TargetTypeReflection.class).asListRemaining();
+    }
+
+    private Map<String, Long> getCounts(DataStage stage, SpaceName spaceName, Counter counter) {
+        final ArangoDatabase db = getBuiltDatabase(stage, spaceName);
+        if (db == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Long> counts = new HashMap<>();
+        db.collection(TYPE_STATISTICS.getCollectionName()).getDocuments(counter.getKeysOfAllShards(), Map.class).getDocuments().forEach(shard -> {
+            final Map<String, Long> countsOfShard = toCounts(shard);
+            if (countsOfShard != null) {
+                countsOfShard.forEach((name, count) -> counts.merge(name, count, Long::sum));
+            }
+        });
+        counts.values().removeIf(v -> v <= 0);
+        return counts;
+    }
+
+    /**
+     * @return the database of the stage after having ensured that the counters of the given space are reconciled - or
+     * null if there is nothing to count.
+     */
+    private ArangoDatabase getBuiltDatabase(DataStage stage, SpaceName spaceName) {
+        final ArangoDatabase db = arangoDatabases.getByStage(stage);
+        final String collection = ArangoCollectionReference.fromSpace(spaceName).getCollectionName();
+        final ArangoCollection statistics = db.collection(TYPE_STATISTICS.getCollectionName());
+        if (!statistics.exists() || !isBuilt(statistics.getDocument(getMarkerKey(collection), Map.class))) {
+            logger.debug(String.format("No type statistics available for space %s (stage %s) yet - building them", spaceName, stage.name()));
+            if (rebuild(stage, spaceName).getB() == null) {
+                return null;
+            }
+        }
+        return db;
+    }
+
+    /**
+     * Reconciles the counters of the given space with a scan of its collection (and of its outgoing edges). The scan
+     * and the current state of the counters are read from the same snapshot, so their difference is the correction the
+     * counters need. Transactions committing in the meantime keep applying their deltas (which are reflected neither in
+     * the scan nor in the state read) - the correction can therefore be applied on top of them without locking the
+     * counters. The correction is discarded if the counters of the space have been reconciled or invalidated since the
+     * snapshot has been taken.
+     *
+     * @return the type counters before the rebuild (null if they haven't been reconciled) and the ones after the
+     * rebuild (null if there is no collection for the space).
+     */
+    public Tuple<Map<String, Long>, Map<String, Long>> rebuild(DataStage stage, SpaceName spaceName) {
+        final ArangoDatabase db = arangoDatabases.getByStage(stage);
+        final String collection = ArangoCollectionReference.fromSpace(spaceName).getCollectionName();
+        if (!db.collection(collection).exists()) {
+            //Nothing to count - we don't persist anything since the collection could be created at any time
+            return new Tuple<>(null, null);
+        }
+        getOrCreateCollection(db);
+        final List<String> edgeCollections = getCountedEdgeCollections(db);
+        for (int attempt = 1; attempt <= MAX_REBUILD_ATTEMPTS; attempt++) {
+            final StreamTransactionEntity snapshot = db.beginStreamTransaction(new StreamTransactionOptions().readCollections(collection, TYPE_STATISTICS.getCollectionName()));
+            final Map<?, ?> marker;
+            final Map<Counter, Map<String, Long>> counted;
+            final Map<Counter, Map<String, Long>> scanned = new HashMap<>();
+            try {
+                marker = getMarker(db, collection, snapshot.getId());
+                counted = getCountersOfSpace(db, collection, snapshot.getId());
+                scanned.put(Counter.types(collection), countTypes(db, collection, snapshot.getId()));
+                scanned.putAll(countProperties(db, collection, snapshot.getId()));
+                scanned.putAll(countTargetTypes(db, collection, edgeCollections, snapshot.getId()));
+                db.commitStreamTransaction(snapshot.getId());
+            } catch (RuntimeException e) {
+                db.abortStreamTransaction(snapshot.getId());
+                throw e;
+            }
+            if (applyCorrections(db, collection, marker, getCorrections(counted, scanned))) {
+                return new Tuple<>(isBuilt(marker) ? counted.getOrDefault(Counter.types(collection), Collections.emptyMap()) : null, scanned.get(Counter.types(collection)));
+            }
+            logger.debug(String.format("The type statistics of %s have been changed during their rebuild - rescanning", collection));
+        }
+        throw new IllegalStateException(String.format("Was not able to rebuild the type statistics of %s (stage %s) due to concurrent changes", collection, stage.name()));
+    }
+
+    /**
+     * @return false if the marker of the space has changed since the snapshot the corrections are based on
+     */
+    private boolean applyCorrections(ArangoDatabase db, String collection, Map<?, ?> markerOfSnapshot, Map<Counter, Map<String, Long>> corrections) {
+        for (int attempt = 1; ; attempt++) {
+            final StreamTransactionEntity tx = db.beginStreamTransaction(new StreamTransactionOptions().writeCollections(TYPE_STATISTICS.getCollectionName()));
+            try {
+                if (!Objects.equals(getRevision(markerOfSnapshot), getRevision(getMarker(db, collection, tx.getId())))) {
+                    db.abortStreamTransaction(tx.getId());
+                    return false;
+                }
+                applyDeltas(db, tx.getId(), corrections);
+                db.collection(TYPE_STATISTICS.getCollectionName()).insertDocument(createMarker(collection, true), new DocumentCreateOptions().overwrite(true).silent(true).streamTransactionId(tx.getId()));
+                db.commitStreamTransaction(tx.getId());
+                return true;
+            } catch (RuntimeException e) {
+                db.abortStreamTransaction(tx.getId());
+                //A concurrent transaction has updated the same shard - since the corrections are additive, they can be applied again
+                if (attempt == MAX_REBUILD_ATTEMPTS || !ArangoRepositoryCommons.isWriteConflict(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the differences between the scanned and the counted values
+     */
+    static Map<Counter, Map<String, Long>> getCorrections(Map<Counter, Map<String, Long>> counted, Map<Counter, Map<String, Long>> scanned) {
+        Map<Counter, Map<String, Long>> corrections = new HashMap<>();
+        scanned.forEach((counter, counts) -> corrections.put(counter, new HashMap<>(counts)));
+        counted.forEach((counter, counts) -> counts.forEach((name, count) -> corrections.computeIfAbsent(counter, c -> new HashMap<>()).merge(name, -count, Long::sum)));
+        return withoutZeros(corrections);
+    }
+
+    /**
+     * Marks the counters of the given spaces as not reconciled, so they are rebuilt on their next read. This is the
+     * fallback for transactions which couldn't update the counters together with the documents. Every invalidation
+     * changes the marker - this way, a rebuild which has scanned the space before can't validate the counters again.
+     */
+    public void invalidate(DataStage stage, Collection<String> spaces) {
+        final ArangoDatabase db = arangoDatabases.getByStage(stage);
+        if (spaces.isEmpty() || !db.collection(TYPE_STATISTICS.getCollectionName()).exists()) {
+            return;
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR m IN @markers"));
+        aql.addLine(AQL.trust("INSERT m INTO @@collection OPTIONS { overwriteMode: \"replace\" }"));
+        final Map<String, Object> bindVars = Map.of("@collection", TYPE_STATISTICS.getCollectionName(), "markers", spaces.stream().map(space -> createMarker(space, false)).collect(Collectors.toList()));
+        for (int attempt = 1; ; attempt++) {
+            try {
+                db.query(aql.build().getValue(), bindVars, new AqlQueryOptions(), Void.class);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt == MAX_REBUILD_ATTEMPTS || !ArangoRepositoryCommons.isWriteConflict(e)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static String getMarkerKey(String space) {
+        return UUID.nameUUIDFromBytes(String.join("|", MARKER, space).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private static Map<String, Object> createMarker(String space, boolean built) {
+        Map<String, Object> marker = new HashMap<>();
+        marker.put(ArangoVocabulary.KEY, getMarkerKey(space));
+        marker.put("kind", MARKER);
+        marker.put("space", space);
+        marker.put(BUILT, built);
+        return marker;
+    }
+
+    private static boolean isBuilt(Map<?, ?> marker) {
+        return marker != null && Boolean.TRUE.equals(marker.get(BUILT));
+    }
+
+    private static Object getRevision(Map<?, ?> marker) {
+        return marker != null ? marker.get(ArangoVocabulary.REV) : null;
+    }
+
+    private Map<?, ?> getMarker(ArangoDatabase db, String space, String streamTransactionId) {
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("RETURN DOCUMENT(@@collection, @key)"));
+        final List<Map> marker = db.query(aql.build().getValue(), Map.of("@collection", TYPE_STATISTICS.getCollectionName(), "key", getMarkerKey(space)), new AqlQueryOptions().streamTransactionId(streamTransactionId), Map.class).asListRemaining();
+        return marker.isEmpty() ? null : marker.get(0);
+    }
+
+    /**
+     * @return the counters of the given space (summed up over all shards)
+     */
+    private Map<Counter, Map<String, Long>> getCountersOfSpace(ArangoDatabase db, String space, String streamTransactionId) {
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR d IN @@collection"));
+        aql.addLine(AQL.trust("FILTER d.space == @space AND d.kind IN @kinds"));
+        aql.addLine(AQL.trust("FOR name IN ATTRIBUTES(d.counts)"));
+        aql.addLine(AQL.trust("COLLECT kind = d.kind, type = d.type, property = d.property, targetSpace = d.targetSpace, n = name AGGREGATE occurrences = SUM(d.counts[name])"));
+        aql.addLine(AQL.trust("RETURN { \"kind\": kind, \"type\": type, \"property\": property, \"targetSpace\": targetSpace, \"name\": n, \"occurrences\": occurrences }"));
+        Map<Counter, Map<String, Long>> counters = new HashMap<>();
+        db.query(aql.build().getValue(), Map.of("@collection", TYPE_STATISTICS.getCollectionName(), "space", space, "kinds", List.of(TYPES, PROPERTIES, TARGET_TYPES)), new AqlQueryOptions().streamTransactionId(streamTransactionId), Map.class).asListRemaining().forEach(c -> {
+            final Counter counter = new Counter((String) c.get("kind"), space, (String) c.get("type"), (String) c.get("property"), (String) c.get("targetSpace"));
+            counters.computeIfAbsent(counter, x -> new HashMap<>()).put((String) c.get("name"), ((Number) c.get("occurrences")).longValue());
+        });
+        return counters;
+    }
+
+    private Map<String, Long> countTypes(ArangoDatabase db, String collection, String streamTransactionId) {
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR i IN @@collection"));
+        aql.addLine(AQL.trust(String.format("FILTER i.`%s` != NULL", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust(String.format("FOR t IN UNIQUE(TO_ARRAY(i.`%s`))", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust("COLLECT type = t WITH COUNT INTO length"));
+        aql.addLine(AQL.trust("RETURN { \"name\": type, \"occurrences\": length }"));
+        Map<String, Long> counters = new HashMap<>();
+        db.query(aql.build().getValue(), Map.of("@collection", collection), new AqlQueryOptions().streamTransactionId(streamTransactionId), Map.class).asListRemaining()
+                .forEach(t -> counters.put((String) t.get("name"), ((Number) t.get("occurrences")).longValue()));
+        return counters;
+    }
+
+    private Map<Counter, Map<String, Long>> countProperties(ArangoDatabase db, String collection, String streamTransactionId) {
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR i IN @@collection"));
+        aql.addLine(AQL.trust(String.format("FILTER i.`%s` != NULL", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust("LET attributes = ATTRIBUTES(i, true)"));
+        aql.addLine(AQL.trust(String.format("FOR t IN UNIQUE(TO_ARRAY(i.`%s`))", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust("FOR a IN attributes"));
+        aql.addLine(AQL.trust("COLLECT type = t, property = a WITH COUNT INTO length"));
+        aql.addLine(AQL.trust("RETURN { \"type\": type, \"name\": property, \"occurrences\": length }"));
+        Map<Counter, Map<String, Long>> counters = new HashMap<>();
+        db.query(aql.build().getValue(), Map.of("@collection", collection), new AqlQueryOptions().streamTransactionId(streamTransactionId), Map.class).asListRemaining()
+                .forEach(p -> counters.computeIfAbsent(Counter.properties(collection, (String) p.get("type")), c -> new HashMap<>()).put((String) p.get("name"), ((Number) p.get("occurrences")).longValue()));
+        return counters;
+    }
+
+    private Map<Counter, Map<String, Long>> countTargetTypes(ArangoDatabase db, String collection, List<String> edgeCollections, String streamTransactionId) {
+        if (edgeCollections.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR i IN @@collection"));
+        aql.addLine(AQL.trust(String.format("FILTER i.`%s` != NULL", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust("FOR target, e IN 1..1 OUTBOUND i " + edgeCollections.stream().map(c -> String.format("`%s`", c)).collect(Collectors.joining(", "))));
+        aql.addLine(AQL.trust(String.format("FILTER target != NULL AND target.`%s` != NULL", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust(String.format("FOR sourceType IN UNIQUE(TO_ARRAY(i.`%s`))", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust(String.format("FOR targetType IN TO_ARRAY(target.`%s`)", JsonLdConsts.TYPE)));
+        aql.addLine(AQL.trust(String.format("COLLECT type = sourceType, property = PARSE_IDENTIFIER(e).collection, targetSpace = target.`%s`, t = targetType WITH COUNT INTO length", EBRAINSVocabulary.META_SPACE)));
+        aql.addLine(AQL.trust("RETURN { \"type\": type, \"property\": property, \"targetSpace\": targetSpace, \"name\": t, \"occurrences\": length }"));
+        return toTargetTypeCounters(db.query(aql.build().getValue(), Map.of("@collection", collection), new AqlQueryOptions().streamTransactionId(streamTransactionId), Map.class).asListRemaining(), collection);
+    }
+
+    private static Map<String, Long> toCounts(Map<?, ?> document) {
+        if (document == null) {
+            return null;
+        }
+        Map<String, Long> counts = new HashMap<>();
+        if (document.get(COUNTS) instanceof Map<?, ?> c) {
+            c.forEach((name, count) -> {
+                if (count instanceof Number n) {
+                    counts.put((String) name, n.longValue());
+                }
+            });
+        }
+        return counts;
+    }
+
+}
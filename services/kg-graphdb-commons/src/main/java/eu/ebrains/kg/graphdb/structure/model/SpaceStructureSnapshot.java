@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.model;
+
+import eu.ebrains.kg.commons.model.SpaceName;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The reflected structure of a space as it is persisted in the structure cache snapshot.
+ */
+public class SpaceStructureSnapshot {
+
+    private SpaceName space;
+    private List<TypeWithInstanceCountReflection> types;
+    /**
+     * The properties by type
+     */
+    private Map<String, List<PropertyOfTypeInSpaceReflection>> properties;
+    /**
+     * The target types by type and property
+     */
+    private Map<String, Map<String, List<TargetTypeReflection>>> targetTypes;
+
+    public SpaceName getSpace() {
+        return space;
+    }
+
+    public void setSpace(SpaceName space) {
+        this.space = space;
+    }
+
+    public List<TypeWithInstanceCountReflection> getTypes() {
+        return types;
+    }
+
+    public void setTypes(List<TypeWithInstanceCountReflection> types) {
+        this.types = types;
+    }
+
+    public Map<String, List<PropertyOfTypeInSpaceReflection>> getProperties() {
+        return properties;
+    }
+
+    public void setProperties(Map<String, List<PropertyOfTypeInSpaceReflection>> properties) {
+        this.properties = properties;
+    }
+
+    public Map<String, Map<String, List<TargetTypeReflection>>> getTargetTypes() {
+        return targetTypes;
+    }
+
+    public void setTargetTypes(Map<String, Map<String, List<TargetTypeReflection>>> targetTypes) {
+        this.targetTypes = targetTypes;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.commons.controller;
+
+import com.arangodb.ArangoDatabase;
+import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.arango.commons.model.ArangoDocumentReference;
+import eu.ebrains.kg.arango.commons.model.InternalSpace;
+import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.graphdb.AbstractGraphTest;
+import eu.ebrains.kg.graphdb.commons.model.ArangoDocument;
+import eu.ebrains.kg.test.Simpsons;
+import eu.ebrains.kg.test.TestCategories;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ensures that the set-based lookups used by the transactions return the same results as the per-document queries
+ * they have replaced.
+ */
+@Tag(TestCategories.API)
+class ArangoRepositoryCommonsLookupTest extends AbstractGraphTest {
+
+    @Autowired
+    ArangoRepositoryCommons repository;
+
+    @Autowired
+    ArangoDatabases arangoDatabases;
+
+    private final DataStage stage = DataStage.NATIVE;
+
+    private ArangoDatabase db;
+
+    private List<ArangoDocumentReference> documents;
+
+    @BeforeEach
+    void createDocuments() {
+        db = arangoDatabases.getByStage(stage);
+        documents = new ArrayList<>();
+        for (String character : Arrays.asList(Simpsons.Characters.HOMER, Simpsons.Characters.MARGE, Simpsons.Characters.BART, Simpsons.Characters.MAGGIE)) {
+            documents.add(upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(character, NormalizedJsonLd.class), stage));
+        }
+    }
+
+    private Set<ArangoDocumentReference> withUnknownReferences(Collection<ArangoDocumentReference> references) {
+        Set<ArangoDocumentReference> result = new HashSet<>(references);
+        result.add(ArangoCollectionReference.fromSpace(Simpsons.SPACE_NAME).doc(UUID.randomUUID()));
+        result.add(new ArangoCollectionReference("doesNotExist", false).doc(UUID.randomUUID()));
+        return result;
+    }
+
+    private boolean existsPerDocument(ArangoDocumentReference reference) {
+        return db.collection(reference.getArangoCollectionReference().getCollectionName()).exists() && repository.doesDocumentExist(stage, reference);
+    }
+
+    /**
+     * The query which has been executed for every document id before the lookups have been combined
+     */
+    private Set<ArangoDocumentReference> findArangoReferencesForDocumentId(UUID documentId) {
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("LET doc = DOCUMENT(@@collection, @documentId)"));
+        aql.addLine(AQL.trust("FOR v,e IN 1..1 OUTBOUND doc @@relation"));
+        aql.addLine(AQL.trust("RETURN [v._id, e._id]"));
+        Map<String, Object> bindVars = new HashMap<>();
+        bindVars.put("@collection", ArangoCollectionReference.fromSpace(InternalSpace.DOCUMENT_ID_SPACE).getCollectionName());
+        bindVars.put("documentId", documentId.toString());
+        bindVars.put("@relation", InternalSpace.DOCUMENT_ID_EDGE_COLLECTION.getCollectionName());
+        Set<ArangoDocumentReference> references = new HashSet<>();
+        for (List<?> ids : db.query(aql.build().getValue(), bindVars, List.class).asListRemaining()) {
+            ids.stream().filter(Objects::nonNull).forEach(id -> references.add(ArangoDocumentReference.fromArangoId((String) id, null)));
+        }
+        return references;
+    }
+
+    @Test
+    void findArangoReferencesForDocumentIds() {
+        //Given
+        Set<UUID> documentIds = documents.stream().map(ArangoDocumentReference::getDocumentId).collect(Collectors.toSet());
+        documentIds.add(UUID.randomUUID());
+
+        //When
+        Set<ArangoDocumentReference> combined = repository.findArangoReferencesForDocumentIds(db, documentIds, null);
+
+        //Then
+        Set<ArangoDocumentReference> perDocument = documentIds.stream().flatMap(id -> findArangoReferencesForDocumentId(id).stream()).collect(Collectors.toSet());
+        assertFalse(perDocument.isEmpty());
+        assertEquals(perDocument, combined);
+    }
+
+    @Test
+    void findExistingDocuments() {
+        //Given
+        Set<ArangoDocumentReference> references = withUnknownReferences(documents);
+
+        //When
+        Set<ArangoDocumentReference> combined = repository.findExistingDocuments(db, references, repository.getExistingCollections(db));
+
+        //Then
+        Set<ArangoDocumentReference> perDocument = references.stream().filter(this::existsPerDocument).collect(Collectors.toSet());
+        assertEquals(new HashSet<>(documents), perDocument);
+        assertEquals(perDocument, combined);
+    }
+
+    @Test
+    void getDocuments() {
+        //Given
+        Set<ArangoDocumentReference> references = withUnknownReferences(documents);
+
+        //When
+        Map<ArangoDocumentReference, ArangoDocument> combined = repository.getDocuments(db, references, repository.getExistingCollections(db));
+
+        //Then
+        Map<ArangoDocumentReference, ArangoDocument> perDocument = new HashMap<>();
+        references.stream().filter(this::existsPerDocument).forEach(r -> perDocument.put(r, repository.getDocument(stage, r)));
+        assertEquals(documents.size(), perDocument.size());
+        assertEquals(perDocument.keySet(), combined.keySet());
+        perDocument.forEach((reference, document) -> assertEquals(document.getDoc(), combined.get(reference).getDoc()));
+    }
+
+    @Test
+    void findEdgesBetweenDocuments() {
+        //Given
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR e IN @@relation"));
+        aql.addLine(AQL.trust("RETURN [e._from, e._to]"));
+        List<ArangoDocumentReference[]> pairs = db.query(aql.build().getValue(), Map.of("@relation", InternalSpace.DOCUMENT_ID_EDGE_COLLECTION.getCollectionName()), List.class).asListRemaining().stream().map(p -> new ArangoDocumentReference[]{ArangoDocumentReference.fromArangoId((String) p.get(0), null), ArangoDocumentReference.fromArangoId((String) p.get(1), null)}).collect(Collectors.toList());
+        //A pair of documents which are not connected
+        final ArangoDocumentReference[] first = pairs.get(0);
+        final ArangoDocumentReference otherTarget = pairs.stream().map(p -> p[1]).filter(t -> !t.equals(first[1])).findFirst().orElseThrow();
+        pairs.add(new ArangoDocumentReference[]{first[0], otherTarget});
+
+        //When
+        List<ArangoDocumentReference> combined = repository.findEdgesBetweenDocuments(db, pairs, InternalSpace.DOCUMENT_ID_EDGE_COLLECTION);
+
+        //Then
+        List<ArangoDocumentReference> perDocument = pairs.stream().flatMap(p -> repository.findEdgeBetweenDocuments(db, p[0], p[1], InternalSpace.DOCUMENT_ID_EDGE_COLLECTION).stream()).collect(Collectors.toList());
+        assertEquals(pairs.size() - 1, perDocument.size());
+        assertEquals(new HashSet<>(perDocument), new HashSet<>(combined));
+        assertEquals(perDocument.size(), combined.size());
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.commons.controller;
+
+import eu.ebrains.kg.arango.commons.aqlbuilder.ArangoVocabulary;
+import eu.ebrains.kg.arango.commons.model.ArangoDocumentReference;
+import eu.ebrains.kg.commons.jsonld.JsonLdConsts;
+import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.semantics.vocabularies.EBRAINSVocabulary;
+import eu.ebrains.kg.graphdb.ingestion.model.CacheEvictionPlan;
+import eu.ebrains.kg.graphdb.ingestion.model.UpsertOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArangoRepositoryCommonsTest {
+
+    private NormalizedJsonLd document(ArangoDocumentReference reference, String type, String... properties) {
+        NormalizedJsonLd doc = new NormalizedJsonLd();
+        doc.put(ArangoVocabulary.ID, reference.getId());
+        doc.put(ArangoVocabulary.KEY, reference.getDocumentId().toString());
+        doc.put(JsonLdConsts.TYPE, Collections.singletonList(type));
+        doc.put(EBRAINSVocabulary.META_SPACE, "foo");
+        doc.put(EBRAINSVocabulary.META_REVISION, "1");
+        for (String property : properties) {
+            doc.put(property, "value");
+        }
+        return doc;
+    }
+
+    private ArangoDocumentReference reference() {
+        return ArangoDocumentReference.fromArangoId("foo/" + UUID.randomUUID(), false);
+    }
+
+    @Test
+    void planIsBuiltFromDocument() {
+        //Given
+        ArangoDocumentReference reference = reference();
+
+        //When
+        CacheEvictionPlan plan = CacheEvictionPlan.fromDocument(reference.getId(), document(reference, "http://schema/Bar", "http://schema/b", "http://schema/a"));
+
+        //Then
+        assertEquals(reference.getId(), plan.getId());
+        assertEquals(Collections.singletonList("http://schema/Bar"), plan.getType());
+        assertEquals("foo", plan.getSpace());
+        assertEquals(Arrays.asList("http://schema/a", "http://schema/b"), plan.getProperties());
+    }
+
+    @Test
+    void planIsNotBuiltForUntypedDocument() {
+        //Given
+        ArangoDocumentReference reference = reference();
+        NormalizedJsonLd doc = document(reference, "http://schema/Bar");
+        doc.remove(JsonLdConsts.TYPE);
+
+        //When
+        CacheEvictionPlan plan = CacheEvictionPlan.fromDocument(reference.getId(), doc);
+
+        //Then
+        assertNull(plan);
+    }
+
+    @Test
+    void getCacheEvictionPlansAfterTransaction() {
+        //Given
+        ArangoDocumentReference updated = reference();
+        ArangoDocumentReference deleted = reference();
+        ArangoDocumentReference inserted = reference();
+        ArangoDocumentReference edge = ArangoDocumentReference.fromArangoId("edges/" + UUID.randomUUID(), true);
+        Map<String, CacheEvictionPlan> before = new HashMap<>();
+        before.put(updated.getId(), CacheEvictionPlan.fromDocument(updated.getId(), document(updated, "http://schema/Bar", "http://schema/a")));
+        before.put(deleted.getId(), CacheEvictionPlan.fromDocument(deleted.getId(), document(deleted, "http://schema/Bar", "http://schema/a")));
+        NormalizedJsonLd edgePayload = new NormalizedJsonLd();
+        edgePayload.put(ArangoVocabulary.ID, edge.getId());
+        List<UpsertOperation> upserts = Arrays.asList(
+                new UpsertOperation(updated, document(updated, "http://schema/Bar", "http://schema/a", "http://schema/b"), updated),
+                new UpsertOperation(inserted, document(inserted, "http://schema/Foo", "http://schema/c"), inserted),
+                new UpsertOperation(inserted, edgePayload, edge));
+
+        //When
+        List<CacheEvictionPlan> after = ArangoRepositoryCommons.getCacheEvictionPlansAfterTransaction(before, new HashSet<>(Arrays.asList(updated, deleted)), Collections.emptyMap(), upserts);
+
+        //Then
+        Map<String, CacheEvictionPlan> afterById = new HashMap<>();
+        after.forEach(p -> afterById.put(p.getId(), p));
+        assertEquals(2, afterById.size());
+        assertEquals(Arrays.asList("http://schema/a", "http://schema/b"), afterById.get(updated.getId()).getProperties());
+        assertEquals(Collections.singletonList("http://schema/Foo"), afterById.get(inserted.getId()).getType());
+        assertFalse(afterById.containsKey(deleted.getId()));
+    }
+
+}
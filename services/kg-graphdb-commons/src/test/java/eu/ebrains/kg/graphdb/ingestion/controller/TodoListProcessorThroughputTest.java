@@ -0,0 +1,91 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.ingestion.controller;
+
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.Event;
+import eu.ebrains.kg.commons.model.TodoItem;
+import eu.ebrains.kg.graphdb.AbstractGraphTest;
+import eu.ebrains.kg.graphdb.commons.controller.ArangoRepositoryCommons;
+import eu.ebrains.kg.test.Simpsons;
+import eu.ebrains.kg.test.TestCategories;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TestCategories.LOAD)
+class TodoListProcessorThroughputTest extends AbstractGraphTest {
+
+    @SpyBean
+    ArangoRepositoryCommons repository;
+
+    private final List<String> characters = Arrays.asList(Simpsons.Characters.BART, Simpsons.Characters.HOMER, Simpsons.Characters.LISA, Simpsons.Characters.MAGGIE, Simpsons.Characters.MARGE);
+
+    private List<TodoItem> createTodoList() {
+        return characters.stream().map(c -> new TodoItem(UUID.randomUUID().toString(), UUID.randomUUID(), Simpsons.SPACE_NAME, Event.Type.INSERT, jsonAdapter.fromJson(c, NormalizedJsonLd.class))).collect(Collectors.toList());
+    }
+
+    private int countTransactions() {
+        return (int) Mockito.mockingDetails(repository).getInvocations().stream().filter(i -> i.getMethod().getName().equals("executeTransactional") && i.getArguments().length == 2).count();
+    }
+
+    @Test
+    void fewerTransactionsPerItemWhenProcessingTodoList() {
+        //Given
+        DataStage stage = DataStage.IN_PROGRESS;
+        List<TodoItem> sequential = createTodoList();
+        List<TodoItem> batched = createTodoList();
+
+        //When
+        Mockito.clearInvocations(repository);
+        long startSequential = System.currentTimeMillis();
+        sequential.forEach(item -> todoListProcessor.upsertDocument(ArangoCollectionReference.fromSpace(item.getSpace()).doc(item.getDocumentId()), item.getPayload(), stage, item.getSpace()));
+        long durationSequential = System.currentTimeMillis() - startSequential;
+        int sequentialTransactions = countTransactions();
+
+        Mockito.clearInvocations(repository);
+        long startBatched = System.currentTimeMillis();
+        todoListProcessor.doProcessTodoList(batched, stage);
+        long durationBatched = System.currentTimeMillis() - startBatched;
+        int batchedTransactions = countTransactions();
+
+        //Then
+        System.out.printf("Sequential: %.2f transactions and %.2fms per item%n", (double) sequentialTransactions / sequential.size(), (double) durationSequential / sequential.size());
+        System.out.printf("Batched: %.2f transactions and %.2fms per item%n", (double) batchedTransactions / batched.size(), (double) durationBatched / batched.size());
+        assertEquals(2 * sequential.size(), sequentialTransactions);
+        assertEquals(2, batchedTransactions);
+        batched.forEach(item -> assertNotNull(repository.getDocument(stage, ArangoCollectionReference.fromSpace(item.getSpace()).doc(item.getDocumentId()))));
+    }
+
+}
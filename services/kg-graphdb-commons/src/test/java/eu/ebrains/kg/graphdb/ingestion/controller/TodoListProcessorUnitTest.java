@@ -33,36 +33,75 @@ import eu.ebrains.kg.test.factory.UserFactory;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 public class TodoListProcessorUnitTest {
 
+    private final ArangoRepositoryCommons repository = Mockito.mock(ArangoRepositoryCommons.class);
 
-    private final TodoListProcessor processor = Mockito.spy(new TodoListProcessor(Mockito.mock(ArangoRepositoryCommons.class), Mockito.mock(StructureSplitter.class), Mockito.mock(MainEventTracker.class), Mockito.mock(IdUtils.class), Mockito.mock(DataController.class), Mockito.mock(ReleasingController.class)));
-
-    @Test
-    public void doProcessTodoList() {
+    private TodoListProcessor createProcessor(int windowSize) {
+        return Mockito.spy(new TodoListProcessor(repository, Mockito.mock(StructureSplitter.class), Mockito.mock(IdUtils.class), Mockito.mock(DataController.class), Mockito.mock(ReleasingController.class), windowSize));
+    }
 
-        //Given
+    private List<TodoItem> createTodoItems(UUID... upsertIds) {
         UUID id1 = UUID.randomUUID();
         SpaceName spaceName = new SpaceName("foo");
         Space space = new Space(spaceName, false, false, false);
         User user = UserFactory.globalAdmin().getUserWithRoles().getUser();
+        List<TodoItem> todoItems = new ArrayList<>();
+        todoItems.add(TodoItem.fromEvent(new PersistedEvent(Event.createDeleteEvent(spaceName, id1, new JsonLdId("http://foobar/" + id1)), DataStage.NATIVE, user, space)));
+        for (int i = 0; i < upsertIds.length; i++) {
+            todoItems.add(TodoItem.fromEvent(new PersistedEvent(Event.createUpsertEvent(spaceName, upsertIds[i], i % 2 == 0 ? Event.Type.INSERT : Event.Type.UPDATE, Mockito.mock(NormalizedJsonLd.class)), DataStage.NATIVE, user, space)));
+        }
+        return todoItems;
+    }
 
-        List<TodoItem> todoItems = Arrays.asList(
-                TodoItem.fromEvent(new PersistedEvent(Event.createDeleteEvent(spaceName, id1, new JsonLdId("http://foobar/"+id1)), DataStage.NATIVE, user, space)),
-                TodoItem.fromEvent(new PersistedEvent(Event.createUpsertEvent(spaceName, UUID.randomUUID(), Event.Type.INSERT, Mockito.mock(NormalizedJsonLd.class)), DataStage.NATIVE, user, space)),
-                TodoItem.fromEvent(new PersistedEvent(Event.createUpsertEvent(spaceName, UUID.randomUUID(), Event.Type.UPDATE, Mockito.mock(NormalizedJsonLd.class)), DataStage.NATIVE, user, space))
-        );
+    @Test
+    public void doProcessTodoList() {
+
+        //Given
+        TodoListProcessor processor = createProcessor(100);
+        List<TodoItem> todoItems = createTodoItems(UUID.randomUUID(), UUID.randomUUID());
 
         //When
         processor.doProcessTodoList(todoItems, DataStage.NATIVE);
 
         //Then
         Mockito.verify(processor, Mockito.times(1)).deleteDocument(Mockito.any(), Mockito.any());
-        Mockito.verify(processor, Mockito.times(2)).upsertDocument(Mockito.any(), Mockito.any(), Mockito.any(), Mockito.any());
+        // One transaction for the removal of the contributing native documents and one for both upserts
+        Mockito.verify(repository, Mockito.times(2)).executeTransactional(Mockito.eq(DataStage.NATIVE), Mockito.anyList());
+    }
+
+    @Test
+    public void doProcessTodoListWithLimitedWindow() {
+
+        //Given
+        TodoListProcessor processor = createProcessor(2);
+        List<TodoItem> todoItems = createTodoItems(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
 
+        //When
+        processor.doProcessTodoList(todoItems, DataStage.NATIVE);
+
+        //Then
+        // One transaction for the removal of the contributing native documents and two windows for the upserts
+        Mockito.verify(repository, Mockito.times(3)).executeTransactional(Mockito.eq(DataStage.NATIVE), Mockito.anyList());
+    }
+
+    @Test
+    public void doProcessTodoListWithSameDocumentInWindow() {
+
+        //Given
+        TodoListProcessor processor = createProcessor(100);
+        UUID id = UUID.randomUUID();
+        List<TodoItem> todoItems = createTodoItems(id, UUID.randomUUID(), id);
+
+        //When
+        processor.doProcessTodoList(todoItems, DataStage.NATIVE);
+
+        //Then
+        // The second upsert of the same document has to open a new window to keep the order of the document
+        Mockito.verify(repository, Mockito.times(3)).executeTransactional(Mockito.eq(DataStage.NATIVE), Mockito.anyList());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.ingestion.controller;
+
+import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.TypeUtils;
+import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.test.JsonAdapter4Test;
+import eu.ebrains.kg.test.TestCategories;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the structural translation of {@link TypeUtils} with the JSON roundtrip it replaces.
+ */
+@Tag(TestCategories.LOAD)
+class TypeTranslationBenchmarkTest {
+
+    private static final int ITERATIONS = 20000;
+
+    private final JsonAdapter jsonAdapter = new JsonAdapter4Test();
+
+    private final TypeUtils typeUtils = new TypeUtils(jsonAdapter);
+
+    private NormalizedJsonLd createDocument() {
+        NormalizedJsonLd doc = new NormalizedJsonLd();
+        doc.put("@id", "https://kg.ebrains.eu/api/instances/" + UUID.randomUUID());
+        doc.put("@type", Collections.singletonList("https://openminds.ebrains.eu/core/DatasetVersion"));
+        for (int i = 0; i < 20; i++) {
+            doc.put("https://openminds.ebrains.eu/vocab/property" + i, "Some value of property " + i);
+        }
+        List<Object> links = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            links.add(Collections.singletonMap("@id", "https://kg.ebrains.eu/api/instances/" + UUID.randomUUID()));
+        }
+        doc.put("https://openminds.ebrains.eu/vocab/author", links);
+        Map<String, Object> embedded = new LinkedHashMap<>();
+        embedded.put("@type", Collections.singletonList("https://openminds.ebrains.eu/core/QuantitativeValue"));
+        embedded.put("https://openminds.ebrains.eu/vocab/value", 42);
+        embedded.put("https://openminds.ebrains.eu/vocab/uncertainty", Arrays.asList(0.5, 1.5));
+        doc.put("https://openminds.ebrains.eu/vocab/embedded", embedded);
+        return doc;
+    }
+
+    private long[] measure(NormalizedJsonLd doc, Function<NormalizedJsonLd, NormalizedJsonLd> translation) {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        //Warm up
+        for (int i = 0; i < ITERATIONS; i++) {
+            translation.apply(doc);
+        }
+        final long allocatedBefore = threadMXBean.getCurrentThreadAllocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            translation.apply(doc);
+        }
+        final long duration = System.nanoTime() - start;
+        final long allocated = threadMXBean.getCurrentThreadAllocatedBytes() - allocatedBefore;
+        return new long[]{duration / ITERATIONS, allocated / ITERATIONS};
+    }
+
+    @Test
+    void translate() {
+        //Given
+        NormalizedJsonLd doc = createDocument();
+
+        //When
+        final long[] roundtrip = measure(doc, d -> jsonAdapter.fromJson(jsonAdapter.toJson(d), NormalizedJsonLd.class));
+        final long[] structural = measure(doc, d -> typeUtils.translate(d, NormalizedJsonLd.class));
+
+        //Then
+        System.out.printf("JSON roundtrip: %d ns / %d bytes per document%n", roundtrip[0], roundtrip[1]);
+        System.out.printf("Structural translation: %d ns / %d bytes per document%n", structural[0], structural[1]);
+        assertEquals(jsonAdapter.fromJson(jsonAdapter.toJson(doc), NormalizedJsonLd.class), typeUtils.translate(doc, NormalizedJsonLd.class));
+        assertTrue(structural[1] < roundtrip[1]);
+    }
+
+}
@@ -38,10 +38,14 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 @Tag(TestCategories.API)
-@Disabled("Fix me")
 class DocumentsRepositoryTest extends AbstractGraphTest {
 
     @Autowired
@@ -55,6 +59,7 @@ class DocumentsRepositoryTest extends AbstractGraphTest {
 
 
     @Test
+    @Disabled("Fix me")
     void getDocumentsByType() {
         //Given
 
@@ -80,6 +85,7 @@ class DocumentsRepositoryTest extends AbstractGraphTest {
     }
 
     @Test
+    @Disabled("Fix me")
     void getDocumentsByTypePaginated() {
         //Given
         upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.HOMER, NormalizedJsonLd.class), stage);
@@ -97,4 +103,34 @@ class DocumentsRepositoryTest extends AbstractGraphTest {
         assertEquals(Long.valueOf(2), familyMembers.getTotalResults());
         assertEquals(1, familyMembers.getData().size(), "Although the pagination is set to 1, there are more elements");
     }
-}
\ No newline at end of file
+
+    @Test
+    void getDocumentsByTypeWithContinuation() {
+        //Given
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.HOMER, NormalizedJsonLd.class), stage);
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MARGE, NormalizedJsonLd.class), stage);
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.LISA, NormalizedJsonLd.class), stage);
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MAGGIE, NormalizedJsonLd.class), stage);
+        //Without label information, all instances share the same (empty) label - the order is decided by the tie-breaker only
+        Type familyMember = new Type("https://thesimpsons.com/FamilyMember");
+
+        //When
+        List<List<NormalizedJsonLd>> continuedPages = new ArrayList<>();
+        String token = "";
+        while (token != null) {
+            Paginated<NormalizedJsonLd> page = documentsRepository.getDocumentsByTypes(stage, familyMember, null, null, null, new PaginationParam().setSize(3L).setContinuationToken(token), null, false, false, null);
+            assertNull(page.getTotalResults());
+            assertEquals(continuedPages.stream().mapToLong(List::size).sum(), page.getFrom());
+            continuedPages.add(page.getData());
+            token = page.getNextContinuationToken();
+        }
+
+        //Then
+        //The pages are the same as with the offset based pagination (which applies the same sort) - in the same order, without duplicates and with the same boundaries
+        assertEquals(Arrays.asList(3, 1), continuedPages.stream().map(List::size).collect(Collectors.toList()));
+        for (int i = 0; i < continuedPages.size(); i++) {
+            Paginated<NormalizedJsonLd> offsetPage = documentsRepository.getDocumentsByTypes(stage, familyMember, null, null, null, new PaginationParam().setSize(3L).setFrom(i * 3L), null, false, false, null);
+            assertEquals(offsetPage.getData(), continuedPages.get(i));
+        }
+    }
+}
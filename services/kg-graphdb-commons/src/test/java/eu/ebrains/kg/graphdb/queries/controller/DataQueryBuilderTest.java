@@ -28,6 +28,9 @@ import eu.ebrains.kg.arango.commons.model.AQLQuery;
 import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
 import eu.ebrains.kg.commons.JsonAdapter;
 import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.model.ContinuationToken;
+import eu.ebrains.kg.commons.model.PaginationParam;
+import eu.ebrains.kg.graphdb.queries.model.CompiledQuery;
 import eu.ebrains.kg.graphdb.queries.model.spec.Specification;
 import eu.ebrains.kg.graphdb.queries.utils.DataQueryBuilder;
 import eu.ebrains.kg.test.JsonAdapter4Test;
@@ -38,6 +41,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -189,4 +193,65 @@ public class DataQueryBuilderTest {
         assertEquals(expected, aqlQuery.getAql().build().getValue());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void compiledQueryIsBoundWithNewValues(){
+        //Given
+        NormalizedJsonLd query = jsonAdapter.fromJson(Simpsons.Queries.QUERY_DYNAMIC_FILTER, NormalizedJsonLd.class);
+        Specification specification = new SpecificationInterpreter().readSpecification(query);
+        List<ArangoCollectionReference> existingCollections = Collections.singletonList(ArangoCollectionReference.fromSpace(Simpsons.SPACE_NAME));
+        CompiledQuery compiledQuery = new DataQueryBuilder(specification, new PaginationParam().setSize(10L), new HashMap<>(), null, null, Map.of("givenName", "Homer"), existingCollections).compile();
+        Map<String, Object> whitelist = Map.of("readAccessBySpace", Collections.singletonList("simpsons"), "readAccessByInvitation", Collections.emptyList());
+
+        //When
+        AQLQuery bound = compiledQuery.bind(new PaginationParam().setSize(5L).setFrom(20), whitelist, null, null, Map.of("givenName", "Bart"));
+        AQLQuery built = new DataQueryBuilder(specification, new PaginationParam().setSize(5L).setFrom(20), whitelist, null, null, Map.of("givenName", "Bart"), existingCollections).build();
+
+        //Then
+        assertEquals(built.getAql().build().getValue(), bound.getAql().build().getValue());
+        assertEquals(built.getBindVars(), bound.getBindVars());
+        assertEquals("bart", ((String)bound.getBindVars().get("givenName")).toLowerCase());
+        assertEquals(5L, bound.getBindVars().get(CompiledQuery.PAGINATION_SIZE));
+        assertEquals(20L, bound.getBindVars().get(CompiledQuery.PAGINATION_FROM));
+        assertEquals(5L, bound.getAql().getPaginationParam().getSize());
+    }
+
+    @Test
+    public void compiledQueryIsOnlyApplicableForSameParameterStates(){
+        //Given
+        NormalizedJsonLd query = jsonAdapter.fromJson(Simpsons.Queries.QUERY_DYNAMIC_FILTER, NormalizedJsonLd.class);
+        Specification specification = new SpecificationInterpreter().readSpecification(query);
+
+        //When
+        CompiledQuery compiledQuery = new DataQueryBuilder(specification, null, null, null, null, Map.of("givenName", "Homer"), Collections.emptyList()).compile();
+
+        //Then
+        assertTrue(compiledQuery.isApplicableFor(Map.of("givenName", "Marge")));
+        assertFalse(compiledQuery.isApplicableFor(Map.of("givenName", " ")));
+        assertFalse(compiledQuery.isApplicableFor(Collections.emptyMap()));
+    }
+
+    @Test
+    public void buildContinuationQuery(){
+        //Given
+        NormalizedJsonLd query = jsonAdapter.fromJson(Simpsons.Queries.HOMER_WITH_EMBEDDED_TRAVERSAL, NormalizedJsonLd.class);
+        Specification specification = new SpecificationInterpreter().readSpecification(query);
+        List<ArangoCollectionReference> existingCollections = Arrays.asList(ArangoCollectionReference.fromSpace(Simpsons.SPACE_NAME), new ArangoCollectionReference(new ArangoKey("http://schema.org/address").getValue(), true));
+        String token = new ContinuationToken(Arrays.asList("742 Evergreen Terrace", "abc"), 10).encode();
+
+        //When
+        AQLQuery aqlQuery = new DataQueryBuilder(specification, new PaginationParam().setSize(10L).setContinuationToken(token), null, null, null, null, existingCollections).build();
+
+        //Then
+        String aql = aqlQuery.getAql().build().getValue();
+        assertTrue(aql.contains("FILTER @continuationKey == null OR schema_org_streetaddress_1 >= @continuationKey[0]"));
+        assertTrue(aql.contains("FILTER @continuationKey == null OR [schema_org_streetaddress_1, root_doc._key] > @continuationKey"));
+        assertTrue(aql.contains("SORT schema_org_streetaddress_1 ASC, root_doc._key ASC"));
+        assertTrue(aql.contains("LIMIT @continuationSize"));
+        assertTrue(aql.contains("\"_continuationKey\": [schema_org_streetaddress_1, root_doc._key]"));
+        assertFalse(aql.contains("@paginationFrom"));
+        assertEquals(Arrays.asList("742 Evergreen Terrace", "abc"), aqlQuery.getBindVars().get("continuationKey"));
+        assertEquals(10L, aqlQuery.getBindVars().get("continuationSize"));
+        assertTrue(aqlQuery.getAql().getPaginationParam().isContinuationMode());
+    }
+
+}
@@ -42,9 +42,8 @@ import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -117,6 +116,35 @@ public class QueryControllerTest extends AbstractGraphTest {
         assertEquals(queryResultB.getData().get(0), queryResultC.getData().get(1));
     }
 
+    @Test
+    public void querySimpleWithContinuation() {
+        //Given
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.HOMER, NormalizedJsonLd.class), stage);
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MARGE, NormalizedJsonLd.class), stage);
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MAGGIE, NormalizedJsonLd.class), stage);
+        KgQuery kgQuery = new KgQuery(jsonAdapter.fromJson(Simpsons.Queries.FAMILY_NAMES_SORTED_BY_GIVEN_NAME_NORMALIZED, NormalizedJsonLd.class), stage);
+
+        //When
+        List<List<NormalizedJsonLd>> continuedPages = new ArrayList<>();
+        String token = "";
+        while (token != null) {
+            Paginated<NormalizedJsonLd> page = queryController.query(userWithRoles, kgQuery, new PaginationParam().setSize(2L).setContinuationToken(token), null, false).getResult();
+            assertNull(page.getTotalResults());
+            assertEquals(continuedPages.stream().mapToLong(List::size).sum(), page.getFrom());
+            continuedPages.add(page.getData());
+            token = page.getNextContinuationToken();
+        }
+
+        //Then
+        //The pages are the same as with the offset based pagination - in the same order, without duplicates and with the same boundaries
+        assertEquals(2, continuedPages.size());
+        for (int i = 0; i < continuedPages.size(); i++) {
+            Paginated<NormalizedJsonLd> offsetPage = queryController.query(userWithRoles, kgQuery, new PaginationParam().setSize(2L).setFrom(i * 2L), null, false).getResult();
+            assertEquals(offsetPage.getData(), continuedPages.get(i));
+        }
+        assertEquals(Arrays.asList("Homer", "Maggie", "Marge"), continuedPages.stream().flatMap(Collection::stream).map(d -> d.getAs("http://schema.org/givenName", String.class)).collect(Collectors.toList()));
+    }
+
     @Test
     @Disabled("Fix me")
     public void queryEmbedded() {
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.queries.controller;
+
+import com.arangodb.ArangoDatabase;
+import com.arangodb.entity.CollectionEntity;
+import com.arangodb.entity.CollectionType;
+import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.PaginationParam;
+import eu.ebrains.kg.commons.query.KgQuery;
+import eu.ebrains.kg.graphdb.queries.model.CompiledQuery;
+import eu.ebrains.kg.test.JsonAdapter4Test;
+import eu.ebrains.kg.test.Simpsons;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryPlanCacheTest {
+
+    private final JsonAdapter jsonAdapter = new JsonAdapter4Test();
+
+    private ArangoDatabase mockDatabase() {
+        ArangoDatabase database = Mockito.mock(ArangoDatabase.class);
+        CollectionEntity collection = Mockito.mock(CollectionEntity.class);
+        Mockito.when(collection.getName()).thenReturn("simpsons");
+        Mockito.when(collection.getType()).thenReturn(CollectionType.DOCUMENT);
+        Mockito.when(database.getCollections()).thenReturn(Collections.singletonList(collection));
+        return database;
+    }
+
+    private KgQuery query(String query) {
+        return new KgQuery(jsonAdapter.fromJson(query, NormalizedJsonLd.class), DataStage.IN_PROGRESS);
+    }
+
+    @Test
+    void compiledQueryIsReused() {
+        //Given
+        ArangoDatabase database = mockDatabase();
+        QueryPlanCache cache = new QueryPlanCache(new SpecificationInterpreter(), jsonAdapter, 10);
+
+        //When
+        CompiledQuery first = cache.getCompiledQuery(database, query(Simpsons.Queries.FAMILY_NAMES_NORMALIZED), false, true, false, new PaginationParam().setSize(10L), null);
+        CompiledQuery second = cache.getCompiledQuery(database, query(Simpsons.Queries.FAMILY_NAMES_NORMALIZED), false, true, false, new PaginationParam().setSize(20L).setFrom(40), null);
+
+        //Then
+        assertSame(first, second);
+        Mockito.verify(database, Mockito.times(1)).getCollections();
+    }
+
+    @Test
+    void compiledQueryDependsOnStructureOfRequest() {
+        //Given
+        ArangoDatabase database = mockDatabase();
+        QueryPlanCache cache = new QueryPlanCache(new SpecificationInterpreter(), jsonAdapter, 10);
+
+        //When
+        CompiledQuery withFilter = cache.getCompiledQuery(database, query(Simpsons.Queries.QUERY_DYNAMIC_FILTER), false, true, false, null, Map.of("givenName", "Homer"));
+        CompiledQuery withOtherFilterValue = cache.getCompiledQuery(database, query(Simpsons.Queries.QUERY_DYNAMIC_FILTER), false, true, false, null, Map.of("givenName", "Bart"));
+        CompiledQuery withoutFilter = cache.getCompiledQuery(database, query(Simpsons.Queries.QUERY_DYNAMIC_FILTER), false, true, false, null, Collections.emptyMap());
+        CompiledQuery withoutWhitelist = cache.getCompiledQuery(database, query(Simpsons.Queries.QUERY_DYNAMIC_FILTER), false, false, false, null, Map.of("givenName", "Homer"));
+
+        //Then
+        assertSame(withFilter, withOtherFilterValue);
+        assertNotSame(withFilter, withoutFilter);
+        assertNotSame(withFilter, withoutWhitelist);
+        assertNotEquals(withFilter.getAql(), withoutFilter.getAql());
+    }
+
+    @Test
+    void cacheIsBounded() {
+        //Given
+        ArangoDatabase database = mockDatabase();
+        QueryPlanCache cache = new QueryPlanCache(new SpecificationInterpreter(), jsonAdapter, 1);
+        CompiledQuery first = cache.getCompiledQuery(database, query(Simpsons.Queries.FAMILY_NAMES_NORMALIZED), false, true, false, null, null);
+
+        //When
+        cache.getCompiledQuery(database, query(Simpsons.Queries.QUERY_DYNAMIC_FILTER), false, true, false, null, null);
+        CompiledQuery recompiled = cache.getCompiledQuery(database, query(Simpsons.Queries.FAMILY_NAMES_NORMALIZED), false, true, false, null, null);
+
+        //Then
+        assertNotSame(first, recompiled);
+        assertEquals(first.getAql(), recompiled.getAql());
+    }
+
+}
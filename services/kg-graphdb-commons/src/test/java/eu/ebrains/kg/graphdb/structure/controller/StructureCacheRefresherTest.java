@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StructureCacheRefresherTest {
+
+    private final AtomicLong now = new AtomicLong(1000);
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private final AtomicInteger evictions = new AtomicInteger();
+
+    private final StructureCacheRefresher refresher = new StructureCacheRefresher(60000, 30000, 2, now::get);
+
+    private void schedule(String key, boolean deferred) {
+        refresher.scheduleRefresh(Arrays.asList("typesInSpace", key), deferred, refreshes::incrementAndGet, evictions::incrementAndGet);
+    }
+
+    @Test
+    void coalescesRefreshes() {
+        //Given
+        schedule("foo", false);
+        schedule("foo", false);
+
+        //When
+        refresher.refreshDueEntries();
+
+        //Then
+        assertEquals(1, refreshes.get());
+        assertEquals(0, evictions.get());
+        assertEquals(0, refresher.getNumberOfPendingRefreshes());
+    }
+
+    @Test
+    void delaysDeferredRefreshes() {
+        //Given
+        schedule("foo", true);
+
+        //When
+        refresher.refreshDueEntries();
+        int refreshesBeforeDelay = refreshes.get();
+        now.addAndGet(30000);
+        refresher.refreshDueEntries();
+
+        //Then
+        assertEquals(0, refreshesBeforeDelay);
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    void evictsEntriesWhichAreStaleForTooLong() {
+        //Given
+        schedule("foo", false);
+
+        //When
+        now.addAndGet(60001);
+        refresher.refreshDueEntries();
+
+        //Then
+        assertEquals(0, refreshes.get());
+        assertEquals(1, evictions.get());
+    }
+
+    @Test
+    void evictsIfTooManyRefreshesArePending() {
+        //Given
+        schedule("foo", false);
+        schedule("bar", false);
+
+        //When
+        schedule("baz", false);
+
+        //Then
+        assertEquals(1, evictions.get());
+        assertEquals(2, refresher.getNumberOfPendingRefreshes());
+    }
+
+    @Test
+    void evictsIfTheRefreshFails() {
+        //Given
+        refresher.scheduleRefresh(Arrays.asList("typesInSpace", "foo"), false, () -> {
+            throw new IllegalStateException("Reflection failed");
+        }, evictions::incrementAndGet);
+
+        //When
+        refresher.refreshDueEntries();
+
+        //Then
+        assertEquals(1, evictions.get());
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.controller;
+
+import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoCursor;
+import com.arangodb.ArangoDatabase;
+import com.arangodb.entity.CollectionEntity;
+import com.arangodb.entity.CollectionRevisionEntity;
+import com.arangodb.entity.StreamTransactionEntity;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.arango.commons.model.InternalSpace;
+import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.graphdb.commons.controller.ArangoDatabases;
+import eu.ebrains.kg.graphdb.commons.controller.GraphDBArangoUtils;
+import eu.ebrains.kg.graphdb.structure.model.PropertyOfTypeInSpaceReflection;
+import eu.ebrains.kg.graphdb.structure.model.SpaceStructureSnapshot;
+import eu.ebrains.kg.graphdb.structure.model.TypeWithInstanceCountReflection;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.interceptor.SimpleKeyGenerator;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class StructureCacheSnapshotsTest {
+
+    private static final SpaceName SPACE = new SpaceName("foo");
+    private static final String TYPE = "http://schema/Bar";
+
+    private final JsonAdapter jsonAdapter = new JsonAdapter(new ObjectMapper());
+    private final CacheManager cacheManager = new ConcurrentMapCacheManager();
+    private final ArangoDatabase db = mock(ArangoDatabase.class);
+    private final CollectionRevisionEntity revision = mock(CollectionRevisionEntity.class);
+    private final StructureCacheRefresher structureCacheRefresher = mock(StructureCacheRefresher.class);
+    private StructureCacheSnapshots snapshots;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setup() {
+        ArangoDatabases arangoDatabases = mock(ArangoDatabases.class);
+        ArangoCollection collection = mock(ArangoCollection.class);
+        ArangoCollection spaceCollection = mock(ArangoCollection.class);
+        CollectionEntity spaceCollectionEntity = mock(CollectionEntity.class);
+        ArangoCursor<String> cursor = mock(ArangoCursor.class);
+        StreamTransactionEntity tx = mock(StreamTransactionEntity.class);
+        when(arangoDatabases.getByStage(DataStage.IN_PROGRESS)).thenReturn(db);
+        when(db.collection(ArangoCollectionReference.fromSpace(InternalSpace.STRUCTURE_CACHE_SNAPSHOT_SPACE).getCollectionName())).thenReturn(collection);
+        when(collection.exists()).thenReturn(true);
+        when(collection.getDocument("checkpoint", Map.class)).thenReturn(Map.of("revisions", Map.of(SPACE.getName(), "1"), "spaces", List.of(SPACE.getName())));
+        when(spaceCollectionEntity.getName()).thenReturn(SPACE.getName());
+        when(db.getCollections(any())).thenReturn(List.of(spaceCollectionEntity));
+        when(db.collection(SPACE.getName())).thenReturn(spaceCollection);
+        when(spaceCollection.getRevision()).thenReturn(revision);
+        when(revision.getRevision()).thenReturn("1");
+        when(db.query(anyString(), anyMap(), eq(String.class))).thenReturn(cursor);
+        when(cursor.asListRemaining()).thenReturn(Collections.singletonList(jsonAdapter.toJson(createSnapshot())));
+        when(tx.getId()).thenReturn("tx");
+        when(db.beginStreamTransaction(any())).thenReturn(tx);
+        snapshots = new StructureCacheSnapshots(arangoDatabases, mock(GraphDBArangoUtils.class), mock(StructureRepository.class), structureCacheRefresher, cacheManager, jsonAdapter, 1);
+    }
+
+    private SpaceStructureSnapshot createSnapshot() {
+        TypeWithInstanceCountReflection type = new TypeWithInstanceCountReflection();
+        type.setName(TYPE);
+        type.setOccurrences(2);
+        PropertyOfTypeInSpaceReflection property = new PropertyOfTypeInSpaceReflection();
+        property.setName("http://schema/name");
+        property.setOccurrences(2);
+        SpaceStructureSnapshot snapshot = new SpaceStructureSnapshot();
+        snapshot.setSpace(SPACE);
+        snapshot.setTypes(Collections.singletonList(type));
+        snapshot.setProperties(Map.of(TYPE, Collections.singletonList(property)));
+        snapshot.setTargetTypes(Collections.emptyMap());
+        return snapshot;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void restoresValidSnapshot() {
+        //When
+        boolean restored = snapshots.restore(DataStage.IN_PROGRESS);
+
+        //Then
+        assertTrue(restored);
+        assertEquals(Collections.singletonList(SPACE), cacheManager.getCache("reflectedSpaces").get(DataStage.IN_PROGRESS, List.class));
+        List<TypeWithInstanceCountReflection> types = cacheManager.getCache("typesInSpace").get(SimpleKeyGenerator.generateKey(DataStage.IN_PROGRESS, SPACE), List.class);
+        assertEquals(2, types.get(0).getOccurrences());
+        List<PropertyOfTypeInSpaceReflection> properties = cacheManager.getCache("propertiesOfTypeInSpace").get(SimpleKeyGenerator.generateKey(DataStage.IN_PROGRESS, SPACE, TYPE), List.class);
+        assertEquals("http://schema/name", properties.get(0).getName());
+    }
+
+    @Test
+    void ignoresOutdatedSnapshot() {
+        //Given
+        when(revision.getRevision()).thenReturn("2");
+
+        //When
+        boolean restored = snapshots.restore(DataStage.IN_PROGRESS);
+
+        //Then
+        assertFalse(restored);
+        assertNull(cacheManager.getCache("typesInSpace").get(SimpleKeyGenerator.generateKey(DataStage.IN_PROGRESS, SPACE)));
+    }
+
+    @Test
+    void savesSnapshotIfNothingHasChanged() {
+        //When
+        snapshots.save(DataStage.IN_PROGRESS, Map.of(SPACE.getName(), "1"));
+
+        //Then
+        verify(db).commitStreamTransaction("tx");
+    }
+
+    @Test
+    void skipsSnapshotIfDataHasBeenWritten() {
+        //Given
+        when(revision.getRevision()).thenReturn("2");
+
+        //When
+        snapshots.save(DataStage.IN_PROGRESS, Map.of(SPACE.getName(), "1"));
+
+        //Then
+        verify(db, never()).beginStreamTransaction(any());
+    }
+
+    @Test
+    void skipsSnapshotIfRefreshesArePending() {
+        //Given
+        when(structureCacheRefresher.getNumberOfPendingRefreshes()).thenReturn(1);
+
+        //When
+        snapshots.save(DataStage.IN_PROGRESS, Map.of(SPACE.getName(), "1"));
+
+        //Then
+        verify(db, never()).beginStreamTransaction(any());
+    }
+
+}
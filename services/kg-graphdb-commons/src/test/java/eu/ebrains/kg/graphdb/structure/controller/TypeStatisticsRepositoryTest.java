@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.controller;
+
+import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
+import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.graphdb.AbstractGraphTest;
+import eu.ebrains.kg.graphdb.structure.model.PropertyOfTypeInSpaceReflection;
+import eu.ebrains.kg.graphdb.structure.model.TypeWithInstanceCountReflection;
+import eu.ebrains.kg.test.Simpsons;
+import eu.ebrains.kg.test.TestCategories;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TestCategories.API)
+class TypeStatisticsRepositoryTest extends AbstractGraphTest {
+
+    @Autowired
+    TypeStatisticsRepository typeStatisticsRepository;
+
+    private Map<String, Integer> getTypesInSpace(DataStage stage) {
+        return typeStatisticsRepository.getTypesInSpace(stage, Simpsons.SPACE_NAME).stream().collect(Collectors.toMap(TypeWithInstanceCountReflection::getName, TypeWithInstanceCountReflection::getOccurrences));
+    }
+
+    private Map<String, Integer> getPropertiesOfTypeInSpace(DataStage stage, String type) {
+        return typeStatisticsRepository.getPropertiesOfTypeInSpace(stage, Simpsons.SPACE_NAME, type).stream().collect(Collectors.toMap(PropertyOfTypeInSpaceReflection::getName, PropertyOfTypeInSpaceReflection::getOccurrences));
+    }
+
+    @Test
+    void countersFollowIngestion() {
+        //Given
+        DataStage stage = DataStage.IN_PROGRESS;
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.HOMER, NormalizedJsonLd.class), stage);
+        //The first read builds the counters from a scan...
+        Map<String, Integer> initial = getTypesInSpace(stage);
+
+        //When
+        //... which are maintained by the ingestion afterwards
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MAGGIE, NormalizedJsonLd.class), stage);
+        Map<String, Integer> maintained = getTypesInSpace(stage);
+
+        //Then
+        assertEquals(1, initial.get("https://thesimpsons.com/FamilyMember"));
+        assertEquals(2, maintained.get("https://thesimpsons.com/FamilyMember"));
+        assertEquals(1, maintained.get("http://schema.org/Kid"));
+        assertEquals(typeStatisticsRepository.rebuild(stage, Simpsons.SPACE_NAME).getB(), maintained.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, e -> e.getValue().longValue())));
+    }
+
+    @Test
+    void propertyCountersFollowIngestion() {
+        //Given
+        DataStage stage = DataStage.IN_PROGRESS;
+        String type = "https://thesimpsons.com/FamilyMember";
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.HOMER, NormalizedJsonLd.class), stage);
+        getTypesInSpace(stage);
+
+        //When
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MAGGIE, NormalizedJsonLd.class), stage);
+        Map<String, Integer> maintained = getPropertiesOfTypeInSpace(stage, type);
+        typeStatisticsRepository.rebuild(stage, Simpsons.SPACE_NAME);
+        Map<String, Integer> scanned = getPropertiesOfTypeInSpace(stage, type);
+
+        //Then
+        assertEquals(2, maintained.get("http://schema.org/familyName"));
+        assertEquals(scanned, maintained);
+    }
+
+    @Test
+    void invalidatedCountersAreRebuiltOnRead() {
+        //Given
+        DataStage stage = DataStage.IN_PROGRESS;
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.HOMER, NormalizedJsonLd.class), stage);
+        getTypesInSpace(stage);
+
+        //When
+        typeStatisticsRepository.invalidate(stage, Set.of(ArangoCollectionReference.fromSpace(Simpsons.SPACE_NAME).getCollectionName()));
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MAGGIE, NormalizedJsonLd.class), stage);
+        Map<String, Integer> rebuilt = getTypesInSpace(stage);
+
+        //Then
+        assertEquals(2, rebuilt.get("https://thesimpsons.com/FamilyMember"));
+    }
+
+    @Test
+    void rebuildCorrectsCountersInsteadOfReplacingThem() {
+        //Given
+        DataStage stage = DataStage.IN_PROGRESS;
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.HOMER, NormalizedJsonLd.class), stage);
+        upsert(Simpsons.SPACE_NAME, jsonAdapter.fromJson(Simpsons.Characters.MAGGIE, NormalizedJsonLd.class), stage);
+        Map<String, Integer> initial = getTypesInSpace(stage);
+
+        //When
+        typeStatisticsRepository.rebuild(stage, Simpsons.SPACE_NAME);
+        typeStatisticsRepository.rebuild(stage, Simpsons.SPACE_NAME);
+
+        //Then
+        assertEquals(initial, getTypesInSpace(stage));
+        assertEquals(2, initial.get("https://thesimpsons.com/FamilyMember"));
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.graphdb.structure.controller;
+
+import eu.ebrains.kg.graphdb.ingestion.model.CacheEvictionPlan;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TypeStatisticsRepositoryUnitTest {
+
+    private static CacheEvictionPlan plan(String id, String... types) {
+        return CacheEvictionPlan.of(id, Arrays.asList(types), "foo", Collections.emptyList());
+    }
+
+    private static CacheEvictionPlan planWithAttributes(String id, String type, String... attributes) {
+        return CacheEvictionPlan.of(id, Collections.singletonList(type), "foo", Arrays.asList(attributes));
+    }
+
+    @Test
+    void getDeltas() {
+        //Given
+        List<CacheEvictionPlan> before = Arrays.asList(
+                plan("foo/updated", "http://schema/Bar"),
+                plan("foo/retyped", "http://schema/Bar"),
+                plan("foo/deleted", "http://schema/Bar", "http://schema/Baz"));
+        List<CacheEvictionPlan> after = Arrays.asList(
+                plan("foo/updated", "http://schema/Bar"),
+                plan("foo/retyped", "http://schema/Foo"),
+                plan("foo/created", "http://schema/Foo", "http://schema/Foo"),
+                plan("other/created", "http://schema/Bar"));
+
+        //When
+        Map<TypeStatisticsRepository.Counter, Map<String, Long>> deltas = TypeStatisticsRepository.getDeltas(before, after);
+
+        //Then
+        assertEquals(Map.of(
+                TypeStatisticsRepository.Counter.types("foo"), Map.of("http://schema/Bar", -2L, "http://schema/Baz", -1L, "http://schema/Foo", 2L),
+                TypeStatisticsRepository.Counter.types("other"), Map.of("http://schema/Bar", 1L)), deltas);
+    }
+
+    @Test
+    void getDeltasWithoutStructuralChanges() {
+        //Given
+        List<CacheEvictionPlan> plans = Collections.singletonList(plan("foo/updated", "http://schema/Bar"));
+
+        //When
+        Map<TypeStatisticsRepository.Counter, Map<String, Long>> deltas = TypeStatisticsRepository.getDeltas(plans, plans);
+
+        //Then
+        assertTrue(deltas.isEmpty());
+    }
+
+    @Test
+    void getDeltasOfProperties() {
+        //Given
+        List<CacheEvictionPlan> before = Collections.singletonList(planWithAttributes("foo/updated", "http://schema/Bar", "_key", "@id", "http://schema/name", "http://schema/removed"));
+        List<CacheEvictionPlan> after = Arrays.asList(
+                planWithAttributes("foo/updated", "http://schema/Bar", "_key", "@id", "http://schema/name", "http://schema/added"),
+                planWithAttributes("foo/created", "http://schema/Bar", "_key", "@id", "http://schema/name"));
+
+        //When
+        Map<TypeStatisticsRepository.Counter, Map<String, Long>> deltas = TypeStatisticsRepository.getDeltas(before, after);
+
+        //Then
+        assertEquals(Map.of("@id", 1L, "http://schema/name", 1L, "http://schema/added", 1L, "http://schema/removed", -1L), deltas.get(TypeStatisticsRepository.Counter.properties("foo", "http://schema/Bar")));
+        assertEquals(Map.of("http://schema/Bar", 1L), deltas.get(TypeStatisticsRepository.Counter.types("foo")));
+    }
+
+    @Test
+    void getRetypedDocuments() {
+        //Given
+        List<CacheEvictionPlan> before = Arrays.asList(
+                plan("foo/updated", "http://schema/Bar", "http://schema/Baz"),
+                plan("foo/retyped", "http://schema/Bar"),
+                plan("foo/deleted", "http://schema/Bar"));
+        List<CacheEvictionPlan> after = Arrays.asList(
+                plan("foo/updated", "http://schema/Baz", "http://schema/Bar"),
+                plan("foo/retyped", "http://schema/Foo"),
+                plan("foo/created", "http://schema/Foo"));
+
+        //When
+        Set<String> retyped = TypeStatisticsRepository.getRetypedDocuments(before, after);
+
+        //Then
+        assertEquals(Collections.singleton("foo/retyped"), retyped);
+    }
+
+    @Test
+    void shardKeys() {
+        //Given
+        TypeStatisticsRepository.Counter types = TypeStatisticsRepository.Counter.types("foo");
+        TypeStatisticsRepository.Counter properties = TypeStatisticsRepository.Counter.properties("foo", "http://schema/Bar");
+
+        //When
+        List<String> typeKeys = types.getKeysOfAllShards();
+        List<String> propertyKeys = properties.getKeysOfAllShards();
+
+        //Then
+        assertEquals("foo", typeKeys.get(0));
+        assertEquals(properties.getKey(), propertyKeys.get(0));
+        assertEquals(TypeStatisticsRepository.SHARDS, new HashSet<>(typeKeys).size());
+        assertEquals(TypeStatisticsRepository.SHARDS, new HashSet<>(propertyKeys).size());
+        assertEquals(propertyKeys.get(3), properties.toDocument(Map.of(), 3).get("_key"));
+    }
+
+    @Test
+    void getCorrections() {
+        //Given
+        TypeStatisticsRepository.Counter types = TypeStatisticsRepository.Counter.types("foo");
+        TypeStatisticsRepository.Counter properties = TypeStatisticsRepository.Counter.properties("foo", "http://schema/Bar");
+        Map<TypeStatisticsRepository.Counter, Map<String, Long>> counted = Map.of(types, Map.of("http://schema/Bar", 3L, "http://schema/Removed", 1L), properties, Map.of("http://schema/name", 2L));
+        Map<TypeStatisticsRepository.Counter, Map<String, Long>> scanned = Map.of(types, Map.of("http://schema/Bar", 4L, "http://schema/Added", 2L), properties, Map.of("http://schema/name", 2L));
+
+        //When
+        Map<TypeStatisticsRepository.Counter, Map<String, Long>> corrections = TypeStatisticsRepository.getCorrections(counted, scanned);
+
+        //Then
+        assertEquals(Map.of(types, Map.of("http://schema/Bar", 1L, "http://schema/Added", 2L, "http://schema/Removed", -1L)), corrections);
+    }
+
+}
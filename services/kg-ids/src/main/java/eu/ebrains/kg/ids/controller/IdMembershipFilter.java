@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.ids.controller;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bloom filter over strings: {@link #mightContain(String)} is true for every value which has been added - and with
+ * a low probability also for values which have not.
+ *
+ * The filter is thread-safe and lock-free: a value is visible for all threads as soon as {@link #add(String)} returns.
+ */
+class IdMembershipFilter {
+
+    private final AtomicLongArray bits;
+
+    private final long numberOfBits;
+
+    private final int numberOfHashFunctions;
+
+    /**
+     * @param expectedEntries   the number of values the filter is sized for - more values are possible but increase
+     *                          the false positive rate.
+     * @param falsePositiveRate the false positive rate at the expected number of values
+     */
+    IdMembershipFilter(long expectedEntries, double falsePositiveRate) {
+        final long n = Math.max(expectedEntries, 1);
+        final long m = (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) Math.min(Integer.MAX_VALUE, (m + 63) / 64));
+        this.numberOfBits = (long) bits.length() * 64;
+        this.numberOfHashFunctions = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    void add(String value) {
+        final long hash = hash(value);
+        final long hash2 = mix(hash) | 1;
+        for (int i = 0; i < numberOfHashFunctions; i++) {
+            final long bit = Math.floorMod(hash + i * hash2, numberOfBits);
+            final int index = (int) (bit >>> 6);
+            final long mask = 1L << bit;
+            long current;
+            do {
+                current = bits.get(index);
+            } while ((current & mask) == 0 && !bits.compareAndSet(index, current, current | mask));
+        }
+    }
+
+    boolean mightContain(String value) {
+        final long hash = hash(value);
+        final long hash2 = mix(hash) | 1;
+        for (int i = 0; i < numberOfHashFunctions; i++) {
+            final long bit = Math.floorMod(hash + i * hash2, numberOfBits);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int getNumberOfHashFunctions() {
+        return numberOfHashFunctions;
+    }
+
+    long getNumberOfBits() {
+        return numberOfBits;
+    }
+
+    /**
+     * FNV-1a over the characters of the value
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    /**
+     * The finalizer of MurmurHash3 - spreads the bits of the hash
+     */
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53a1ba7L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+}
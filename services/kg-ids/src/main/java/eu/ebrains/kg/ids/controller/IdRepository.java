@@ -24,11 +24,12 @@
 package eu.ebrains.kg.ids.controller;
 
 import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoDBException;
 import com.arangodb.ArangoDatabase;
-import com.arangodb.model.AqlQueryOptions;
-import com.arangodb.model.DocumentCreateOptions;
-import com.arangodb.model.SkiplistIndexOptions;
+import com.arangodb.entity.StreamTransactionEntity;
+import com.arangodb.model.*;
 import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
+import eu.ebrains.kg.arango.commons.aqlbuilder.ArangoVocabulary;
 import eu.ebrains.kg.arango.commons.model.ArangoCollectionReference;
 import eu.ebrains.kg.arango.commons.model.ArangoDatabaseProxy;
 import eu.ebrains.kg.commons.IdUtils;
@@ -43,16 +44,44 @@ import eu.ebrains.kg.commons.model.DataStage;
 import eu.ebrains.kg.commons.model.IdWithAlternatives;
 import eu.ebrains.kg.commons.model.SpaceName;
 import eu.ebrains.kg.ids.model.PersistedId;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
 public class IdRepository {
+    private static final String METRICS_PREFIX = "kg.ids.resolutionCache";
+
+    private static final int WRITE_CONFLICT = 1200;
+
+    private static final int MAX_WRITE_ATTEMPTS = 5;
+
+    /**
+     * The key of the document marking a lookup collection as complete (it can't collide with the MD5 hashes used as
+     * keys of the lookup entries).
+     */
+    private static final String LOOKUP_INITIALIZED_KEY = "initialized";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
     private final ArangoDatabaseProxy arangoDatabase;
 
     private final IdsDBUtils idsDBUtils;
@@ -61,6 +90,22 @@ public class IdRepository {
 
     private final IdUtils idUtils;
 
+    private final NegativeLookupFilter negativeLookupFilter;
+
+    private final Map<DataStage, IdResolutionCache> resolutionCaches = new EnumMap<>(DataStage.class);
+
+    private final Lock[] upsertLocks;
+
+    private final Set<DataStage> availableLookups = ConcurrentHashMap.newKeySet();
+
+    private final Set<DataStage> initializingLookups = ConcurrentHashMap.newKeySet();
+
+    private final ExecutorService lookupInitialization = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "alternative-id-lookup-initialization");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public PersistedId getId(UUID uuid, DataStage stage) {
         ArangoDatabase database = arangoDatabase.getOrCreate();
         ArangoCollection collection = database.collection(getCollectionName(stage));
@@ -71,37 +116,183 @@ public class IdRepository {
         return null;
     }
 
-    public IdRepository(@Qualifier("idsDB") ArangoDatabaseProxy arangoDatabase, JsonAdapter jsonAdapter, IdUtils idUtils, IdsDBUtils idsDBUtils) {
+    public IdRepository(@Qualifier("idsDB") ArangoDatabaseProxy arangoDatabase, JsonAdapter jsonAdapter, IdUtils idUtils, IdsDBUtils idsDBUtils, NegativeLookupFilter negativeLookupFilter, MeterRegistry meterRegistry, @Value("${eu.ebrains.kg.ids.resolutionCache.maxSize:100000}") int resolutionCacheMaxSize, @Value("${eu.ebrains.kg.ids.upsert.lockStripes:256}") int lockStripes) {
         this.arangoDatabase = arangoDatabase;
         this.jsonAdapter = jsonAdapter;
         this.idUtils = idUtils;
         this.idsDBUtils = idsDBUtils;
+        this.negativeLookupFilter = negativeLookupFilter;
+        this.upsertLocks = new Lock[lockStripes];
+        for (int i = 0; i < lockStripes; i++) {
+            upsertLocks[i] = new ReentrantLock();
+        }
+        for (DataStage stage : DataStage.values()) {
+            IdResolutionCache cache = new IdResolutionCache(resolutionCacheMaxSize);
+            resolutionCaches.put(stage, cache);
+            Gauge.builder(METRICS_PREFIX + ".size", cache, IdResolutionCache::size).tag("stage", stage.name()).register(meterRegistry);
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", cache, IdResolutionCache::getHits).tag("stage", stage.name()).tag("result", "hit").register(meterRegistry);
+            FunctionCounter.builder(METRICS_PREFIX + ".requests", cache, IdResolutionCache::getMisses).tag("stage", stage.name()).tag("result", "miss").register(meterRegistry);
+        }
+    }
+
+    IdResolutionCache getResolutionCache(DataStage stage) {
+        return resolutionCaches.get(stage);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        lookupInitialization.shutdownNow();
     }
 
     public void remove(DataStage stage, PersistedId id) {
-        ArangoCollection coll = getOrCreateCollection(stage);
-        if (coll.documentExists(id.getKey())) {
-            coll.deleteDocument(id.getKey());
-        }
+        writeInTransaction(stage, id.getUUID(), (database, streamTransactionId) -> {
+            ArangoCollection coll = database.collection(getCollectionName(stage));
+            PersistedId document = jsonAdapter.fromJson(coll.getDocument(id.getKey(), String.class, new DocumentReadOptions().streamTransactionId(streamTransactionId)), PersistedId.class);
+            if (document != null) {
+                coll.deleteDocument(id.getKey(), Void.class, new DocumentDeleteOptions().streamTransactionId(streamTransactionId));
+                removeFromLookup(database, stage, document.getUUID(), document.getAlternativeIds(), streamTransactionId);
+            }
+        });
+        getResolutionCache(stage).invalidate(id.getUUID(), id.getAlternativeIds());
     }
 
-    public synchronized void upsert(DataStage stage, PersistedId id) {
+    public void upsert(DataStage stage, PersistedId id) {
+        writeInTransaction(stage, id.getUUID(), (database, streamTransactionId) -> {
+            ArangoCollection coll = database.collection(getCollectionName(stage));
+            PersistedId document = jsonAdapter.fromJson(coll.getDocument(id.getKey(), String.class, new DocumentReadOptions().streamTransactionId(streamTransactionId)), PersistedId.class);
+            final Set<String> previousAlternatives = document != null && document.getAlternativeIds() != null ? document.getAlternativeIds() : Collections.emptySet();
+            if (stage == DataStage.IN_PROGRESS) {
+                //It could happen that identifiers disappear during updates. We need to make sure that the old identifiers are not lost though (getting rid of them is called "splitting" and is a separate process).
+                if (!previousAlternatives.isEmpty()) {
+                    JsonLdId instanceId = idUtils.buildAbsoluteUrl(document.getUUID());
+                    List<String> alternativeIds = new ArrayList<>(id.getAlternativeIds());
+                    alternativeIds.addAll(previousAlternatives);
+                    id.setAlternativeIds(alternativeIds.stream().filter(a -> !a.equals(instanceId.getId())).distinct().collect(Collectors.toSet()));
+                }
+            }
+            //Add the id in its fully qualified form as an alternative
+            id.setAlternativeIds(new HashSet<>(id.getAlternativeIds() != null ? id.getAlternativeIds() : Collections.emptySet()));
+            id.getAlternativeIds().add(idUtils.buildAbsoluteUrl(id.getUUID()).getId());
+            //The write time lets the negative lookup filters of all instances catch up with the id.
+            id.setWrittenAt(System.currentTimeMillis());
+            negativeLookupFilter.register(stage, id.getAlternativeIds());
+            negativeLookupFilter.register(stage, Collections.singleton(id.getKey()));
+            coll.insertDocument(jsonAdapter.toJson(id), new DocumentCreateOptions().overwrite(true).streamTransactionId(streamTransactionId));
+            //We only touch the lookup entries which have changed to keep the conflicts with other ids sharing them low.
+            removeFromLookup(database, stage, id.getUUID(), previousAlternatives.stream().filter(a -> !id.getAlternativeIds().contains(a)).collect(Collectors.toSet()), streamTransactionId);
+            addToLookup(database, stage, id.getUUID(), id.getAlternativeIds().stream().filter(a -> !previousAlternatives.contains(a)).collect(Collectors.toSet()), streamTransactionId);
+        });
+        //The cache is invalidated after the write - this way, concurrent lookups can't cache the state before it.
+        getResolutionCache(stage).invalidate(id.getUUID(), id.getAlternativeIds());
+    }
+
+    /**
+     * Runs the given write in a transaction on the ids and the lookup collection of the stage. The writes of the same
+     * id are serialized (by a lock stripe) to prevent lost updates - writes of different ids can run in parallel. Since
+     * they can still touch the same lookup entries (if they share alternatives), write conflicts are retried.
+     */
+    private void writeInTransaction(DataStage stage, UUID uuid, BiConsumer<ArangoDatabase, String> write) {
         ArangoCollection coll = getOrCreateCollection(stage);
-        //TODO make this transactional
-        if (stage == DataStage.IN_PROGRESS) {
-            PersistedId document = jsonAdapter.fromJson(coll.getDocument(id.getKey(), String.class), PersistedId.class);
-            //It could happen that identifiers disappear during updates. We need to make sure that the old identifiers are not lost though (getting rid of them is called "splitting" and is a separate process).
-            if (document != null && document.getAlternativeIds() != null) {
-                JsonLdId instanceId = idUtils.buildAbsoluteUrl(document.getUUID());
-                List<String> alternativeIds = new ArrayList<>(id.getAlternativeIds());
-                alternativeIds.addAll(document.getAlternativeIds());
-                id.setAlternativeIds(alternativeIds.stream().filter(a -> !a.equals(instanceId.getId())).distinct().collect(Collectors.toSet()));
+        ArangoCollection lookup = getOrCreateLookupCollection(stage);
+        ArangoDatabase database = arangoDatabase.getOrCreate();
+        final Lock lock = upsertLocks[Math.floorMod(uuid.hashCode(), upsertLocks.length)];
+        lock.lock();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                final StreamTransactionEntity tx = database.beginStreamTransaction(new StreamTransactionOptions().writeCollections(coll.name(), lookup.name()).waitForSync(true));
+                try {
+                    write.accept(database, tx.getId());
+                    database.commitStreamTransaction(tx.getId());
+                    return;
+                } catch (RuntimeException e) {
+                    database.abortStreamTransaction(tx.getId());
+                    if (!(e instanceof ArangoDBException) || !Integer.valueOf(WRITE_CONFLICT).equals(((ArangoDBException) e).getErrorNum()) || attempt >= MAX_WRITE_ATTEMPTS) {
+                        throw e;
+                    }
+                    logger.debug(String.format("Write conflict for id %s in stage %s - retrying (attempt %d)", uuid, stage.name(), attempt));
+                }
             }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void addToLookup(ArangoDatabase database, DataStage stage, UUID uuid, Set<String> alternatives, String streamTransactionId) {
+        if (CollectionUtils.isEmpty(alternatives)) {
+            return;
+        }
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR a IN @alternatives"));
+        aql.addLine(AQL.trust("UPSERT {_key: MD5(a)} INSERT {_key: MD5(a), alternative: a, ids: [@id]} UPDATE {ids: UNION_DISTINCT(OLD.ids, [@id])} IN @@lookup"));
+        database.query(aql.build().getValue(), Map.of("alternatives", alternatives, "id", uuid, "@lookup", getLookupCollectionName(stage)), new AqlQueryOptions().streamTransactionId(streamTransactionId), Void.class);
+    }
+
+    private void removeFromLookup(ArangoDatabase database, DataStage stage, UUID uuid, Set<String> alternatives, String streamTransactionId) {
+        if (CollectionUtils.isEmpty(alternatives)) {
+            return;
+        }
+        final Map<String, Object> bindVars = Map.of("alternatives", alternatives, "id", uuid, "@lookup", getLookupCollectionName(stage));
+        //The entries which are only pointing to this id are removed...
+        AQL remove = new AQL();
+        remove.addLine(AQL.trust("FOR a IN @alternatives"));
+        remove.addLine(AQL.trust("LET e = DOCUMENT(@@lookup, MD5(a))"));
+        remove.addLine(AQL.trust("FILTER e != NULL AND e.ids == [@id]"));
+        remove.addLine(AQL.trust("REMOVE e IN @@lookup"));
+        database.query(remove.build().getValue(), bindVars, new AqlQueryOptions().streamTransactionId(streamTransactionId), Void.class);
+        //... the others are updated.
+        AQL update = new AQL();
+        update.addLine(AQL.trust("FOR a IN @alternatives"));
+        update.addLine(AQL.trust("LET e = DOCUMENT(@@lookup, MD5(a))"));
+        update.addLine(AQL.trust("FILTER e != NULL AND @id IN e.ids"));
+        update.addLine(AQL.trust("UPDATE e WITH {ids: REMOVE_VALUE(e.ids, @id)} IN @@lookup"));
+        database.query(update.build().getValue(), bindVars, new AqlQueryOptions().streamTransactionId(streamTransactionId), Void.class);
+    }
+
+    /**
+     * The lookup collection of a stage is only used after it has been populated with the ids which already existed
+     * when it was created (which happens in the background) - until then, we fall back to a filter on the ids
+     * collection.
+     */
+    boolean isLookupAvailable(DataStage stage) {
+        if (availableLookups.contains(stage)) {
+            return true;
         }
-        //Add the id in its fully qualified form as an alternative
-        id.setAlternativeIds(new HashSet<>(id.getAlternativeIds() != null ? id.getAlternativeIds() : Collections.emptySet()));
-        id.getAlternativeIds().add(idUtils.buildAbsoluteUrl(id.getUUID()).getId());
-        coll.insertDocument(jsonAdapter.toJson(id), new DocumentCreateOptions().waitForSync(true).overwrite(true));
+        if (getOrCreateLookupCollection(stage).documentExists(LOOKUP_INITIALIZED_KEY)) {
+            availableLookups.add(stage);
+            return true;
+        }
+        if (initializingLookups.add(stage)) {
+            lookupInitialization.execute(() -> {
+                try {
+                    initializeLookup(stage);
+                    availableLookups.add(stage);
+                } catch (RuntimeException e) {
+                    logger.error(String.format("Was not able to initialize the alternative id lookup of stage %s", stage.name()), e);
+                } finally {
+                    initializingLookups.remove(stage);
+                }
+            });
+        }
+        return false;
+    }
+
+    /**
+     * Registers all persisted ids of the stage in the lookup collection. This is idempotent and therefore safe to run
+     * concurrently with upserts (or by multiple instances).
+     */
+    void initializeLookup(DataStage stage) {
+        ArangoDatabase database = arangoDatabase.getOrCreate();
+        getOrCreateCollection(stage);
+        ArangoCollection lookup = getOrCreateLookupCollection(stage);
+        logger.info(String.format("Initializing the alternative id lookup of stage %s", stage.name()));
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR doc IN @@collection"));
+        aql.addLine(AQL.trust("FOR a IN doc.alternativeIds"));
+        aql.addLine(AQL.trust("COLLECT alternative = a INTO ids = doc._key"));
+        aql.addLine(AQL.trust("UPSERT {_key: MD5(alternative)} INSERT {_key: MD5(alternative), alternative: alternative, ids: ids} UPDATE {ids: UNION_DISTINCT(OLD.ids, ids)} IN @@lookup"));
+        database.query(aql.build().getValue(), Map.of("@collection", getCollectionName(stage), "@lookup", lookup.name()), new AqlQueryOptions(), Void.class);
+        lookup.insertDocument(Map.of(ArangoVocabulary.KEY, LOOKUP_INITIALIZED_KEY), new DocumentCreateOptions().overwrite(true).silent(true));
+        logger.info(String.format("Initialized the alternative id lookup of stage %s", stage.name()));
     }
 
     private List<PersistedId> fetchPersistedIdsByUUID(ArangoDatabase database, List<UUID> uuid, String collectionName){
@@ -116,7 +307,40 @@ public class IdRepository {
         return database.query(aql.build().getValue(), bindVars, new AqlQueryOptions(), String.class).asListRemaining().stream().map(s->jsonAdapter.fromJson(s, PersistedId.class)).collect(Collectors.toList());
     }
 
-    private List<PersistedId> fetchPersistedIdsByAlternativeId(ArangoDatabase database, List<Tuple<String, SpaceName>> ids, String collectionName){
+    /**
+     * @param ids the alternative ids to look for - optionally restricted to a space
+     */
+    List<PersistedId> fetchPersistedIdsByAlternativeId(DataStage stage, Collection<Tuple<String, SpaceName>> ids, boolean useLookup) {
+        ArangoDatabase database = arangoDatabase.getOrCreate();
+        String collectionName = getCollectionName(stage);
+        if (!useLookup) {
+            //Depending on the size of the list, this can be overwhelming for the DB. Accordingly, we are going to run this in multiple steps...
+            //Since a document can be found by multiple chunks, we deduplicate them.
+            return new ArrayList<>(TypeUtils.splitList(new ArrayList<>(ids), 300).stream().map(i -> fetchPersistedIdsByAlternativeIdWithoutLookup(database, i, collectionName)).flatMap(Collection::stream).collect(Collectors.toMap(PersistedId::getKey, p -> p, (a, b) -> a, LinkedHashMap::new)).values());
+        }
+        //Every alternative is resolved by a key lookup - we double-check the found ids since the lookup could contain
+        //outdated entries (e.g. if the initialization of the lookup ran concurrently to an update of the id).
+        AQL aql = new AQL();
+        Map<String, Object> bindVars = new HashMap<>();
+        aql.addLine(AQL.trust("FOR a IN @alternatives"));
+        bindVars.put("alternatives", ids.stream().map(id -> {
+            Map<String, Object> alternative = new HashMap<>();
+            alternative.put("identifier", id.getA());
+            alternative.put("space", id.getB() != null ? id.getB().getName() : null);
+            return alternative;
+        }).collect(Collectors.toList()));
+        aql.addLine(AQL.trust("LET e = DOCUMENT(@@lookup, MD5(a.identifier))"));
+        bindVars.put("@lookup", getLookupCollectionName(stage));
+        aql.addLine(AQL.trust("FILTER e != NULL"));
+        aql.addLine(AQL.trust("FOR key IN e.ids"));
+        aql.addLine(AQL.trust("LET doc = DOCUMENT(@@collection, key)"));
+        bindVars.put("@collection", collectionName);
+        aql.addLine(AQL.trust("FILTER doc != NULL AND a.identifier IN doc.alternativeIds AND (a.space == NULL OR doc._space == a.space)"));
+        aql.addLine(AQL.trust("RETURN DISTINCT doc"));
+        return database.query(aql.build().getValue(), bindVars, new AqlQueryOptions(), String.class).asListRemaining().stream().map(s -> jsonAdapter.fromJson(s, PersistedId.class)).collect(Collectors.toList());
+    }
+
+    private List<PersistedId> fetchPersistedIdsByAlternativeIdWithoutLookup(ArangoDatabase database, List<Tuple<String, SpaceName>> ids, String collectionName){
         AQL aql = new AQL();
         Map<String, Object> bindVars = new HashMap<>();
         aql.addLine(AQL.trust("FOR doc IN @@collection FILTER"));
@@ -147,22 +371,10 @@ public class IdRepository {
         }
         ArangoDatabase database = arangoDatabase.getOrCreate();
         String collectionName = getCollectionName(stage);
-        if (!database.collection(collectionName).exists() || CollectionUtils.isEmpty(identifiers)) {
+        if (!database.collection(collectionName).exists() || CollectionUtils.isEmpty(identifiers) || negativeLookupFilter.isDefinitelyUnknown(stage, identifiers)) {
             return null;
         }
-        AQL aql = new AQL();
-        Map<String, Object> bindVars = new HashMap<>();
-        aql.addLine(AQL.trust("FOR i in @@collectionName FILTER"));
-        bindVars.put("@collectionName", collectionName);
-        for (int i = 0; i < identifiers.size(); i++) {
-            aql.addLine(AQL.trust("@identifier"+i+" IN i.alternativeIds"));
-            bindVars.put("identifier"+i, identifiers.get(i));
-            if(i<identifiers.size()-1){
-                aql.addLine(AQL.trust("OR"));
-            }
-        }
-        aql.addLine(AQL.trust("RETURN i"));
-        final List<PersistedId> persistedIds = database.query(aql.build().getValue(), bindVars, String.class).asListRemaining().stream().map(s -> jsonAdapter.fromJson(s, PersistedId.class)).collect(Collectors.toList());
+        final List<PersistedId> persistedIds = fetchPersistedIdsByAlternativeId(stage, identifiers.stream().map(i -> new Tuple<String, SpaceName>(i, null)).collect(Collectors.toList()), isLookupAvailable(stage));
         switch(persistedIds.size()) {
             case 0:
                 return null;
@@ -177,6 +389,66 @@ public class IdRepository {
 
 
     public Map<UUID, InstanceId> resolveIds(DataStage stage, List<IdWithAlternatives> ids) {
+        final IdResolutionCache cache = getResolutionCache(stage);
+        if (!cache.isEnabled() || CollectionUtils.isEmpty(ids)) {
+            return resolveIdsFromDB(stage, ids, cache.getGeneration());
+        }
+        Map<UUID, InstanceId> result = new HashMap<>();
+        List<IdWithAlternatives> uncached = new ArrayList<>();
+        for (IdWithAlternatives id : ids) {
+            InstanceId cached = id != null && id.getId() != null ? resolveFromCache(cache, id) : null;
+            cache.recordResolution(cached != null);
+            if (cached != null) {
+                result.put(id.getId(), cached);
+            } else {
+                uncached.add(id);
+            }
+        }
+        if (!uncached.isEmpty()) {
+            result.putAll(resolveIdsFromDB(stage, uncached, cache.getGeneration()));
+        }
+        return result;
+    }
+
+    private InstanceId resolveFromCache(IdResolutionCache cache, IdWithAlternatives id) {
+        InstanceId byUUID = cache.getByUUID(id.getId());
+        if (byUUID != null) {
+            return byUUID;
+        }
+        if (CollectionUtils.isEmpty(id.getAlternatives())) {
+            return null;
+        }
+        //The database lookup by the absolute url and the alternatives is restricted to the space (if defined) - so has to be the cached one.
+        final SpaceName space = id.getSpace() != null ? new SpaceName(id.getSpace()) : null;
+        InstanceId byAbsoluteUrl = cache.getByAlternative(idUtils.buildAbsoluteUrl(id.getId()).getId());
+        if (byAbsoluteUrl != null && (space == null || space.equals(byAbsoluteUrl.getSpace()))) {
+            return byAbsoluteUrl;
+        }
+        return id.getAlternatives().stream().map(cache::getByAlternative).filter(i -> i != null && (space == null || space.equals(i.getSpace()))).findFirst().orElse(null);
+    }
+
+    private Set<String> getLookupValues(IdWithAlternatives id) {
+        Set<String> values = new HashSet<>();
+        values.add(id.getId().toString());
+        values.add(idUtils.buildAbsoluteUrl(id.getId()).getId());
+        if (id.getAlternatives() != null) {
+            values.addAll(id.getAlternatives());
+        }
+        return values;
+    }
+
+    private void cache(IdResolutionCache cache, PersistedId id, long generation) {
+        Set<String> alternatives = new HashSet<>(id.getAlternativeIds() != null ? id.getAlternativeIds() : Collections.emptySet());
+        alternatives.add(idUtils.buildAbsoluteUrl(id.getUUID()).getId());
+        cache.put(id, alternatives, generation);
+    }
+
+    /**
+     * @param cacheGeneration the generation of the resolution cache before the lookup - the found ids are only cached if
+     *                        there was no modification in the meantime.
+     */
+    private Map<UUID, InstanceId> resolveIdsFromDB(DataStage stage, List<IdWithAlternatives> ids, long cacheGeneration) {
+        final IdResolutionCache cache = getResolutionCache(stage);
         ArangoDatabase database = arangoDatabase.getOrCreate();
         String collectionName = getCollectionName(stage);
         Map<UUID, InstanceId> result = new HashMap<>();
@@ -186,9 +458,17 @@ public class IdRepository {
             }
             return result;
         }
+        //Ids which are definitely unknown don't need to be looked up
+        final Set<IdWithAlternatives> unknownIds = negativeLookupFilter.getDefinitelyUnknown(stage, ids.stream().filter(id -> id != null && id.getId() != null).collect(Collectors.toList()), this::getLookupValues);
+        unknownIds.forEach(id -> result.put(id.getId(), null));
+        ids = ids.stream().filter(id -> !unknownIds.contains(id)).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return result;
+        }
         //We first try to resolve by UUID since this can be done with way better performance...
         List<PersistedId> persistedIdsByUUID = fetchPersistedIdsByUUID(database, ids.stream().filter(Objects::nonNull).map(IdWithAlternatives::getId).filter(Objects::nonNull).collect(Collectors.toList()), collectionName);
         final Set<UUID> handledUUIDs = persistedIdsByUUID.stream().map(id -> {
+            cache(cache, id, cacheGeneration);
             result.put(id.getUUID(), new InstanceId(id.getUUID(), id.getSpace()));
             return id.getUUID();
         }).collect(Collectors.toSet());
@@ -203,31 +483,39 @@ public class IdRepository {
         Set<Tuple<String, SpaceName>> idsWithAlternatives = remainingIds.stream().map(id -> id.getAlternatives().stream().map(alternative -> new Tuple<>(alternative, id.getSpace() != null ? new SpaceName(id.getSpace()) : null)).collect(Collectors.toSet())).flatMap(Collection::stream).filter(Objects::nonNull).collect(Collectors.toSet());
         idsWithAlternatives.addAll(remainingIds.stream().map(id -> new Tuple<>(idUtils.buildAbsoluteUrl(id.getId()).getId(), id.getSpace() != null ? new SpaceName(id.getSpace()) : null)).collect(Collectors.toSet()));
 
-        //Depending on the size of the list, this can be overwhelming for the DB. Accordingly, we are going to run this in multiple steps...
-        final List<PersistedId> persistedIdsByAlternativeIds = TypeUtils.splitList(new ArrayList<>(idsWithAlternatives), 300).stream().map(i -> fetchPersistedIdsByAlternativeId(database, i, collectionName)).flatMap(Collection::stream).collect(Collectors.toList());
+        final List<PersistedId> persistedIdsByAlternativeIds = fetchPersistedIdsByAlternativeId(stage, idsWithAlternatives, isLookupAvailable(stage));
         Map<String, PersistedId> persistedIdsByAlternative = new HashMap<>();
         persistedIdsByAlternativeIds.forEach(p -> {
+            cache(cache, p, cacheGeneration);
             persistedIdsByAlternative.put(idUtils.buildAbsoluteUrl(p.getUUID()).getId(), p);
             p.getAlternativeIds().forEach(a -> persistedIdsByAlternative.put(a, p));
         });
         remainingIds.forEach(id -> {
-            PersistedId foundId = persistedIdsByAlternative.get(idUtils.buildAbsoluteUrl(id.getId()).getId());
-            if(foundId==null){
-                foundId = id.getAlternatives().stream().map(persistedIdsByAlternative::get).filter(Objects::nonNull).findFirst().orElse(null);
-            }
+            //The found ids are shared by the whole batch - so we have to make sure they are in the requested space.
+            final SpaceName space = id.getSpace() != null ? new SpaceName(id.getSpace()) : null;
+            PersistedId foundId = Stream.concat(Stream.of(idUtils.buildAbsoluteUrl(id.getId()).getId()), id.getAlternatives().stream()).map(persistedIdsByAlternative::get).filter(p -> p != null && (space == null || space.equals(p.getSpace()))).findFirst().orElse(null);
             result.put(id.getId(), foundId != null ? new InstanceId(foundId.getUUID(), foundId.getSpace()) : null);
         });
         return result;
     }
 
-    private String getCollectionName(DataStage stage) {
+    static String getCollectionName(DataStage stage) {
         return stage.name().toLowerCase() + "_ids";
     }
 
+    private String getLookupCollectionName(DataStage stage) {
+        return stage.name().toLowerCase() + "_alternative_ids";
+    }
+
+    private ArangoCollection getOrCreateLookupCollection(DataStage stage) {
+        return idsDBUtils.getOrCreateArangoCollection(arangoDatabase.getOrCreate(), new ArangoCollectionReference(getLookupCollectionName(stage), false));
+    }
+
     ArangoCollection getOrCreateCollection(DataStage stage) {
         ArangoCollection ids = idsDBUtils.getOrCreateArangoCollection(arangoDatabase.getOrCreate(), new ArangoCollectionReference(getCollectionName(stage), false));
         ids.ensureSkiplistIndex(Arrays.asList("alternativeIds[*]", JsonLdConsts.ID), new SkiplistIndexOptions());
         ids.ensureSkiplistIndex(Collections.singletonList(JsonLdConsts.ID), new SkiplistIndexOptions());
+        ids.ensureSkiplistIndex(Collections.singletonList(PersistedId.WRITTEN_AT), new SkiplistIndexOptions().sparse(true));
         return ids;
     }
 
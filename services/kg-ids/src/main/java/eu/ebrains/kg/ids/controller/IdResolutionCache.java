@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.ids.controller;
+
+import eu.ebrains.kg.commons.jsonld.InstanceId;
+import eu.ebrains.kg.ids.model.PersistedId;
+
+import java.util.*;
+
+/**
+ * A bounded (least recently used) cache of the resolved ids of a single stage. It keeps the {@link InstanceId} by UUID
+ * and the UUID by alternative identifier - an alternative identifier is only resolvable as long as the instance it
+ * points to is cached.
+ *
+ * Only persisted ids are cached (there is no "negative" caching) so newly created ids are found without any
+ * invalidation. Every modification of an id invalidates its entries and increments the generation of the cache - ids
+ * which have been read from the database before such a modification are not cached to prevent outdated entries.
+ */
+class IdResolutionCache {
+
+    private final int maxSize;
+
+    private final Map<UUID, CachedId> byUUID;
+
+    private final Map<String, UUID> byAlternative = new HashMap<>();
+
+    private long generation;
+
+    private long hits;
+
+    private long misses;
+
+    IdResolutionCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.byUUID = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, CachedId> eldest) {
+                if (size() > maxSize) {
+                    eldest.getValue().alternatives.forEach(a -> byAlternative.remove(a, eldest.getKey()));
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    private static class CachedId {
+        private final InstanceId instanceId;
+        private final Set<String> alternatives;
+
+        private CachedId(InstanceId instanceId, Set<String> alternatives) {
+            this.instanceId = instanceId;
+            this.alternatives = alternatives;
+        }
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    synchronized InstanceId getByUUID(UUID uuid) {
+        final CachedId cachedId = byUUID.get(uuid);
+        return cachedId != null ? cachedId.instanceId : null;
+    }
+
+    synchronized InstanceId getByAlternative(String alternative) {
+        final UUID uuid = byAlternative.get(alternative);
+        return uuid != null ? getByUUID(uuid) : null;
+    }
+
+    /**
+     * Counts the outcome of a resolution - which can involve several lookups.
+     */
+    synchronized void recordResolution(boolean hit) {
+        if (hit) {
+            hits++;
+        } else {
+            misses++;
+        }
+    }
+
+    /**
+     * @param generation the generation of the cache at the time before the id has been read from the database
+     */
+    synchronized void put(PersistedId id, Set<String> alternatives, long generation) {
+        if (!isEnabled() || generation != this.generation || id.getUUID() == null) {
+            return;
+        }
+        remove(id.getUUID());
+        final Set<String> cachedAlternatives = new HashSet<>();
+        alternatives.forEach(a -> {
+            final UUID existing = byAlternative.putIfAbsent(a, id.getUUID());
+            if (existing == null || existing.equals(id.getUUID())) {
+                cachedAlternatives.add(a);
+            }
+        });
+        byUUID.put(id.getUUID(), new CachedId(new InstanceId(id.getUUID(), id.getSpace()), cachedAlternatives));
+    }
+
+    /**
+     * Removes the entries of the given UUID as well as the given alternatives (which could point to another instance
+     * too).
+     */
+    synchronized void invalidate(UUID uuid, Collection<String> alternatives) {
+        generation++;
+        remove(uuid);
+        if (alternatives != null) {
+            alternatives.stream().map(byAlternative::get).filter(Objects::nonNull).distinct().forEach(this::remove);
+        }
+    }
+
+    private void remove(UUID uuid) {
+        final CachedId removed = byUUID.remove(uuid);
+        if (removed != null) {
+            removed.alternatives.forEach(a -> byAlternative.remove(a, uuid));
+        }
+    }
+
+    synchronized int size() {
+        return byUUID.size();
+    }
+
+    synchronized long getHits() {
+        return hits;
+    }
+
+    synchronized long getMisses() {
+        return misses;
+    }
+
+}
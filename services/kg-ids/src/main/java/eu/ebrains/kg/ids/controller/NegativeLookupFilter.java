@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.ids.controller;
+
+import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoCursor;
+import com.arangodb.ArangoDatabase;
+import com.arangodb.model.AqlQueryOptions;
+import eu.ebrains.kg.arango.commons.aqlbuilder.AQL;
+import eu.ebrains.kg.arango.commons.model.ArangoDatabaseProxy;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.ids.model.PersistedId;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps a {@link IdMembershipFilter} of all UUIDs and alternative ids per stage, so lookups of ids which don't exist
+ * (yet) - e.g. forward links during ingestion - can be answered without resolving them in the database.
+ *
+ * The filters are built from the database at startup and are only consulted once they are complete. Since ids can be
+ * written by any instance, a filter is only known to be complete up to its high-water mark: every id carries the time
+ * of its last write ({@link PersistedId#WRITTEN_AT}) and the filter is refreshed periodically with the ids written
+ * since. The ids written after the high-water mark are "maybe known" - before a lookup is answered as unknown, they
+ * are re-checked in the database (which only scans the recent writes). The high-water mark stays behind the start of
+ * the last refresh by the write delay tolerance, which therefore has to exceed the duration of an id write plus the
+ * clock skew between the instances. Removed ids stay in the filter (they are looked up in the database).
+ */
+@Component
+public class NegativeLookupFilter {
+
+    private static final String METRICS_PREFIX = "kg.ids.negativeLookupFilter";
+
+    /**
+     * The estimated number of values per id (its UUID, its absolute URL and its alternatives) - used for the sizing
+     */
+    private static final int VALUES_PER_ID = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ArangoDatabaseProxy arangoDatabase;
+
+    private final boolean enabled;
+
+    private final long minimalExpectedEntries;
+
+    private final double falsePositiveRate;
+
+    private final long refreshIntervalInMs;
+
+    private final long writeDelayToleranceInMs;
+
+    private final Map<DataStage, IdMembershipFilter> filters = new ConcurrentHashMap<>();
+
+    /**
+     * The filters which are complete - by the high-water mark up to which they contain all written ids
+     */
+    private final Map<DataStage, Long> highWaterMarks = new ConcurrentHashMap<>();
+
+    private final Map<DataStage, AtomicLong> skippedLookups = new EnumMap<>(DataStage.class);
+
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "negative-lookup-filter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public NegativeLookupFilter(@Qualifier("idsDB") ArangoDatabaseProxy arangoDatabase, MeterRegistry meterRegistry, @Value("${eu.ebrains.kg.ids.negativeLookupFilter.enabled:true}") boolean enabled, @Value("${eu.ebrains.kg.ids.negativeLookupFilter.minimalExpectedEntries:1000000}") long minimalExpectedEntries, @Value("${eu.ebrains.kg.ids.negativeLookupFilter.falsePositiveRate:0.01}") double falsePositiveRate, @Value("${eu.ebrains.kg.ids.negativeLookupFilter.refreshIntervalInMs:10000}") long refreshIntervalInMs, @Value("${eu.ebrains.kg.ids.negativeLookupFilter.writeDelayToleranceInMs:30000}") long writeDelayToleranceInMs) {
+        this.arangoDatabase = arangoDatabase;
+        this.enabled = enabled;
+        this.minimalExpectedEntries = minimalExpectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.refreshIntervalInMs = refreshIntervalInMs;
+        this.writeDelayToleranceInMs = writeDelayToleranceInMs;
+        for (DataStage stage : DataStage.values()) {
+            AtomicLong skipped = new AtomicLong();
+            skippedLookups.put(stage, skipped);
+            FunctionCounter.builder(METRICS_PREFIX + ".skippedLookups", skipped, AtomicLong::get).tag("stage", stage.name()).register(meterRegistry);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            for (DataStage stage : DataStage.values()) {
+                refresher.execute(() -> {
+                    try {
+                        build(stage);
+                    } catch (RuntimeException e) {
+                        //The filter of this stage is not used - every lookup goes to the database.
+                        logger.error(String.format("Was not able to build the negative lookup filter of stage %s", stage.name()), e);
+                    }
+                });
+            }
+            refresher.scheduleWithFixedDelay(this::refreshAll, refreshIntervalInMs, refreshIntervalInMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+    }
+
+    void build(DataStage stage) {
+        ArangoDatabase database = arangoDatabase.getOrCreate();
+        ArangoCollection collection = database.collection(IdRepository.getCollectionName(stage));
+        highWaterMarks.remove(stage);
+        final boolean exists = collection.exists();
+        final long numberOfIds = exists ? collection.count().getCount() : 0;
+        //We leave room for twice the current number of ids - the filter stays correct beyond but its benefit decreases.
+        IdMembershipFilter filter = new IdMembershipFilter(Math.max(minimalExpectedEntries, 2 * numberOfIds * VALUES_PER_ID), falsePositiveRate);
+        filters.put(stage, filter);
+        //Every id written before the high-water mark has been committed before the snapshot is taken.
+        final long highWaterMark = System.currentTimeMillis() - writeDelayToleranceInMs;
+        if (exists) {
+            AQL aql = new AQL();
+            aql.addLine(AQL.trust("FOR doc IN @@collection"));
+            aql.addLine(AQL.trust("RETURN {key: doc._key, alternatives: doc.alternativeIds}"));
+            addAll(filter, database.query(aql.build().getValue(), Map.of("@collection", collection.name()), new AqlQueryOptions().stream(true).batchSize(10000), Map.class));
+        }
+        highWaterMarks.put(stage, highWaterMark);
+        logger.info(String.format("Built the negative lookup filter of stage %s for %d ids (%d bits, %d hash functions)", stage.name(), numberOfIds, filter.getNumberOfBits(), filter.getNumberOfHashFunctions()));
+    }
+
+    private void refreshAll() {
+        for (DataStage stage : DataStage.values()) {
+            try {
+                refresh(stage);
+            } catch (RuntimeException e) {
+                //The high-water mark stays where it is - the lookups re-check more recent writes until the next refresh.
+                logger.warn(String.format("Was not able to refresh the negative lookup filter of stage %s", stage.name()), e);
+            }
+        }
+    }
+
+    /**
+     * Adds the ids written since the high-water mark (by any instance) to the filter and moves the mark forward.
+     */
+    void refresh(DataStage stage) {
+        final Long since = highWaterMarks.get(stage);
+        if (since == null) {
+            return;
+        }
+        final long highWaterMark = System.currentTimeMillis() - writeDelayToleranceInMs;
+        addAll(filters.get(stage), queryWrittenSince(stage, since, null));
+        highWaterMarks.merge(stage, highWaterMark, Math::max);
+    }
+
+    /**
+     * @param values if defined, only the ids with any of the values are returned
+     */
+    private ArangoCursor<Map> queryWrittenSince(DataStage stage, long since, Collection<String> values) {
+        ArangoDatabase database = arangoDatabase.getOrCreate();
+        Map<String, Object> bindVars = new HashMap<>();
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR doc IN @@collection"));
+        bindVars.put("@collection", IdRepository.getCollectionName(stage));
+        aql.addLine(AQL.trust(String.format("FILTER doc.%s >= @since", PersistedId.WRITTEN_AT)));
+        bindVars.put("since", since);
+        if (values != null) {
+            aql.addLine(AQL.trust("FILTER doc._key IN @values OR LENGTH(INTERSECTION(doc.alternativeIds, @values)) > 0"));
+            bindVars.put("values", values);
+        }
+        aql.addLine(AQL.trust("RETURN {key: doc._key, alternatives: doc.alternativeIds}"));
+        return database.query(aql.build().getValue(), bindVars, new AqlQueryOptions().stream(true).batchSize(10000), Map.class);
+    }
+
+    private static Set<String> addAll(IdMembershipFilter filter, ArangoCursor<Map> ids) {
+        Set<String> values = new HashSet<>();
+        while (ids.hasNext()) {
+            final Map<?, ?> id = ids.next();
+            values.add((String) id.get("key"));
+            if (id.get("alternatives") instanceof Collection) {
+                ((Collection<?>) id.get("alternatives")).forEach(a -> values.add(a.toString()));
+            }
+        }
+        values.forEach(filter::add);
+        return values;
+    }
+
+    /**
+     * Registers the ids written by this instance right away - they are part of the next refresh anyhow.
+     */
+    void register(DataStage stage, Collection<String> values) {
+        final IdMembershipFilter filter = filters.get(stage);
+        if (filter != null) {
+            values.forEach(filter::add);
+        }
+    }
+
+    /**
+     * @param values the UUID and the alternatives of an id
+     * @return true if none of the values is known - false if any of them could be (or the filter is not ready yet).
+     */
+    boolean isDefinitelyUnknown(DataStage stage, Collection<String> values) {
+        return !getDefinitelyUnknown(stage, Collections.singletonList(values), v -> v).isEmpty();
+    }
+
+    /**
+     * @param values the UUID and the alternatives of each id
+     * @return the ids of which none of the values is known - the ones the filter doesn't know are re-checked in the
+     * database if they have been written since the high-water mark (by a single query for all of them).
+     */
+    <T> Set<T> getDefinitelyUnknown(DataStage stage, Collection<T> ids, Function<T, Collection<String>> values) {
+        final Long highWaterMark = highWaterMarks.get(stage);
+        if (highWaterMark == null) {
+            return Collections.emptySet();
+        }
+        final IdMembershipFilter filter = filters.get(stage);
+        final List<T> candidates = ids.stream().filter(id -> values.apply(id).stream().noneMatch(filter::mightContain)).collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            return Collections.emptySet();
+        }
+        final Set<String> recentlyWritten;
+        try {
+            recentlyWritten = addAll(filter, queryWrittenSince(stage, highWaterMark, candidates.stream().map(values).flatMap(Collection::stream).collect(Collectors.toSet())));
+        } catch (RuntimeException e) {
+            logger.warn(String.format("Was not able to re-check the recently written ids of stage %s - looking them up instead", stage.name()), e);
+            return Collections.emptySet();
+        }
+        final Set<T> unknown = candidates.stream().filter(id -> values.apply(id).stream().noneMatch(recentlyWritten::contains)).collect(Collectors.toSet());
+        skippedLookups.get(stage).addAndGet(unknown.size());
+        return unknown;
+    }
+
+}
@@ -33,6 +33,11 @@ import java.util.UUID;
 
 public class PersistedId {
 
+    /**
+     * The time (in ms since epoch, by the clock of the writing instance) of the last write of the id
+     */
+    public static final String WRITTEN_AT = "_writtenAt";
+
     @JsonProperty(ArangoVocabulary.KEY)
     private String key;
 
@@ -41,6 +46,9 @@ public class PersistedId {
 
     private Set<String> alternativeIds = new HashSet<>();
 
+    @JsonProperty(WRITTEN_AT)
+    private Long writtenAt;
+
 
     public String getKey() {
         return key;
@@ -71,4 +79,12 @@ public class PersistedId {
         this.alternativeIds = alternativeIds;
         return this;
     }
+
+    public Long getWrittenAt() {
+        return writtenAt;
+    }
+
+    public void setWrittenAt(Long writtenAt) {
+        this.writtenAt = writtenAt;
+    }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.ids.controller;
+
+import com.arangodb.ArangoDB;
+import com.arangodb.model.DocumentCreateOptions;
+import eu.ebrains.kg.arango.commons.model.ArangoDatabaseProxy;
+import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.TypeUtils;
+import eu.ebrains.kg.commons.Tuple;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.ids.model.PersistedId;
+import eu.ebrains.kg.test.TestCategories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the resolution of alternative ids by the lookup collection with the filter on the ids collection it
+ * replaces. The ids are written to a dedicated database which is dropped afterwards.
+ */
+@SpringBootTest
+@Tag(TestCategories.LOAD)
+class AlternativeIdLookupBenchmarkTest {
+
+    private static final int NUMBER_OF_IDS = 100000;
+
+    private static final int NUMBER_OF_LOOKUPS = 3000;
+
+    private static final DataStage STAGE = DataStage.NATIVE;
+
+    @TestConfiguration
+    static class BenchmarkDatabase {
+
+        @Bean
+        @Primary
+        @Qualifier("idsDB")
+        public ArangoDatabaseProxy produceBenchmarkIdsDB(@Qualifier("arangoBuilderForIds") ArangoDB.Builder arangoDB) {
+            return new ArangoDatabaseProxy(arangoDB.build(), "kg1-ids-benchmark");
+        }
+
+    }
+
+    @Autowired
+    @Qualifier("idsDB")
+    ArangoDatabaseProxy database;
+
+    @Autowired
+    IdRepository idRepository;
+
+    @Autowired
+    JsonAdapter jsonAdapter;
+
+    @AfterEach
+    void cleanup() {
+        database.removeDatabase();
+    }
+
+    private List<String> createIds() {
+        SpaceName space = new SpaceName("benchmark");
+        List<String> alternatives = new ArrayList<>();
+        List<PersistedId> ids = new ArrayList<>();
+        for (int i = 0; i < NUMBER_OF_IDS; i++) {
+            UUID uuid = UUID.randomUUID();
+            String alternative = "http://benchmark/" + uuid;
+            PersistedId id = new PersistedId().setUUID(uuid).setAlternativeIds(new HashSet<>(Collections.singletonList(alternative)));
+            id.setSpace(space);
+            ids.add(id);
+            alternatives.add(alternative);
+        }
+        TypeUtils.splitList(ids, 10000).forEach(chunk -> idRepository.getOrCreateCollection(STAGE).insertDocuments(chunk.stream().map(jsonAdapter::toJson).collect(Collectors.toList()), new DocumentCreateOptions().overwrite(true).silent(true)));
+        idRepository.initializeLookup(STAGE);
+        return alternatives;
+    }
+
+    private long measure(List<Tuple<String, SpaceName>> lookups, boolean useLookup, Set<String> foundKeys) {
+        //Warm up
+        idRepository.fetchPersistedIdsByAlternativeId(STAGE, lookups, useLookup);
+        final long start = System.nanoTime();
+        final List<PersistedId> result = idRepository.fetchPersistedIdsByAlternativeId(STAGE, lookups, useLookup);
+        final long duration = System.nanoTime() - start;
+        result.stream().map(PersistedId::getKey).forEach(foundKeys::add);
+        return duration / 1000000;
+    }
+
+    @Test
+    void resolveByAlternatives() {
+        //Given
+        List<String> alternatives = createIds();
+        Collections.shuffle(alternatives);
+        List<Tuple<String, SpaceName>> lookups = alternatives.subList(0, NUMBER_OF_LOOKUPS).stream().map(a -> new Tuple<String, SpaceName>(a, null)).collect(Collectors.toList());
+
+        //When
+        Set<String> foundByFilter = new HashSet<>();
+        final long filter = measure(lookups, false, foundByFilter);
+        Set<String> foundByLookup = new HashSet<>();
+        final long lookup = measure(lookups, true, foundByLookup);
+
+        //Then
+        System.out.printf("Resolving %d of %d ids by filter: %d ms%n", NUMBER_OF_LOOKUPS, NUMBER_OF_IDS, filter);
+        System.out.printf("Resolving %d of %d ids by lookup: %d ms%n", NUMBER_OF_LOOKUPS, NUMBER_OF_IDS, lookup);
+        assertEquals(NUMBER_OF_LOOKUPS, foundByLookup.size());
+        assertEquals(foundByFilter, foundByLookup);
+        assertTrue(lookup < filter);
+    }
+
+}
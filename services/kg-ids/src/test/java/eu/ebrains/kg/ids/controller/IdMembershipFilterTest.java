@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.ids.controller;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdMembershipFilterTest {
+
+    @Test
+    void noFalseNegatives() {
+        //Given
+        IdMembershipFilter filter = new IdMembershipFilter(100000, 0.01);
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            values.add("https://kg.ebrains.eu/api/instances/" + UUID.randomUUID());
+        }
+
+        //When
+        values.forEach(filter::add);
+
+        //Then
+        assertTrue(values.stream().allMatch(filter::mightContain));
+    }
+
+    @Test
+    void falsePositiveRate() {
+        //Given
+        IdMembershipFilter filter = new IdMembershipFilter(100000, 0.01);
+        for (int i = 0; i < 100000; i++) {
+            filter.add("https://kg.ebrains.eu/api/instances/" + UUID.randomUUID());
+        }
+
+        //When
+        long falsePositives = 0;
+        for (int i = 0; i < 100000; i++) {
+            if (filter.mightContain("http://unknown/" + i)) {
+                falsePositives++;
+            }
+        }
+
+        //Then
+        assertTrue(falsePositives < 2000, String.format("%d false positives", falsePositives));
+        assertEquals(7, filter.getNumberOfHashFunctions());
+    }
+
+}
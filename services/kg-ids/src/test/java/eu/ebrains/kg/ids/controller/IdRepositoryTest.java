@@ -0,0 +1,426 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.ids.controller;
+
+import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoDBException;
+import com.arangodb.ArangoCursor;
+import com.arangodb.ArangoDatabase;
+import com.arangodb.entity.CollectionPropertiesEntity;
+import com.arangodb.entity.StreamTransactionEntity;
+import com.arangodb.model.*;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import eu.ebrains.kg.arango.commons.model.ArangoDatabaseProxy;
+import eu.ebrains.kg.commons.IdUtils;
+import eu.ebrains.kg.commons.JsonAdapter;
+import eu.ebrains.kg.commons.jsonld.InstanceId;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.IdWithAlternatives;
+import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.ids.model.PersistedId;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class IdRepositoryTest {
+
+    private static final String NAMESPACE = "https://kg.ebrains.eu/api/instances/";
+
+    private final JsonAdapter jsonAdapter = new JsonAdapter(new ObjectMapper());
+
+    /**
+     * The documents of the (simulated) ids collection by key
+     */
+    private final Map<String, PersistedId> documents = new HashMap<>();
+
+    /**
+     * The entries of the (simulated) alternative id lookup collection: the ids by alternative
+     */
+    private final Map<String, Set<UUID>> lookup = new HashMap<>();
+
+    private final ArangoDatabase database = Mockito.mock(ArangoDatabase.class);
+
+    private final ArangoCollection collection = Mockito.mock(ArangoCollection.class);
+
+    private NegativeLookupFilter negativeLookupFilter;
+
+    private final UUID foo = UUID.randomUUID();
+    private final UUID bar = UUID.randomUUID();
+    private final UUID mergedIntoBar = UUID.randomUUID();
+
+    private PersistedId createPersistedId(UUID uuid, String space, String... alternatives) {
+        PersistedId persistedId = new PersistedId().setUUID(uuid).setAlternativeIds(new HashSet<>(Arrays.asList(alternatives)));
+        persistedId.setSpace(new SpaceName(space));
+        persistedId.getAlternativeIds().add(NAMESPACE + uuid);
+        return persistedId;
+    }
+
+    @SuppressWarnings("unchecked")
+    private IdRepository createRepository(int cacheSize) {
+        ArangoDatabaseProxy databaseProxy = Mockito.mock(ArangoDatabaseProxy.class);
+        IdsDBUtils idsDBUtils = Mockito.mock(IdsDBUtils.class);
+        Mockito.when(databaseProxy.getOrCreate()).thenReturn(database);
+        Mockito.when(database.collection(anyString())).thenReturn(collection);
+        Mockito.when(idsDBUtils.getOrCreateArangoCollection(any(), any())).thenReturn(collection);
+        Mockito.when(collection.exists()).thenReturn(true);
+        Mockito.when(collection.name()).thenReturn("ids");
+        Mockito.when(collection.documentExists("initialized")).thenReturn(true);
+        StreamTransactionEntity tx = Mockito.mock(StreamTransactionEntity.class);
+        Mockito.when(tx.getId()).thenReturn("tx");
+        Mockito.when(database.beginStreamTransaction(any())).thenReturn(tx);
+        Mockito.when(collection.getDocument(anyString(), eq(String.class), any(DocumentReadOptions.class))).thenAnswer(i -> toJson(documents.get(i.<String>getArgument(0))));
+        Mockito.when(collection.deleteDocument(anyString(), eq(Void.class), any(DocumentDeleteOptions.class))).thenAnswer(i -> {
+            documents.remove(i.<String>getArgument(0));
+            return null;
+        });
+        Mockito.when(collection.insertDocument(anyString(), any(DocumentCreateOptions.class))).thenAnswer(i -> {
+            PersistedId persistedId = jsonAdapter.fromJson(i.<String>getArgument(0), PersistedId.class);
+            synchronized (documents) {
+                documents.put(persistedId.getKey(), persistedId);
+            }
+            return null;
+        });
+        Mockito.when(database.query(anyString(), anyMap(), any(AqlQueryOptions.class), eq(String.class))).thenAnswer(i -> {
+            ArangoCursor<String> cursor = Mockito.mock(ArangoCursor.class);
+            Mockito.when(cursor.asListRemaining()).thenReturn(query(i.getArgument(1)).stream().map(this::toJson).collect(Collectors.toList()));
+            return cursor;
+        });
+        Mockito.when(database.query(anyString(), anyMap(), any(AqlQueryOptions.class), eq(Void.class))).thenAnswer(i -> {
+            maintainLookup(i.getArgument(0), i.getArgument(1));
+            return null;
+        });
+        Mockito.when(database.query(anyString(), anyMap(), any(AqlQueryOptions.class), eq(Map.class))).thenAnswer(i -> {
+            Iterator<Map<String, Object>> ids = queryForFilter(i.getArgument(1)).iterator();
+            ArangoCursor<Map> cursor = Mockito.mock(ArangoCursor.class);
+            Mockito.when(cursor.hasNext()).thenAnswer(h -> ids.hasNext());
+            Mockito.when(cursor.next()).thenAnswer(n -> ids.next());
+            return cursor;
+        });
+        negativeLookupFilter = new NegativeLookupFilter(databaseProxy, new SimpleMeterRegistry(), true, 1000, 0.01, 10000, 1000);
+        return new IdRepository(databaseProxy, jsonAdapter, new IdUtils(NAMESPACE), idsDBUtils, negativeLookupFilter, new SimpleMeterRegistry(), cacheSize, 2);
+    }
+
+    private String toJson(PersistedId persistedId) {
+        return persistedId != null ? jsonAdapter.toJson(persistedId) : null;
+    }
+
+    /**
+     * Simulates the lookup queries by UUID and by alternative identifiers (with an optional space restriction)
+     */
+    private List<PersistedId> query(Map<String, Object> bindVars) {
+        if (bindVars.containsKey("ids")) {
+            return ((List<?>) bindVars.get("ids")).stream().map(id -> documents.get(id.toString())).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+        List<?> alternatives = (List<?>) bindVars.get("alternatives");
+        return documents.values().stream().filter(d -> alternatives.stream().map(a -> (Map<?, ?>) a).anyMatch(a -> d.getAlternativeIds().contains(a.get("identifier")) && (a.get("space") == null || a.get("space").equals(d.getSpace().getName())))).collect(Collectors.toList());
+    }
+
+    /**
+     * Simulates the queries of the negative lookup filter: all ids or the ones written since a point in time (with any
+     * of the given values)
+     */
+    private List<Map<String, Object>> queryForFilter(Map<String, Object> bindVars) {
+        final Long since = (Long) bindVars.get("since");
+        final Collection<?> values = (Collection<?>) bindVars.get("values");
+        synchronized (documents) {
+            return documents.values().stream()
+                    .filter(d -> since == null || (d.getWrittenAt() != null && d.getWrittenAt() >= since))
+                    .filter(d -> values == null || values.contains(d.getKey()) || d.getAlternativeIds().stream().anyMatch(values::contains))
+                    .map(d -> Map.<String, Object>of("key", d.getKey(), "alternatives", new ArrayList<>(d.getAlternativeIds())))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Simulates the queries maintaining the lookup collection on upserts and removals of ids
+     */
+    private synchronized void maintainLookup(String query, Map<String, Object> bindVars) {
+        if (!bindVars.containsKey("id")) {
+            return;
+        }
+        final UUID id = (UUID) bindVars.get("id");
+        final Collection<?> alternatives = (Collection<?>) bindVars.get("alternatives");
+        for (Object alternative : alternatives) {
+            if (query.contains("UNION_DISTINCT")) {
+                lookup.computeIfAbsent((String) alternative, a -> new HashSet<>()).add(id);
+            } else if (query.contains("REMOVE e IN")) {
+                lookup.remove(alternative, Collections.singleton(id));
+            } else if (query.contains("REMOVE_VALUE") && lookup.containsKey(alternative)) {
+                lookup.get(alternative).remove(id);
+            }
+        }
+    }
+
+    private List<IdWithAlternatives> createLookups() {
+        return Arrays.asList(
+                new IdWithAlternatives(foo, null, Collections.emptySet()),
+                new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton("http://foo")),
+                new IdWithAlternatives(UUID.randomUUID(), new SpaceName("b"), Collections.singleton("http://bar")),
+                new IdWithAlternatives(UUID.randomUUID(), new SpaceName("c"), Collections.singleton("http://bar")),
+                new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton(NAMESPACE + bar)),
+                new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton("http://unknown")),
+                //The absolute url of this id is an alternative of bar (in space "b") which is not in the requested space
+                new IdWithAlternatives(mergedIntoBar, new SpaceName("c"), Collections.singleton("http://other")));
+    }
+
+    @Test
+    void resolveIdsWithAndWithoutCache() {
+        //Given
+        documents.put(foo.toString(), createPersistedId(foo, "a", "http://foo"));
+        documents.put(bar.toString(), createPersistedId(bar, "b", "http://bar", NAMESPACE + mergedIntoBar));
+        IdRepository cached = createRepository(100);
+        IdRepository uncached = createRepository(0);
+        List<IdWithAlternatives> lookups = createLookups();
+
+        //When
+        Map<UUID, InstanceId> cold = cached.resolveIds(DataStage.IN_PROGRESS, lookups);
+        Map<UUID, InstanceId> warm = cached.resolveIds(DataStage.IN_PROGRESS, lookups);
+        Map<UUID, InstanceId> withoutCache = uncached.resolveIds(DataStage.IN_PROGRESS, lookups);
+
+        //Then
+        assertEquals(withoutCache, cold);
+        assertEquals(withoutCache, warm);
+        assertEquals(new InstanceId(foo, new SpaceName("a")), warm.get(lookups.get(1).getId()));
+        assertNull(warm.get(lookups.get(3).getId()));
+        assertNull(warm.get(mergedIntoBar));
+        assertEquals(10, cached.getResolutionCache(DataStage.IN_PROGRESS).getMisses());
+        assertEquals(4, cached.getResolutionCache(DataStage.IN_PROGRESS).getHits());
+        assertEquals(0, uncached.getResolutionCache(DataStage.IN_PROGRESS).size());
+    }
+
+    @Test
+    void upsertAndRemoveInvalidateCache() {
+        //Given
+        documents.put(foo.toString(), createPersistedId(foo, "a", "http://foo"));
+        IdRepository repository = createRepository(100);
+        List<IdWithAlternatives> lookup = Collections.singletonList(new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton("http://foo")));
+        repository.resolveIds(DataStage.RELEASED, lookup);
+
+        //When
+        repository.upsert(DataStage.RELEASED, createPersistedId(foo, "b", "http://foo"));
+        InstanceId afterUpsert = repository.resolveIds(DataStage.RELEASED, lookup).get(lookup.get(0).getId());
+        repository.remove(DataStage.RELEASED, documents.get(foo.toString()));
+        InstanceId afterRemoval = repository.resolveIds(DataStage.RELEASED, lookup).get(lookup.get(0).getId());
+
+        //Then
+        assertEquals(new InstanceId(foo, new SpaceName("b")), afterUpsert);
+        assertNull(afterRemoval);
+    }
+
+    /**
+     * @return a UUID which is assigned to the given lock stripe (of two)
+     */
+    private UUID uuidOfStripe(int stripe) {
+        UUID uuid;
+        do {
+            uuid = UUID.randomUUID();
+        } while (Math.floorMod(uuid.hashCode(), 2) != stripe);
+        return uuid;
+    }
+
+    @Test
+    void upsertsOfDifferentIdsRunInParallel() throws Exception {
+        //Given
+        IdRepository repository = createRepository(100);
+        UUID blocked = uuidOfStripe(0);
+        UUID other = uuidOfStripe(1);
+        CountDownLatch blockedWriteStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Mockito.when(collection.getDocument(eq(blocked.toString()), eq(String.class), any(DocumentReadOptions.class))).thenAnswer(i -> {
+            blockedWriteStarted.countDown();
+            release.await();
+            return null;
+        });
+        Thread blockedUpsert = new Thread(() -> repository.upsert(DataStage.NATIVE, createPersistedId(blocked, "a")));
+        blockedUpsert.start();
+        blockedWriteStarted.await();
+
+        //When
+        repository.upsert(DataStage.NATIVE, createPersistedId(other, "a"));
+
+        //Then
+        assertTrue(documents.containsKey(other.toString()));
+        assertFalse(documents.containsKey(blocked.toString()));
+        release.countDown();
+        blockedUpsert.join();
+        assertTrue(documents.containsKey(blocked.toString()));
+    }
+
+    @Test
+    void upsertIsRetriedOnWriteConflict() {
+        //Given
+        IdRepository repository = createRepository(100);
+        ArangoDBException conflict = Mockito.mock(ArangoDBException.class);
+        Mockito.when(conflict.getErrorNum()).thenReturn(1200);
+        Mockito.when(database.query(anyString(), anyMap(), any(AqlQueryOptions.class), eq(Void.class))).thenThrow(conflict).thenReturn(null);
+
+        //When
+        repository.upsert(DataStage.NATIVE, createPersistedId(foo, "a", "http://foo"));
+
+        //Then
+        Mockito.verify(database, Mockito.times(1)).abortStreamTransaction("tx");
+        Mockito.verify(database, Mockito.times(1)).commitStreamTransaction("tx");
+        assertEquals(new SpaceName("a"), documents.get(foo.toString()).getSpace());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void definitelyUnknownIdsAreNotLookedUp() {
+        //Given
+        documents.put(foo.toString(), createPersistedId(foo, "a", "http://foo"));
+        IdRepository repository = createRepository(0);
+        mockCount(1);
+        negativeLookupFilter.build(DataStage.NATIVE);
+        repository.upsert(DataStage.NATIVE, createPersistedId(bar, "b", "http://bar"));
+        List<IdWithAlternatives> lookups = Arrays.asList(
+                new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton("http://unknown")),
+                new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton("http://foo")),
+                new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton("http://bar")));
+        Mockito.clearInvocations(database);
+
+        //When
+        Map<UUID, InstanceId> result = repository.resolveIds(DataStage.NATIVE, lookups);
+
+        //Then
+        assertNull(result.get(lookups.get(0).getId()));
+        assertEquals(new InstanceId(foo, new SpaceName("a")), result.get(lookups.get(1).getId()));
+        assertEquals(new InstanceId(bar, new SpaceName("b")), result.get(lookups.get(2).getId()));
+        ArgumentCaptor<Map<String, Object>> bindVars = ArgumentCaptor.forClass(Map.class);
+        Mockito.verify(database, Mockito.atLeastOnce()).query(anyString(), bindVars.capture(), any(AqlQueryOptions.class), eq(String.class));
+        assertTrue(bindVars.getAllValues().stream().noneMatch(b -> b.toString().contains("http://unknown") || b.toString().contains(lookups.get(0).getId().toString())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void idsWrittenByOtherInstancesAreNotReportedAsUnknown() {
+        //Given
+        IdRepository repository = createRepository(0);
+        mockCount(0);
+        negativeLookupFilter.build(DataStage.NATIVE);
+        documents.put(foo.toString(), writtenByOtherInstance(foo, "http://foo"));
+        IdWithAlternatives lookup = new IdWithAlternatives(UUID.randomUUID(), null, Collections.singleton("http://foo"));
+
+        //When
+        InstanceId beforeRefresh = repository.resolveIds(DataStage.NATIVE, Collections.singletonList(lookup)).get(lookup.getId());
+        documents.put(bar.toString(), writtenByOtherInstance(bar, "http://bar"));
+        negativeLookupFilter.refresh(DataStage.NATIVE);
+        Mockito.clearInvocations(database);
+        boolean unknownAfterRefresh = negativeLookupFilter.isDefinitelyUnknown(DataStage.NATIVE, Collections.singleton("http://bar"));
+
+        //Then
+        assertEquals(new InstanceId(foo, new SpaceName("a")), beforeRefresh);
+        assertFalse(unknownAfterRefresh);
+        //The refreshed filter knows the id without re-checking it in the database
+        Mockito.verify(database, Mockito.never()).query(anyString(), anyMap(), any(AqlQueryOptions.class), eq(Map.class));
+        assertTrue(negativeLookupFilter.isDefinitelyUnknown(DataStage.NATIVE, Collections.singleton("http://unknown")));
+    }
+
+    private PersistedId writtenByOtherInstance(UUID uuid, String alternative) {
+        PersistedId persistedId = createPersistedId(uuid, "a", alternative);
+        persistedId.setWrittenAt(System.currentTimeMillis());
+        return persistedId;
+    }
+
+    private void mockCount(long numberOfIds) {
+        CollectionPropertiesEntity count = Mockito.mock(CollectionPropertiesEntity.class);
+        Mockito.when(count.getCount()).thenReturn(numberOfIds);
+        Mockito.when(collection.count()).thenReturn(count);
+    }
+
+    @Test
+    void sharedAlternativesReferenceAllIds() {
+        //Given
+        IdRepository repository = createRepository(100);
+
+        //When
+        repository.upsert(DataStage.NATIVE, createPersistedId(foo, "a", "http://shared", "http://foo"));
+        repository.upsert(DataStage.NATIVE, createPersistedId(bar, "b", "http://shared"));
+
+        //Then
+        assertEquals(Set.of(foo, bar), lookup.get("http://shared"));
+        assertEquals(Set.of(foo), lookup.get("http://foo"));
+        assertEquals(Set.of(foo), lookup.get(NAMESPACE + foo));
+        assertEquals(Set.of(bar), lookup.get(NAMESPACE + bar));
+    }
+
+    @Test
+    void droppedAlternativesAreRemovedOnReleasedUpsert() {
+        //Given
+        IdRepository repository = createRepository(100);
+        repository.upsert(DataStage.RELEASED, createPersistedId(foo, "a", "http://shared", "http://dropped"));
+        repository.upsert(DataStage.RELEASED, createPersistedId(bar, "b", "http://shared", "http://dropped"));
+
+        //When
+        repository.upsert(DataStage.RELEASED, createPersistedId(foo, "a", "http://kept"));
+
+        //Then
+        assertEquals(Set.of(bar), lookup.get("http://shared"));
+        assertEquals(Set.of(bar), lookup.get("http://dropped"));
+        assertEquals(Set.of(foo), lookup.get("http://kept"));
+        assertEquals(Set.of(foo), lookup.get(NAMESPACE + foo));
+    }
+
+    @Test
+    void previousAlternativesAreKeptOnInProgressUpsert() {
+        //Given
+        IdRepository repository = createRepository(100);
+        repository.upsert(DataStage.IN_PROGRESS, createPersistedId(foo, "a", "http://previous"));
+
+        //When
+        repository.upsert(DataStage.IN_PROGRESS, createPersistedId(foo, "a", "http://new"));
+
+        //Then
+        assertEquals(Set.of(foo), lookup.get("http://previous"));
+        assertEquals(Set.of(foo), lookup.get("http://new"));
+    }
+
+    @Test
+    void removalOfOneOfTwoOwnersKeepsTheSharedEntry() {
+        //Given
+        IdRepository repository = createRepository(100);
+        repository.upsert(DataStage.NATIVE, createPersistedId(foo, "a", "http://shared", "http://foo"));
+        repository.upsert(DataStage.NATIVE, createPersistedId(bar, "b", "http://shared"));
+
+        //When
+        repository.remove(DataStage.NATIVE, documents.get(foo.toString()));
+        Set<UUID> afterFirstRemoval = new HashSet<>(lookup.get("http://shared"));
+        repository.remove(DataStage.NATIVE, documents.get(bar.toString()));
+
+        //Then
+        assertEquals(Set.of(bar), afterFirstRemoval);
+        assertFalse(lookup.containsKey("http://foo"));
+        assertFalse(lookup.containsKey(NAMESPACE + foo));
+        assertFalse(lookup.containsKey("http://shared"));
+        assertTrue(lookup.isEmpty());
+    }
+
+}
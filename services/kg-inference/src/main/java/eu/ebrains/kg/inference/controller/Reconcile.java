@@ -162,28 +162,81 @@ public class Reconcile {
         return new HashSet<>(reconcileUnits.values());
     }
 
+    /**
+     * Groups the identifiers of the documents into sets of transitively shared identifiers. This is done by a union-find
+     * over the identifiers - which runs in near-linear time even for large clusters of shared identifiers.
+     */
     Set<Set<String>> combineIds(Set<IndexedJsonLdDoc> documents) {
         Set<Set<String>> idCombinations = new HashSet<>();
-        documents.forEach(doc -> {
-            Set<String> identifiers = doc.getDoc().allIdentifiersIncludingId();
-            Set<String> idCombination = new HashSet<>();
-            for (String identifier : identifiers) {
-                Iterator<Set<String>> iterator = idCombinations.iterator();
-                while (iterator.hasNext()) {
-                    Set<String> next = iterator.next();
-                    if (next.contains(identifier)) {
-                        idCombination.addAll(next);
-                        iterator.remove();
-                        break;
-                    }
-                }
+        Map<String, Integer> indices = new HashMap<>();
+        List<String> identifiers = new ArrayList<>();
+        List<int[]> identifiersOfDocuments = new ArrayList<>(documents.size());
+        for (IndexedJsonLdDoc doc : documents) {
+            Set<String> identifiersOfDocument = doc.getDoc().allIdentifiersIncludingId();
+            if (identifiersOfDocument.isEmpty()) {
+                //A document without identifiers can't be combined with others - it still has its (empty) combination.
+                idCombinations.add(new HashSet<>());
+            } else {
+                identifiersOfDocuments.add(identifiersOfDocument.stream().mapToInt(identifier -> indices.computeIfAbsent(identifier, i -> {
+                    identifiers.add(i);
+                    return identifiers.size() - 1;
+                })).toArray());
             }
-            idCombination.addAll(identifiers);
-            idCombinations.add(idCombination);
-        });
+        }
+        DisjointSets disjointSets = new DisjointSets(identifiers.size());
+        for (int[] identifiersOfDocument : identifiersOfDocuments) {
+            for (int i = 1; i < identifiersOfDocument.length; i++) {
+                disjointSets.union(identifiersOfDocument[0], identifiersOfDocument[i]);
+            }
+        }
+        Map<Integer, Set<String>> combinationsByRoot = new HashMap<>();
+        for (int i = 0; i < identifiers.size(); i++) {
+            combinationsByRoot.computeIfAbsent(disjointSets.find(i), r -> new HashSet<>()).add(identifiers.get(i));
+        }
+        idCombinations.addAll(combinationsByRoot.values());
         return idCombinations;
     }
 
+    /**
+     * A union-find structure over the indices 0..n-1 (with union by size and path halving).
+     */
+    static class DisjointSets {
+        private final int[] parents;
+        private final int[] sizes;
+
+        DisjointSets(int n) {
+            parents = new int[n];
+            sizes = new int[n];
+            for (int i = 0; i < n; i++) {
+                parents[i] = i;
+                sizes[i] = 1;
+            }
+        }
+
+        int find(int i) {
+            while (parents[i] != i) {
+                parents[i] = parents[parents[i]];
+                i = parents[i];
+            }
+            return i;
+        }
+
+        void union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return;
+            }
+            if (sizes[rootA] < sizes[rootB]) {
+                int swap = rootA;
+                rootA = rootB;
+                rootB = swap;
+            }
+            parents[rootB] = rootA;
+            sizes[rootA] += sizes[rootB];
+        }
+    }
+
     static class InferenceResult {
         Set<IndexedJsonLdDoc> toBeRemoved = new HashSet<>();
         Map<InferredJsonLdDoc, Set<IndexedJsonLdDoc>> toBeMerged = new HashMap<>();
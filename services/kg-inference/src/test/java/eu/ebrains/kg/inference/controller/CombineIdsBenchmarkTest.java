@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.inference.controller;
+
+import eu.ebrains.kg.commons.IdUtils;
+import eu.ebrains.kg.commons.api.GraphDBInstances;
+import eu.ebrains.kg.commons.api.GraphDBTypes;
+import eu.ebrains.kg.commons.jsonld.IndexedJsonLdDoc;
+import eu.ebrains.kg.test.TestCategories;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the union-find of {@link Reconcile#combineIds(Set)} with the repeated scanning it replaces.
+ */
+@Tag(TestCategories.LOAD)
+class CombineIdsBenchmarkTest {
+
+    private static final int NUMBER_OF_DOCUMENTS = 5000;
+
+    private static final int ITERATIONS = 5;
+
+    private final Reconcile reconcile = new Reconcile(Mockito.mock(GraphDBInstances.Client.class), Mockito.mock(GraphDBTypes.Client.class), new IdUtils("http://foobar/"));
+
+    private long measure(Set<IndexedJsonLdDoc> documents, Function<Set<IndexedJsonLdDoc>, Set<Set<String>>> combination) {
+        //Warm up
+        combination.apply(documents);
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            combination.apply(documents);
+        }
+        return (System.nanoTime() - start) / ITERATIONS / 1000000;
+    }
+
+    @Test
+    void combineIds() {
+        //Given
+        Random random = new Random(42);
+        Set<IndexedJsonLdDoc> documents = new HashSet<>();
+        //A few large clusters (e.g. an instance contributed by many clients) and many small ones
+        for (int i = 0; i < NUMBER_OF_DOCUMENTS; i++) {
+            documents.add(ReconcileTest.createRandomDoc(random, i % 2 == 0 ? 200 : NUMBER_OF_DOCUMENTS * 4, 3));
+        }
+
+        //When
+        final long scanning = measure(documents, ReconcileTest::combineIdsByScanning);
+        final long unionFind = measure(documents, reconcile::combineIds);
+
+        //Then
+        System.out.printf("Combining the ids of %d documents by scanning: %d ms%n", NUMBER_OF_DOCUMENTS, scanning);
+        System.out.printf("Combining the ids of %d documents by union-find: %d ms%n", NUMBER_OF_DOCUMENTS, unionFind);
+        assertEquals(ReconcileTest.combineIdsByScanning(documents), reconcile.combineIds(documents));
+        assertTrue(unionFind < scanning);
+    }
+
+}
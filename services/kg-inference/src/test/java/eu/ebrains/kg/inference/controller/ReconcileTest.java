@@ -33,10 +33,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -105,6 +102,63 @@ public class ReconcileTest {
 
 
 
+    /**
+     * The combination of ids by repeatedly scanning the combinations found so far - the reference for the union-find in
+     * {@link Reconcile#combineIds(Set)}
+     */
+    static Set<Set<String>> combineIdsByScanning(Set<IndexedJsonLdDoc> documents) {
+        Set<Set<String>> idCombinations = new HashSet<>();
+        documents.forEach(doc -> {
+            Set<String> identifiers = doc.getDoc().allIdentifiersIncludingId();
+            Set<String> idCombination = new HashSet<>();
+            for (String identifier : identifiers) {
+                Iterator<Set<String>> iterator = idCombinations.iterator();
+                while (iterator.hasNext()) {
+                    Set<String> next = iterator.next();
+                    if (next.contains(identifier)) {
+                        idCombination.addAll(next);
+                        iterator.remove();
+                        break;
+                    }
+                }
+            }
+            idCombination.addAll(identifiers);
+            idCombinations.add(idCombination);
+        });
+        return idCombinations;
+    }
+
+    static IndexedJsonLdDoc createRandomDoc(Random random, int numberOfIdentifiers, int maxIdentifiersPerDoc) {
+        String[] identifiers = new String[random.nextInt(maxIdentifiersPerDoc + 1)];
+        for (int i = 0; i < identifiers.length; i++) {
+            identifiers[i] = "http://foo/" + random.nextInt(numberOfIdentifiers);
+        }
+        IndexedJsonLdDoc doc = IndexedJsonLdDoc.from(new NormalizedJsonLd());
+        doc.getDoc().addIdentifiers(identifiers);
+        doc.updateIdentifiers();
+        return doc;
+    }
+
+    @Test
+    public void testCombineIdsEquivalentToScanning() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            //given
+            int numberOfIdentifiers = 1 + random.nextInt(100);
+            Set<IndexedJsonLdDoc> docs = new HashSet<>();
+            int numberOfDocs = random.nextInt(60);
+            for (int i = 0; i < numberOfDocs; i++) {
+                docs.add(createRandomDoc(random, numberOfIdentifiers, 4));
+            }
+
+            //when
+            Set<Set<String>> ids = reconcile.combineIds(docs);
+
+            //then
+            assertEquals(combineIdsByScanning(docs), ids, String.format("Different combination in round %d", round));
+        }
+    }
+
     @Test
     public void testExtractReconcileUnits() {
         List<IndexedJsonLdDoc> docs = Arrays.asList(createDoc("A"), createDoc("B"), createDoc("C"), createDoc("D", "B", "C"), createDoc("E","A", "B"));
@@ -25,7 +25,9 @@ package eu.ebrains.kg.primaryStore.api;
 
 import eu.ebrains.kg.commons.api.PrimaryStoreEvents;
 import eu.ebrains.kg.commons.jsonld.InstanceId;
+import eu.ebrains.kg.commons.model.DataStage;
 import eu.ebrains.kg.commons.model.Event;
+import eu.ebrains.kg.commons.model.IndexingLag;
 import eu.ebrains.kg.commons.model.SpaceName;
 import eu.ebrains.kg.primaryStore.controller.EventProcessor;
 import eu.ebrains.kg.primaryStore.controller.InferenceProcessor;
@@ -57,8 +59,8 @@ public class PrimaryStoreEventsAPI implements PrimaryStoreEvents.Client {
     }
 
     @Override
-    public Set<InstanceId> postEvent(Event event) {
-        return eventProcessor.postEvent(event);
+    public Set<InstanceId> postEvent(Event event, boolean waitUntilIndexed) {
+        return eventProcessor.postEvent(event, waitUntilIndexed);
     }
 
 
@@ -68,4 +70,9 @@ public class PrimaryStoreEventsAPI implements PrimaryStoreEvents.Client {
         eventProcessor.autoRelease(inferenceProcessor.triggerInference(new SpaceName(space), id));
     }
 
+    @Override
+    public IndexingLag getIndexingLag(DataStage stage) {
+        return eventProcessor.getIndexingLag(stage);
+    }
+
 }
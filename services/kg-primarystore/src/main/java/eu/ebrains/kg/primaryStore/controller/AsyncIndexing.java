@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.primaryStore.controller;
+
+import eu.ebrains.kg.commons.model.PersistedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Keeps track of the events which have been persisted but not yet indexed when the asynchronous indexing mode is active.
+ * In this mode, the primary store acknowledges an event as soon as it is persisted in its event log - the
+ * {@link EventLogConsumer} then takes care of the indexing in the background.
+ * <p>
+ * The watermark as well as the waiting requests are only known on the local node. This
+ * is why the asynchronous mode is only active on the instance which holds the lease of the event log consumer (see
+ * {@link EventLogConsumer}) - all other instances keep indexing their events synchronously.
+ */
+@Component
+public class AsyncIndexing {
+
+    private final boolean enabled;
+
+    private final long waitTimeoutInMs;
+
+    private final Map<Object, Long> pendingInsertions = new HashMap<>();
+
+    private final Map<String, PendingEvent> pendingEvents = new ConcurrentHashMap<>();
+
+    private final Semaphore signal = new Semaphore(0);
+
+    private volatile long leaseValidUntil;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public AsyncIndexing(@Value("${eu.ebrains.kg.primaryStore.asyncIndexing:false}") boolean enabled, @Value("${eu.ebrains.kg.primaryStore.asyncIndexing.waitTimeoutInMs:60000}") long waitTimeoutInMs) {
+        this.enabled = enabled;
+        this.waitTimeoutInMs = waitTimeoutInMs;
+    }
+
+    private static class PendingEvent {
+        private final CompletableFuture<List<PersistedEvent>> indexed = new CompletableFuture<>();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return true if the asynchronous indexing is enabled and this instance holds the lease of the event log consumer.
+     * Only events persisted while this is the case are indexed by the consumer.
+     */
+    public boolean isActive() {
+        return enabled && new Date().getTime() < leaseValidUntil;
+    }
+
+    void grantLease(long validUntil) {
+        leaseValidUntil = validUntil;
+    }
+
+    void revokeLease() {
+        leaseValidUntil = 0;
+    }
+
+    /**
+     * Marks the start of the insertion of an event into the event log. Since the indexed timestamp of an event is defined
+     * before it is inserted, the consumer must not go beyond the start of any ongoing insertion - otherwise, it could
+     * miss an event which becomes visible in the log after the cursor has already passed its timestamp.
+     */
+    public Object startInsertion() {
+        Object insertion = new Object();
+        synchronized (pendingInsertions) {
+            pendingInsertions.put(insertion, new Date().getTime());
+        }
+        return insertion;
+    }
+
+    public void finishInsertion(Object insertion) {
+        synchronized (pendingInsertions) {
+            pendingInsertions.remove(insertion);
+        }
+    }
+
+    /**
+     * @return the timestamp (exclusive) up to which all events are guaranteed to be visible in the event logs
+     */
+    public long getWatermark() {
+        synchronized (pendingInsertions) {
+            long now = new Date().getTime();
+            return pendingInsertions.values().stream().min(Long::compareTo).map(start -> Math.min(start, now)).orElse(now);
+        }
+    }
+
+    /**
+     * Registers an event which is about to be inserted into the event log so the request can wait for its indexing.
+     */
+    public void register(PersistedEvent event) {
+        if (enabled) {
+            pendingEvents.put(event.getEventId(), new PendingEvent());
+        }
+    }
+
+    public void signal() {
+        signal.release();
+    }
+
+    public void awaitSignal(long timeoutInMs) throws InterruptedException {
+        if (signal.tryAcquire(timeoutInMs, TimeUnit.MILLISECONDS)) {
+            //We've been woken up - there is no need to wake up for the other signals which have been collected in the meantime.
+            signal.drainPermits();
+        }
+    }
+
+    /**
+     * Marks the event as indexed. Since the inferred events are indexed on their own, the event is only reported to be
+     * fully indexed once all its inferred events are indexed as well.
+     */
+    public void indexed(PersistedEvent event, List<PersistedEvent> inferredEvents) {
+        PendingEvent pendingEvent = pendingEvents.remove(event.getEventId());
+        if (pendingEvent != null) {
+            CompletableFuture<?>[] inferredEventsIndexed = inferredEvents.stream().map(e -> pendingEvents.get(e.getEventId())).filter(Objects::nonNull).map(e -> e.indexed).toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(inferredEventsIndexed).whenComplete((result, exception) -> {
+                if (exception != null) {
+                    pendingEvent.indexed.completeExceptionally(exception);
+                } else {
+                    pendingEvent.indexed.complete(inferredEvents);
+                }
+            });
+        }
+    }
+
+    public void failed(PersistedEvent event, Exception exception) {
+        PendingEvent pendingEvent = pendingEvents.remove(event.getEventId());
+        if (pendingEvent != null) {
+            pendingEvent.indexed.completeExceptionally(exception);
+        }
+    }
+
+    /**
+     * @return the future which completes as soon as the event (and the events inferred from it) are indexed. To be sure
+     * that the event is not indexed already, this has to be requested while an insertion (see {@link #startInsertion()})
+     * started before the creation of the event is still ongoing.
+     */
+    public Future<List<PersistedEvent>> getIndexing(PersistedEvent event) {
+        PendingEvent pendingEvent = pendingEvents.get(event.getEventId());
+        return pendingEvent != null ? pendingEvent.indexed : null;
+    }
+
+    /**
+     * Blocks until the event (and the events inferred from it) are indexed.
+     *
+     * @return the inferred events or null if the indexing didn't finish in time
+     */
+    public List<PersistedEvent> waitUntilIndexed(PersistedEvent event, Future<List<PersistedEvent>> indexing) {
+        if (indexing == null) {
+            logger.warn(String.format("Can not wait for the indexing of event %s since it is not known", event.getEventId()));
+            return null;
+        }
+        try {
+            return indexing.get(waitTimeoutInMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warn(String.format("Event %s has been persisted but was not indexed within %dms", event.getEventId(), waitTimeoutInMs));
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
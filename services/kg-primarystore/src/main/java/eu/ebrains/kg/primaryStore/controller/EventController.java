@@ -62,10 +62,11 @@ public class EventController {
     private final GraphDBSpaces.Client graphDBSpaces;
     private final AuthContext authContext;
     private final UsersRepository usersRepository;
+    private final AsyncIndexing asyncIndexing;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public EventController(Permissions permissions, Ids.Client ids, EventRepository eventRepository, IdUtils idUtils, GraphDBSpaces.Client graphDBSpaces, UsersRepository usersRepository, AuthContext authContext) {
+    public EventController(Permissions permissions, Ids.Client ids, EventRepository eventRepository, IdUtils idUtils, GraphDBSpaces.Client graphDBSpaces, UsersRepository usersRepository, AuthContext authContext, AsyncIndexing asyncIndexing) {
         this.permissions = permissions;
         this.ids = ids;
         this.eventRepository = eventRepository;
@@ -73,6 +74,13 @@ public class EventController {
         this.graphDBSpaces = graphDBSpaces;
         this.usersRepository = usersRepository;
         this.authContext = authContext;
+        this.asyncIndexing = asyncIndexing;
+    }
+
+    public void checkPermissionsForIndexingLag(){
+        if(!permissions.hasGlobalPermission(authContext.getUserWithRoles(), Functionality.CHECK_HEALTH_STATUS)){
+            throw new UnauthorizedException("You are not allowed to check the indexing lag!");
+        }
     }
 
     public void checkPermissionsForRerunEvents(){
@@ -137,12 +145,23 @@ public class EventController {
             //For insert and update, we need to ensure that the user information is also present in the native payload to properly calculate the alternatives
             event.getData().put(EBRAINSVocabulary.META_USER, idUtils.buildAbsoluteUrl(usersRepository.getUserUUID(userWithRoles.getUser())));
         }
-        PersistedEvent persistedEvent = new PersistedEvent(event, dataStage, userWithRoles.getUser(), graphDBSpaces.getSpace(event.getSpaceName()));
-        ensureInternalIdInPayload(persistedEvent, userWithRoles);
-        checkPermission(persistedEvent);
-        handleIds(dataStage, persistedEvent);
-        eventRepository.insert(persistedEvent);
-        return persistedEvent;
+        final Object insertion = asyncIndexing.startInsertion();
+        try {
+            PersistedEvent persistedEvent = new PersistedEvent(event, dataStage, userWithRoles.getUser(), graphDBSpaces.getSpace(event.getSpaceName()));
+            ensureInternalIdInPayload(persistedEvent, userWithRoles);
+            checkPermission(persistedEvent);
+            handleIds(dataStage, persistedEvent);
+            //The decision is persisted with the event - this way, the event log consumer only picks up the events which are not indexed synchronously.
+            persistedEvent.setAsyncIndexing(asyncIndexing.isActive());
+            eventRepository.insert(persistedEvent);
+            if (persistedEvent.isAsyncIndexing()) {
+                //The event can not be consumed before the insertion is finished - so it's safe to register it afterwards.
+                asyncIndexing.register(persistedEvent);
+            }
+            return persistedEvent;
+        } finally {
+            asyncIndexing.finishInsertion(insertion);
+        }
     }
 
     public void handleIds(DataStage dataStage, PersistedEvent persistedEvent) {
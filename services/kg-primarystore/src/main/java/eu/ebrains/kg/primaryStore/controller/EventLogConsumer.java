@@ -0,0 +1,318 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.primaryStore.controller;
+
+import eu.ebrains.kg.commons.RequestHeadersHolder;
+import eu.ebrains.kg.commons.RequestScopedUserWithRoles;
+import eu.ebrains.kg.commons.model.DataStage;
+import eu.ebrains.kg.commons.model.PersistedEvent;
+import eu.ebrains.kg.commons.model.User;
+import eu.ebrains.kg.commons.models.UserWithRoles;
+import eu.ebrains.kg.commons.permission.roles.RoleMapping;
+import eu.ebrains.kg.primaryStore.model.EventCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.*;
+
+/**
+ * Drives the indexing from the event logs if the asynchronous indexing is active. The consumer keeps a persisted cursor
+ * per stage and processes the events of all stages in the order of their indexed timestamp. This is the same order in
+ * which they would have been processed synchronously, since derived events (e.g. inferred events or automatic releases)
+ * are always persisted after the event they originate from.
+ * <p>
+ * If multiple instances of the primary store are deployed, only one of them consumes the event logs: the instances
+ * compete for a lease document in the database and only the holder of the lease persists events for the asynchronous
+ * indexing (see {@link AsyncIndexing#isActive()}). The holder considers its lease to be valid for half of its time to
+ * live only - this leaves the other half for the insertions it has started before to finish, before another instance can
+ * take over. The other instances index their events synchronously until they acquire the lease.
+ * <p>
+ * The events are indexed with internal permissions on behalf of the user who has posted them (as recorded in the event)
+ * - the credentials of the original request are neither persisted nor required. This way, an event can be indexed by
+ * whichever instance holds the lease, also after a restart.
+ * <p>
+ * The persisted cursors are the checkpoints of the indexing - a restarted (or newly leading) consumer resumes from them.
+ * To keep the checkpointing off the critical path, the cursors are written in batches: whenever the configured number of
+ * events has been indexed or the flush interval has passed, when the event logs are drained and when the consumer is
+ * stopped. If an instance dies in between, the events after the last checkpoint are indexed once more by its successor.
+ */
+@Component
+public class EventLogConsumer {
+
+    private final AsyncIndexing asyncIndexing;
+
+    private final EventRepository eventRepository;
+
+    private final EventProcessor eventProcessor;
+
+    private final UsersRepository usersRepository;
+
+    private final int batchSize;
+
+    private final long pollIntervalInMs;
+
+    private final Map<DataStage, EventCursor> cursors = new EnumMap<>(DataStage.class);
+
+    private final Map<DataStage, EventCursor> unsavedCursors = new EnumMap<>(DataStage.class);
+
+    private final int cursorFlushSize;
+
+    private final long cursorFlushIntervalInMs;
+
+    private int eventsSinceFlush;
+
+    private long lastFlush;
+
+    private volatile boolean running;
+
+    private Thread consumerThread;
+
+    private Thread leaseThread;
+
+    private final long leaseTtlInMs;
+
+    private final String leaseOwner = UUID.randomUUID().toString();
+
+    private boolean leading;
+
+    private static final String LEASE = "eventLogConsumer";
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public EventLogConsumer(AsyncIndexing asyncIndexing, EventRepository eventRepository, EventProcessor eventProcessor, UsersRepository usersRepository, @Value("${eu.ebrains.kg.primaryStore.asyncIndexing.batchSize:100}") int batchSize, @Value("${eu.ebrains.kg.primaryStore.asyncIndexing.pollIntervalInMs:1000}") long pollIntervalInMs, @Value("${eu.ebrains.kg.primaryStore.asyncIndexing.leaseTtlInMs:60000}") long leaseTtlInMs, @Value("${eu.ebrains.kg.primaryStore.asyncIndexing.cursorFlushSize:100}") int cursorFlushSize, @Value("${eu.ebrains.kg.primaryStore.asyncIndexing.cursorFlushIntervalInMs:1000}") long cursorFlushIntervalInMs) {
+        this.asyncIndexing = asyncIndexing;
+        this.eventRepository = eventRepository;
+        this.eventProcessor = eventProcessor;
+        this.usersRepository = usersRepository;
+        this.batchSize = batchSize;
+        this.pollIntervalInMs = pollIntervalInMs;
+        this.leaseTtlInMs = leaseTtlInMs;
+        this.cursorFlushSize = cursorFlushSize;
+        this.cursorFlushIntervalInMs = cursorFlushIntervalInMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (asyncIndexing.isEnabled()) {
+            running = true;
+            leaseThread = new Thread(this::renewLease, "event-log-consumer-lease");
+            leaseThread.setDaemon(true);
+            leaseThread.start();
+            consumerThread = new Thread(this::consume, "event-log-consumer");
+            consumerThread.setDaemon(true);
+            consumerThread.start();
+            logger.info("Started the asynchronous indexing from the event logs");
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (leaseThread != null) {
+            leaseThread.interrupt();
+        }
+        if (consumerThread != null) {
+            consumerThread.interrupt();
+            try {
+                consumerThread.join(leaseTtlInMs / 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (asyncIndexing.isActive()) {
+            if (consumerThread == null || !consumerThread.isAlive()) {
+                try {
+                    flushCursors();
+                } catch (Exception e) {
+                    logger.warn("Was not able to save the cursors of the event log consumer - the last events will be indexed once more", e);
+                }
+            }
+            asyncIndexing.revokeLease();
+            try {
+                eventRepository.releaseLease(LEASE, leaseOwner);
+            } catch (Exception e) {
+                logger.warn("Was not able to release the lease of the event log consumer - it will expire", e);
+            }
+        }
+    }
+
+    private void renewLease() {
+        while (running) {
+            final long start = new Date().getTime();
+            try {
+                if (eventRepository.acquireLease(LEASE, leaseOwner, leaseTtlInMs)) {
+                    asyncIndexing.grantLease(start + leaseTtlInMs / 2);
+                } else {
+                    asyncIndexing.revokeLease();
+                }
+            } catch (Exception e) {
+                //We keep the lease until it runs out locally - maybe the next renewal succeeds.
+                logger.warn("Was not able to renew the lease of the event log consumer", e);
+            }
+            try {
+                Thread.sleep(leaseTtlInMs / 6);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Loads the persisted cursors - they might have been moved by another instance which has held the lease before.
+     */
+    private void loadCursors() {
+        for (DataStage stage : DataStage.values()) {
+            EventCursor cursor = eventRepository.getCursor(stage);
+            if (cursor == null) {
+                //The asynchronous indexing is activated for the first time - everything up to now has been indexed synchronously.
+                cursor = eventRepository.getHeadOfEventLog(stage);
+                eventRepository.saveCursor(cursor);
+            }
+            cursors.put(stage, cursor);
+        }
+        unsavedCursors.clear();
+        eventsSinceFlush = 0;
+        lastFlush = new Date().getTime();
+    }
+
+    /**
+     * Persists the cursors which have been moved since the last flush.
+     */
+    private void flushCursors() {
+        for (EventCursor cursor : unsavedCursors.values()) {
+            eventRepository.saveCursor(cursor);
+        }
+        unsavedCursors.clear();
+        eventsSinceFlush = 0;
+        lastFlush = new Date().getTime();
+    }
+
+    private boolean isFlushDue() {
+        return eventsSinceFlush >= cursorFlushSize || new Date().getTime() - lastFlush >= cursorFlushIntervalInMs;
+    }
+
+    private void consume() {
+        while (running) {
+            try {
+                if (!asyncIndexing.isActive()) {
+                    //Another instance might take over from the persisted cursors - we must not move them anymore.
+                    leading = false;
+                    unsavedCursors.clear();
+                    asyncIndexing.awaitSignal(pollIntervalInMs);
+                    continue;
+                }
+                if (!leading) {
+                    loadCursors();
+                    leading = true;
+                    logger.info("Acquired the lease of the event log consumer");
+                }
+                if (consumeBatch() == 0) {
+                    //The event logs are drained - a good moment to checkpoint the progress.
+                    if (!unsavedCursors.isEmpty()) {
+                        flushCursors();
+                    }
+                    asyncIndexing.awaitSignal(pollIntervalInMs);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Was not able to consume the event logs - trying again", e);
+                try {
+                    Thread.sleep(pollIntervalInMs);
+                } catch (InterruptedException interruptedException) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of processed events
+     */
+    int consumeBatch() {
+        final long watermark = asyncIndexing.getWatermark();
+        List<PersistedEvent> events = new ArrayList<>();
+        PersistedEvent limit = null;
+        for (DataStage stage : DataStage.values()) {
+            List<PersistedEvent> eventsOfStage = eventRepository.queryEventsAfter(stage, cursors.get(stage), watermark, batchSize);
+            if (eventsOfStage.size() == batchSize) {
+                //There are more events in this stage - the merged order is only reliable up to the last one we've received.
+                PersistedEvent lastOfStage = eventsOfStage.get(eventsOfStage.size() - 1);
+                if (limit == null || EventCursor.EVENT_ORDER.compare(lastOfStage, limit) < 0) {
+                    limit = lastOfStage;
+                }
+            }
+            events.addAll(eventsOfStage);
+        }
+        events.sort(EventCursor.EVENT_ORDER);
+        int processed = 0;
+        for (PersistedEvent event : events) {
+            if (!running || !asyncIndexing.isActive() || (limit != null && EventCursor.EVENT_ORDER.compare(event, limit) > 0)) {
+                break;
+            }
+            process(event);
+            EventCursor cursor = new EventCursor(event.getDataStage().name(), event.getIndexedTimestamp(), event.getEventId());
+            cursors.put(event.getDataStage(), cursor);
+            unsavedCursors.put(event.getDataStage(), cursor);
+            eventsSinceFlush++;
+            processed++;
+            if (isFlushDue()) {
+                flushCursors();
+            }
+        }
+        return processed;
+    }
+
+    private void process(PersistedEvent event) {
+        try {
+            //We execute the indexing on behalf of the user who has posted the event
+            RequestHeadersHolder.setAuthTokens(Collections.emptyMap(), RequestScopedUserWithRoles.of(getIndexingUser(event)));
+            asyncIndexing.indexed(event, eventProcessor.processEvent(event));
+        } catch (Exception e) {
+            //The failure has already been recorded by the event processor - we continue with the next event.
+            logger.error(String.format("Was not able to index event %s", event.getEventId()), e);
+            asyncIndexing.failed(event, e);
+        } finally {
+            RequestHeadersHolder.reset();
+        }
+    }
+
+    /**
+     * @return the user who has posted the event with internal permissions (or the internal admin if the user is not known)
+     */
+    private UserWithRoles getIndexingUser(PersistedEvent event) {
+        final User user = event.getUserId() != null ? usersRepository.getUser(event.getUserId()) : null;
+        if (user == null) {
+            return UserWithRoles.INTERNAL_ADMIN;
+        }
+        return new UserWithRoles(user, Collections.singletonList(RoleMapping.ADMIN.toRole(null).getName()), null, null);
+    }
+}
@@ -23,24 +23,29 @@
 
 package eu.ebrains.kg.primaryStore.controller;
 
+import com.arangodb.ArangoCursor;
+import eu.ebrains.kg.commons.AuthAwareTaskDecorator;
+import eu.ebrains.kg.commons.IdUtils;
 import eu.ebrains.kg.commons.api.Indexing;
 import eu.ebrains.kg.commons.jsonld.InstanceId;
 import eu.ebrains.kg.commons.jsonld.NormalizedJsonLd;
 import eu.ebrains.kg.commons.model.DataStage;
 import eu.ebrains.kg.commons.model.Event;
+import eu.ebrains.kg.commons.model.IndexingLag;
 import eu.ebrains.kg.commons.model.PersistedEvent;
 import eu.ebrains.kg.commons.model.SpaceName;
 import eu.ebrains.kg.commons.semantics.vocabularies.EBRAINSVocabulary;
+import eu.ebrains.kg.primaryStore.model.EventCursor;
 import eu.ebrains.kg.primaryStore.model.FailedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.time.ZonedDateTime;
-import java.util.Collections;
-import java.util.Date;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 @Component
@@ -53,29 +58,133 @@ public class EventProcessor {
 
     private final InferenceProcessor inferenceProcessor;
 
+    private final AsyncIndexing asyncIndexing;
+
+    private final IdUtils idUtils;
+
+    private final int rerunParallelism;
+
+    private final int rerunMaxPendingEvents;
+
+    private final int rerunBatchSize;
+
+    private final long rerunReportIntervalInMs;
+
+    private static final int RERUN_CURSOR_TTL_IN_SECONDS = 3600;
 
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public EventProcessor(Indexing.Client indexing, EventRepository eventRepository, EventController eventController, InferenceProcessor inferenceProcessor) {
+    public EventProcessor(Indexing.Client indexing, EventRepository eventRepository, EventController eventController, InferenceProcessor inferenceProcessor, AsyncIndexing asyncIndexing, IdUtils idUtils, @Value("${eu.ebrains.kg.primaryStore.rerun.parallelism:4}") int rerunParallelism, @Value("${eu.ebrains.kg.primaryStore.rerun.maxPendingEvents:1000}") int rerunMaxPendingEvents, @Value("${eu.ebrains.kg.primaryStore.rerun.batchSize:500}") int rerunBatchSize, @Value("${eu.ebrains.kg.primaryStore.rerun.reportIntervalInMs:10000}") long rerunReportIntervalInMs) {
         this.indexing = indexing;
         this.eventRepository = eventRepository;
         this.eventController = eventController;
         this.inferenceProcessor = inferenceProcessor;
+        this.asyncIndexing = asyncIndexing;
+        this.idUtils = idUtils;
+        this.rerunParallelism = rerunParallelism;
+        this.rerunMaxPendingEvents = rerunMaxPendingEvents;
+        this.rerunBatchSize = rerunBatchSize;
+        this.rerunReportIntervalInMs = rerunReportIntervalInMs;
     }
 
     public void rerunEvents(SpaceName spaceName){
         eventController.checkPermissionsForRerunEvents();
-        final List<PersistedEvent> events = eventRepository.queryAllEvents(DataStage.NATIVE, spaceName);
-        events.forEach(e -> {
+        final String checkpointKey = String.format("rerun-%s", spaceName.getName());
+        final EventCursor checkpoint = eventRepository.getCursor(checkpointKey);
+        if (checkpoint != null) {
+            logger.info(String.format("Resuming the interrupted rerun of the events of space %s", spaceName.getName()));
+        }
+        final long total = eventRepository.countEvents(DataStage.NATIVE, spaceName);
+        final long start = System.currentTimeMillis();
+        long lastReport = start;
+        try (EventReplay replay = new EventReplay(rerunParallelism, rerunMaxPendingEvents, checkpoint, e -> {
             eventController.handleIds(DataStage.NATIVE, e);
             processEvent(e);
-        });
+        }, new AuthAwareTaskDecorator());
+             ArangoCursor<PersistedEvent> events = eventRepository.streamEvents(DataStage.NATIVE, spaceName, checkpoint, rerunBatchSize, RERUN_CURSOR_TTL_IN_SECONDS)) {
+            while (events.hasNext()) {
+                final PersistedEvent event = events.next();
+                replay.submit(event, getPartitionKey(event));
+                if (System.currentTimeMillis() - lastReport > rerunReportIntervalInMs) {
+                    lastReport = System.currentTimeMillis();
+                    reportRerunProgress(spaceName, checkpointKey, replay, total, start);
+                }
+            }
+            replay.finish();
+            eventRepository.removeCursor(checkpointKey);
+            logger.info(String.format("Rerun of the events of space %s finished: %d events replayed (%d failed) in %d ms", spaceName.getName(), replay.getReplayed(), replay.getFailed(), System.currentTimeMillis() - start));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(String.format("The rerun of the events of space %s has been interrupted", spaceName.getName()), e);
+        } catch (IOException e) {
+            logger.warn(String.format("Was not able to close the event cursor of space %s", spaceName.getName()), e);
+        }
+    }
+
+    private void reportRerunProgress(SpaceName spaceName, String checkpointKey, EventReplay replay, long total, long start) {
+        final EventCursor checkpoint = replay.getCheckpoint();
+        if (checkpoint != null) {
+            eventRepository.saveCursor(new EventCursor(checkpointKey, checkpoint.getIndexedTimestamp(), checkpoint.getEventId()));
+        }
+        final long replayed = replay.getReplayed();
+        logger.info(String.format("Rerun of the events of space %s: %d of %d events replayed (%d failed) - %.1f events/s", spaceName.getName(), replayed, total, replay.getFailed(), replayed * 1000.0 / Math.max(1, System.currentTimeMillis() - start)));
+    }
+
+    /**
+     * The native events are stored per user contribution - we therefore partition them by the instance they contribute
+     * to, so the contributions of an instance are replayed in their original order.
+     */
+    private Object getPartitionKey(PersistedEvent event) {
+        final UUID instanceId = event.getData() != null ? idUtils.getUUID(event.getData().id()) : null;
+        return instanceId != null ? instanceId : event.getDocumentId();
+    }
+
+    /**
+     * The indexing lag is measured against the cursor of the {@link EventLogConsumer} - it is the only persisted position
+     * of the indexing. Since the cursor is saved in batches, the lag can include events which have already been indexed
+     * but not yet checkpointed. Without the asynchronous indexing, the events are indexed before they are acknowledged and there
+     * is therefore no lag.
+     */
+    public IndexingLag getIndexingLag(DataStage stage) {
+        eventController.checkPermissionsForIndexingLag();
+        final EventCursor head = eventRepository.getHeadOfEventLog(stage);
+        final EventCursor cursor = asyncIndexing.isEnabled() ? eventRepository.getCursor(stage) : null;
+        if (cursor == null) {
+            return new IndexingLag(stage, head.getEventId(), head.getEventId(), 0, 0);
+        }
+        final long pendingEvents = eventRepository.countPendingEventsAfter(stage, cursor);
+        final long lagInMs = pendingEvents > 0 && head.getIndexedTimestamp() != null && cursor.getIndexedTimestamp() != null ? head.getIndexedTimestamp() - cursor.getIndexedTimestamp() : 0;
+        return new IndexingLag(stage, head.getEventId(), cursor.getEventId(), pendingEvents, Math.max(0, lagInMs));
+    }
+
+    public Set<InstanceId> postEvent(Event event, boolean waitUntilIndexed) {
+        PersistedEvent persistedEvent;
+        Future<List<PersistedEvent>> indexing;
+        //We keep an insertion open until we have the handle to the indexing - this way, the consumer can't process the event before.
+        final Object insertion = asyncIndexing.startInsertion();
+        try {
+            persistedEvent = eventController.persistEvent(event, event.getType().getStage());
+            indexing = asyncIndexing.getIndexing(persistedEvent);
+        } finally {
+            asyncIndexing.finishInsertion(insertion);
+        }
+        if (!persistedEvent.isAsyncIndexing()) {
+            List<PersistedEvent> inferredEvents = processEvent(persistedEvent);
+            return toInstanceIds(inferredEvents);
+        }
+        asyncIndexing.signal();
+        if (waitUntilIndexed) {
+            final List<PersistedEvent> inferredEvents = asyncIndexing.waitUntilIndexed(persistedEvent, indexing);
+            if (inferredEvents != null) {
+                return toInstanceIds(inferredEvents);
+            }
+        }
+        //The event is persisted but not (yet) indexed - we therefore can only report the instance which is going to be inferred.
+        return persistedEvent.getDataStage() == DataStage.NATIVE ? Collections.singleton(new InstanceId(event.getDocumentId(), event.getSpaceName())) : Collections.emptySet();
     }
 
-    public Set<InstanceId> postEvent(Event event) {
-        PersistedEvent persistedEvent = eventController.persistEvent(event, event.getType().getStage());
-        List<PersistedEvent> inferredEvents = processEvent(persistedEvent);
-        return inferredEvents.stream().map(e -> new InstanceId(e.getDocumentId(), e.getSpaceName())).collect(Collectors.toSet());
+    private Set<InstanceId> toInstanceIds(List<PersistedEvent> events) {
+        return events.stream().map(e -> new InstanceId(e.getDocumentId(), e.getSpaceName())).collect(Collectors.toSet());
     }
 
     public List<PersistedEvent> processEvent(PersistedEvent persistedEvent) {
@@ -97,7 +206,8 @@ public class EventProcessor {
                 NormalizedJsonLd normalizedJsonLd = e.getData();
                 normalizedJsonLd.removeAllInternalProperties();
                 normalizedJsonLd.removeAllFieldsFromNamespace(EBRAINSVocabulary.META);
-                postEvent(new Event(e.getSpaceName(), e.getDocumentId(), normalizedJsonLd, Event.Type.RELEASE, new Date()));
+                //There is no need to wait for the release to be indexed (and we must not do so from within the event log consumer).
+                postEvent(new Event(e.getSpaceName(), e.getDocumentId(), normalizedJsonLd, Event.Type.RELEASE, new Date()), false);
             }
         });
         return events;
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.primaryStore.controller;
+
+import eu.ebrains.kg.commons.model.PersistedEvent;
+import eu.ebrains.kg.primaryStore.model.EventCursor;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Replays a stream of events on a bounded number of lanes. Events are assigned to a lane by their partition key, so the
+ * events of the same instance are replayed in their original order whereas independent instances are replayed
+ * concurrently. The number of submitted but not yet replayed events is bounded - {@link #submit(PersistedEvent, Object)}
+ * blocks if the lanes can't keep up with the reader.
+ */
+class EventReplay implements AutoCloseable {
+
+    private final ExecutorService[] lanes;
+
+    private final Semaphore pendingPermits;
+
+    private final Consumer<PersistedEvent> handler;
+
+    private final TaskDecorator taskDecorator;
+
+    /**
+     * The events which have been submitted but are not yet replayed - mapped to the position from which the replay
+     * would need to be resumed if they were lost.
+     */
+    private final ConcurrentSkipListMap<Long, EventCursor> pending = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong replayed = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private long sequence;
+
+    private volatile EventCursor lastSubmitted;
+
+    EventReplay(int parallelism, int maxPendingEvents, EventCursor start, Consumer<PersistedEvent> handler, TaskDecorator taskDecorator) {
+        this.lanes = new ExecutorService[parallelism];
+        for (int i = 0; i < parallelism; i++) {
+            this.lanes[i] = Executors.newSingleThreadExecutor();
+        }
+        this.pendingPermits = new Semaphore(maxPendingEvents);
+        this.handler = handler;
+        this.taskDecorator = taskDecorator;
+        this.lastSubmitted = start;
+    }
+
+    /**
+     * Submits the event to the lane of the given partition key. This method is not thread-safe - the events are
+     * expected to be submitted by a single reader in their original order.
+     */
+    void submit(PersistedEvent event, Object partitionKey) throws InterruptedException {
+        pendingPermits.acquire();
+        final long eventSequence = sequence++;
+        pending.put(eventSequence, lastSubmitted == null ? new EventCursor() : lastSubmitted);
+        lastSubmitted = new EventCursor(null, event.getIndexedTimestamp(), event.getEventId());
+        Runnable replay = () -> {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+            } finally {
+                pending.remove(eventSequence);
+                replayed.incrementAndGet();
+                pendingPermits.release();
+            }
+        };
+        lanes[Math.floorMod(partitionKey.hashCode(), lanes.length)].execute(taskDecorator != null ? taskDecorator.decorate(replay) : replay);
+    }
+
+    /**
+     * @return the position up to which all submitted events have been replayed - this is where a replay can be resumed
+     * after a crash without losing any event (or null if nothing has been replayed yet).
+     */
+    EventCursor getCheckpoint() {
+        //The order of the reads is important: every event up to lastSubmitted is already pending at this point.
+        final EventCursor submitted = lastSubmitted;
+        final Map.Entry<Long, EventCursor> firstPending = pending.firstEntry();
+        final EventCursor checkpoint = firstPending != null ? firstPending.getValue() : submitted;
+        return checkpoint == null || checkpoint.getIndexedTimestamp() == null ? null : checkpoint;
+    }
+
+    long getReplayed() {
+        return replayed.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * Waits until all submitted events are replayed.
+     */
+    void finish() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdownNow();
+        }
+    }
+}
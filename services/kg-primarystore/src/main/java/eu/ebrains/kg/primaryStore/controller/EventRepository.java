@@ -24,6 +24,9 @@
 package eu.ebrains.kg.primaryStore.controller;
 
 import com.arangodb.ArangoCollection;
+import com.arangodb.ArangoCursor;
+import com.arangodb.model.AqlQueryOptions;
+import com.arangodb.model.DocumentCreateOptions;
 import com.arangodb.model.HashIndexOptions;
 import com.arangodb.model.PersistentIndexOptions;
 import com.arangodb.model.SkiplistIndexOptions;
@@ -36,6 +39,7 @@ import eu.ebrains.kg.commons.model.DataStage;
 import eu.ebrains.kg.commons.model.Event;
 import eu.ebrains.kg.commons.model.PersistedEvent;
 import eu.ebrains.kg.commons.model.SpaceName;
+import eu.ebrains.kg.primaryStore.model.EventCursor;
 import eu.ebrains.kg.primaryStore.model.FailedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -124,18 +128,157 @@ public class EventRepository {
 
     }
 
-   public List<PersistedEvent> queryAllEvents(DataStage stage, SpaceName spaceName) {
+    /**
+     * Streams the events of the given stage (and space if provided) which are ordered after the given cursor. The cursor
+     * only keeps one batch in memory at a time and needs to be closed by the caller.
+     */
+    public ArangoCursor<PersistedEvent> streamEvents(DataStage stage, SpaceName spaceName, EventCursor after, int batchSize, int ttlInSeconds) {
+        getOrCreateCollection(stage); //ensure the collection exists.
         AQL aql = new AQL();
         Map<String, Object> bindVars = new HashMap<>();
-        aql.addLine(AQL.trust("FOR doc IN `" + stage.name().toLowerCase() + "_events`"));
-        if(spaceName!=null){
+        aql.addLine(AQL.trust("FOR doc IN `" + getCollectionName(stage) + "`"));
+        addFilterAfter(aql, bindVars, after);
+        if (spaceName != null) {
             aql.addLine(AQL.trust(" FILTER doc.spaceName == @spaceName"));
             bindVars.put("spaceName", spaceName.getName());
         }
-        aql.addLine(AQL.trust(" SORT doc.`indexedTimestamp` ASC"));
+        aql.addLine(AQL.trust(" SORT doc.`indexedTimestamp` ASC, doc.`eventId` ASC"));
+        aql.addLine(AQL.trust("RETURN doc"));
+        return arangoDatabase.get().query(aql.build().getValue(), bindVars, new AqlQueryOptions().stream(true).batchSize(batchSize).ttl(ttlInSeconds), PersistedEvent.class);
+    }
+
+    /**
+     * @return the number of events of the given stage which are to be indexed asynchronously and are ordered after the given cursor
+     */
+    public long countPendingEventsAfter(DataStage stage, EventCursor after) {
+        getOrCreateCollection(stage); //ensure the collection exists.
+        AQL aql = new AQL();
+        Map<String, Object> bindVars = new HashMap<>();
+        aql.addLine(AQL.trust("FOR doc IN `" + getCollectionName(stage) + "`"));
+        aql.addLine(AQL.trust(" FILTER doc.`asyncIndexing` == true"));
+        addFilterAfter(aql, bindVars, after);
+        aql.addLine(AQL.trust(" COLLECT WITH COUNT INTO length"));
+        aql.addLine(AQL.trust("RETURN length"));
+        final List<Long> count = arangoDatabase.get().query(aql.build().getValue(), bindVars, Long.class).asListRemaining();
+        return count.isEmpty() || count.get(0) == null ? 0 : count.get(0);
+    }
+
+    private void addFilterAfter(AQL aql, Map<String, Object> bindVars, EventCursor after) {
+        if (after != null && after.getIndexedTimestamp() != null) {
+            aql.addLine(AQL.trust(" FILTER doc.`indexedTimestamp` > @cursorTimestamp OR (doc.`indexedTimestamp` == @cursorTimestamp AND doc.`eventId` > @cursorEventId)"));
+            bindVars.put("cursorTimestamp", after.getIndexedTimestamp());
+            bindVars.put("cursorEventId", after.getEventId());
+        }
+    }
+
+    public long countEvents(DataStage stage, SpaceName spaceName) {
+        getOrCreateCollection(stage); //ensure the collection exists.
+        AQL aql = new AQL();
+        Map<String, Object> bindVars = new HashMap<>();
+        aql.addLine(AQL.trust("FOR doc IN `" + getCollectionName(stage) + "`"));
+        if (spaceName != null) {
+            aql.addLine(AQL.trust(" FILTER doc.spaceName == @spaceName"));
+            bindVars.put("spaceName", spaceName.getName());
+        }
+        aql.addLine(AQL.trust(" COLLECT WITH COUNT INTO length"));
+        aql.addLine(AQL.trust("RETURN length"));
+        final List<Long> count = arangoDatabase.get().query(aql.build().getValue(), bindVars, Long.class).asListRemaining();
+        return count.isEmpty() || count.get(0) == null ? 0 : count.get(0);
+    }
+
+    /**
+     * @return the events of the given stage which are to be indexed asynchronously, are ordered after the cursor and have been indexed before the given timestamp (exclusive).
+     */
+    public List<PersistedEvent> queryEventsAfter(DataStage stage, EventCursor cursor, long indexedBefore, int limit) {
+        getOrCreateCollection(stage); //ensure the collection exists.
+        AQL aql = new AQL();
+        Map<String, Object> bindVars = new HashMap<>();
+        aql.addLine(AQL.trust("FOR doc IN `" + getCollectionName(stage) + "`"));
+        aql.addLine(AQL.trust(" FILTER doc.`indexedTimestamp` < @indexedBefore AND doc.`asyncIndexing` == true"));
+        bindVars.put("indexedBefore", indexedBefore);
+        addFilterAfter(aql, bindVars, cursor);
+        aql.addLine(AQL.trust(" SORT doc.`indexedTimestamp` ASC, doc.`eventId` ASC"));
+        aql.addLine(AQL.trust(" LIMIT @limit"));
+        bindVars.put("limit", limit);
         aql.addLine(AQL.trust("RETURN doc"));
         return arangoDatabase.get().query(aql.build().getValue(), bindVars, PersistedEvent.class).asListRemaining();
     }
+
+    /**
+     * @return a cursor pointing to the latest event of the given stage (or to the very beginning if there are no events yet)
+     */
+    public EventCursor getHeadOfEventLog(DataStage stage) {
+        getOrCreateCollection(stage); //ensure the collection exists.
+        AQL aql = new AQL();
+        aql.addLine(AQL.trust("FOR doc IN `" + getCollectionName(stage) + "`"));
+        aql.addLine(AQL.trust(" SORT doc.`indexedTimestamp` DESC, doc.`eventId` DESC"));
+        aql.addLine(AQL.trust(" LIMIT 1"));
+        aql.addLine(AQL.trust("RETURN doc"));
+        final List<PersistedEvent> head = arangoDatabase.get().query(aql.build().getValue(), Collections.emptyMap(), PersistedEvent.class).asListRemaining();
+        return head.isEmpty() ? new EventCursor(stage.name(), null, null) : new EventCursor(stage.name(), head.get(0).getIndexedTimestamp(), head.get(0).getEventId());
+    }
+
+    public EventCursor getCursor(DataStage stage) {
+        return getCursor(stage.name());
+    }
+
+    public EventCursor getCursor(String key) {
+        return getOrCreateCursorCollection().getDocument(key, EventCursor.class);
+    }
+
+    public void removeCursor(String key) {
+        final ArangoCollection cursors = getOrCreateCursorCollection();
+        if (cursors.documentExists(key)) {
+            cursors.deleteDocument(key);
+        }
+    }
+
+    public void saveCursor(EventCursor cursor) {
+        getOrCreateCursorCollection().insertDocument(jsonAdapter.toJson(cursor), new DocumentCreateOptions().overwrite(true));
+    }
+
+    /**
+     * Acquires (or renews) the lease with the given key if it is either free, expired or already held by the given owner.
+     * The expiration is calculated with the clock of the database, so the instances don't depend on synchronized clocks.
+     *
+     * @return true if the given owner holds the lease
+     */
+    public boolean acquireLease(String key, String owner, long ttlInMs) {
+        final ArangoCollection leases = getOrCreateLeaseCollection();
+        AQL aql = new AQL();
+        Map<String, Object> bindVars = new HashMap<>();
+        aql.addLine(AQL.trust("UPSERT { _key: @key }"));
+        aql.addLine(AQL.trust(" INSERT { _key: @key, owner: @owner, expiresAt: DATE_NOW() + @ttl }"));
+        aql.addLine(AQL.trust(" UPDATE (OLD.owner == @owner OR OLD.expiresAt < DATE_NOW()) ? { owner: @owner, expiresAt: DATE_NOW() + @ttl } : {}"));
+        aql.addLine(AQL.trust(" IN `" + leases.name() + "`"));
+        aql.addLine(AQL.trust("RETURN NEW.owner == @owner"));
+        bindVars.put("key", key);
+        bindVars.put("owner", owner);
+        bindVars.put("ttl", ttlInMs);
+        final List<Boolean> acquired = arangoDatabase.get().query(aql.build().getValue(), bindVars, Boolean.class).asListRemaining();
+        return !acquired.isEmpty() && Boolean.TRUE.equals(acquired.get(0));
+    }
+
+    public void releaseLease(String key, String owner) {
+        final ArangoCollection leases = getOrCreateLeaseCollection();
+        AQL aql = new AQL();
+        Map<String, Object> bindVars = new HashMap<>();
+        aql.addLine(AQL.trust("FOR lease IN `" + leases.name() + "`"));
+        aql.addLine(AQL.trust(" FILTER lease._key == @key AND lease.owner == @owner"));
+        aql.addLine(AQL.trust(" REMOVE lease IN `" + leases.name() + "`"));
+        bindVars.put("key", key);
+        bindVars.put("owner", owner);
+        arangoDatabase.get().query(aql.build().getValue(), bindVars, Void.class);
+    }
+
+    private ArangoCollection getOrCreateLeaseCollection() {
+        return primaryStoreDBUtils.getOrCreateArangoCollection(arangoDatabase.getOrCreate(), new ArangoCollectionReference("events_leases", false));
+    }
+
+    private ArangoCollection getOrCreateCursorCollection() {
+        return primaryStoreDBUtils.getOrCreateArangoCollection(arangoDatabase.getOrCreate(), new ArangoCollectionReference("events_cursors", false));
+    }
+
     private String getCollectionName(DataStage stage) {
         return stage.name().toLowerCase() + "_events";
     }
@@ -49,18 +49,25 @@ public class InferenceProcessor {
 
     private final Inference.Client inference;
 
+    private final AsyncIndexing asyncIndexing;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    public InferenceProcessor(Indexing.Client indexing, EventRepository eventRepository, EventController eventController, Inference.Client inference) {
+    public InferenceProcessor(Indexing.Client indexing, EventRepository eventRepository, EventController eventController, Inference.Client inference, AsyncIndexing asyncIndexing) {
         this.indexing = indexing;
         this.eventRepository = eventRepository;
         this.eventController = eventController;
         this.inference = inference;
+        this.asyncIndexing = asyncIndexing;
     }
 
     public List<PersistedEvent> triggerInference(SpaceName space, UUID documentId){
         List<PersistedEvent> events = inference.infer(space.getName(), documentId).stream().map(e -> eventController.persistEvent(e, DataStage.IN_PROGRESS)).collect(Collectors.toList());
-        events.forEach(evt -> {
+        if (events.stream().anyMatch(PersistedEvent::isAsyncIndexing)) {
+            //These inferred events are indexed by the event log consumer
+            asyncIndexing.signal();
+        }
+        events.stream().filter(evt -> !evt.isAsyncIndexing()).forEach(evt -> {
             try {
                 indexing.indexEvent(evt);
             } catch (Exception e) {
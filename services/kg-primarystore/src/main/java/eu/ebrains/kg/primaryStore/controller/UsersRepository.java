@@ -166,13 +166,26 @@ public class UsersRepository implements SetupLogic {
     }
 
 
+    /**
+     * @return the persisted representation of the user with the given native id or null if it is not known
+     */
+    public User getUser(String nativeId) {
+        final NormalizedJsonLd userDocument = getUserCollection().getDocument(getUserUUID(nativeId).toString(), NormalizedJsonLd.class);
+        return userDocument != null ? new User(userDocument) : null;
+    }
+
     @NotNull
     public UUID getUserUUID(User user) {
+        return getUserUUID(user.getNativeId());
+    }
+
+    @NotNull
+    private UUID getUserUUID(String nativeId) {
         try {
-            return UUID.fromString(user.getNativeId());
+            return UUID.fromString(nativeId);
         } catch (IllegalArgumentException e) {
             //If the native id is not a UUID on its own, we build one based on the string.
-            return UUID.nameUUIDFromBytes(user.getNativeId().getBytes(StandardCharsets.UTF_8));
+            return UUID.nameUUIDFromBytes(nativeId.getBytes(StandardCharsets.UTF_8));
         }
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.primaryStore.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import eu.ebrains.kg.commons.model.PersistedEvent;
+
+import java.util.Comparator;
+
+/**
+ * A position within an event log (e.g. of the asynchronous indexing or of an interrupted replay). The events are ordered
+ * by their indexed timestamp and - for events with the same timestamp - by their event id.
+ */
+public class EventCursor {
+
+    public static final Comparator<PersistedEvent> EVENT_ORDER = Comparator.comparing(PersistedEvent::getIndexedTimestamp).thenComparing(PersistedEvent::getEventId);
+
+    @JsonProperty("_key")
+    private String key;
+    private Long indexedTimestamp;
+    private String eventId;
+
+    public EventCursor() {
+    }
+
+    public EventCursor(String key, Long indexedTimestamp, String eventId) {
+        this.key = key;
+        this.indexedTimestamp = indexedTimestamp;
+        this.eventId = eventId;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Long getIndexedTimestamp() {
+        return indexedTimestamp;
+    }
+
+    public String getEventId() {
+        return eventId;
+    }
+}
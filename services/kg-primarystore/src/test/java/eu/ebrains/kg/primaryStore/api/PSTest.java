@@ -58,7 +58,7 @@ public class PSTest {
         Event event = new Event(space, UUID.randomUUID(), carl, Event.Type.INSERT, new Date());
 
         //When
-        primaryStore.postEvent(event);
+        primaryStore.postEvent(event, true);
 
         //Then
     }
@@ -52,7 +52,7 @@ public class PrimaryStoreTest {
         data.addProperty("name", "test");
         data.setId(new JsonLdId("https://kg.ebrains.eu/api/instances/foo/bar"));
         Event e = new Event(Simpsons.SPACE_NAME, UUID.randomUUID(), data, Event.Type.INSERT, new Date());
-        primaryStore.postEvent(e);
+        primaryStore.postEvent(e, true);
     }
 
 
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+
+package eu.ebrains.kg.primaryStore.controller;
+
+import eu.ebrains.kg.commons.model.*;
+import eu.ebrains.kg.commons.model.internal.spaces.Space;
+import eu.ebrains.kg.test.factory.UserFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AsyncIndexingTest {
+
+    private final SpaceName spaceName = new SpaceName("foo");
+
+    private PersistedEvent createEvent(DataStage stage) {
+        User user = UserFactory.globalAdmin().getUserWithRoles().getUser();
+        return new PersistedEvent(new Event(spaceName, UUID.randomUUID(), null, Event.Type.INSERT, new Date()), stage, user, new Space(spaceName, false, false, false));
+    }
+
+    @Test
+    void watermarkStopsAtOngoingInsertion() throws InterruptedException {
+        //Given
+        AsyncIndexing asyncIndexing = new AsyncIndexing(true, 1000);
+        final Object insertion = asyncIndexing.startInsertion();
+        final long watermarkDuringInsertion = asyncIndexing.getWatermark();
+        Thread.sleep(5);
+
+        //When
+        final long watermarkWithOngoingInsertion = asyncIndexing.getWatermark();
+        asyncIndexing.finishInsertion(insertion);
+        final long watermarkAfterInsertion = asyncIndexing.getWatermark();
+
+        //Then
+        assertEquals(watermarkDuringInsertion, watermarkWithOngoingInsertion);
+        assertTrue(watermarkAfterInsertion > watermarkWithOngoingInsertion);
+    }
+
+    @Test
+    void indexedOnlyAfterInferredEventsAreIndexed() throws Exception {
+        //Given
+        AsyncIndexing asyncIndexing = new AsyncIndexing(true, 1000);
+        PersistedEvent nativeEvent = createEvent(DataStage.NATIVE);
+        PersistedEvent inferredEvent = createEvent(DataStage.IN_PROGRESS);
+        asyncIndexing.register(nativeEvent);
+        final Future<List<PersistedEvent>> indexing = asyncIndexing.getIndexing(nativeEvent);
+
+        //When
+        asyncIndexing.register(inferredEvent);
+        asyncIndexing.indexed(nativeEvent, Collections.singletonList(inferredEvent));
+        boolean doneBeforeInferredIsIndexed = indexing.isDone();
+        asyncIndexing.indexed(inferredEvent, Collections.emptyList());
+
+        //Then
+        assertFalse(doneBeforeInferredIsIndexed);
+        assertEquals(Collections.singletonList(inferredEvent), asyncIndexing.waitUntilIndexed(nativeEvent, indexing));
+    }
+
+    @Test
+    void failureIsPropagatedToWaiter() {
+        //Given
+        AsyncIndexing asyncIndexing = new AsyncIndexing(true, 1000);
+        PersistedEvent nativeEvent = createEvent(DataStage.NATIVE);
+        asyncIndexing.register(nativeEvent);
+        final Future<List<PersistedEvent>> indexing = asyncIndexing.getIndexing(nativeEvent);
+
+        //When
+        asyncIndexing.failed(nativeEvent, new IllegalArgumentException("foo"));
+
+        //Then
+        assertThrows(IllegalArgumentException.class, () -> asyncIndexing.waitUntilIndexed(nativeEvent, indexing));
+    }
+
+    @Test
+    void timeoutReturnsNull() {
+        //Given
+        AsyncIndexing asyncIndexing = new AsyncIndexing(true, 10);
+        PersistedEvent nativeEvent = createEvent(DataStage.NATIVE);
+        asyncIndexing.register(nativeEvent);
+
+        //When
+        final List<PersistedEvent> result = asyncIndexing.waitUntilIndexed(nativeEvent, asyncIndexing.getIndexing(nativeEvent));
+
+        //Then
+        assertNull(result);
+    }
+
+    @Test
+    void activeOnlyWhileHoldingTheLease() {
+        //Given
+        AsyncIndexing asyncIndexing = new AsyncIndexing(true, 1000);
+        boolean activeWithoutLease = asyncIndexing.isActive();
+
+        //When
+        asyncIndexing.grantLease(new Date().getTime() + 10000);
+        boolean activeWithLease = asyncIndexing.isActive();
+        asyncIndexing.grantLease(new Date().getTime() - 1);
+        boolean activeWithExpiredLease = asyncIndexing.isActive();
+
+        //Then
+        assertFalse(activeWithoutLease);
+        assertTrue(activeWithLease);
+        assertFalse(activeWithExpiredLease);
+    }
+
+    @Test
+    void neverActiveIfDisabled() {
+        //Given
+        AsyncIndexing asyncIndexing = new AsyncIndexing(false, 1000);
+
+        //When
+        asyncIndexing.grantLease(new Date().getTime() + 10000);
+
+        //Then
+        assertFalse(asyncIndexing.isActive());
+    }
+
+}
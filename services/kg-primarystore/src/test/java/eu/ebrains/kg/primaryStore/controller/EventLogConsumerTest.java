@@ -0,0 +1,204 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+package eu.ebrains.kg.primaryStore.controller;
+
+import eu.ebrains.kg.commons.RequestScopedUserWithRoles;
+import eu.ebrains.kg.commons.model.*;
+import eu.ebrains.kg.commons.model.internal.spaces.Space;
+import eu.ebrains.kg.commons.models.UserWithRoles;
+import eu.ebrains.kg.primaryStore.model.EventCursor;
+import eu.ebrains.kg.test.factory.UserFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+
+class EventLogConsumerTest {
+
+    private final SpaceName spaceName = new SpaceName("foo");
+
+    private final User user = UserFactory.globalAdmin().getUserWithRoles().getUser();
+
+    private final EventRepository eventRepository = Mockito.mock(EventRepository.class);
+
+    private final EventProcessor eventProcessor = Mockito.mock(EventProcessor.class);
+
+    private final UsersRepository usersRepository = Mockito.mock(UsersRepository.class);
+
+    private final List<UserWithRoles> indexedBy = new CopyOnWriteArrayList<>();
+
+    private EventLogConsumer consumer;
+
+    private PersistedEvent givenEventInLog() {
+        PersistedEvent event = new PersistedEvent(new Event(spaceName, UUID.randomUUID(), null, Event.Type.INSERT, new Date()), DataStage.NATIVE, user, new Space(spaceName, false, false, false));
+        Mockito.when(eventRepository.acquireLease(anyString(), anyString(), anyLong())).thenReturn(true);
+        Mockito.when(eventRepository.getCursor(any(DataStage.class))).thenAnswer(i -> new EventCursor(i.getArgument(0, DataStage.class).name(), 0L, ""));
+        Mockito.when(eventRepository.queryEventsAfter(eq(DataStage.NATIVE), any(), anyLong(), anyInt())).thenReturn(Collections.singletonList(event), Collections.emptyList());
+        Mockito.when(eventProcessor.processEvent(event)).thenAnswer(i -> {
+            indexedBy.add(RequestScopedUserWithRoles.current().get(true, () -> null));
+            return Collections.emptyList();
+        });
+        return event;
+    }
+
+    private void startConsumer(AsyncIndexing asyncIndexing) {
+        consumer = new EventLogConsumer(asyncIndexing, eventRepository, eventProcessor, usersRepository, 100, 10, 60000, 100, 60000);
+        consumer.start();
+    }
+
+    /**
+     * Backs the event repository with an in-memory event log and cursor store
+     */
+    private void givenEventLog(List<PersistedEvent> eventLog, Map<String, EventCursor> persistedCursors) {
+        Mockito.when(eventRepository.acquireLease(anyString(), anyString(), anyLong())).thenReturn(true);
+        Mockito.when(eventRepository.getCursor(any(DataStage.class))).thenAnswer(i -> persistedCursors.get(i.getArgument(0, DataStage.class).name()));
+        Mockito.doAnswer(i -> persistedCursors.put(i.getArgument(0, EventCursor.class).getKey(), i.getArgument(0))).when(eventRepository).saveCursor(any());
+        Mockito.when(eventRepository.queryEventsAfter(any(), any(), anyLong(), anyInt())).thenAnswer(i -> {
+            final DataStage stage = i.getArgument(0);
+            final EventCursor cursor = i.getArgument(1);
+            return eventLog.stream().filter(e -> e.getDataStage() == stage && (e.getIndexedTimestamp() > cursor.getIndexedTimestamp() || (e.getIndexedTimestamp().equals(cursor.getIndexedTimestamp()) && e.getEventId().compareTo(cursor.getEventId()) > 0))).sorted(EventCursor.EVENT_ORDER).limit(i.getArgument(3, Integer.class)).collect(Collectors.toList());
+        });
+        Mockito.when(eventProcessor.processEvent(any())).thenReturn(Collections.emptyList());
+    }
+
+    private Map<String, EventCursor> createInitialCursors() {
+        Map<String, EventCursor> persistedCursors = new ConcurrentHashMap<>();
+        for (DataStage stage : DataStage.values()) {
+            persistedCursors.put(stage.name(), new EventCursor(stage.name(), 0L, ""));
+        }
+        return persistedCursors;
+    }
+
+    private PersistedEvent createEvent() throws InterruptedException {
+        //Distinct indexed timestamps keep the order of the log in line with the order of creation
+        Thread.sleep(2);
+        return new PersistedEvent(new Event(spaceName, UUID.randomUUID(), null, Event.Type.INSERT, new Date()), DataStage.NATIVE, user, new Space(spaceName, false, false, false));
+    }
+
+    @AfterEach
+    void stopConsumer() {
+        if (consumer != null) {
+            consumer.stop();
+        }
+    }
+
+    @Test
+    void eventsAreIndexedAfterRestart() {
+        //Given
+        PersistedEvent event = givenEventInLog();
+        Mockito.when(usersRepository.getUser(user.getNativeId())).thenReturn(user);
+        new AsyncIndexing(true, 1000).register(event);
+
+        //When
+        //The restarted instance doesn't know about the pending event anymore
+        startConsumer(new AsyncIndexing(true, 1000));
+
+        //Then
+        Mockito.verify(eventRepository, Mockito.timeout(5000)).saveCursor(argThat(c -> event.getEventId().equals(c.getEventId())));
+        assertEquals(1, indexedBy.size());
+        assertEquals(user.getNativeId(), indexedBy.get(0).getUser().getNativeId());
+    }
+
+    @Test
+    void eventsOfUnknownUsersAreIndexedByInternalAdmin() {
+        //Given
+        PersistedEvent event = givenEventInLog();
+
+        //When
+        startConsumer(new AsyncIndexing(true, 1000));
+
+        //Then
+        Mockito.verify(eventRepository, Mockito.timeout(5000)).saveCursor(argThat(c -> event.getEventId().equals(c.getEventId())));
+        assertEquals(Collections.singletonList(UserWithRoles.INTERNAL_ADMIN), indexedBy);
+    }
+
+    @Test
+    void waitingRequestIsReleasedOnIndexing() throws Exception {
+        //Given
+        PersistedEvent event = givenEventInLog();
+        AsyncIndexing asyncIndexing = new AsyncIndexing(true, 1000);
+        asyncIndexing.register(event);
+        Future<List<PersistedEvent>> indexing = asyncIndexing.getIndexing(event);
+
+        //When
+        startConsumer(asyncIndexing);
+
+        //Then
+        assertEquals(Collections.emptyList(), indexing.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void consumerResumesFromPersistedCursorAfterRestart() throws Exception {
+        //Given
+        List<PersistedEvent> eventLog = new CopyOnWriteArrayList<>(List.of(createEvent(), createEvent(), createEvent()));
+        Map<String, EventCursor> persistedCursors = createInitialCursors();
+        givenEventLog(eventLog, persistedCursors);
+        startConsumer(new AsyncIndexing(true, 1000));
+        eventLog.forEach(e -> Mockito.verify(eventProcessor, Mockito.timeout(5000)).processEvent(e));
+        consumer.stop();
+        PersistedEvent eventAfterRestart = createEvent();
+        eventLog.add(eventAfterRestart);
+
+        //When
+        startConsumer(new AsyncIndexing(true, 1000));
+
+        //Then
+        Mockito.verify(eventProcessor, Mockito.timeout(5000)).processEvent(eventAfterRestart);
+        consumer.stop();
+        //Every event has been indexed exactly once - the restarted consumer didn't start from scratch
+        Mockito.verify(eventProcessor, Mockito.times(4)).processEvent(any());
+        assertEquals(eventAfterRestart.getEventId(), persistedCursors.get(DataStage.NATIVE.name()).getEventId());
+    }
+
+    @Test
+    void cursorIsSavedInBatches() throws Exception {
+        //Given
+        List<PersistedEvent> eventLog = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            eventLog.add(createEvent());
+        }
+        Map<String, EventCursor> persistedCursors = createInitialCursors();
+        givenEventLog(eventLog, persistedCursors);
+        consumer = new EventLogConsumer(new AsyncIndexing(true, 1000), eventRepository, eventProcessor, usersRepository, 100, 10, 60000, 2, 60000);
+
+        //When
+        consumer.start();
+        Mockito.verify(eventProcessor, Mockito.timeout(5000).times(5)).processEvent(any());
+        consumer.stop();
+
+        //Then
+        //After the second and the fourth event and once the last event has been reached (either drained or on stop)
+        Mockito.verify(eventRepository, Mockito.times(3)).saveCursor(argThat(c -> DataStage.NATIVE.name().equals(c.getKey())));
+        assertEquals(eventLog.get(4).getEventId(), persistedCursors.get(DataStage.NATIVE.name()).getEventId());
+    }
+
+}
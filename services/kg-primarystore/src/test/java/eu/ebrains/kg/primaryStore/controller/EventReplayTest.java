@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 - 2021 Swiss Federal Institute of Technology Lausanne (EPFL)
+ * Copyright 2021 - 2022 EBRAINS AISBL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0.
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * This open source software code was developed in part or in whole in the
+ * Human Brain Project, funded from the European Union's Horizon 2020
+ * Framework Programme for Research and Innovation under
+ * Specific Grant Agreements No. 720270, No. 785907, and No. 945539
+ * (Human Brain Project SGA1, SGA2 and SGA3).
+ */
+package eu.ebrains.kg.primaryStore.controller;
+
+import eu.ebrains.kg.commons.model.*;
+import eu.ebrains.kg.commons.model.internal.spaces.Space;
+import eu.ebrains.kg.primaryStore.model.EventCursor;
+import eu.ebrains.kg.test.factory.UserFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventReplayTest {
+
+    private final SpaceName spaceName = new SpaceName("foo");
+
+    private PersistedEvent createEvent() {
+        User user = UserFactory.globalAdmin().getUserWithRoles().getUser();
+        return new PersistedEvent(new Event(spaceName, UUID.randomUUID(), null, Event.Type.INSERT, new Date()), DataStage.NATIVE, user, new Space(spaceName, false, false, false));
+    }
+
+    @Test
+    void eventsOfSamePartitionAreReplayedInOrder() throws InterruptedException {
+        //Given
+        Map<Integer, List<PersistedEvent>> replayed = new ConcurrentHashMap<>();
+        Map<Integer, List<PersistedEvent>> submitted = new HashMap<>();
+        Map<PersistedEvent, Integer> partitions = new ConcurrentHashMap<>();
+        Random random = new Random(42);
+
+        //When
+        try (EventReplay replay = new EventReplay(4, 10, null, e -> {
+            replayed.computeIfAbsent(partitions.get(e), k -> Collections.synchronizedList(new ArrayList<>())).add(e);
+            if (random.nextInt(10) == 0) {
+                Thread.yield();
+            }
+        }, null)) {
+            for (int i = 0; i < 300; i++) {
+                PersistedEvent event = createEvent();
+                int partition = random.nextInt(7);
+                partitions.put(event, partition);
+                submitted.computeIfAbsent(partition, k -> new ArrayList<>()).add(event);
+                replay.submit(event, partition);
+            }
+            replay.finish();
+
+            //Then
+            assertEquals(300, replay.getReplayed());
+            assertEquals(0, replay.getFailed());
+            assertEquals(submitted, replayed);
+        }
+    }
+
+    @Test
+    void checkpointDoesNotPassUnfinishedEvent() throws InterruptedException {
+        //Given
+        PersistedEvent blocked = createEvent();
+        PersistedEvent other = createEvent();
+        CountDownLatch unblock = new CountDownLatch(1);
+        CountDownLatch otherReplayed = new CountDownLatch(1);
+
+        try (EventReplay replay = new EventReplay(2, 10, null, e -> {
+            try {
+                if (e == blocked) {
+                    unblock.await();
+                } else {
+                    otherReplayed.countDown();
+                }
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+            }
+        }, null)) {
+
+            //When
+            replay.submit(blocked, 0);
+            replay.submit(other, 1);
+            otherReplayed.await();
+            final EventCursor checkpointWhileBlocked = replay.getCheckpoint();
+            unblock.countDown();
+            replay.finish();
+            final EventCursor checkpointAfterwards = replay.getCheckpoint();
+
+            //Then
+            assertNull(checkpointWhileBlocked);
+            assertEquals(other.getEventId(), checkpointAfterwards.getEventId());
+            assertEquals(other.getIndexedTimestamp(), checkpointAfterwards.getIndexedTimestamp());
+        }
+    }
+
+}
@@ -58,7 +58,7 @@ public class Release {
             //Revision is optional -> if not provided, we just continue with the releasing process.
             throw new IllegalArgumentException("Incorrect revision provided");
         }
-        primaryStoreEvents.postEvent(new Event(space, id, jsonLdDoc.getDoc(), Event.Type.RELEASE, new Date()));
+        primaryStoreEvents.postEvent(new Event(space, id, jsonLdDoc.getDoc(), Event.Type.RELEASE, new Date()), true);
     }
 
     public void unrelease(SpaceName space, UUID id) {
@@ -66,7 +66,7 @@ public class Release {
         if (jsonLdDoc == null) {
             throw new IllegalArgumentException(String.format("Instance %s/%s not found", space.getName(), id));
         }
-        primaryStoreEvents.postEvent(new Event(space, id, jsonLdDoc.getDoc(), Event.Type.UNRELEASE, new Date()));
+        primaryStoreEvents.postEvent(new Event(space, id, jsonLdDoc.getDoc(), Event.Type.UNRELEASE, new Date()), true);
     }
 
     public ReleaseStatus getStatus(SpaceName space, UUID id, ReleaseTreeScope treeScope) {